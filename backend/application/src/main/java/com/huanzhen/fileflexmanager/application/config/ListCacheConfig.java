@@ -0,0 +1,28 @@
+package com.huanzhen.fileflexmanager.application.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.list-cache")
+public class ListCacheConfig {
+    /**
+     * 是否缓存目录列表
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存占用内存上限（估算值），默认 64MB
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * 缓存最长保留时间（秒）
+     * <p>
+     * 目录修改时间只反映子条目的增删和重命名，子文件内容被外部程序修改、索引任务更新哈希或文件夹大小时
+     * 不会触发失效，超过该时间后重新读取
+     */
+    private long maxAgeSeconds = 600;
+}
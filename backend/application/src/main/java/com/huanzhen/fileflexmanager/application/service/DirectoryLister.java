@@ -0,0 +1,225 @@
+package com.huanzhen.fileflexmanager.application.service;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileInfo;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileSortField;
+import com.huanzhen.fileflexmanager.domain.utils.CursorUtils;
+import com.huanzhen.fileflexmanager.domain.utils.FileNameKeyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 基于 {@link DirectoryStream} 的目录列表
+ * <p>
+ * 逐个读取子条目，只保留排序所需的名称、类型、大小和修改时间，用大小为 offset+limit 的堆选出
+ * 请求的那一页，不会为每个子条目创建 VFS 对象，也不需要对整个目录排序。
+ * 游标记录上一页最后一条的排序值，下一页只需要大小为 limit 的堆。
+ */
+final class DirectoryLister {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryLister.class);
+
+    private DirectoryLister() {
+    }
+
+    /**
+     * 目录子条目的排序信息
+     *
+     * @param sortKey 名称排序键，见 {@link FileNameKeyUtils#sortKey(String)}，读取条目时算好，排序时不再转换
+     */
+    record Entry(Path path, String name, String sortKey, boolean directory, long size, long lastModified) {
+        Entry(Path path, String name, boolean directory, long size, long lastModified) {
+            this(path, name, FileNameKeyUtils.sortKey(name), directory, size, lastModified);
+        }
+
+        FileInfo toFileInfo() {
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setName(name);
+            fileInfo.setPath(path.toString());
+            fileInfo.setDirectory(directory);
+            if (!directory) {
+                fileInfo.setSize(size);
+            }
+            fileInfo.setLastModified(lastModified);
+            return fileInfo;
+        }
+    }
+
+    /**
+     * 排序方式：文件夹在前，然后按排序字段，排序值相同时按名称
+     * <p>
+     * 名称按排序键自然排序：汉字按拼音，数字按数值（file2 在 file10 之前）
+     */
+    record Sort(FileSortField field, boolean desc) {
+        static Sort of(String field, String order) {
+            return new Sort(FileSortField.of(field), "desc".equalsIgnoreCase(order));
+        }
+
+        Comparator<Entry> comparator() {
+            Comparator<Entry> byName = Comparator.comparing(Entry::sortKey, FileNameKeyUtils::compareNatural)
+                    .thenComparing(Entry::name);
+            Comparator<Entry> byField = switch (field) {
+                case NAME -> byName;
+                case SIZE -> Comparator.comparingLong(Entry::size).thenComparing(byName);
+                case LAST_MODIFIED -> Comparator.comparingLong(Entry::lastModified).thenComparing(byName);
+            };
+            return Comparator.comparing((Entry entry) -> !entry.directory())
+                    .thenComparing(desc ? byField.reversed() : byField);
+        }
+    }
+
+    /**
+     * @param entries 排好序的一页
+     * @param total   目录下的子条目总数
+     * @param hasMore 这一页之后是否还有条目
+     */
+    record Listing(List<Entry> entries, long total, boolean hasMore) {
+    }
+
+    /**
+     * 列出排序后第 offset 条开始的 limit 条
+     *
+     * @param after 只列出排在该条目之后的条目，为null时从头开始
+     */
+    static Listing list(Path dir, Sort sort, Entry after, int offset, int limit) throws IOException {
+        Comparator<Entry> comparator = sort.comparator();
+        int keep = offset + limit;
+        // 大顶堆，堆顶是当前保留的条目中排序最靠后的
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.max(1, Math.min(keep, 1024)), comparator.reversed());
+        long total = 0;
+        long matched = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                Entry entry = readEntry(child);
+                if (entry == null) {
+                    continue;
+                }
+                total++;
+                if (after != null && comparator.compare(entry, after) <= 0) {
+                    continue;
+                }
+                matched++;
+                if (heap.size() < keep) {
+                    heap.add(entry);
+                } else if (keep > 0 && comparator.compare(entry, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(entry);
+                }
+            }
+        }
+        List<Entry> sorted = new ArrayList<>(heap);
+        sorted.sort(comparator);
+        List<Entry> page = offset < sorted.size() ? sorted.subList(offset, sorted.size()) : List.of();
+        return new Listing(page, total, matched > keep);
+    }
+
+    /**
+     * 读取目录下全部子条目，顺序为目录中的原始顺序
+     */
+    static List<Entry> readAll(Path dir) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                Entry entry = readEntry(child);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 从已排好序的全部条目中取出一页，结果与 {@link #list} 一致
+     */
+    static Listing page(List<Entry> sorted, Sort sort, Entry after, int offset, int limit) {
+        int from = 0;
+        if (after != null) {
+            int index = Collections.binarySearch(sorted, after, sort.comparator());
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+        int start = (int) Math.min((long) from + offset, sorted.size());
+        int end = (int) Math.min((long) start + limit, sorted.size());
+        return new Listing(sorted.subList(start, end), sorted.size(), end < sorted.size());
+    }
+
+    /**
+     * 按目录中的原始顺序分批读取子条目，用于流式返回
+     */
+    static void stream(Path dir, int batchSize, Consumer<List<Entry>> consumer) throws IOException {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                Entry entry = readEntry(child);
+                if (entry == null) {
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    /**
+     * 读取子条目属性，符号链接按目标处理，目标不存在时按链接自身处理
+     */
+    static Entry readEntry(Path path) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException ex) {
+                logger.debug("读取文件属性失败，跳过: {}", path);
+                return null;
+            }
+        }
+        return new Entry(path, path.getFileName().toString(), attrs.isDirectory(),
+                attrs.isDirectory() ? 0L : attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * 把排序方式和最后一条的排序值编码为不透明的游标
+     */
+    static String encodeCursor(Sort sort, Entry last) {
+        JSONObject json = new JSONObject();
+        json.put("f", sort.field().name());
+        json.put("o", sort.desc() ? "desc" : "asc");
+        json.put("d", last.directory());
+        json.put("n", last.name());
+        json.put("s", last.size());
+        json.put("m", last.lastModified());
+        return CursorUtils.encode(json);
+    }
+
+    /**
+     * 解析游标
+     *
+     * @return 游标位置对应的条目，只包含排序值
+     * @throws IllegalArgumentException 游标无效或与排序方式不一致
+     */
+    static Entry decodeCursor(String cursor, Sort sort) {
+        JSONObject json = CursorUtils.decode(cursor);
+        if (json.getString("n") == null) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        if (!sort.field().name().equals(json.getString("f"))
+                || sort.desc() != "desc".equals(json.getString("o"))) {
+            throw new IllegalArgumentException("游标与排序方式不一致，请从第一页重新查询");
+        }
+        return new Entry(null, json.getString("n"), json.getBooleanValue("d"),
+                json.getLongValue("s"), json.getLongValue("m"));
+    }
+}
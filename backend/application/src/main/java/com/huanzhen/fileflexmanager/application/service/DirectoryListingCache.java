@@ -0,0 +1,270 @@
+package com.huanzhen.fileflexmanager.application.service;
+
+import com.huanzhen.fileflexmanager.application.config.ListCacheConfig;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 目录列表缓存
+ * <p>
+ * 按目录路径缓存全部子条目的排序信息，各排序方式的结果在首次使用时排好并保留，翻页和游标查询都不再读取磁盘；
+ * 已补充过索引和标签的文件信息也一并缓存，重复打开同一目录时不再查询数据库。
+ * <p>
+ * 按最近访问顺序淘汰，总占用按估算字节数限制在 {@link ListCacheConfig#getMaxBytes()} 以内，
+ * 单个目录超过上限的 1/4 时不缓存。每次读取时比较目录修改时间，子条目增删或重命名后自动失效；
+ * 本程序内的上传、新建文件夹、移动、删除主动让相关目录失效，标签变更只清除缓存的文件信息。
+ */
+@Component
+public class DirectoryListingCache {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryListingCache.class);
+
+    /**
+     * 每个子条目除字符串外的估算字节数：排序信息、各排序方式的引用、文件信息及索引Map的节点
+     */
+    private static final long ENTRY_OVERHEAD = 360;
+    private static final long SNAPSHOT_OVERHEAD = 512;
+
+    private final ListCacheConfig config;
+
+    /**
+     * 按访问顺序排列，最久未访问的在前
+     */
+    private final LinkedHashMap<Path, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    /**
+     * 标签等索引信息的版本，清除文件信息时递增，补充信息期间版本变化的结果不再写入缓存
+     */
+    private long indexGeneration;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public DirectoryListingCache(ListCacheConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 获取目录快照，缓存不存在或已失效时重新读取目录
+     *
+     * @return 目录快照，未启用缓存时返回null；目录过大时返回的快照不会被缓存
+     */
+    Snapshot get(Path dir) throws IOException {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        // 先取修改时间再读取目录，读取期间发生的变更会让下一次校验失败
+        FileTime modifiedTime = Files.getLastModifiedTime(dir);
+        Snapshot cached = lookup(dir, modifiedTime);
+        if (cached != null) {
+            return cached;
+        }
+        Snapshot snapshot = new Snapshot(dir, modifiedTime, DirectoryLister.readAll(dir));
+        put(snapshot);
+        return snapshot;
+    }
+
+    private synchronized Snapshot lookup(Path dir, FileTime modifiedTime) {
+        Snapshot snapshot = snapshots.get(dir);
+        if (snapshot == null) {
+            misses.increment();
+            return null;
+        }
+        long age = System.currentTimeMillis() - snapshot.loadedAt;
+        if (!snapshot.modifiedTime.equals(modifiedTime) || age > TimeUnit.SECONDS.toMillis(config.getMaxAgeSeconds())) {
+            remove(dir);
+            invalidations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return snapshot;
+    }
+
+    private synchronized void put(Snapshot snapshot) {
+        long maxBytes = config.getMaxBytes();
+        if (snapshot.weight > maxBytes / 4) {
+            logger.debug("目录过大，不缓存列表: {}, 条目数: {}", snapshot.dir, snapshot.entries.size());
+            return;
+        }
+        remove(snapshot.dir);
+        snapshots.put(snapshot.dir, snapshot);
+        usedBytes += snapshot.weight;
+
+        Iterator<Snapshot> iterator = snapshots.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Snapshot eldest = iterator.next();
+            iterator.remove();
+            usedBytes -= eldest.weight;
+            evictions.increment();
+            logger.debug("淘汰目录列表缓存: {}", eldest.dir);
+        }
+    }
+
+    private void remove(Path dir) {
+        Snapshot removed = snapshots.remove(dir);
+        if (removed != null) {
+            usedBytes -= removed.weight;
+        }
+    }
+
+    /**
+     * 让目录的列表缓存失效，用于目录下新增、删除或修改了子条目
+     */
+    public synchronized void invalidate(Path dir) {
+        Path key = normalize(dir);
+        if (snapshots.containsKey(key)) {
+            remove(key);
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 让路径所在目录、路径自身及其下所有目录的列表缓存失效，用于移动或删除文件/目录
+     */
+    public synchronized void invalidateTree(Path path) {
+        Path root = normalize(path);
+        Path parent = root.getParent();
+        Iterator<Map.Entry<Path, Snapshot>> iterator = snapshots.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Snapshot> entry = iterator.next();
+            if (entry.getKey().startsWith(root) || entry.getKey().equals(parent)) {
+                iterator.remove();
+                usedBytes -= entry.getValue().weight;
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * 清除所有目录中缓存的文件信息（索引和标签），保留子条目列表，用于标签变更
+     * <p>
+     * 在事务中调用时，提交后再清除一次，避免提交前其他请求读到旧数据又写回缓存
+     */
+    public void clearIndexInfo() {
+        doClearIndexInfo();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doClearIndexInfo();
+                }
+            });
+        }
+    }
+
+    private synchronized void doClearIndexInfo() {
+        indexGeneration++;
+        snapshots.values().forEach(snapshot -> snapshot.fileInfos.clear());
+    }
+
+    synchronized long indexGeneration() {
+        return indexGeneration;
+    }
+
+    /**
+     * 缓存补充过索引信息的文件，generation 为开始补充前的 {@link #indexGeneration()}
+     */
+    synchronized void putFileInfos(Snapshot snapshot, List<FileInfo> fileInfos, long generation) {
+        if (generation != indexGeneration) {
+            return;
+        }
+        for (FileInfo fileInfo : fileInfos) {
+            snapshot.fileInfos.put(fileInfo.getPath(), fileInfo);
+        }
+    }
+
+    public synchronized void clear() {
+        snapshots.clear();
+        usedBytes = 0;
+    }
+
+    public Stats getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        synchronized (this) {
+            return new Stats(hitCount, missCount, requests == 0 ? 0 : (double) hitCount / requests,
+                    evictions.sum(), invalidations.sum(), snapshots.size(), usedBytes, config.getMaxBytes());
+        }
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @param hits          命中次数
+     * @param misses        未命中次数，包括缓存已失效
+     * @param hitRatio      命中率
+     * @param evictions     因超出内存上限被淘汰的目录数
+     * @param invalidations 因修改时间变化、超时或主动失效被移除的目录数
+     * @param directories   当前缓存的目录数
+     * @param usedBytes     当前估算占用字节数
+     * @param maxBytes      内存上限
+     */
+    public record Stats(long hits, long misses, double hitRatio, long evictions, long invalidations,
+                        int directories, long usedBytes, long maxBytes) {
+    }
+
+    /**
+     * 某一时刻的目录内容
+     */
+    static final class Snapshot {
+        private final Path dir;
+        private final FileTime modifiedTime;
+        private final long loadedAt = System.currentTimeMillis();
+        private final List<DirectoryLister.Entry> entries;
+        private final long weight;
+        /**
+         * 各排序方式下排好序的全部条目
+         */
+        private final Map<DirectoryLister.Sort, List<DirectoryLister.Entry>> sorted = new ConcurrentHashMap<>();
+        /**
+         * 路径 -> 已补充索引和标签的文件信息，只读共享
+         */
+        private final Map<String, FileInfo> fileInfos = new ConcurrentHashMap<>();
+
+        Snapshot(Path dir, FileTime modifiedTime, List<DirectoryLister.Entry> entries) {
+            this.dir = dir;
+            this.modifiedTime = modifiedTime;
+            this.entries = entries;
+            long weight = SNAPSHOT_OVERHEAD;
+            for (DirectoryLister.Entry entry : entries) {
+                // 名称和路径各存有两份（排序信息和文件信息），另有一份排序键，按每字符2字节估算
+                weight += ENTRY_OVERHEAD + 4L * (entry.name().length() + entry.path().toString().length())
+                        + 2L * entry.sortKey().length();
+            }
+            this.weight = weight;
+        }
+
+        DirectoryLister.Listing list(DirectoryLister.Sort sort, DirectoryLister.Entry after, int offset, int limit) {
+            List<DirectoryLister.Entry> list = sorted.computeIfAbsent(sort, key -> {
+                List<DirectoryLister.Entry> copy = new ArrayList<>(entries);
+                copy.sort(key.comparator());
+                return Collections.unmodifiableList(copy);
+            });
+            return DirectoryLister.page(list, sort, after, offset, limit);
+        }
+
+        FileInfo getFileInfo(String path) {
+            return fileInfos.get(path);
+        }
+    }
+}
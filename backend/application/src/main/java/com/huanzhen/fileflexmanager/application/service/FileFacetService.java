@@ -0,0 +1,133 @@
+package com.huanzhen.fileflexmanager.application.service;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexFacet;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileSizeBucket;
+import com.huanzhen.fileflexmanager.domain.model.req.FileQueryRequest;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileFacets;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexFacetRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 文件分面计数
+ * <p>
+ * 计数由索引任务按索引根目录预先统计（见 {@link FileIndexFacetRepository#refresh(String)}），这里只读取并合并，
+ * 请求中不做分组统计。查询范围本身是索引根目录时计数是准确的；范围在某个根目录内部时使用该根目录的计数，
+ * 范围包含多个根目录时合并它们的计数。计数不受扩展名、大小、时间等过滤条件影响，
+ * 与查询结果的范围不一致时返回 {@link FileFacets#isScopeExact()} 为false，由界面注明是根目录整体的计数。
+ * 计数反映的是上次索引完成时的文件，之后的变化要等下次索引。
+ */
+@Service
+@RequiredArgsConstructor
+public class FileFacetService {
+    /**
+     * 扩展名分面最多返回的分组数
+     */
+    private static final int MAX_EXTENSION_BUCKETS = 20;
+
+    private final FileIndexFacetRepository facetRepository;
+
+    /**
+     * @param request 查询条件，path 为查询范围，为空时合并全部最外层的索引根目录
+     */
+    public FileFacets getFacets(FileQueryRequest request) {
+        String scope = StrUtil.removeSuffix(request.path(), "/");
+        List<String> rootPaths = resolveRootPaths(scope, facetRepository.findRootPaths());
+        Map<String, Map<String, long[]>> merged = new HashMap<>();
+        LocalDateTime updateTime = null;
+        for (String rootPath : rootPaths) {
+            for (FileIndexFacet facet : facetRepository.findByRootPath(rootPath)) {
+                long[] counter = merged.computeIfAbsent(facet.getFacet(), key -> new HashMap<>())
+                        .computeIfAbsent(facet.getBucket(), key -> new long[2]);
+                counter[0] += facet.getFileCount();
+                counter[1] += facet.getTotalSize();
+                if (updateTime == null || facet.getUpdateTime().isBefore(updateTime)) {
+                    updateTime = facet.getUpdateTime();
+                }
+            }
+        }
+
+        FileFacets facets = new FileFacets();
+        facets.setRootPaths(rootPaths);
+        facets.setScopeExact(StrUtil.isNotEmpty(scope) && rootPaths.equals(List.of(scope)) && !hasFilters(request));
+        facets.setUpdateTime(updateTime);
+        facets.setExtensions(toBuckets(merged.get(FileIndexFacet.EXTENSION)).stream()
+                .sorted(Comparator.comparingLong(FileFacets.Bucket::count).reversed()
+                        .thenComparing(FileFacets.Bucket::value))
+                .limit(MAX_EXTENSION_BUCKETS)
+                .toList());
+        facets.setSizes(toBuckets(merged.get(FileIndexFacet.SIZE)).stream()
+                .sorted(Comparator.comparing(bucket -> FileSizeBucket.valueOf(bucket.value())))
+                .toList());
+        List<FileFacets.Bucket> months = toBuckets(merged.get(FileIndexFacet.MONTH)).stream()
+                .sorted(Comparator.comparing(FileFacets.Bucket::value))
+                .toList();
+        facets.setMonths(months);
+        facets.setYears(toYears(months));
+        return facets;
+    }
+
+    /**
+     * 找出计数可以代表查询范围的根目录：包含范围的最深一级根目录，没有时为范围内的最外层根目录
+     */
+    private static List<String> resolveRootPaths(String scope, Collection<String> rootPaths) {
+        if (StrUtil.isNotEmpty(scope)) {
+            Optional<String> covering = rootPaths.stream()
+                    .filter(rootPath -> isSameOrUnder(scope, rootPath))
+                    .max(Comparator.comparingInt(String::length));
+            if (covering.isPresent()) {
+                return List.of(covering.get());
+            }
+        }
+        List<String> candidates = rootPaths.stream()
+                .filter(rootPath -> StrUtil.isEmpty(scope) || isSameOrUnder(rootPath, scope))
+                .toList();
+        return candidates.stream()
+                .filter(rootPath -> candidates.stream()
+                        .noneMatch(other -> !other.equals(rootPath) && isSameOrUnder(rootPath, other)))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * 是否有计数无法反映的过滤条件，只查文件与计数一致，不算在内
+     */
+    private static boolean hasFilters(FileQueryRequest request) {
+        return StrUtil.isNotBlank(request.keyword())
+                || CollUtil.isNotEmpty(request.extensions())
+                || request.minSize() != null || request.maxSize() != null
+                || request.modifiedAfter() != null || request.modifiedBefore() != null
+                || Boolean.TRUE.equals(request.directory());
+    }
+
+    private static boolean isSameOrUnder(String path, String parent) {
+        return path.equals(parent) || path.startsWith(parent.endsWith("/") ? parent : parent + "/");
+    }
+
+    private static List<FileFacets.Bucket> toBuckets(Map<String, long[]> counters) {
+        if (counters == null) {
+            return Collections.emptyList();
+        }
+        List<FileFacets.Bucket> buckets = new ArrayList<>(counters.size());
+        counters.forEach((value, counter) -> buckets.add(new FileFacets.Bucket(value, counter[0], counter[1])));
+        return buckets;
+    }
+
+    /**
+     * 按月份计数汇总出年份计数，月份为 yyyy-MM 格式且已升序排列
+     */
+    private static List<FileFacets.Bucket> toYears(List<FileFacets.Bucket> months) {
+        Map<String, long[]> years = new LinkedHashMap<>();
+        for (FileFacets.Bucket month : months) {
+            long[] counter = years.computeIfAbsent(month.value().substring(0, 4), key -> new long[2]);
+            counter[0] += month.count();
+            counter[1] += month.totalSize();
+        }
+        return toBuckets(years);
+    }
+}
@@ -0,0 +1,214 @@
+package com.huanzhen.fileflexmanager.application.service;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileTag;
+import com.huanzhen.fileflexmanager.domain.model.entity.Tag;
+import com.huanzhen.fileflexmanager.domain.model.entity.TagFileHash;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
+import com.huanzhen.fileflexmanager.domain.repository.FileTagRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TagFileHashRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TagRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台计算绑定文件的标签需要的完整MD5
+ * <p>
+ * 给文件打绑定文件的标签时，索引中的MD5仍有效（大小和修改时间与磁盘一致）就直接使用；否则请求只写直接关联，
+ * 把文件提交到这里，由后台线程计算完整MD5、写回索引，再为文件当时带有的绑定文件的标签补上hash关联，
+ * 避免在请求线程中读取整个大文件。计算完成前文件处于待计算状态，文件列表据此提示hash关联尚未生效。
+ * 待计算状态只保存在内存中，重启后丢失的文件在下次打标签时重新提交。
+ */
+@Slf4j
+@Component
+public class FileHashBinder {
+    /**
+     * 同时计算的文件数，计算受磁盘读取速度限制，线程多了反而互相拖慢
+     */
+    private static final int HASH_THREADS = 2;
+    /**
+     * 计算期间文件被修改时重新计算的次数
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final FileIndexRepository fileIndexRepository;
+    private final FileTagRepository fileTagRepository;
+    private final TagFileHashRepository tagFileHashRepository;
+    private final TagRepository tagRepository;
+    private final DirectoryListingCache directoryListingCache;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 同一文件同时被多处请求计算时只计算一次
+     */
+    private final SingleFlight<String, String> hashFlight = new SingleFlight<>("计算文件哈希", 16);
+    /**
+     * 待计算的文件ID -> 路径
+     */
+    private final Map<Long, String> pending = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public FileHashBinder(FileIndexRepository fileIndexRepository, FileTagRepository fileTagRepository,
+                          TagFileHashRepository tagFileHashRepository, TagRepository tagRepository,
+                          DirectoryListingCache directoryListingCache, TransactionTemplate transactionTemplate) {
+        this.fileIndexRepository = fileIndexRepository;
+        this.fileTagRepository = fileTagRepository;
+        this.tagFileHashRepository = tagFileHashRepository;
+        this.tagRepository = tagRepository;
+        this.directoryListingCache = directoryListingCache;
+        this.transactionTemplate = transactionTemplate;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(HASH_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "file-hash-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 计算文件的完整MD5，同一文件同时被多处请求计算时只计算一次
+     */
+    public String computeFileHash(File file) {
+        return hashFlight.execute(file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified(),
+                () -> DigestUtil.md5Hex(file));
+    }
+
+    /**
+     * 索引中仍有效的完整MD5：索引记录的大小和修改时间与磁盘上的文件一致
+     *
+     * @return 索引中没有MD5或文件已变化时返回null
+     */
+    public String findIndexedHash(FileIndex fileIndex, File file) {
+        if (fileIndex == null || fileIndex.getMd5() == null
+                || fileIndex.getSize() == null || fileIndex.getLastModified() == null) {
+            return null;
+        }
+        if (fileIndex.getSize() != file.length()
+                || !fileIndex.getLastModified().truncatedTo(ChronoUnit.MILLIS).equals(toLocalDateTime(file.lastModified()))) {
+            return null;
+        }
+        return fileIndex.getMd5();
+    }
+
+    /**
+     * 提交文件到后台计算，立即返回
+     * <p>
+     * 在事务中提交时等事务提交后才开始计算，计算完成时读取的标签已包含本次写入的关联；事务回滚时撤销提交。
+     */
+    public void submit(Long fileId, String path) {
+        if (pending.putIfAbsent(fileId, path) != null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            executor.execute(() -> process(fileId));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    executor.execute(() -> process(fileId));
+                } else {
+                    pending.remove(fileId);
+                }
+            }
+        });
+    }
+
+    public boolean isPending(Long fileId) {
+        return pending.containsKey(fileId);
+    }
+
+    /**
+     * 在当前线程计算待计算文件的MD5并补上hash关联，由后台线程调用
+     */
+    public void process(Long fileId) {
+        String path = pending.get(fileId);
+        if (path == null) {
+            return;
+        }
+        try {
+            File file = new File(path);
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                if (!file.isFile()) {
+                    log.warn("待计算MD5的文件已不存在: {}", path);
+                    return;
+                }
+                long size = file.length();
+                long lastModified = file.lastModified();
+                long start = System.currentTimeMillis();
+                String fileHash = computeFileHash(file);
+                if (file.length() != size || file.lastModified() != lastModified) {
+                    log.warn("计算MD5期间文件被修改，重新计算: {}", path);
+                    continue;
+                }
+                Integer bound = transactionTemplate.execute(status ->
+                        bind(fileId, path, fileHash, size, lastModified));
+                log.info("后台计算文件MD5完成: {}, 耗时: {}ms, 新增hash关联: {}",
+                        path, System.currentTimeMillis() - start, bound);
+                return;
+            }
+            log.warn("文件持续被修改，放弃计算MD5: {}", path);
+        } catch (Exception e) {
+            log.error("后台计算文件MD5失败: {}", path, e);
+        } finally {
+            pending.remove(fileId);
+            directoryListingCache.clearIndexInfo();
+        }
+    }
+
+    /**
+     * 写回索引，并为文件当前带有的绑定文件的标签补上hash关联
+     *
+     * @return 新增的hash关联数
+     */
+    private int bind(Long fileId, String path, String fileHash, long size, long lastModified) {
+        FileIndex fileIndex = fileIndexRepository.findById(fileId);
+        if (fileIndex == null || !path.equals(fileIndex.getPath())) {
+            // 计算期间索引被删除或文件被移动
+            return 0;
+        }
+        fileIndex.setMd5(fileHash);
+        fileIndex.setSize(size);
+        fileIndex.setLastModified(toLocalDateTime(lastModified));
+        fileIndexRepository.updateFileIndex(fileIndex);
+
+        List<TagFileHash> added = new ArrayList<>();
+        for (FileTag fileTag : fileTagRepository.findByFileId(fileId)) {
+            Tag tag = tagRepository.findById(fileTag.getTagId());
+            if (tag != null && Boolean.TRUE.equals(tag.getBindFile())
+                    && tagFileHashRepository.findByTagIdAndFileHash(tag.getId(), fileHash) == null) {
+                added.add(new TagFileHash(tag.getId(), fileHash, "MD5"));
+            }
+        }
+        tagFileHashRepository.saveAll(added);
+        return added.size();
+    }
+
+    private static LocalDateTime toLocalDateTime(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+}
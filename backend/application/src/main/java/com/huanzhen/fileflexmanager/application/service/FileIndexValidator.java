@@ -0,0 +1,174 @@
+package com.huanzhen.fileflexmanager.application.service;
+
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexFacetRepository;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台校验索引记录对应的文件是否仍存在
+ * <p>
+ * 搜索和标签结果直接使用索引数据返回，不在请求中访问磁盘；返回的路径提交到这里，由定时任务
+ * 在后台逐个确认，已不存在的文件删除索引记录（连同标签关联），后续查询的结果和总数随之修正。
+ * 同一路径在 {@link #RECHECK_MILLIS} 内只校验一次，待校验队列满时丢弃新提交的路径。
+ * <p>
+ * U盘、NAS 等挂载点离线时其中的文件都会显示为不存在，删除前先确认文件所在的索引根目录（不在已知根目录下时为父目录）
+ * 存在、可读且不为空，无法确认时该目录下的路径都不删除，等下次提交时再校验。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileIndexValidator {
+    private static final int MAX_PENDING = 10000;
+    private static final int MAX_CHECKED = 50000;
+    private static final int VALIDATE_BATCH_SIZE = 500;
+    /**
+     * 校验过的路径在该时间内不再重复校验
+     */
+    private static final long RECHECK_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final FileIndexRepository fileIndexRepository;
+    private final FileIndexFacetRepository facetRepository;
+
+    private final Set<String> pending = new LinkedHashSet<>();
+    /**
+     * 路径 -> 上次校验时间，按插入顺序淘汰
+     */
+    private final LinkedHashMap<String, Long> checked = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_CHECKED;
+        }
+    };
+
+    /**
+     * 提交需要校验的路径，立即返回
+     */
+    public synchronized void submit(Collection<String> paths) {
+        long now = System.currentTimeMillis();
+        for (String path : paths) {
+            if (pending.size() >= MAX_PENDING) {
+                log.debug("待校验路径过多，丢弃: {}", path);
+                return;
+            }
+            Long checkedAt = checked.get(path);
+            if (checkedAt == null || now - checkedAt > RECHECK_MILLIS) {
+                pending.add(path);
+            }
+        }
+    }
+
+    private synchronized List<String> poll() {
+        List<String> batch = new ArrayList<>(Math.min(pending.size(), VALIDATE_BATCH_SIZE));
+        Iterator<String> iterator = pending.iterator();
+        while (iterator.hasNext() && batch.size() < VALIDATE_BATCH_SIZE) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    private synchronized void markChecked(List<String> paths) {
+        long now = System.currentTimeMillis();
+        for (String path : paths) {
+            checked.remove(path);
+            checked.put(path, now);
+        }
+    }
+
+    @Scheduled(fixedDelay = 2, timeUnit = TimeUnit.SECONDS)
+    public void validatePending() {
+        List<String> batch;
+        List<String> roots = null;
+        while (!(batch = poll()).isEmpty()) {
+            List<String> missing = new ArrayList<>();
+            for (String path : batch) {
+                if (!exists(path)) {
+                    missing.add(path);
+                }
+            }
+            markChecked(batch);
+            if (missing.isEmpty()) {
+                continue;
+            }
+            if (roots == null) {
+                roots = facetRepository.findRootPaths();
+            }
+            missing = removeUnavailable(missing, roots);
+            if (missing.isEmpty()) {
+                continue;
+            }
+            try {
+                int deleted = fileIndexRepository.deleteByPaths(missing);
+                log.info("清理已不存在文件的索引记录: {} 条", deleted);
+            } catch (Exception e) {
+                log.error("清理失效索引记录失败", e);
+            }
+        }
+    }
+
+    /**
+     * 按所在目录分组，去掉目录无法确认可访问的整组路径；目录为路径所在的最深一级索引根目录，不在已知根目录下时为父目录
+     */
+    private static List<String> removeUnavailable(List<String> paths, List<String> roots) {
+        Map<String, List<String>> byAnchor = new LinkedHashMap<>();
+        for (String path : paths) {
+            String anchor = roots.stream()
+                    .filter(root -> path.startsWith(root.endsWith("/") ? root : root + "/"))
+                    .max(Comparator.comparingInt(String::length))
+                    .orElseGet(() -> {
+                        Path parent = Paths.get(path).getParent();
+                        return parent != null ? parent.toString() : path;
+                    });
+            byAnchor.computeIfAbsent(anchor, key -> new ArrayList<>()).add(path);
+        }
+        List<String> available = new ArrayList<>(paths.size());
+        byAnchor.forEach((anchor, anchorPaths) -> {
+            if (isAvailable(anchor)) {
+                available.addAll(anchorPaths);
+            } else {
+                log.warn("目录无法访问，可能所在的磁盘未挂载，跳过清理 {} 条索引记录: {}", anchorPaths.size(), anchor);
+            }
+        });
+        return available;
+    }
+
+    /**
+     * 离线的挂载点通常只剩一个空目录，因此空目录也视为不可访问
+     */
+    private static boolean isAvailable(String directory) {
+        Path dir = Paths.get(directory);
+        if (!Files.isDirectory(dir) || !Files.isReadable(dir)) {
+            return false;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            return stream.iterator().hasNext();
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 符号链接按目标判断，目标不存在时链接自身存在也算存在，与目录列表一致
+     */
+    private static boolean exists(String path) {
+        try {
+            Path file = Paths.get(path);
+            return Files.exists(file) || Files.exists(file, LinkOption.NOFOLLOW_LINKS);
+        } catch (Exception e) {
+            // 无法判断时保留记录
+            return true;
+        }
+    }
+}
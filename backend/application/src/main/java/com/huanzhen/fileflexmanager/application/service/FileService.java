@@ -2,14 +2,26 @@ package com.huanzhen.fileflexmanager.application.service;
 
 import cn.hutool.core.date.LocalDateTimeUtil;
 import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.huanzhen.fileflexmanager.application.config.FileSystemConfig;
 import com.huanzhen.fileflexmanager.domain.model.Constants;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.domain.model.entity.*;
 import com.huanzhen.fileflexmanager.domain.model.enums.ConfigEnum;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileSortField;
+import com.huanzhen.fileflexmanager.domain.model.req.FileQueryRequest;
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentHit;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentResult;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileFacets;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileIdPage;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileQueryResult;
+import com.huanzhen.fileflexmanager.domain.repository.FileContentRepository;
 import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
-import com.huanzhen.fileflexmanager.domain.repository.FileTagRepository;
-import com.huanzhen.fileflexmanager.domain.repository.TagFileHashRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository;
+import com.huanzhen.fileflexmanager.domain.utils.CursorUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.apache.commons.vfs2.*;
@@ -23,6 +35,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
@@ -30,24 +43,42 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
-import java.nio.file.attribute.UserPrincipal;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class FileService implements DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+    /**
+     * 流式列出目录时每批的条目数
+     */
+    private static final int STREAM_BATCH_SIZE = 200;
+    /**
+     * 相同的列目录、搜索请求最多同时等待的数量
+     */
+    private static final int MAX_FLIGHT_WAITERS = 64;
 
     @NonNull
     private FileSystemConfig fileSystemConfig;
     @NonNull
     private final FileIndexRepository fileIndexRepository;
-    private final FileTagRepository fileTagRepository;
-    private final TagFileHashRepository tagFileHashRepository;
+    private final TagFileIdRepository tagFileIdRepository;
+    private final DirectoryListingCache directoryListingCache;
+    private final FileIndexValidator fileIndexValidator;
+    private final FileFacetService fileFacetService;
+    private final FileContentRepository fileContentRepository;
+    /**
+     * 同一目录、同一页的并发列表请求只读取一次目录
+     */
+    private final SingleFlight<String, Page<FileInfo>> listFlight = new SingleFlight<>("列出目录", MAX_FLIGHT_WAITERS);
+    /**
+     * 同一关键词、同一页的并发搜索只查询一次
+     */
+    private final SingleFlight<String, Page<FileInfo>> searchFlight = new SingleFlight<>("搜索文件", MAX_FLIGHT_WAITERS);
 
     private volatile FileSystemManager fsManager;
 
@@ -65,39 +96,22 @@ public class FileService implements DisposableBean {
     }
 
     /**
-     * 构建完整的文件信息
+     * 根据文件系统构建文件的基本信息，不访问数据库
      */
-    private FileInfo buildFileInfo(FileObject file, FileIndex fileIndex) {
+    private FileInfo readFileInfo(FileObject file) {
         try {
             if (!file.exists()) {
                 return null;
             }
 
             FileInfo fileInfo = new FileInfo();
-            // 设置基本信息
-            fileInfo.setId(fileIndex != null ? fileIndex.getId() : null);
             fileInfo.setName(file.getName().getBaseName());
             fileInfo.setPath(file.getName().getPath());
             fileInfo.setDirectory(file.getType() == FileType.FOLDER);
             if (file.isFile()) {
                 fileInfo.setSize(file.getContent().getSize());
-            } else {
-                if (ConfigEnum.FILE_FOLDER_USE_INDEX_SIZE.getBooleanValue()) {
-                    FileIndex byPath = fileIndexRepository.findByPath(fileInfo.getPath());
-                    if (Objects.nonNull(byPath)) {
-                        fileInfo.setSize(byPath.getSize());
-                    }
-                }
             }
             fileInfo.setLastModified(file.getContent().getLastModifiedTime());
-
-
-            // 获取文件标签
-            if (fileIndex != null) {
-                List<Tag> fileTags = tagService.getFileTags(fileIndex.getId());
-                fileInfo.setTags(fileTags);
-                fileInfo.setHash(fileIndex.getMd5());
-            }
             return fileInfo;
         } catch (Exception e) {
             logger.error("构建文件信息失败: {}", e.getMessage());
@@ -106,66 +120,232 @@ public class FileService implements DisposableBean {
     }
 
     /**
-     * 获取或创建文件索引
+     * 批量补充索引相关信息：id、hash、文件夹大小和标签
+     * <p>
+     * 标签通过一次查询获取，不随文件数量增加查询次数
+     *
+     * @param indexByPath 路径 -> 索引记录，没有索引记录的文件不补充
+     */
+    private void fillIndexInfo(List<FileInfo> fileInfos, Map<String, FileIndex> indexByPath) {
+        if (fileInfos.isEmpty()) {
+            return;
+        }
+        boolean useIndexSize = fileInfos.stream().anyMatch(FileInfo::isDirectory)
+                && ConfigEnum.FILE_FOLDER_USE_INDEX_SIZE.getBooleanValue();
+        List<Long> fileIds = new ArrayList<>(fileInfos.size());
+        for (FileInfo fileInfo : fileInfos) {
+            FileIndex fileIndex = indexByPath.get(fileInfo.getPath());
+            if (fileIndex == null) {
+                continue;
+            }
+            fileInfo.setId(fileIndex.getId());
+            fileInfo.setHash(fileIndex.getMd5());
+            fileInfo.setHashPending(tagService.isFileHashPending(fileIndex.getId()));
+            if (fileInfo.isDirectory() && useIndexSize) {
+                fileInfo.setSize(fileIndex.getSize());
+            }
+            fileIds.add(fileIndex.getId());
+        }
+
+        Map<Long, List<Tag>> tagsByFileId = tagService.getFilesTags(fileIds);
+        for (FileInfo fileInfo : fileInfos) {
+            if (fileInfo.getId() != null) {
+                fileInfo.setTags(tagsByFileId.getOrDefault(fileInfo.getId(), new ArrayList<>()));
+            }
+        }
+    }
+
+    /**
+     * 批量获取文件索引，不存在的批量创建
+     *
+     * @return 路径 -> 索引记录
      */
-    private FileIndex getOrCreateFileIndex(FileInfo fileInfo) {
-        FileIndex fileIndex = fileIndexRepository.findByPath(fileInfo.getPath());
-        if (fileIndex == null) {
-            fileIndex = new FileIndex();
+    private Map<String, FileIndex> getOrCreateFileIndexes(List<FileInfo> fileInfos) {
+        Map<String, FileIndex> indexByPath = new HashMap<>();
+        fileIndexRepository.findByPaths(fileInfos.stream().map(FileInfo::getPath).toList())
+                .forEach(fileIndex -> indexByPath.put(fileIndex.getPath(), fileIndex));
+
+        List<FileIndex> missing = new ArrayList<>();
+        for (FileInfo fileInfo : fileInfos) {
+            if (indexByPath.containsKey(fileInfo.getPath())) {
+                continue;
+            }
+            FileIndex fileIndex = new FileIndex();
             fileIndex.setPath(fileInfo.getPath());
             fileIndex.setName(fileInfo.getName());
             fileIndex.setIsDir(fileInfo.isDirectory());
             fileIndex.setSize(fileInfo.getSize());
-            fileIndex.setLastModified(LocalDateTimeUtil.ofUTC(fileInfo.getLastModified()));
-            fileIndex = fileIndexRepository.save(fileIndex);
-            logger.debug("创建新的文件索引记录: {}", fileInfo.getPath());
+            fileIndex.setParentPath(Paths.get(fileInfo.getPath()).getParent() != null
+                    ? Paths.get(fileInfo.getPath()).getParent().toString() : null);
+            // 与索引任务一致按系统时区转换，否则修改时间对不上，索引任务会当作文件已变化并清掉MD5
+            fileIndex.setLastModified(LocalDateTimeUtil.of(fileInfo.getLastModified()));
+            missing.add(fileIndex);
+        }
+        if (!missing.isEmpty()) {
+            fileIndexRepository.insertMissing(missing)
+                    .forEach(fileIndex -> indexByPath.put(fileIndex.getPath(), fileIndex));
+            logger.debug("创建新的文件索引记录: {} 条", missing.size());
         }
-        return fileIndex;
+        return indexByPath;
     }
 
-    public Page<FileInfo> listFiles(String path, int pageNum, int pageSize) {
-        if (Objects.equals(path, Constants.DEFAULT_PATH_TAG) || Objects.equals("/", path)) {
-            path = dataPath;
-        }
-        try (FileObject folder = getFsManager().resolveFile(path)) {
-            if (!folder.exists() || folder.getType() != FileType.FOLDER) {
-                return new Page<FileInfo>(pageNum, pageSize).setRecords(new ArrayList<>());
+    /**
+     * 批量获取本地文件的索引记录，不存在的批量创建；直接读取文件属性，不经过VFS
+     *
+     * @return 索引记录，无法读取的路径不在结果中
+     */
+    public List<FileIndex> resolveFileIndexes(Collection<Path> paths) {
+        List<FileInfo> fileInfos = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            DirectoryLister.Entry entry = DirectoryLister.readEntry(path);
+            if (entry != null) {
+                fileInfos.add(entry.toFileInfo());
             }
+        }
+        if (fileInfos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, FileIndex> indexByPath = getOrCreateFileIndexes(fileInfos);
+        return fileInfos.stream()
+                .map(fileInfo -> indexByPath.get(fileInfo.getPath()))
+                .filter(Objects::nonNull)
+                .toList();
+    }
 
-            FileObject[] children = folder.getChildren();
-            int total = children.length;
-            int start = (Math.max(1, pageNum) - 1) * pageSize;
-            int end = Math.min(start + pageSize, total);
+    public Page<FileInfo> listFiles(String path, int pageNum, int pageSize) {
+        return listFiles(path, pageNum, pageSize, null, null);
+    }
 
-            if (start >= total) {
+    /**
+     * 分页列出目录，只为请求的这一页构建文件信息
+     *
+     * @param sortBy    排序字段，见 {@link FileSortField}
+     * @param sortOrder asc 或 desc
+     */
+    public Page<FileInfo> listFiles(String path, int pageNum, int pageSize, String sortBy, String sortOrder) {
+        Path dir = resolveListPath(path);
+        if (!Files.isDirectory(dir)) {
+            return new Page<FileInfo>(pageNum, pageSize).setRecords(new ArrayList<>());
+        }
+        int start = (Math.max(1, pageNum) - 1) * pageSize;
+        DirectoryLister.Sort sort = DirectoryLister.Sort.of(sortBy, sortOrder);
+        String key = dir + "|" + sort + "|" + pageNum + "|" + pageSize;
+        return listFlight.execute(key, () -> {
+            try {
+                DirectoryListingCache.Snapshot snapshot = directoryListingCache.get(dir);
+                DirectoryLister.Listing listing = snapshot != null
+                        ? snapshot.list(sort, null, start, pageSize)
+                        : DirectoryLister.list(dir, sort, null, start, pageSize);
                 return new Page<FileInfo>(pageNum, pageSize)
-                        .setTotal(total)
-                        .setRecords(new ArrayList<>());
-            }
-
-            List<FileInfo> pageFiles = new ArrayList<>();
-            for (int i = start; i < end; i++) {
-                try (FileObject currentFile = children[i]) {
-                    FileInfo fileInfo = buildFileInfo(currentFile, null);
-                    if (fileInfo != null) {
-                        FileIndex fileIndex = getOrCreateFileIndex(fileInfo);
-                        fileInfo.setId(fileIndex.getId());
-                        List<Tag> fileTags = tagService.getFileTags(fileIndex.getId());
-                        fileInfo.setTags(fileTags);
-                        pageFiles.add(fileInfo);
-                    }
-                }
+                        .setTotal(listing.total())
+                        .setRecords(toFileInfos(listing.entries(), snapshot));
+            } catch (Exception e) {
+                logger.error("读取目录失败: {}", e.getMessage());
+                throw new RuntimeException("读取目录失败", e);
             }
+        });
+    }
 
-            return new Page<FileInfo>(pageNum, pageSize)
-                    .setTotal(total)
-                    .setRecords(pageFiles);
+    /**
+     * 基于游标列出目录，返回 cursor 之后的 size 条
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @throws IllegalArgumentException 游标无效或与排序方式不一致
+     */
+    public CursorPage<FileInfo> listFilesByCursor(String path, String cursor, int size, String sortBy, String sortOrder) {
+        Path dir = resolveListPath(path);
+        if (!Files.isDirectory(dir)) {
+            return new CursorPage<>(new ArrayList<>(), null, 0L);
+        }
+        DirectoryLister.Sort sort = DirectoryLister.Sort.of(sortBy, sortOrder);
+        DirectoryLister.Entry after = StrUtil.isBlank(cursor) ? null : DirectoryLister.decodeCursor(cursor, sort);
+        try {
+            DirectoryListingCache.Snapshot snapshot = directoryListingCache.get(dir);
+            DirectoryLister.Listing listing = snapshot != null
+                    ? snapshot.list(sort, after, 0, size)
+                    : DirectoryLister.list(dir, sort, after, 0, size);
+            List<DirectoryLister.Entry> entries = listing.entries();
+            String nextCursor = listing.hasMore() && !entries.isEmpty()
+                    ? DirectoryLister.encodeCursor(sort, entries.get(entries.size() - 1)) : null;
+            return new CursorPage<>(toFileInfos(entries, snapshot), nextCursor, listing.total());
         } catch (Exception e) {
             logger.error("读取目录失败: {}", e.getMessage());
             throw new RuntimeException("读取目录失败", e);
         }
     }
 
+    /**
+     * 按目录中的原始顺序分批读取子条目，每批补充索引信息后立即交给 consumer，
+     * 调用方可以边读取边输出，不必等待整个目录读取完成
+     */
+    public void streamFiles(String path, Consumer<List<FileInfo>> consumer) {
+        Path dir = resolveListPath(path);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try {
+            DirectoryLister.stream(dir, STREAM_BATCH_SIZE, entries -> consumer.accept(toFileInfos(entries)));
+        } catch (IOException e) {
+            logger.error("读取目录失败: {}", e.getMessage());
+            throw new RuntimeException("读取目录失败", e);
+        }
+    }
+
+    private Path resolveListPath(String path) {
+        if (Objects.equals(path, Constants.DEFAULT_PATH_TAG) || Objects.equals("/", path)) {
+            path = dataPath;
+        }
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 整页一次查询索引、一次批量创建缺失的索引、一次查询标签
+     */
+    private List<FileInfo> toFileInfos(List<DirectoryLister.Entry> entries) {
+        List<FileInfo> fileInfos = new ArrayList<>(entries.size());
+        for (DirectoryLister.Entry entry : entries) {
+            fileInfos.add(entry.toFileInfo());
+        }
+        fillIndexInfo(fileInfos, getOrCreateFileIndexes(fileInfos));
+        return fileInfos;
+    }
+
+    /**
+     * 优先使用目录快照中缓存的文件信息，只为未缓存的条目查询索引和标签
+     *
+     * @param snapshot 目录快照，为null时全部查询
+     */
+    private List<FileInfo> toFileInfos(List<DirectoryLister.Entry> entries, DirectoryListingCache.Snapshot snapshot) {
+        if (snapshot == null) {
+            return toFileInfos(entries);
+        }
+        long generation = directoryListingCache.indexGeneration();
+        Map<String, FileInfo> byPath = new HashMap<>();
+        List<DirectoryLister.Entry> missing = new ArrayList<>();
+        for (DirectoryLister.Entry entry : entries) {
+            FileInfo cached = snapshot.getFileInfo(entry.path().toString());
+            if (cached != null) {
+                byPath.put(cached.getPath(), cached);
+            } else {
+                missing.add(entry);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<FileInfo> loaded = toFileInfos(missing);
+            directoryListingCache.putFileInfos(snapshot, loaded, generation);
+            loaded.forEach(fileInfo -> byPath.put(fileInfo.getPath(), fileInfo));
+        }
+        List<FileInfo> fileInfos = new ArrayList<>(entries.size());
+        for (DirectoryLister.Entry entry : entries) {
+            fileInfos.add(byPath.get(entry.path().toString()));
+        }
+        return fileInfos;
+    }
+
+    public DirectoryListingCache.Stats getListCacheStats() {
+        return directoryListingCache.getStats();
+    }
+
 
     public List<String> getSystemUsers() {
         List<String> users = new ArrayList<>();
@@ -196,6 +376,7 @@ public class FileService implements DisposableBean {
             } catch (Exception e) {
                 logger.error("设置文件夹权限失败: ", e);
             }
+            invalidateParentListing(directory.getName().getPath());
             return true;
         } catch (Exception e) {
             logger.error("创建文件夹失败: ", e);
@@ -203,6 +384,13 @@ public class FileService implements DisposableBean {
         }
     }
 
+    private void invalidateParentListing(String path) {
+        Path parent = Paths.get(path).getParent();
+        if (parent != null) {
+            directoryListingCache.invalidate(parent);
+        }
+    }
+
     /**
      * 将数字模式转换为权限字符串
      * 例如：0755 -> "rwxr-xr-x"
@@ -247,6 +435,8 @@ public class FileService implements DisposableBean {
                     StandardCharsets.UTF_8,
                     StandardOpenOption.TRUNCATE_EXISTING
             );
+            // 文件大小和修改时间变化不会改变目录的修改时间
+            invalidateParentListing(file.getName().getPath());
             return true;
         } catch (Exception e) {
             logger.error("保存文件内容失败: ", e);
@@ -286,6 +476,7 @@ public class FileService implements DisposableBean {
                 logger.error("设置文件权限失败", e);
             }
 
+            invalidateParentListing(targetFile.getName().getPath());
             return true;
         } catch (Exception e) {
             logger.error("上传文件失败", e);
@@ -315,61 +506,66 @@ public class FileService implements DisposableBean {
     }
 
     public Page<FileInfo> searchFiles(String keyword, int pageNum, int pageSize) {
-        try {
-            // 调用仓储层的搜索方法
-            Page<FileIndex> fileIndexPage = fileIndexRepository.search(keyword, pageNum, pageSize);
-
-            // 将 FileIndex 转换为 FileInfo，并过滤掉不存在的文件
-            List<FileInfo> fileInfoList = fileIndexPage.getRecords().stream()
-                    .map(this::convertToFileInfo)
-                    .filter(fileInfo -> fileInfo != null)  // 过滤掉不存在的文件
-                    .collect(Collectors.toList());
-
-            // 创建新的分页对象并返回
-            Page<FileInfo> result = new Page<>(fileIndexPage.getCurrent(), fileIndexPage.getSize());
-            result.setTotal(fileInfoList.size());  // 更新总数为实际存在的文件数
-            result.setRecords(fileInfoList);
-
-            return result;
-        } catch (Exception e) {
-            logger.error("搜索文件失败: ", e);
-            throw new RuntimeException("搜索文件失败: " + e.getMessage(), e);
-        }
-    }
-
-    // 修改转换方法，当文件不存在时返回 null
-    private FileInfo convertToFileInfo(FileIndex fileIndex) {
-        try (FileObject file = getFsManager().resolveFile(fileIndex.getPath())) {
-            if (!file.exists()) {
-                logger.debug("文件不存在，忽略搜索结果: {}", fileIndex.getPath());
-                return null;
-            }
-
-            FileInfo fileInfo = new FileInfo();
-            fileInfo.setName(file.getName().getBaseName());
-            fileInfo.setPath(file.getName().getPath());
-            fileInfo.setDirectory(file.getType() == FileType.FOLDER);
-            if (file.isFile()) {
-                fileInfo.setSize(file.getContent().getSize());
-            }
-            fileInfo.setLastModified(file.getContent().getLastModifiedTime());
-
-            // 获取文件所有者
+        return searchFlight.execute(keyword + "|" + pageNum + "|" + pageSize, () -> {
             try {
-                Path filePath = Paths.get(file.getName().getPath());
-                PosixFileAttributes attrs = Files.readAttributes(filePath, PosixFileAttributes.class);
-                UserPrincipal owner = attrs.owner();
-                fileInfo.setOwner(owner != null ? owner.getName() : null);
+                return convertToFileInfoPage(fileIndexRepository.search(keyword, pageNum, pageSize));
             } catch (Exception e) {
-                logger.debug("获取文件所有者失败: {}", e.getMessage());
-                fileInfo.setOwner(null);
+                logger.error("搜索文件失败: ", e);
+                throw new RuntimeException("搜索文件失败: " + e.getMessage(), e);
             }
+        });
+    }
 
-            return fileInfo;
-        } catch (Exception e) {
-            logger.warn("处理文件信息失败: {}, 错误: {}", fileIndex.getPath(), e.getMessage());
-            return null;  // 如果出现任何错误，返回 null
+    /**
+     * 游标分页搜索，用于无限滚动，翻到多深耗时都不变
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @throws IllegalArgumentException 游标无效或正则表达式错误
+     */
+    public CursorPage<FileInfo> searchFilesByCursor(String keyword, String cursor, int size) {
+        CursorPage<FileIndex> fileIndexPage = fileIndexRepository.searchByCursor(keyword, cursor, size);
+        List<String> missing = new ArrayList<>();
+        List<FileInfo> fileInfos = convertToFileInfos(fileIndexPage.getRecords(), missing);
+        Long total = fileIndexPage.getTotal() != null ? Math.max(0, fileIndexPage.getTotal() - missing.size()) : null;
+        return new CursorPage<>(fileInfos, fileIndexPage.getNextCursor(), total);
+    }
+
+    /**
+     * 按文件内容搜索，需要先在索引任务中开启内容索引
+     *
+     * @return 按相关度排序的一页文件和命中片段，全文索引中有、文件索引中已不存在的文件不返回
+     * @throws IllegalArgumentException 查询语法错误或翻页过深
+     */
+    public Page<FileContentResult> searchContent(String keyword, int pageNum, int pageSize) {
+        Page<FileContentHit> hitPage = fileContentRepository.search(keyword, pageNum, pageSize);
+        List<FileIndex> fileIndexes = fileIndexRepository.findByPaths(
+                hitPage.getRecords().stream().map(FileContentHit::path).toList());
+        Map<String, FileInfo> fileInfoByPath = convertToFileInfos(fileIndexes, new ArrayList<>()).stream()
+                .collect(Collectors.toMap(FileInfo::getPath, fileInfo -> fileInfo, (a, b) -> a));
+        List<FileContentResult> results = new ArrayList<>();
+        for (FileContentHit hit : hitPage.getRecords()) {
+            FileInfo fileInfo = fileInfoByPath.get(hit.path());
+            if (fileInfo != null) {
+                results.add(new FileContentResult(fileInfo, hit.snippet()));
+            }
         }
+        Page<FileContentResult> page = new Page<>(pageNum, pageSize,
+                Math.max(0, hitPage.getTotal() - (hitPage.getRecords().size() - results.size())));
+        page.setRecords(results);
+        return page;
+    }
+
+    /**
+     * 按扩展名、大小、修改时间、类型和目录范围查询索引，游标分页
+     *
+     * @return 一页文件，要求时附带查询范围的分面计数（不受其他过滤条件影响）
+     * @throws IllegalArgumentException 游标无效
+     */
+    public FileQueryResult queryFiles(FileQueryRequest request) {
+        CursorPage<FileIndex> fileIndexPage = fileIndexRepository.query(request);
+        List<FileInfo> fileInfos = convertToFileInfos(fileIndexPage.getRecords(), new ArrayList<>());
+        FileFacets facets = Boolean.TRUE.equals(request.withFacets()) ? fileFacetService.getFacets(request) : null;
+        return new FileQueryResult(new CursorPage<>(fileInfos, fileIndexPage.getNextCursor(), null), facets);
     }
 
 
@@ -395,100 +591,151 @@ public class FileService implements DisposableBean {
     @SneakyThrows
     private FileInfo getFileInfo(String path) {
         FileObject file = getFsManager().resolveFile(path);
-        FileIndex fileIndex = fileIndexRepository.findByPath(path);
-        FileInfo fileInfo = buildFileInfo(file, fileIndex);
+        FileInfo fileInfo = readFileInfo(file);
         Assert.notNull(fileInfo);
-        if (fileIndex == null) {
-            fileIndex = getOrCreateFileIndex(fileInfo);
-            fileInfo.setId(fileIndex.getId());
-        }
+        List<FileInfo> fileInfos = List.of(fileInfo);
+        fillIndexInfo(fileInfos, getOrCreateFileIndexes(fileInfos));
         return fileInfo;
     }
 
     public Page<FileInfo> getFilesContainAllTags(List<Long> tagIds, int pageNum, int pageSize) {
-        // 1. 获取普通标签关联的文件ID和对应的标签
-        Map<Long, Set<Long>> fileTagMap = new HashMap<>();
-        fileTagRepository.findByTagIds(tagIds).forEach(fileTag -> {
-            fileTagMap.computeIfAbsent(fileTag.getFileId(), k -> new HashSet<>())
-                    .add(fileTag.getTagId());
-        });
-
-        // 2. 获取绑定文件标签对应的文件hash
-        Map<String, Set<Long>> hashTagMap = new HashMap<>();
-        tagFileHashRepository.findByTagIds(tagIds).forEach(tagFileHash -> {
-            hashTagMap.computeIfAbsent(tagFileHash.getFileHash(), k -> new HashSet<>())
-                    .add(tagFileHash.getTagId());
-        });
+        return getFilesByTagExpression(TagExpression.allOf(tagIds), pageNum, pageSize);
+    }
 
-        // 3. 根据hash获取文件，并合并到fileTagMap中
-        if (!hashTagMap.isEmpty()) {
-            List<FileIndex> hashFiles = fileIndexRepository.findByMd5List(new ArrayList<>(hashTagMap.keySet()));
-            hashFiles.forEach(file -> {
-                if (file.getMd5() != null && hashTagMap.containsKey(file.getMd5())) {
-                    Set<Long> fileTags = fileTagMap.computeIfAbsent(file.getId(), k -> new HashSet<>());
-                    fileTags.addAll(hashTagMap.get(file.getMd5()));
-                }
-            });
-        }
+    /**
+     * 按文件id游标分页获取包含所有标签的文件
+     */
+    public CursorPage<FileInfo> getFilesContainAllTagsByCursor(List<Long> tagIds, String cursor, int size) {
+        return getFilesByTagExpressionByCursor(TagExpression.allOf(tagIds), cursor, size);
+    }
 
-        // 4. 过滤出包含所有标签的文件ID
-        List<Long> matchedFileIds = fileTagMap.entrySet().stream()
-                .filter(entry -> entry.getValue().containsAll(tagIds))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+    public Page<FileInfo> getFilesContainAnyTags(List<Long> tagIds, int page, int size) {
+        return getFilesByTagExpression(TagExpression.anyOf(tagIds), page, size);
+    }
 
-        // 5. 查询最终的分页结果
-        if (matchedFileIds.isEmpty()) {
-            return new Page<>(pageNum, pageSize);
-        }
+    /**
+     * 按文件id游标分页获取包含任意一个标签的文件
+     */
+    public CursorPage<FileInfo> getFilesContainAnyTagsByCursor(List<Long> tagIds, String cursor, int size) {
+        return getFilesByTagExpressionByCursor(TagExpression.anyOf(tagIds), cursor, size);
+    }
 
-        Page<FileIndex> fileIndexPage = fileIndexRepository.findByIds(matchedFileIds, pageNum, pageSize);
+    /**
+     * 按标签条件分页获取文件，按文件id升序
+     *
+     * @throws IllegalArgumentException NOT 没有与其他条件 AND 组合
+     */
+    public Page<FileInfo> getFilesByTagExpression(TagExpression expression, int pageNum, int pageSize) {
+        long offset = (long) (Math.max(1, pageNum) - 1) * pageSize;
+        FileIdPage idPage = tagFileIdRepository.findFileIds(expression, offset, pageSize);
+        List<FileIndex> records = fileIndexRepository.findAllByIds(idPage.ids());
+        // 已删除的文件从总数中去掉
+        Page<FileIndex> fileIndexPage = new Page<>(pageNum, pageSize,
+                Math.max(0, idPage.total() - (idPage.ids().size() - records.size())));
+        fileIndexPage.setRecords(records);
         return convertToFileInfoPage(fileIndexPage);
     }
 
-    public Page<FileInfo> getFilesContainAnyTags(List<Long> tagIds, int page, int size) {
-        // 1. 获取普通标签关联的文件ID
-        List<Long> normalFileIds = fileTagRepository.findByTagIds(tagIds).stream()
-                .map(FileTag::getFileId)
-                .collect(Collectors.toList());
-
-        // 2. 获取绑定文件标签对应的文件hash
-        List<String> fileHashes = tagFileHashRepository.findByTagIds(tagIds).stream()
-                .map(TagFileHash::getFileHash)
-                .collect(Collectors.toList());
-
-        // 3. 根据hash获取文件
-        List<FileIndex> hashFiles = fileHashes.isEmpty() ? Collections.emptyList() :
-                fileIndexRepository.findByMd5List(fileHashes);
+    /**
+     * 按标签条件和文件id游标分页获取文件，取出 cursor 之后的 size 个
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @throws IllegalArgumentException 游标无效，或 NOT 没有与其他条件 AND 组合
+     */
+    public CursorPage<FileInfo> getFilesByTagExpressionByCursor(TagExpression expression, String cursor, int size) {
+        Long afterId = StrUtil.isBlank(cursor) ? Long.valueOf(0L) : CursorUtils.decode(cursor).getLong("i");
+        if (afterId == null) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        // 多取一个判断是否还有下一页
+        FileIdPage idPage = tagFileIdRepository.findFileIdsAfter(expression, afterId, size + 1);
+        List<Long> pageIds = idPage.ids();
+        String nextCursor = null;
+        if (pageIds.size() > size) {
+            pageIds = pageIds.subList(0, size);
+            JSONObject json = new JSONObject();
+            json.put("i", pageIds.get(pageIds.size() - 1));
+            nextCursor = CursorUtils.encode(json);
+        }
+        List<FileIndex> records = fileIndexRepository.findAllByIds(pageIds);
+        List<String> missing = new ArrayList<>();
+        List<FileInfo> fileInfos = convertToFileInfos(records, missing);
+        long removed = pageIds.size() - records.size() + missing.size();
+        return new CursorPage<>(fileInfos, nextCursor, Math.max(0, idPage.total() - removed));
+    }
 
-        // 4. 合并文件ID
-        Set<Long> allFileIds = new HashSet<>(normalFileIds);
-        hashFiles.forEach(file -> allFileIds.add(file.getId()));
+    /**
+     * 把索引记录的分页结果转换为文件信息
+     * <p>
+     * 默认直接使用索引中的数据，不访问磁盘，返回的路径交给 {@link FileIndexValidator} 在后台确认是否仍存在；
+     * 关闭 {@link ConfigEnum#FILE_RESULT_USE_INDEX} 后逐个从磁盘读取，不存在的文件从结果和总数中去掉
+     */
+    private Page<FileInfo> convertToFileInfoPage(Page<FileIndex> fileIndexPage) {
+        List<String> missing = new ArrayList<>();
+        List<FileInfo> fileInfos = convertToFileInfos(fileIndexPage.getRecords(), missing);
+        Page<FileInfo> page = new Page<>(fileIndexPage.getCurrent(), fileIndexPage.getSize(),
+                Math.max(0, fileIndexPage.getTotal() - missing.size()));
+        page.setRecords(fileInfos);
+        return page;
+    }
 
-        // 5. 查询最终的分页结果
-        if (allFileIds.isEmpty()) {
-            return new Page<>(page, size);
+    /**
+     * @param missing 收集磁盘上已不存在的文件路径，只在关闭 {@link ConfigEnum#FILE_RESULT_USE_INDEX} 时出现
+     */
+    private List<FileInfo> convertToFileInfos(List<FileIndex> fileIndexes, List<String> missing) {
+        Map<String, FileIndex> indexByPath = new HashMap<>();
+        List<FileInfo> fileInfos = new ArrayList<>();
+        boolean useIndex = ConfigEnum.FILE_RESULT_USE_INDEX.getBooleanValue();
+        for (FileIndex fileIndex : fileIndexes) {
+            FileInfo fileInfo = useIndex ? toFileInfo(fileIndex) : readFileInfo(fileIndex);
+            if (fileInfo != null) {
+                fileInfos.add(fileInfo);
+                indexByPath.put(fileInfo.getPath(), fileIndex);
+            } else {
+                missing.add(fileIndex.getPath());
+            }
+        }
+        if (useIndex) {
+            fileIndexValidator.submit(indexByPath.keySet());
+        } else if (!missing.isEmpty()) {
+            fileIndexValidator.submit(missing);
         }
+        fillIndexInfo(fileInfos, indexByPath);
+        return fileInfos;
+    }
 
-        Page<FileIndex> fileIndexPage = fileIndexRepository.findByIds(new ArrayList<>(allFileIds), page, size);
-        return convertToFileInfoPage(fileIndexPage);
+    /**
+     * 根据索引记录构建文件信息，不访问磁盘；文件夹大小由 {@link #fillIndexInfo} 按配置补充
+     */
+    private FileInfo toFileInfo(FileIndex fileIndex) {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setName(fileIndex.getName());
+        fileInfo.setPath(fileIndex.getPath());
+        fileInfo.setDirectory(Boolean.TRUE.equals(fileIndex.getIsDir()));
+        if (!fileInfo.isDirectory()) {
+            fileInfo.setSize(fileIndex.getSize());
+        }
+        if (fileIndex.getLastModified() != null) {
+            fileInfo.setLastModified(LocalDateTimeUtil.toEpochMilli(fileIndex.getLastModified()));
+        }
+        fileInfo.setOwner(fileIndex.getOwner());
+        return fileInfo;
     }
 
-    // 工具方法：转换分页结果
-    private Page<FileInfo> convertToFileInfoPage(Page<FileIndex> fileIndexPage) {
-        Page<FileInfo> page = new Page<>(fileIndexPage.getCurrent(), fileIndexPage.getSize(), fileIndexPage.getTotal());
-        page.setRecords(fileIndexPage.getRecords().stream()
-                .map(fileIndex -> {
-                    try (FileObject file = getFsManager().resolveFile(fileIndex.getPath())) {
-                        return buildFileInfo(file, fileIndex);
-                    } catch (Exception e) {
-                        logger.error("处理文件信息失败: {}", e.getMessage());
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList()));
-        return page;
+    /**
+     * 从磁盘读取索引记录对应的文件信息，文件不存在时返回null
+     */
+    private FileInfo readFileInfo(FileIndex fileIndex) {
+        try (FileObject file = getFsManager().resolveFile(fileIndex.getPath())) {
+            FileInfo fileInfo = readFileInfo(file);
+            if (fileInfo != null) {
+                fileInfo.setOwner(fileIndex.getOwner());
+            }
+            return fileInfo;
+        } catch (Exception e) {
+            logger.error("处理文件信息失败: {}", e.getMessage());
+            return null;
+        }
     }
 
     @Override
@@ -0,0 +1,88 @@
+package com.huanzhen.fileflexmanager.application.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的并发请求
+ * <p>
+ * 同一个 key 同时只执行一次计算，期间到达的相同请求等待并共用这次的结果（或异常），计算结束后立即移除，
+ * 不缓存结果。每个 key 的等待者数量有上限，超过时直接拒绝，避免慢请求堆积过多线程。
+ * 共用的结果会返回给多个调用方，调用方不能修改。
+ */
+public class SingleFlight<K, V> {
+    private final String name;
+    private final int maxWaiters;
+    private final ConcurrentHashMap<K, Call> calls = new ConcurrentHashMap<>();
+
+    /**
+     * @param name       用于错误信息
+     * @param maxWaiters 每个 key 最多同时等待的请求数，不含正在执行的请求
+     */
+    public SingleFlight(String name, int maxWaiters) {
+        this.name = name;
+        this.maxWaiters = maxWaiters;
+    }
+
+    /**
+     * 执行计算，已有相同 key 的计算在进行时等待其结果
+     *
+     * @throws IllegalStateException 等待的请求数已达上限，或等待时被中断
+     */
+    public V execute(K key, Supplier<V> loader) {
+        Call call = new Call();
+        Call inFlight = calls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            return inFlight.await();
+        }
+        try {
+            V value = loader.get();
+            call.future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    /**
+     * @return 正在执行的计算数
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private final class Call {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        V await() {
+            if (waiters.incrementAndGet() > maxWaiters) {
+                waiters.decrementAndGet();
+                throw new IllegalStateException(name + " 相同的请求过多，请稍后重试");
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(name + " 等待被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+    }
+}
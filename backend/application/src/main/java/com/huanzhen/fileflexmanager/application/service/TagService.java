@@ -1,10 +1,11 @@
 package com.huanzhen.fileflexmanager.application.service;
 
-import cn.hutool.crypto.digest.DigestUtil;
 import com.huanzhen.fileflexmanager.domain.model.entity.*;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileTagMode;
 import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
 import com.huanzhen.fileflexmanager.domain.repository.FileTagRepository;
 import com.huanzhen.fileflexmanager.domain.repository.TagFileHashRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository;
 import com.huanzhen.fileflexmanager.domain.repository.TagRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -14,8 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
 import java.nio.file.Paths;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -26,28 +26,54 @@ public class TagService {
     private final FileTagRepository fileTagRepository;
     private final TagFileHashRepository tagFileHashRepository;
     private final FileIndexRepository fileIndexRepository;
+    private final DirectoryListingCache directoryListingCache;
+    private final TagFileIdRepository tagFileIdRepository;
+    private final FileHashBinder fileHashBinder;
 
+    /**
+     * 获取所有标签及其文件数
+     * <p>
+     * fileCount 为标签自身的文件数，subtreeFileCount 为标签及其全部子标签合计的文件数，同一文件只算一次
+     */
     public List<Tag> getAllTags() {
         logger.debug("获取所有标签");
         List<Tag> tags = tagRepository.findAll(1, 1000).getRecords();
 
+        Map<Long, Long> fileCounts = tagFileIdRepository.countFiles();
+        Map<Long, Long> subtreeFileCounts = tagFileIdRepository.countFiles(collectSubtrees(tags));
         for (Tag tag : tags) {
-            // 计算直接关联的文件数量
-            int directFileCount = fileTagRepository.findByTagId(tag.getId()).size();
-
-            // 计算通过文件哈希关联的文件数量
-            int hashFileCount = fileIndexRepository.findFileByHash(
-                            tagFileHashRepository.findByTagId(tag.getId()).stream().map(TagFileHash::getFileHash)
-                                    .collect(Collectors.toSet()))
-                    .size();
-
-            // 设置标签的文件数量
-            tag.setFileCount((long) (directFileCount + hashFileCount));
+            long fileCount = fileCounts.getOrDefault(tag.getId(), 0L);
+            tag.setFileCount(fileCount);
+            tag.setSubtreeFileCount(subtreeFileCounts.getOrDefault(tag.getId(), fileCount));
         }
 
         return tags;
     }
 
+    /**
+     * 有子标签的标签 -> 自身及全部子孙标签的id
+     */
+    private static Map<Long, List<Long>> collectSubtrees(List<Tag> tags) {
+        Map<Long, List<Long>> children = new HashMap<>();
+        for (Tag tag : tags) {
+            if (tag.getParentId() != null) {
+                children.computeIfAbsent(tag.getParentId(), key -> new ArrayList<>()).add(tag.getId());
+            }
+        }
+        Map<Long, List<Long>> subtrees = new HashMap<>();
+        for (Long tagId : children.keySet()) {
+            List<Long> subtree = new ArrayList<>();
+            Deque<Long> pending = new ArrayDeque<>(List.of(tagId));
+            while (!pending.isEmpty()) {
+                Long current = pending.pop();
+                subtree.add(current);
+                pending.addAll(children.getOrDefault(current, Collections.emptyList()));
+            }
+            subtrees.put(tagId, subtree);
+        }
+        return subtrees;
+    }
+
     @Transactional
     public Tag createTag(Tag tag) {
         logger.debug("创建标签: {}", tag.getName());
@@ -115,33 +141,25 @@ public class TagService {
         // 删除当前标签
         fileTagRepository.deleteByTagId(id);
         tagRepository.deleteById(id);
+        directoryListingCache.clearIndexInfo();
     }
 
     public List<Tag> getFileTags(Long fileId) {
         logger.debug("获取文件标签, 文件ID: {}", fileId);
-        // 1. 获取直接关联的标签
-        List<FileTag> fileTags = fileTagRepository.findByFileId(fileId);
-        List<Tag> directTags = fileTags.stream()
-                .map(fileTag -> tagRepository.findById(fileTag.getTagId()))
-                .collect(Collectors.toList());
-
-        // 2. 获取文件的MD5
-        FileIndex fileIndex = fileIndexRepository.findById(fileId);
-        if (fileIndex != null && fileIndex.getMd5() != null) {
-            // 3. 通过MD5查找匹配的标签
-            List<TagFileHash> tagFileHashes = tagFileHashRepository.findByFileHash(fileIndex.getMd5());
-            List<Tag> hashMatchedTags = tagFileHashes.stream()
-                    .map(hash -> tagRepository.findById(hash.getTagId()))
-                    .collect(Collectors.toList());
-
-            // 4. 合并两种标签并去重
-            directTags.addAll(hashMatchedTags);
-            return directTags.stream()
-                    .distinct()
-                    .collect(Collectors.toList());
-        }
-
-        return directTags;
+        return getFilesTags(List.of(fileId)).getOrDefault(fileId, new ArrayList<>());
+    }
+
+    /**
+     * 批量获取文件标签，直接关联的标签和通过文件MD5绑定的标签在一次查询中合并去重
+     *
+     * @param fileIds 文件ID集合
+     * @return 文件ID -> 标签列表，没有标签的文件不在结果中
+     */
+    public Map<Long, List<Tag>> getFilesTags(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return tagRepository.findByFileIds(fileIds);
     }
 
     @Transactional
@@ -184,6 +202,7 @@ public class TagService {
         logger.warn("删除文件标签关联, 文件ID: {}, 删除数量: {}", fileId, deleted);
 
         // 添加新的标签关联
+        List<Long> bindFileTagIds = new ArrayList<>();
         for (Long tagId : tagIds) {
             // 创建文件标签关联
             FileTag fileTag = new FileTag();
@@ -193,22 +212,156 @@ public class TagService {
             logger.warn("创建文件标签关联, 文件ID: {}, 标签ID: {}", fileId, tagId);
 
             // 检查标签是否需要绑定文件hash
-            Tag tag = tagRepository.findById(tagId);
-            if (tag != null && Boolean.TRUE.equals(tag.getBindFile())) {
-                File file = Paths.get(path).toFile();
-                if (file.isFile()) {
-                    String fileHash = DigestUtil.md5Hex(file);
-                    // 检查hash是否已存在
-                    TagFileHash existingHash = tagFileHashRepository.findByTagIdAndFileHash(tagId, fileHash);
-                    if (existingHash == null) {
-                        // 只有当hash不存在时才创建新的关联
-                        TagFileHash tagFileHash = new TagFileHash(tagId, fileHash, "MD5");
-                        tagFileHashRepository.save(tagFileHash);
+            if (isBindFile(tagId)) {
+                bindFileTagIds.add(tagId);
+            }
+        }
+
+        File file = Paths.get(path).toFile();
+        if (!bindFileTagIds.isEmpty() && file.isFile()) {
+            // 绑定文件的标签需要确定的完整哈希，索引中的MD5已过期或只算了快速哈希时在后台补算，不阻塞请求
+            String fileHash = fileHashBinder.findIndexedHash(fileIndexRepository.findById(fileId), file);
+            if (fileHash == null) {
+                fileHashBinder.submit(fileId, path);
+                logger.info("文件MD5需要后台计算, 文件ID: {}, 路径: {}", fileId, path);
+            } else {
+                for (Long tagId : bindFileTagIds) {
+                    // 只有当hash不存在时才创建新的关联
+                    if (tagFileHashRepository.findByTagIdAndFileHash(tagId, fileHash) == null) {
+                        tagFileHashRepository.save(new TagFileHash(tagId, fileHash, "MD5"));
                         logger.warn("创建文件hash关联, 标签ID: {}, 文件hash: {}", tagId, fileHash);
                     }
                 }
             }
         }
+        directoryListingCache.clearIndexInfo();
+    }
+
+    /**
+     * 批量打标签时使用的完整MD5，只使用索引中仍有效的MD5，不读取文件内容
+     *
+     * @return 索引中没有有效的MD5时返回null，由 {@link #updateFilesTags} 提交到后台计算
+     */
+    public String findIndexedFileHash(FileIndex fileIndex) {
+        return fileHashBinder.findIndexedHash(fileIndex, Paths.get(fileIndex.getPath()).toFile());
+    }
+
+    /**
+     * 文件是否有等待后台计算MD5的hash关联
+     */
+    public boolean isFileHashPending(Long fileId) {
+        return fileHashBinder.isPending(fileId);
+    }
+
+    /**
+     * 批量打标签时是否需要文件的完整MD5：添加或替换的标签中有绑定文件的标签
+     */
+    public boolean requiresFileHash(FileTagMode mode, Collection<Long> tagIds) {
+        return mode != FileTagMode.REMOVE && tagIds.stream().anyMatch(this::isBindFile);
+    }
+
+    /**
+     * 批量添加、移除或替换一批文件的标签，在一个事务中批量写入与现有标签的差异
+     * <p>
+     * 绑定文件的标签同时按文件hash关联：添加时使用 fileHashes 中的完整MD5，并回写到索引；没有完整MD5的文件先只写直接关联，
+     * 事务提交后由后台计算MD5再补上hash关联，与单个文件更新标签一致。移除时删除文件当前MD5对应的关联。
+     *
+     * @param files      文件的索引记录
+     * @param fileHashes 文件ID -> 完整MD5，见 {@link #requiresFileHash}
+     * @return 新增和删除的关联数
+     */
+    @Transactional
+    public int updateFilesTags(List<FileIndex> files, Map<Long, String> fileHashes, FileTagMode mode,
+                               Collection<Long> tagIds) {
+        Set<Long> targetTagIds = new LinkedHashSet<>(tagIds);
+        Set<Long> bindFileTagIds = new HashSet<>();
+        for (Long tagId : targetTagIds) {
+            if (tagRepository.findById(tagId) == null) {
+                throw new IllegalArgumentException("标签不存在: " + tagId);
+            }
+            if (isBindFile(tagId)) {
+                bindFileTagIds.add(tagId);
+            }
+        }
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Set<Long>> existingTags = new HashMap<>();
+        fileTagRepository.findByFileIds(files.stream().map(FileIndex::getId).toList()).forEach(fileTag ->
+                existingTags.computeIfAbsent(fileTag.getFileId(), key -> new HashSet<>()).add(fileTag.getTagId()));
+        Set<String> hashes = new HashSet<>(fileHashes.values());
+        files.stream().map(FileIndex::getMd5).filter(Objects::nonNull).forEach(hashes::add);
+        Map<String, Set<Long>> existingHashTags = new HashMap<>();
+        tagFileHashRepository.findByFileHashes(hashes).forEach(tagFileHash ->
+                existingHashTags.computeIfAbsent(tagFileHash.getFileHash(), key -> new HashSet<>()).add(tagFileHash.getTagId()));
+
+        List<FileTag> addedTags = new ArrayList<>();
+        List<FileTag> removedTags = new ArrayList<>();
+        Map<String, TagFileHash> addedHashes = new LinkedHashMap<>();
+        Map<String, TagFileHash> removedHashes = new LinkedHashMap<>();
+        Map<Long, String> changedHashes = new HashMap<>();
+        List<FileIndex> pendingHashes = new ArrayList<>();
+        for (FileIndex file : files) {
+            Set<Long> existing = existingTags.getOrDefault(file.getId(), Collections.emptySet());
+            if (mode != FileTagMode.REMOVE) {
+                for (Long tagId : targetTagIds) {
+                    if (!existing.contains(tagId)) {
+                        addedTags.add(new FileTag(file.getId(), tagId));
+                    }
+                }
+            }
+            for (Long tagId : existing) {
+                if (mode == FileTagMode.REMOVE ? targetTagIds.contains(tagId)
+                        : mode == FileTagMode.REPLACE && !targetTagIds.contains(tagId)) {
+                    removedTags.add(new FileTag(file.getId(), tagId));
+                }
+            }
+
+            // 与单个文件更新标签一致：移除的标签中绑定文件的标签同时删除hash关联
+            String currentHash = file.getMd5();
+            if (currentHash != null && mode != FileTagMode.ADD) {
+                for (Long tagId : existingHashTags.getOrDefault(currentHash, Collections.emptySet())) {
+                    boolean removed = mode == FileTagMode.REMOVE ? targetTagIds.contains(tagId) : !targetTagIds.contains(tagId);
+                    if (removed && isBindFile(tagId)) {
+                        removedHashes.putIfAbsent(tagId + "|" + currentHash, new TagFileHash(tagId, currentHash, "MD5"));
+                    }
+                }
+            }
+            String fileHash = fileHashes.get(file.getId());
+            if (fileHash != null && mode != FileTagMode.REMOVE) {
+                for (Long tagId : bindFileTagIds) {
+                    if (!existingHashTags.getOrDefault(fileHash, Collections.emptySet()).contains(tagId)) {
+                        addedHashes.putIfAbsent(tagId + "|" + fileHash, new TagFileHash(tagId, fileHash, "MD5"));
+                    }
+                }
+                // 把补算的MD5写回索引，后续的重复文件查找可以直接使用
+                if (!fileHash.equals(currentHash)) {
+                    file.setMd5(fileHash);
+                    changedHashes.put(file.getId(), fileHash);
+                }
+            } else if (mode != FileTagMode.REMOVE && !bindFileTagIds.isEmpty() && !Boolean.TRUE.equals(file.getIsDir())) {
+                pendingHashes.add(file);
+            }
+        }
+
+        fileTagRepository.deleteAll(removedTags);
+        fileTagRepository.saveAll(addedTags);
+        tagFileHashRepository.deleteAll(new ArrayList<>(removedHashes.values()));
+        tagFileHashRepository.saveAll(new ArrayList<>(addedHashes.values()));
+        fileIndexRepository.updateMd5s(changedHashes);
+        // 在事务中提交，提交后才开始计算，计算完成时读取的标签已包含本次写入的关联
+        pendingHashes.forEach(file -> fileHashBinder.submit(file.getId(), file.getPath()));
+        logger.info("批量{}标签, 文件数: {}, 新增关联: {}, 删除关联: {}, 新增hash关联: {}, 删除hash关联: {}, 待计算MD5: {}",
+                mode.getDescription(), files.size(), addedTags.size(), removedTags.size(),
+                addedHashes.size(), removedHashes.size(), pendingHashes.size());
+        directoryListingCache.clearIndexInfo();
+        return addedTags.size() + removedTags.size();
+    }
+
+    private boolean isBindFile(Long tagId) {
+        Tag tag = tagRepository.findById(tagId);
+        return tag != null && Boolean.TRUE.equals(tag.getBindFile());
     }
 
     /**
@@ -239,6 +392,8 @@ public class TagService {
         tag.setId(existingTag.getId());
 
         // 保存更新
-        return tagRepository.update(tag);
+        Tag updated = tagRepository.update(tag);
+        directoryListingCache.clearIndexInfo();
+        return updated;
     }
 }
\ No newline at end of file
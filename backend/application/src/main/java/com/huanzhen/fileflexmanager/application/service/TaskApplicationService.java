@@ -4,12 +4,14 @@ import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
 import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
 import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
 import com.huanzhen.fileflexmanager.domain.model.req.UpdateScheduledTaskRequest;
 import com.huanzhen.fileflexmanager.domain.repository.TaskRepository;
 import com.huanzhen.fileflexmanager.domain.service.TaskHandler;
 import com.huanzhen.fileflexmanager.domain.service.TaskHandlerRegistry;
+import com.huanzhen.fileflexmanager.domain.utils.CursorUtils;
 
 import lombok.RequiredArgsConstructor;
 import lombok.val;
@@ -17,6 +19,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -131,6 +135,42 @@ public class TaskApplicationService {
         return taskRepository.findAll(page, size, includeCompleted);
     }
 
+    /**
+     * 按创建时间倒序的游标分页，总数只在第一页统计一次
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时从最新的任务开始
+     * @throws IllegalArgumentException 游标无效
+     */
+    public CursorPage<Task> getAllTasksByCursor(String cursor, int size, Boolean includeCompleted) {
+        LocalDateTime beforeTime = null;
+        Long beforeId = null;
+        if (StrUtil.isNotBlank(cursor)) {
+            JSONObject json = CursorUtils.decode(cursor);
+            beforeId = json.getLong("i");
+            if (json.getString("t") == null || beforeId == null) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            try {
+                beforeTime = LocalDateTime.parse(json.getString("t"));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("无效的游标", e);
+            }
+        }
+        // 多取一条判断是否还有下一页
+        List<Task> tasks = taskRepository.findAllBefore(beforeTime, beforeId, size + 1, includeCompleted);
+        String nextCursor = null;
+        if (tasks.size() > size) {
+            tasks = tasks.subList(0, size);
+            Task last = tasks.get(tasks.size() - 1);
+            JSONObject json = new JSONObject();
+            json.put("t", last.getCreateTime().toString());
+            json.put("i", last.getId());
+            nextCursor = CursorUtils.encode(json);
+        }
+        Long total = beforeTime == null ? taskRepository.count(includeCompleted) : null;
+        return new CursorPage<>(tasks, nextCursor, total);
+    }
+
     /**
      * 创建定时任务
      */
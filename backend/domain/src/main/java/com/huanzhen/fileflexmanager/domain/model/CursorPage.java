@@ -0,0 +1,33 @@
+package com.huanzhen.fileflexmanager.domain.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于游标的分页结果
+ * <p>
+ * 游标对调用方不透明，原样传回即可获取下一页；nextCursor 为null表示没有更多数据
+ */
+@Data
+@NoArgsConstructor
+public class CursorPage<T> {
+    private List<T> records = new ArrayList<>();
+    private String nextCursor;
+    /**
+     * 总记录数，无法低成本获得时为null
+     */
+    private Long total;
+
+    public CursorPage(List<T> records, String nextCursor, Long total) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    public boolean isHasMore() {
+        return nextCursor != null;
+    }
+}
@@ -10,16 +10,43 @@ public class FileIndex {
     private Long id;
     private String path;
     private String name;
+    /**
+     * 名称的拼音全拼，名称不含汉字时为空，见 {@link com.huanzhen.fileflexmanager.domain.utils.FileNameKeyUtils}
+     */
+    private String namePinyin;
+    /**
+     * 名称的拼音首字母，名称不含汉字时为空
+     */
+    private String nameInitials;
+    /**
+     * 小写扩展名，不含点，没有扩展名时为空字符串，文件夹为空
+     */
+    private String extension;
     private Long size;
     private String mimeType;
     private String md5;
+    /**
+     * 快速哈希：文件大小加首、中、尾各64KiB的MD5，相同时才需要比较完整MD5
+     */
+    private String quickHash;
     private Boolean isDir;
     private String parentPath;
     private LocalDateTime createTime;
     private LocalDateTime updateTime;
     private LocalDateTime lastModified;
     private Boolean hidden;
+    /**
+     * POSIX 权限，如 rwxr-xr-x，索引时记录
+     */
     private String permissions;
+    /**
+     * 文件所有者，索引时记录
+     */
+    private String owner;
+    /**
+     * 文件系统标识（如 inode），用于增量索引时判断文件是否被替换
+     */
+    private String fileKey;
 
     public FileIndex(String path, String name, Boolean isDir) {
         this.path = path;
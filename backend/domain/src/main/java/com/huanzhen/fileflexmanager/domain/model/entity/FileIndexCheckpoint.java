@@ -0,0 +1,43 @@
+package com.huanzhen.fileflexmanager.domain.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件索引断点
+ * <p>
+ * 记录一次索引运行中已经完整遍历并落库的子目录（只保留最外层的，子目录完成后由父目录替代）
+ * 及其汇总大小，以及目前发现的失效记录。中断后再次索引同一目录时跳过这些子目录，
+ * 整棵树完成后才清理失效记录。
+ */
+@Data
+@NoArgsConstructor
+public class FileIndexCheckpoint {
+    private Long id;
+    private String rootPath;
+    private Integer maxDepth;
+    /**
+     * 已完成的目录路径 -> 目录大小
+     */
+    private Map<String, Long> completedDirs = new HashMap<>();
+    private List<String> staleFiles = new ArrayList<>();
+    private List<String> staleDirs = new ArrayList<>();
+    /**
+     * 首次开始索引的时间，续扫时沿用
+     */
+    private LocalDateTime startTime;
+    private LocalDateTime updateTime;
+
+    public FileIndexCheckpoint(String rootPath, Integer maxDepth) {
+        this.rootPath = rootPath;
+        this.maxDepth = maxDepth;
+        this.startTime = LocalDateTime.now();
+        this.updateTime = this.startTime;
+    }
+}
@@ -0,0 +1,32 @@
+package com.huanzhen.fileflexmanager.domain.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 索引根目录下文件的预聚合计数，每次索引完成时按根目录整体刷新
+ */
+@Data
+@NoArgsConstructor
+public class FileIndexFacet {
+    public static final String EXTENSION = "extension";
+    public static final String SIZE = "size";
+    public static final String MONTH = "month";
+
+    private Long id;
+    private String rootPath;
+    /**
+     * 分面类型：{@link #EXTENSION}、{@link #SIZE}、{@link #MONTH}
+     */
+    private String facet;
+    /**
+     * 分组值：扩展名（无扩展名为空字符串）、{@link com.huanzhen.fileflexmanager.domain.model.enums.FileSizeBucket} 名称、
+     * 修改时间所在月份（yyyy-MM）
+     */
+    private String bucket;
+    private Long fileCount;
+    private Long totalSize;
+    private LocalDateTime updateTime;
+}
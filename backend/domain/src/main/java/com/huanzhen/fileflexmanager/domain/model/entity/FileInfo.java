@@ -15,4 +15,8 @@ public class FileInfo {
     private String owner;
     private List<Tag> tags;
     private String hash;
+    /**
+     * 绑定文件的标签等待后台计算MD5，hash关联尚未生效
+     */
+    private boolean hashPending;
 }
\ No newline at end of file
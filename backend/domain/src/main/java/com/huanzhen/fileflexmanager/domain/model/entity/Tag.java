@@ -21,6 +21,10 @@ public class Tag {
     private Boolean quickAccess;
     private Boolean bindFile;
     private Long fileCount;
+    /**
+     * 标签及其全部子标签合计的文件数
+     */
+    private Long subtreeFileCount;
 
     public Tag(String name, Long parentId) {
         this.name = name;
@@ -30,6 +30,12 @@ public enum ConfigEnum {
     JWT_TOKEN_EXPIRATION("登录过期时间", "86400", ConfigType.SECURITY, "登录token过期时间(秒) 下一次登录生效"), // 默认24小时
     @ParamMeta(name = "", description = "", type = ParamType.BOOLEAN)
     FILE_FOLDER_USE_INDEX_SIZE("文件夹大小使用文件索引数据", "true", ConfigType.USER, "文件索引时的数据可能不准确，如果关闭将不展示文件夹大小"),
+    @ParamMeta(name = "", description = "", type = ParamType.BOOLEAN)
+    FILE_RESULT_USE_INDEX("搜索和标签结果使用索引数据", "true", ConfigType.USER, "搜索和按标签筛选的结果直接使用索引中的大小、修改时间和所有者，不再逐个读取磁盘；已删除的文件由后台校验后清理，关闭后每条结果都从磁盘读取"),
+    @ParamMeta(name = "", description = "", type = ParamType.BOOLEAN)
+    FILE_INDEX_WATCH_ENABLED("实时更新文件索引", "false", ConfigType.USER, "监听定时索引任务的目录，文件变化时实时更新索引；目录很多时会占用较多系统文件监听数"),
+    @ParamMeta(name = "", description = "", type = ParamType.TEXT)
+    FILE_INDEX_EXCLUDE_RULES("文件索引排除规则", "@eaDir;.git;node_modules", ConfigType.USER, "对所有索引任务生效，多条规则用分号分隔；默认为glob，不含/时匹配任意层级的名称，含/时匹配相对索引目录的路径；regex:开头为正则"),
 
     /*@ParamMeta(name = "", description = "", type = ParamType.LIST, paramClass = WebdavConfig.class)
     WEBDAV_CONFIG("webdav配置", "[]", ConfigType.USER, "配置挂载webdav"),*/
@@ -0,0 +1,41 @@
+package com.huanzhen.fileflexmanager.domain.model.enums;
+
+/**
+ * 文件索引时的哈希计算方式
+ */
+public enum FileHashMode {
+    NONE("不计算"),
+    /**
+     * 只计算快速哈希：文件大小加首、中、尾各64KiB，用于初步判断文件是否相同
+     */
+    QUICK("快速哈希"),
+    /**
+     * 计算完整MD5（同时计算快速哈希）
+     */
+    FULL("完整MD5");
+
+    private final String description;
+
+    FileHashMode(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 按名称解析，忽略大小写，无法识别时返回null
+     */
+    public static FileHashMode of(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (FileHashMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
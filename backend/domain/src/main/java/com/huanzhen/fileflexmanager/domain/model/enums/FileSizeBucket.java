@@ -0,0 +1,49 @@
+package com.huanzhen.fileflexmanager.domain.model.enums;
+
+/**
+ * 文件大小分段，用于搜索结果的大小分面统计
+ */
+public enum FileSizeBucket {
+    TINY("1MB以下", 0L),
+    SMALL("1MB-10MB", 1024L * 1024),
+    MEDIUM("10MB-100MB", 10L * 1024 * 1024),
+    LARGE("100MB-1GB", 100L * 1024 * 1024),
+    HUGE("1GB以上", 1024L * 1024 * 1024);
+
+    private final String description;
+    /**
+     * 分段下限（包含），上限为下一个分段的下限（不包含）
+     */
+    private final long minSize;
+
+    FileSizeBucket(String description, long minSize) {
+        this.description = description;
+        this.minSize = minSize;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return 分段上限（不包含），最后一个分段返回null
+     */
+    public Long getMaxSize() {
+        int next = ordinal() + 1;
+        return next < values().length ? values()[next].minSize : null;
+    }
+
+    public static FileSizeBucket of(long size) {
+        FileSizeBucket[] buckets = values();
+        for (int i = buckets.length - 1; i > 0; i--) {
+            if (size >= buckets[i].minSize) {
+                return buckets[i];
+            }
+        }
+        return TINY;
+    }
+}
@@ -0,0 +1,38 @@
+package com.huanzhen.fileflexmanager.domain.model.enums;
+
+/**
+ * 文件列表的排序字段，文件夹总是排在文件之前，排序值相同时按名称排序
+ */
+public enum FileSortField {
+    NAME("name"),
+    SIZE("size"),
+    LAST_MODIFIED("lastModified");
+
+    /**
+     * 接口中使用的字段名
+     */
+    private final String field;
+
+    FileSortField(String field) {
+        this.field = field;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * 按接口字段名或枚举名解析，忽略大小写，为空或无法识别时按名称排序
+     */
+    public static FileSortField of(String field) {
+        if (field == null) {
+            return NAME;
+        }
+        for (FileSortField value : values()) {
+            if (value.field.equalsIgnoreCase(field.trim()) || value.name().equalsIgnoreCase(field.trim())) {
+                return value;
+            }
+        }
+        return NAME;
+    }
+}
@@ -0,0 +1,44 @@
+package com.huanzhen.fileflexmanager.domain.model.enums;
+
+/**
+ * 批量打标签时对文件已有标签的处理方式
+ */
+public enum FileTagMode {
+    /**
+     * 在已有标签基础上添加
+     */
+    ADD("添加"),
+    /**
+     * 从已有标签中移除
+     */
+    REMOVE("移除"),
+    /**
+     * 用指定标签替换全部已有标签
+     */
+    REPLACE("替换");
+
+    private final String description;
+
+    FileTagMode(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 按名称解析，忽略大小写，无法识别时返回null
+     */
+    public static FileTagMode of(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (FileTagMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
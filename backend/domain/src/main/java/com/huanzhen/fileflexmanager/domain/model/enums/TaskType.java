@@ -17,6 +17,7 @@ public enum TaskType {
     FILE_INDEX("文件索引", true, FileIndexParams.class, true),
     FILE_COMPRESS("文件压缩", true, FileCompressParams.class),
     FILE_DECOMPRESS("文件解压", true, FileDecompressParams.class),
+    FILE_TAG("批量标签", false, FileTagParams.class),
     TEST("测试任务", false, null);
 
     private final String description;
@@ -2,6 +2,7 @@ package com.huanzhen.fileflexmanager.domain.model.params.params;
 
 import com.huanzhen.fileflexmanager.domain.model.params.ParamMeta;
 import com.huanzhen.fileflexmanager.domain.model.params.ParamType;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileHashMode;
 import lombok.Data;
 
 @Data
@@ -12,7 +13,50 @@ public class FileIndexParams {
     @ParamMeta(name = "最大递归层级", type = ParamType.NUMBER, required = false, description = "最大递归层级，0表示无限制")
     private Integer maxDepth = 0;
 
-    @ParamMeta(name = "计算MD5", type = ParamType.BOOLEAN, required = false, description = "是否计算文件MD5")
+    @ParamMeta(name = "计算MD5", type = ParamType.BOOLEAN, required = false, description = "是否计算文件MD5，设置了哈希模式时以哈希模式为准")
     private Boolean calculateMd5 = false;
 
+    @ParamMeta(name = "哈希模式", type = ParamType.SELECT, required = false,
+            description = "none不计算；quick只计算快速哈希（大小+首中尾各64KiB），快速哈希重复的文件再计算完整MD5；full计算完整MD5",
+            options = "none:none;quick:quick;full:full")
+    private String hashMode;
+
+    @ParamMeta(name = "扫描线程数", type = ParamType.NUMBER, required = false, description = "并行扫描的线程数，0表示使用CPU核数")
+    private Integer parallelism = 0;
+
+    @ParamMeta(name = "增量索引", type = ParamType.BOOLEAN, required = false, description = "跳过大小、修改时间未变化的文件，不重复写入和计算MD5")
+    private Boolean incremental = false;
+
+    @ParamMeta(name = "MD5计算线程数", type = ParamType.NUMBER, required = false, description = "并行计算MD5的线程数，0表示自动")
+    private Integer hashThreads = 0;
+
+    @ParamMeta(name = "排除规则", type = ParamType.TEXT, required = false,
+            description = "在全局排除规则之外额外排除的目录或文件，多条用分号分隔，如 *.tmp;backup/snapshots;regex:docker-\\w+")
+    private String excludeRules;
+
+    @ParamMeta(name = "读取.fileflexignore", type = ParamType.BOOLEAN, required = false, description = "目录下存在.fileflexignore时，按其中的规则（每行一条）排除该目录下的条目")
+    private Boolean useIgnoreFile = true;
+
+    @ParamMeta(name = "断点续扫", type = ParamType.BOOLEAN, required = false, description = "上次索引中断时，从断点继续，跳过已完成的子目录")
+    private Boolean resume = true;
+
+    @ParamMeta(name = "索引文件内容", type = ParamType.BOOLEAN, required = false, description = "为文本文件（日志、文档、源码、配置等）建立全文索引，大小、修改时间未变化的文件不重复处理")
+    private Boolean indexContent = false;
+
+    /**
+     * 排除规则和 .fileflexignore 的起始目录，为空时为 selectPath。
+     * 文件监听只重新索引根目录下的某个子目录时设置为原任务的根目录，使相对根目录的排除规则仍然有效；不在界面展示
+     */
+    private String excludeBase;
+
+    /**
+     * 实际使用的哈希模式，未设置哈希模式时兼容旧参数 calculateMd5
+     */
+    public FileHashMode resolveHashMode() {
+        FileHashMode mode = FileHashMode.of(hashMode);
+        if (mode != null) {
+            return mode;
+        }
+        return Boolean.TRUE.equals(calculateMd5) ? FileHashMode.FULL : FileHashMode.NONE;
+    }
 }
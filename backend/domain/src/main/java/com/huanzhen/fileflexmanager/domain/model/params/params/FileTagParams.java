@@ -0,0 +1,44 @@
+package com.huanzhen.fileflexmanager.domain.model.params.params;
+
+import com.huanzhen.fileflexmanager.domain.model.enums.FileTagMode;
+import com.huanzhen.fileflexmanager.domain.model.params.ParamMeta;
+import com.huanzhen.fileflexmanager.domain.model.params.ParamType;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量打标签参数，选中的文件和目录下匹配的文件合并处理
+ */
+@Data
+public class FileTagParams {
+    @ParamMeta(name = "文件/目录", type = ParamType.FOLDER_FILE_MULTI_SELECT, required = false, description = "直接打标签的文件或目录")
+    private List<String> selectedPaths;
+
+    @ParamMeta(name = "目录", type = ParamType.FOLDER, required = false, description = "为该目录下匹配的文件打标签")
+    private String directory;
+
+    @ParamMeta(name = "文件名匹配", type = ParamType.TEXT, required = false, description = "目录下的文件名glob，如 *.jpg，为空时匹配全部文件")
+    private String pattern;
+
+    @ParamMeta(name = "包含子目录", type = ParamType.BOOLEAN, required = false, description = "是否匹配子目录中的文件")
+    private Boolean recursive = false;
+
+    @ParamMeta(name = "方式", type = ParamType.SELECT, required = false, description = "add添加；remove移除；replace替换全部已有标签",
+            options = "add:add;remove:remove;replace:replace")
+    private String mode = "add";
+
+    @ParamMeta(name = "标签", type = ParamType.LIST, required = true, description = "标签ID列表")
+    private List<Long> tagIds;
+
+    /**
+     * @throws IllegalArgumentException 方式无法识别
+     */
+    public FileTagMode resolveMode() {
+        FileTagMode fileTagMode = FileTagMode.of(mode);
+        if (fileTagMode == null) {
+            throw new IllegalArgumentException("不支持的打标签方式: " + mode);
+        }
+        return fileTagMode;
+    }
+}
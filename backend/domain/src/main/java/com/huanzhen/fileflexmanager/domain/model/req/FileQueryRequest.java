@@ -0,0 +1,38 @@
+package com.huanzhen.fileflexmanager.domain.model.req;
+
+import java.util.List;
+
+/**
+ * 基于文件索引的结构化查询条件，为空的条件不参与过滤
+ *
+ * @param keyword        名称、路径或拼音包含的关键字
+ * @param path           只查询该目录下（含子目录）的文件
+ * @param extensions     扩展名，不含点，忽略大小写；空字符串表示没有扩展名
+ * @param minSize        最小文件大小（包含）
+ * @param maxSize        最大文件大小（包含）
+ * @param modifiedAfter  修改时间下限（包含），毫秒时间戳
+ * @param modifiedBefore 修改时间上限（不包含），毫秒时间戳
+ * @param directory      true只查文件夹，false只查文件
+ * @param cursor         上一页返回的 nextCursor，为空时从第一条开始
+ * @param size           每页条数，默认20
+ * @param withFacets     是否同时返回分面计数，一般只在第一页需要
+ */
+public record FileQueryRequest(
+    String keyword,
+    String path,
+    List<String> extensions,
+    Long minSize,
+    Long maxSize,
+    Long modifiedAfter,
+    Long modifiedBefore,
+    Boolean directory,
+    String cursor,
+    int size,
+    Boolean withFacets
+) {
+    public FileQueryRequest {
+        if (size <= 0) {
+            size = 20;
+        }
+    }
+}
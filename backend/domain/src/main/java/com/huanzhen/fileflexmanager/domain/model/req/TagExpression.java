@@ -0,0 +1,173 @@
+package com.huanzhen.fileflexmanager.domain.model.req;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 标签组合条件
+ * <p>
+ * 文本形式由标签id、AND、OR、NOT（不区分大小写）和括号组成，例如 {@code 1 AND (2 OR 3) AND NOT 4}，
+ * NOT 优先级最高，其次是 AND，最后是 OR。NOT 只能作为 AND 的一部分使用，表示从其余条件的结果中排除，
+ * 不能单独使用或出现在 OR 中。
+ */
+public sealed interface TagExpression permits TagExpression.Tag, TagExpression.And, TagExpression.Or, TagExpression.Not {
+
+    /**
+     * 带有该标签的文件
+     */
+    record Tag(long tagId) implements TagExpression {
+    }
+
+    /**
+     * 同时满足全部条件的文件
+     */
+    record And(List<TagExpression> operands) implements TagExpression {
+        public And {
+            operands = List.copyOf(operands);
+        }
+    }
+
+    /**
+     * 满足任意一个条件的文件
+     */
+    record Or(List<TagExpression> operands) implements TagExpression {
+        public Or {
+            operands = List.copyOf(operands);
+        }
+    }
+
+    /**
+     * 不满足条件的文件
+     */
+    record Not(TagExpression operand) implements TagExpression {
+    }
+
+    static TagExpression allOf(Collection<Long> tagIds) {
+        return new And(tagIds.stream().<TagExpression>map(Tag::new).toList());
+    }
+
+    static TagExpression anyOf(Collection<Long> tagIds) {
+        return new Or(tagIds.stream().<TagExpression>map(Tag::new).toList());
+    }
+
+    /**
+     * 解析文本形式的条件
+     *
+     * @throws IllegalArgumentException 语法错误或 NOT 的位置不对
+     */
+    static TagExpression parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("标签条件不能为空");
+        }
+        TagExpression expression = new Parser(text).parse();
+        validate(expression, false);
+        return expression;
+    }
+
+    /**
+     * @param inAnd 是否为 AND 的直接操作数
+     */
+    private static void validate(TagExpression expression, boolean inAnd) {
+        if (expression instanceof Not not) {
+            if (!inAnd) {
+                throw new IllegalArgumentException("NOT 只能与其他条件 AND 组合使用");
+            }
+            validate(not.operand(), false);
+        } else if (expression instanceof And and) {
+            if (and.operands().stream().allMatch(Not.class::isInstance)) {
+                throw new IllegalArgumentException("NOT 只能与其他条件 AND 组合使用");
+            }
+            and.operands().forEach(operand -> validate(operand, true));
+        } else if (expression instanceof Or or) {
+            or.operands().forEach(operand -> validate(operand, false));
+        }
+    }
+
+    /**
+     * 递归下降解析：or := and (OR and)*；and := unary (AND unary)*；unary := NOT unary | ( or ) | 标签id
+     */
+    final class Parser {
+        private final List<String> tokens = new ArrayList<>();
+        private int position;
+
+        private Parser(String text) {
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    int start = i;
+                    while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                        i++;
+                    }
+                    if (start == i) {
+                        throw new IllegalArgumentException("标签条件包含无法识别的字符: " + c);
+                    }
+                    tokens.add(text.substring(start, i).toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+
+        private TagExpression parse() {
+            TagExpression expression = parseOr();
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException("标签条件语法错误: " + tokens.get(position));
+            }
+            return expression;
+        }
+
+        private TagExpression parseOr() {
+            List<TagExpression> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (accept("OR")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private TagExpression parseAnd() {
+            List<TagExpression> operands = new ArrayList<>();
+            operands.add(parseUnary());
+            while (accept("AND")) {
+                operands.add(parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private TagExpression parseUnary() {
+            if (accept("NOT")) {
+                return new Not(parseUnary());
+            }
+            if (accept("(")) {
+                TagExpression expression = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("标签条件缺少右括号");
+                }
+                return expression;
+            }
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("标签条件不完整");
+            }
+            String token = tokens.get(position++);
+            try {
+                return new Tag(Long.parseLong(token));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("标签条件语法错误: " + token);
+            }
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
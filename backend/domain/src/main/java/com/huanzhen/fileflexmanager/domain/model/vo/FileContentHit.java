@@ -0,0 +1,11 @@
+package com.huanzhen.fileflexmanager.domain.model.vo;
+
+/**
+ * 全文搜索命中的文件
+ *
+ * @param path    文件路径
+ * @param score   相关度
+ * @param snippet 命中关键字附近的内容片段，关键字用 &lt;em&gt; 标出，其余内容已做HTML转义
+ */
+public record FileContentHit(String path, float score, String snippet) {
+}
@@ -0,0 +1,10 @@
+package com.huanzhen.fileflexmanager.domain.model.vo;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileInfo;
+
+/**
+ * @param file    文件信息
+ * @param snippet 命中关键字附近的内容片段，见 {@link FileContentHit#snippet()}
+ */
+public record FileContentResult(FileInfo file, String snippet) {
+}
@@ -0,0 +1,52 @@
+package com.huanzhen.fileflexmanager.domain.model.vo;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文件分面计数，来自索引时预聚合的计数，只统计文件不统计文件夹
+ */
+@Data
+public class FileFacets {
+    /**
+     * 计数来源的索引根目录；查询范围不是索引根目录时为包含它的最近一级根目录，
+     * 没有根目录包含它时为它下面的各个根目录
+     */
+    private List<String> rootPaths = new ArrayList<>();
+    /**
+     * 计数是否与查询结果的范围一致：查询范围正是计数来源的根目录，且除只查文件外没有其他过滤条件。
+     * 为false时计数是根目录整体的计数，界面需要注明，不能当作当前结果的统计
+     */
+    private boolean scopeExact;
+    /**
+     * 计数中最早的统计时间，之后的文件变化要等下次索引完成才会反映
+     */
+    private LocalDateTime updateTime;
+    /**
+     * 按文件数降序
+     */
+    private List<Bucket> extensions = new ArrayList<>();
+    /**
+     * 按 {@link com.huanzhen.fileflexmanager.domain.model.enums.FileSizeBucket} 的顺序
+     */
+    private List<Bucket> sizes = new ArrayList<>();
+    /**
+     * 按年份升序
+     */
+    private List<Bucket> years = new ArrayList<>();
+    /**
+     * 按月份（yyyy-MM）升序
+     */
+    private List<Bucket> months = new ArrayList<>();
+
+    /**
+     * @param value     分组值
+     * @param count     文件数
+     * @param totalSize 文件总大小
+     */
+    public record Bucket(String value, long count, long totalSize) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.huanzhen.fileflexmanager.domain.model.vo;
+
+import java.util.List;
+
+/**
+ * 按id升序的一页文件id
+ *
+ * @param ids   这一页的文件id
+ * @param total 满足条件的文件总数
+ */
+public record FileIdPage(List<Long> ids, long total) {
+}
@@ -0,0 +1,10 @@
+package com.huanzhen.fileflexmanager.domain.model.vo;
+
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileInfo;
+
+/**
+ * @param facets 未要求分面计数时为null
+ */
+public record FileQueryResult(CursorPage<FileInfo> page, FileFacets facets) {
+}
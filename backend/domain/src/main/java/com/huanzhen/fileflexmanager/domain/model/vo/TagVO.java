@@ -11,5 +11,6 @@ public class TagVO {
     private Boolean quickAccess;
     private Boolean bindFile;
     private Long fileCount;
+    private Long subtreeFileCount;
 
 } 
\ No newline at end of file
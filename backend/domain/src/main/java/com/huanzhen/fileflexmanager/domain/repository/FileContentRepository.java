@@ -0,0 +1,14 @@
+package com.huanzhen.fileflexmanager.domain.repository;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentHit;
+
+public interface FileContentRepository {
+    /**
+     * 按文件内容搜索，按相关度排序
+     * @param keyword 关键字，多个词同时包含；支持 "短语" 和 前缀*
+     * @return 一页命中的文件
+     * @throws IllegalArgumentException 查询语法错误或翻页过深
+     */
+    Page<FileContentHit> search(String keyword, int page, int size);
+}
@@ -0,0 +1,19 @@
+package com.huanzhen.fileflexmanager.domain.repository;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexCheckpoint;
+
+public interface FileIndexCheckpointRepository {
+    /**
+     * 根据索引根路径查询断点
+     * @param rootPath 索引根路径
+     * @return 断点，不存在返回null
+     */
+    FileIndexCheckpoint findByRootPath(String rootPath);
+
+    /**
+     * 保存断点，已存在则覆盖
+     */
+    FileIndexCheckpoint save(FileIndexCheckpoint checkpoint);
+
+    void deleteByRootPath(String rootPath);
+}
@@ -0,0 +1,22 @@
+package com.huanzhen.fileflexmanager.domain.repository;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexFacet;
+
+import java.util.List;
+
+public interface FileIndexFacetRepository {
+    /**
+     * 按 file_index 重新统计根目录下文件的扩展名、大小分段和修改月份计数，替换原有计数
+     */
+    void refresh(String rootPath);
+
+    /**
+     * @return 根目录的全部计数，没有统计过时返回空列表
+     */
+    List<FileIndexFacet> findByRootPath(String rootPath);
+
+    /**
+     * @return 已有计数的全部根目录
+     */
+    List<String> findRootPaths();
+}
@@ -1,10 +1,15 @@
 package com.huanzhen.fileflexmanager.domain.repository;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.req.FileQueryRequest;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.LongConsumer;
 
 public interface FileIndexRepository {
     FileIndex save(FileIndex fileIndex);
@@ -17,9 +22,121 @@ public interface FileIndexRepository {
     Page<FileIndex> findAll(int page, int size);
     List<FileIndex> findByMd5(String md5);
     List<FileIndex> findByMd5List(List<String> md5List);
+
+    /**
+     * 按文件名或路径搜索，不区分大小写，结果按相关度排序（文件名完全匹配、前缀匹配、包含、仅路径包含）
+     * @param keyword 关键字；{@code ^前缀} 只匹配文件名开头，{@code regex:表达式} 按正则匹配文件名或路径
+     * @param page 页码，从1开始
+     * @param size 每页记录数
+     * @return 一页记录及匹配总数
+     * @throws IllegalArgumentException 正则表达式错误
+     */
     Page<FileIndex> search(String keyword, int page, int size);
+
+    /**
+     * 游标分页搜索，匹配规则与 {@link #search(String, int, int)} 相同，不需要统计总数，翻到多深耗时都不变
+     * @param keyword 关键字
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @param size 每页记录数
+     * @return 一页记录；搜索索引可用时附带匹配总数，否则总数为null
+     * @throws IllegalArgumentException 正则表达式错误或游标无效
+     */
+    CursorPage<FileIndex> searchByCursor(String keyword, String cursor, int size);
+
+    /**
+     * 按结构化条件游标分页查询，按 (名称, id) 排序，不统计总数
+     * @throws IllegalArgumentException 游标无效
+     */
+    CursorPage<FileIndex> query(FileQueryRequest request);
+
     Page<FileIndex> findByIds(List<Long> ids, int page, int size);
-    int deleteStaleIndexes(String rootPath, LocalDateTime beforeTime);
+
+    /**
+     * 按id批量查询索引记录
+     * @param ids id集合
+     * @return 存在的索引记录，按id升序
+     */
+    List<FileIndex> findAllByIds(Collection<Long> ids);
+
+    default int deleteStaleIndexes(String rootPath, LocalDateTime beforeTime) {
+        return deleteStaleIndexes(rootPath, beforeTime, null);
+    }
+
+    /**
+     * 删除目录自身及其下更新时间早于 beforeTime 的索引记录和标签关联
+     * <p>
+     * 按id游标分批删除，每批一个事务，不会一次性把整棵子树的记录加载到内存
+     * @param rootPath 目录路径
+     * @param beforeTime 更新时间早于该时间的子记录才删除
+     * @param progressListener 每批删除后回调累计删除数，可为null
+     * @return 删除的记录数
+     */
+    int deleteStaleIndexes(String rootPath, LocalDateTime beforeTime, LongConsumer progressListener);
+
+    /**
+     * 统计指定路径及其所有子路径的索引记录数
+     * @param rootPath 根路径
+     * @return 记录数
+     */
+    long countByPathPrefix(String rootPath);
+
+    /**
+     * 按路径批量查询索引记录
+     * @param paths 路径集合
+     * @return 存在的索引记录
+     */
+    List<FileIndex> findByPaths(Collection<String> paths);
+
+    /**
+     * 按路径批量插入或更新索引记录，路径已存在时更新，否则插入
+     * 未设置的md5、mimeType等字段不会覆盖已有值
+     * @param fileIndexes 索引记录列表
+     */
+    void upsertAll(List<FileIndex> fileIndexes);
+
+    /**
+     * 按id批量更新索引记录的md5，其余字段不变
+     * @param md5ById 索引记录id -> md5
+     */
+    void updateMd5s(Map<Long, String> md5ById);
+
+    /**
+     * 按路径批量插入不存在的索引记录，已存在的记录保持不变
+     * @param fileIndexes 索引记录列表
+     * @return 这些路径当前的索引记录（包含新插入记录的id）
+     */
+    List<FileIndex> insertMissing(List<FileIndex> fileIndexes);
+
+    /**
+     * 按路径批量删除索引记录及其标签关联
+     * @param paths 路径集合
+     * @return 删除的记录数
+     */
+    int deleteByPaths(Collection<String> paths);
+
+    /**
+     * 查询快速哈希与其他记录重复、且目录下有记录还没有完整MD5的快速哈希，一次分组查询得出
+     * @param rootPath 目录路径
+     * @return 需要补算完整MD5的快速哈希
+     */
+    Set<String> findCollidingQuickHashes(String rootPath);
+
+    /**
+     * 查询目录下快速哈希属于给定集合、但还没有完整MD5的文件
+     * @param rootPath 目录路径
+     * @param quickHashes 快速哈希，见 {@link #findCollidingQuickHashes}
+     * @return 需要计算完整MD5的记录
+     */
+    List<FileIndex> findQuickHashCollisions(String rootPath, Collection<String> quickHashes);
+
+    /**
+     * 查询目录下（含目录自身）不超过指定大小的文件，不含文件夹，按id升序
+     * @param rootPath 目录路径
+     * @param maxSize 文件大小上限
+     * @param afterId 只返回id大于该值的记录，用于分批遍历
+     * @param limit 最多返回的记录数
+     */
+    List<FileIndex> findFilesUnder(String rootPath, long maxSize, long afterId, int limit);
 
     List<FileIndex> findFileByHash(Set<String> hashes);
 }
\ No newline at end of file
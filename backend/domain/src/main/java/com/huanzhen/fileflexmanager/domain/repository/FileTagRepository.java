@@ -1,6 +1,8 @@
 package com.huanzhen.fileflexmanager.domain.repository;
 
 import com.huanzhen.fileflexmanager.domain.model.entity.FileTag;
+
+import java.util.Collection;
 import java.util.List;
 
 public interface FileTagRepository {
@@ -23,4 +25,23 @@ public interface FileTagRepository {
      * @return 文件标签关联列表
      */
     List<FileTag> findByTagIds(List<Long> tagIds);
+
+    /**
+     * 根据文件ID列表查询文件标签关联
+     * @param fileIds 文件ID列表
+     * @return 文件标签关联列表
+     */
+    List<FileTag> findByFileIds(Collection<Long> fileIds);
+
+    /**
+     * 批量保存文件标签关联，保存后不回填id
+     * @param fileTags 文件标签关联列表
+     */
+    void saveAll(List<FileTag> fileTags);
+
+    /**
+     * 按文件ID和标签ID批量删除文件标签关联
+     * @param fileTags 要删除的关联，只使用文件ID和标签ID
+     */
+    void deleteAll(List<FileTag> fileTags);
 } 
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.huanzhen.fileflexmanager.domain.repository;
 
 import com.huanzhen.fileflexmanager.domain.model.entity.TagFileHash;
+
+import java.util.Collection;
 import java.util.List;
 
 public interface TagFileHashRepository {
@@ -17,9 +19,9 @@ public interface TagFileHashRepository {
     void deleteByTagIdAndFileHash(Long tagId, String fileHash);
     
     /**
-     * 批量保存标签和文件hash的关联
+     * 批量保存标签和文件hash的关联，保存后不回填id
      * @param tagFileHashes 标签文件hash关联列表
-     * @return 保存后的关联列表
+     * @return 传入的关联列表
      */
     List<TagFileHash> saveAll(List<TagFileHash> tagFileHashes);
 
@@ -37,4 +39,17 @@ public interface TagFileHashRepository {
      * @return 标签文件hash关联，如果不存在返回null
      */
     TagFileHash findByTagIdAndFileHash(Long tagId, String fileHash);
+
+    /**
+     * 根据文件hash列表查询关联
+     * @param fileHashes 文件hash列表
+     * @return 标签文件hash关联列表
+     */
+    List<TagFileHash> findByFileHashes(Collection<String> fileHashes);
+
+    /**
+     * 按标签ID和文件hash批量删除关联
+     * @param tagFileHashes 要删除的关联，只使用标签ID和文件hash
+     */
+    void deleteAll(List<TagFileHash> tagFileHashes);
 } 
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.huanzhen.fileflexmanager.domain.repository;
+
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileIdPage;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 按标签条件查找文件id，普通标签按文件关联，绑定文件的标签按文件hash匹配
+ */
+public interface TagFileIdRepository {
+    /**
+     * 按id升序分页
+     * @param offset 跳过的文件数
+     * @throws IllegalArgumentException NOT 没有与其他条件 AND 组合
+     */
+    FileIdPage findFileIds(TagExpression expression, long offset, int limit);
+
+    /**
+     * 按id升序取出 afterId 之后的 limit 个文件id
+     * @throws IllegalArgumentException NOT 没有与其他条件 AND 组合
+     */
+    FileIdPage findFileIdsAfter(TagExpression expression, long afterId, int limit);
+
+    /**
+     * 统计每个标签的文件数，同一文件通过直接关联和hash同时关联时只算一次
+     * @return 标签id -> 文件数，没有文件的标签不在结果中
+     */
+    Map<Long, Long> countFiles();
+
+    /**
+     * 统计每组标签合计的文件数，带有组内多个标签的文件只算一次
+     * @param groups 分组key -> 组内的标签id
+     * @return 分组key -> 文件数，没有文件的分组不在结果中
+     */
+    Map<Long, Long> countFiles(Map<Long, ? extends Collection<Long>> groups);
+}
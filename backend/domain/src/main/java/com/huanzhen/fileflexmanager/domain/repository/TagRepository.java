@@ -2,7 +2,9 @@ package com.huanzhen.fileflexmanager.domain.repository;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.huanzhen.fileflexmanager.domain.model.entity.Tag;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface TagRepository {
     Tag save(Tag tag);
@@ -18,4 +20,11 @@ public interface TagRepository {
      * @return 更新后的标签
      */
     Tag update(Tag tag);
+
+    /**
+     * 一次查询多个文件的标签，包括直接关联的标签和通过文件hash绑定的标签
+     * @param fileIds 文件ID集合
+     * @return 文件ID -> 去重后的标签列表，没有标签的文件不在结果中
+     */
+    Map<Long, List<Tag>> findByFileIds(Collection<Long> fileIds);
 } 
\ No newline at end of file
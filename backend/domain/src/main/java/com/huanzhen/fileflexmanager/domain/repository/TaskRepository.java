@@ -2,6 +2,8 @@ package com.huanzhen.fileflexmanager.domain.repository;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface TaskRepository {
@@ -13,6 +15,15 @@ public interface TaskRepository {
     
     Page<Task> findAll(int page, int size, Boolean includeCompleted);
 
+    /**
+     * 按 (创建时间, id) 倒序的 keyset 分页，返回排在指定任务之后的 limit 条，不统计总数
+     * @param beforeTime 上一页最后一条的创建时间，为null时从最新的任务开始
+     * @param beforeId 上一页最后一条的id
+     */
+    List<Task> findAllBefore(LocalDateTime beforeTime, Long beforeId, int limit, Boolean includeCompleted);
+
+    long count(Boolean includeCompleted);
+
     /**
      * 查找所有定时任务
      */
@@ -0,0 +1,35 @@
+package com.huanzhen.fileflexmanager.domain.utils;
+
+import cn.hutool.core.codec.Base64;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 游标分页的游标编解码
+ * <p>
+ * 游标是上一页最后一条记录的排序值，编码为 URL 安全的 Base64 JSON，对调用方不透明
+ */
+public class CursorUtils {
+
+    public static String encode(JSONObject values) {
+        return Base64.encodeUrlSafe(values.toJSONString());
+    }
+
+    /**
+     * @throws IllegalArgumentException 游标无效
+     */
+    public static JSONObject decode(String cursor) {
+        JSONObject json;
+        try {
+            json = JSON.parseObject(Base64.decodeStr(cursor, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无效的游标", e);
+        }
+        if (json == null) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        return json;
+    }
+}
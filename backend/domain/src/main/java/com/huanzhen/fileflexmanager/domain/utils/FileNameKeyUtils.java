@@ -0,0 +1,134 @@
+package com.huanzhen.fileflexmanager.domain.utils;
+
+import cn.hutool.extra.pinyin.PinyinUtil;
+
+/**
+ * 文件名的拼音检索键、排序键和扩展名
+ * <p>
+ * 多音字取第一个读音；非汉字字符原样保留（转小写）。
+ */
+public class FileNameKeyUtils {
+
+    /**
+     * 拼音全拼和首字母，例如 办公文件.docx -> bangongwenjian.docx / bgwj.docx
+     */
+    public record PinyinKeys(String full, String initials) {
+    }
+
+    /**
+     * @return 拼音检索键，名称不含汉字时返回null
+     */
+    public static PinyinKeys pinyinKeys(String name) {
+        if (name == null || !containsChinese(name)) {
+            return null;
+        }
+        StringBuilder full = new StringBuilder(name.length() * 4);
+        StringBuilder initials = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (PinyinUtil.isChinese(c)) {
+                String pinyin = PinyinUtil.getPinyin(c);
+                full.append(pinyin);
+                initials.append(pinyin.isEmpty() ? c : pinyin.charAt(0));
+            } else {
+                char lower = Character.toLowerCase(c);
+                full.append(lower);
+                initials.append(lower);
+            }
+        }
+        return new PinyinKeys(full.toString(), initials.toString());
+    }
+
+    /**
+     * 排序键：汉字替换为拼音并转小写，配合 {@link #compareNatural(String, String)} 比较，
+     * 排序时不需要再做区域相关的排序规则计算
+     */
+    public static String sortKey(String name) {
+        PinyinKeys keys = pinyinKeys(name);
+        return keys != null ? keys.full() : name.toLowerCase();
+    }
+
+    /**
+     * 小写的扩展名，不含点；没有扩展名或以点开头的隐藏文件返回空字符串
+     */
+    public static String extension(String name) {
+        if (name == null) {
+            return "";
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) {
+            return "";
+        }
+        return name.substring(dot + 1).toLowerCase();
+    }
+
+    /**
+     * 自然顺序比较：连续数字按数值比较（file2 排在 file10 之前），其余字符按字符值比较
+     */
+    public static int compareNatural(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (isDigit(ca) && isDigit(cb)) {
+                int startA = i;
+                int startB = j;
+                while (i < a.length() && isDigit(a.charAt(i))) {
+                    i++;
+                }
+                while (j < b.length() && isDigit(b.charAt(j))) {
+                    j++;
+                }
+                int result = compareNumber(a, startA, i, b, startB, j);
+                if (result != 0) {
+                    return result;
+                }
+                continue;
+            }
+            if (ca != cb) {
+                return ca - cb;
+            }
+            i++;
+            j++;
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    /**
+     * 比较两段数字的数值，数值相同时前导零少的在前
+     */
+    private static int compareNumber(String a, int startA, int endA, String b, int startB, int endB) {
+        int nonZeroA = startA;
+        while (nonZeroA < endA - 1 && a.charAt(nonZeroA) == '0') {
+            nonZeroA++;
+        }
+        int nonZeroB = startB;
+        while (nonZeroB < endB - 1 && b.charAt(nonZeroB) == '0') {
+            nonZeroB++;
+        }
+        int lengthDiff = (endA - nonZeroA) - (endB - nonZeroB);
+        if (lengthDiff != 0) {
+            return lengthDiff;
+        }
+        for (int i = nonZeroA, j = nonZeroB; i < endA; i++, j++) {
+            if (a.charAt(i) != b.charAt(j)) {
+                return a.charAt(i) - b.charAt(j);
+            }
+        }
+        return (endA - startA) - (endB - startB);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean containsChinese(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (PinyinUtil.isChinese(name.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
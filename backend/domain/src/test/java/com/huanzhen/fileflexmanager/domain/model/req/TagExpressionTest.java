@@ -0,0 +1,47 @@
+package com.huanzhen.fileflexmanager.domain.model.req;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TagExpressionTest {
+
+    private static TagExpression tag(long tagId) {
+        return new TagExpression.Tag(tagId);
+    }
+
+    @Test
+    void testPrecedence() {
+        assertThat(TagExpression.parse("1 and 2 or not 3 AND 4")).isEqualTo(new TagExpression.Or(List.of(
+                new TagExpression.And(List.of(tag(1), tag(2))),
+                new TagExpression.And(List.of(new TagExpression.Not(tag(3)), tag(4))))));
+        assertThat(TagExpression.parse("1 AND (2 OR 3) AND NOT 4")).isEqualTo(new TagExpression.And(List.of(
+                tag(1),
+                new TagExpression.Or(List.of(tag(2), tag(3))),
+                new TagExpression.Not(tag(4)))));
+        assertThat(TagExpression.parse(" (7) ")).isEqualTo(tag(7));
+    }
+
+    @Test
+    void testNotMustBeCombinedWithAnd() {
+        assertThatThrownBy(() -> TagExpression.parse("NOT 1"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TagExpression.parse("1 OR NOT 2"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TagExpression.parse("NOT 1 AND NOT 2"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(TagExpression.parse("NOT 1 AND 2")).isNotNull();
+    }
+
+    @Test
+    void testSyntaxErrors() {
+        for (String text : List.of("", "1 AND", "(1 OR 2", "1 2", "1 AND abc", "1, 2", "1 OR )")) {
+            assertThatThrownBy(() -> TagExpression.parse(text))
+                    .as(text)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.huanzhen.fileflexmanager.domain.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileNameKeyUtilsTest {
+
+    @Test
+    void testPinyinKeys() {
+        FileNameKeyUtils.PinyinKeys keys = FileNameKeyUtils.pinyinKeys("办公文件A.docx");
+
+        assertThat(keys.full()).isEqualTo("bangongwenjiana.docx");
+        assertThat(keys.initials()).isEqualTo("bgwja.docx");
+        assertThat(FileNameKeyUtils.pinyinKeys("report.pdf")).isNull();
+    }
+
+    @Test
+    void testSortKey() {
+        assertThat(FileNameKeyUtils.sortKey("Report.PDF")).isEqualTo("report.pdf");
+        assertThat(FileNameKeyUtils.sortKey("照片")).isEqualTo("zhaopian");
+    }
+
+    @Test
+    void testExtension() {
+        assertThat(FileNameKeyUtils.extension("Photo.JPG")).isEqualTo("jpg");
+        assertThat(FileNameKeyUtils.extension("archive.tar.gz")).isEqualTo("gz");
+        assertThat(FileNameKeyUtils.extension(".bashrc")).isEmpty();
+        assertThat(FileNameKeyUtils.extension("README")).isEmpty();
+        assertThat(FileNameKeyUtils.extension("file.")).isEmpty();
+    }
+
+    @Test
+    void testCompareNatural() {
+        List<String> names = new ArrayList<>(List.of("file10", "file2", "file02", "file1", "file", "filea"));
+        names.sort(FileNameKeyUtils::compareNatural);
+
+        assertThat(names).containsExactly("file", "file1", "file2", "file02", "file10", "filea");
+    }
+
+    @Test
+    void testChineseSortedByPinyin() {
+        List<String> names = new ArrayList<>(List.of("照片", "banana", "文档", "apple"));
+        names.sort((a, b) -> FileNameKeyUtils.compareNatural(FileNameKeyUtils.sortKey(a), FileNameKeyUtils.sortKey(b)));
+
+        assertThat(names).containsExactly("apple", "banana", "文档", "照片");
+    }
+}
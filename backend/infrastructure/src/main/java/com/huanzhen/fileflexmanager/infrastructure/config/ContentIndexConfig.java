@@ -0,0 +1,25 @@
+package com.huanzhen.fileflexmanager.infrastructure.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.content-index")
+public class ContentIndexConfig {
+    /**
+     * 全文索引的存放目录
+     */
+    private String path = "data/content-index";
+
+    /**
+     * 只索引不超过该大小的文本文件，默认 1MB
+     */
+    private long maxFileSize = 1024L * 1024;
+
+    /**
+     * 写入时在内存中缓冲的大小（MB），超过后生成新的索引段
+     */
+    private double ramBufferMb = 32;
+}
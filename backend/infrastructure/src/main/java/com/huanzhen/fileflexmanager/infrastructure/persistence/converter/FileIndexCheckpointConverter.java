@@ -0,0 +1,44 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.converter;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.TypeReference;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexCheckpoint;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.FileIndexCheckpointDO;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Named;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Mapper(componentModel = "spring", uses = TimeConverter.class)
+public interface FileIndexCheckpointConverter {
+
+    @Mapping(target = "completedDirs", source = "completedDirs", qualifiedByName = "toJson")
+    @Mapping(target = "staleFiles", source = "staleFiles", qualifiedByName = "toJson")
+    @Mapping(target = "staleDirs", source = "staleDirs", qualifiedByName = "toJson")
+    FileIndexCheckpointDO toFileIndexCheckpointDO(FileIndexCheckpoint checkpoint);
+
+    @Mapping(target = "completedDirs", source = "completedDirs", qualifiedByName = "jsonToSizeMap")
+    @Mapping(target = "staleFiles", source = "staleFiles", qualifiedByName = "jsonToPathList")
+    @Mapping(target = "staleDirs", source = "staleDirs", qualifiedByName = "jsonToPathList")
+    FileIndexCheckpoint toFileIndexCheckpoint(FileIndexCheckpointDO checkpointDO);
+
+    @Named("toJson")
+    default String toJson(Object value) {
+        return value != null ? JSON.toJSONString(value) : null;
+    }
+
+    @Named("jsonToSizeMap")
+    default Map<String, Long> jsonToSizeMap(String json) {
+        return json != null ? JSON.parseObject(json, new TypeReference<Map<String, Long>>() {
+        }) : new HashMap<>();
+    }
+
+    @Named("jsonToPathList")
+    default List<String> jsonToPathList(String json) {
+        return json != null ? JSON.parseArray(json, String.class) : new ArrayList<>();
+    }
+}
@@ -3,9 +3,11 @@ package com.huanzhen.fileflexmanager.infrastructure.persistence.converter;
 import com.huanzhen.fileflexmanager.domain.model.entity.Tag;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.TagDO;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 @Mapper(componentModel = "spring", uses = TimeConverter.class)
 public interface TagConverter {
     TagDO toTagDO(Tag tag);
+    @Mapping(target = "subtreeFileCount", ignore = true)
     Tag toTag(TagDO tagDO);
 } 
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("file_index_checkpoint")
+public class FileIndexCheckpointDO {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    @TableField("root_path")
+    private String rootPath;
+
+    @TableField("max_depth")
+    private Integer maxDepth;
+
+    @TableField("completed_dirs")
+    private String completedDirs;
+
+    @TableField("stale_files")
+    private String staleFiles;
+
+    @TableField("stale_dirs")
+    private String staleDirs;
+
+    @TableField("start_time")
+    private LocalDateTime startTime;
+
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+}
@@ -12,6 +12,11 @@ public class FileIndexDO {
     private Long id;
     private String path;
     private String name;
+    @TableField("name_pinyin")
+    private String namePinyin;
+    @TableField("name_initials")
+    private String nameInitials;
+    private String extension;
     private Long size;
     @TableField("mime_type")
     private String mimeType;
@@ -28,4 +33,9 @@ public class FileIndexDO {
     private LocalDateTime lastModified;
     private Boolean hidden;
     private String permissions;
+    private String owner;
+    @TableField("file_key")
+    private String fileKey;
+    @TableField("quick_hash")
+    private String quickHash;
 } 
\ No newline at end of file
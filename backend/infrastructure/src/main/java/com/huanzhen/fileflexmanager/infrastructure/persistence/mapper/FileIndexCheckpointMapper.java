@@ -0,0 +1,9 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.FileIndexCheckpointDO;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface FileIndexCheckpointMapper extends BaseMapper<FileIndexCheckpointDO> {
+}
@@ -0,0 +1,32 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentHit;
+import com.huanzhen.fileflexmanager.domain.repository.FileContentRepository;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.FileContentIndex;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+@Repository
+public class FileContentRepositoryImpl implements FileContentRepository {
+    private final FileContentIndex fileContentIndex;
+
+    public FileContentRepositoryImpl(FileContentIndex fileContentIndex) {
+        this.fileContentIndex = fileContentIndex;
+    }
+
+    @Override
+    public Page<FileContentHit> search(String keyword, int page, int size) {
+        int offset = (Math.max(1, page) - 1) * size;
+        try {
+            FileContentIndex.Result result = fileContentIndex.search(keyword, offset, size);
+            Page<FileContentHit> hitPage = new Page<>(page, size, result.total());
+            hitPage.setRecords(result.hits());
+            return hitPage;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取文件内容索引失败", e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexCheckpoint;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexCheckpointRepository;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.converter.FileIndexCheckpointConverter;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.FileIndexCheckpointDO;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.mapper.FileIndexCheckpointMapper;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class FileIndexCheckpointRepositoryImpl implements FileIndexCheckpointRepository {
+    private final FileIndexCheckpointMapper checkpointMapper;
+    private final FileIndexCheckpointConverter checkpointConverter;
+
+    public FileIndexCheckpointRepositoryImpl(FileIndexCheckpointMapper checkpointMapper,
+                                             FileIndexCheckpointConverter checkpointConverter) {
+        this.checkpointMapper = checkpointMapper;
+        this.checkpointConverter = checkpointConverter;
+    }
+
+    @Override
+    public FileIndexCheckpoint findByRootPath(String rootPath) {
+        LambdaQueryWrapper<FileIndexCheckpointDO> query = new LambdaQueryWrapper<>();
+        query.eq(FileIndexCheckpointDO::getRootPath, rootPath);
+        FileIndexCheckpointDO checkpointDO = checkpointMapper.selectOne(query);
+        return checkpointDO != null ? checkpointConverter.toFileIndexCheckpoint(checkpointDO) : null;
+    }
+
+    @Override
+    public FileIndexCheckpoint save(FileIndexCheckpoint checkpoint) {
+        FileIndexCheckpointDO checkpointDO = checkpointConverter.toFileIndexCheckpointDO(checkpoint);
+        if (checkpointDO.getId() == null) {
+            checkpointMapper.insert(checkpointDO);
+            checkpoint.setId(checkpointDO.getId());
+        } else {
+            checkpointMapper.updateById(checkpointDO);
+        }
+        return checkpoint;
+    }
+
+    @Override
+    public void deleteByRootPath(String rootPath) {
+        LambdaQueryWrapper<FileIndexCheckpointDO> query = new LambdaQueryWrapper<>();
+        query.eq(FileIndexCheckpointDO::getRootPath, rootPath);
+        checkpointMapper.delete(query);
+    }
+}
@@ -0,0 +1,97 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexFacet;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileSizeBucket;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexFacetRepository;
+import com.huanzhen.fileflexmanager.infrastructure.util.SqlUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 分面计数在每次索引完成时对根目录下的文件做一次分组统计并整体替换，
+ * 查询时只读取预先统计好的几十行计数
+ */
+@Repository
+public class FileIndexFacetRepositoryImpl implements FileIndexFacetRepository {
+    private static final String DELETE_SQL = "DELETE FROM file_index_facet WHERE root_path = ?";
+
+    private static final String INSERT_SQL_TEMPLATE = """
+            INSERT INTO file_index_facet (root_path, facet, bucket, file_count, total_size, update_time)
+            SELECT CAST(? AS VARCHAR), CAST(? AS VARCHAR), %1$s, COUNT(*), COALESCE(SUM(size), 0), CAST(? AS TIMESTAMP)
+            FROM file_index
+            WHERE path LIKE ? ESCAPE '\\' AND is_dir = FALSE %2$s
+            GROUP BY %1$s
+            """;
+
+    private static final String EXTENSION_SQL = INSERT_SQL_TEMPLATE.formatted("COALESCE(extension, '')", "");
+    private static final String SIZE_SQL = INSERT_SQL_TEMPLATE.formatted(sizeBucketExpression(), "");
+    private static final String MONTH_SQL = INSERT_SQL_TEMPLATE.formatted("TO_CHAR(last_modified, 'YYYY-MM')",
+            "AND last_modified IS NOT NULL");
+
+    private static final String SELECT_SQL = "SELECT id, root_path, facet, bucket, file_count, total_size, update_time "
+            + "FROM file_index_facet WHERE root_path = ?";
+    private static final String ROOT_PATHS_SQL = "SELECT DISTINCT root_path FROM file_index_facet";
+
+    private static final RowMapper<FileIndexFacet> ROW_MAPPER = (rs, rowNum) -> {
+        FileIndexFacet facet = new FileIndexFacet();
+        facet.setId(rs.getLong("id"));
+        facet.setRootPath(rs.getString("root_path"));
+        facet.setFacet(rs.getString("facet"));
+        facet.setBucket(rs.getString("bucket"));
+        facet.setFileCount(rs.getLong("file_count"));
+        facet.setTotalSize(rs.getLong("total_size"));
+        Timestamp updateTime = rs.getTimestamp("update_time");
+        facet.setUpdateTime(updateTime != null ? updateTime.toLocalDateTime() : null);
+        return facet;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public FileIndexFacetRepositoryImpl(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void refresh(String rootPath) {
+        String pattern = SqlUtils.childrenLikePattern(rootPath);
+        LocalDateTime now = LocalDateTime.now();
+        // 统计和替换在同一个事务中，查询不会读到统计了一半的计数
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_SQL, rootPath);
+            jdbcTemplate.update(EXTENSION_SQL, rootPath, FileIndexFacet.EXTENSION, now, pattern);
+            jdbcTemplate.update(SIZE_SQL, rootPath, FileIndexFacet.SIZE, now, pattern);
+            jdbcTemplate.update(MONTH_SQL, rootPath, FileIndexFacet.MONTH, now, pattern);
+        });
+    }
+
+    @Override
+    public List<FileIndexFacet> findByRootPath(String rootPath) {
+        return jdbcTemplate.query(SELECT_SQL, ROW_MAPPER, rootPath);
+    }
+
+    @Override
+    public List<String> findRootPaths() {
+        return jdbcTemplate.queryForList(ROOT_PATHS_SQL, String.class);
+    }
+
+    /**
+     * 按 {@link FileSizeBucket} 的下限生成分段表达式，大小未知的按0计算
+     */
+    private static String sizeBucketExpression() {
+        StringBuilder builder = new StringBuilder("CASE");
+        FileSizeBucket[] buckets = FileSizeBucket.values();
+        for (int i = buckets.length - 1; i > 0; i--) {
+            builder.append(" WHEN COALESCE(size, 0) >= ").append(buckets[i].getMinSize())
+                    .append(" THEN '").append(buckets[i].name()).append('\'');
+        }
+        return builder.append(" ELSE '").append(buckets[0].name()).append("' END").toString();
+    }
+}
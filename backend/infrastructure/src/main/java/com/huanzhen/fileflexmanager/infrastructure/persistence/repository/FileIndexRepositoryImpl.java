@@ -1,43 +1,160 @@
 package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
 
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.date.LocalDateTimeUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.req.FileQueryRequest;
 import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.converter.FileIndexConverter;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.FileIndexDO;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.mapper.FileIndexMapper;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.FileNameSearchIndex;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.FileNameTrigramIndex;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.TagBitmapIndex;
+import com.huanzhen.fileflexmanager.infrastructure.util.SqlUtils;
 import com.huanzhen.fileflexmanager.domain.repository.FileTagRepository;
+import com.huanzhen.fileflexmanager.domain.utils.CursorUtils;
+import com.huanzhen.fileflexmanager.domain.utils.FileNameKeyUtils;
 import org.apache.commons.compress.utils.Lists;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import java.time.LocalDateTime;
 import java.util.Collections;
 
 @Repository
 public class FileIndexRepositoryImpl implements FileIndexRepository {
+    /**
+     * 批量写入时每个事务包含的记录数
+     */
+    private static final int UPSERT_BATCH_SIZE = 500;
+    /**
+     * IN 查询单次最多携带的参数个数
+     */
+    private static final int QUERY_BATCH_SIZE = 500;
+    /**
+     * 清理失效记录时每批删除的记录数
+     */
+    private static final int CLEANUP_BATCH_SIZE = 1000;
+
+    /**
+     * 按 path 合并：已存在时更新（create_time不变，mime_type等可选字段为空时保留原值；
+     * md5、quick_hash 为空时只有大小和修改时间都未变化才保留原值，否则清空），不存在时插入
+     */
+    private static final String UPSERT_SQL = """
+            MERGE INTO file_index t
+            USING (SELECT CAST(? AS VARCHAR) AS path, CAST(? AS VARCHAR) AS name,
+                          CAST(? AS VARCHAR) AS name_pinyin, CAST(? AS VARCHAR) AS name_initials,
+                          CAST(? AS VARCHAR) AS extension, CAST(? AS BIGINT) AS size,
+                          CAST(? AS VARCHAR) AS mime_type, CAST(? AS VARCHAR) AS md5, CAST(? AS BOOLEAN) AS is_dir,
+                          CAST(? AS VARCHAR) AS parent_path, CAST(? AS TIMESTAMP) AS last_modified,
+                          CAST(? AS BOOLEAN) AS hidden, CAST(? AS VARCHAR) AS permissions, CAST(? AS VARCHAR) AS owner,
+                          CAST(? AS VARCHAR) AS file_key, CAST(? AS VARCHAR) AS quick_hash,
+                          CAST(? AS TIMESTAMP) AS now_time) s
+            ON t.path = s.path
+            WHEN MATCHED THEN UPDATE SET
+                name = s.name, name_pinyin = s.name_pinyin, name_initials = s.name_initials,
+                extension = s.extension, size = s.size, mime_type = COALESCE(s.mime_type, t.mime_type),
+                md5 = CASE WHEN s.md5 IS NOT NULL THEN s.md5
+                           WHEN t.size = s.size AND t.last_modified = s.last_modified THEN t.md5 END,
+                quick_hash = CASE WHEN s.quick_hash IS NOT NULL THEN s.quick_hash
+                                  WHEN t.size = s.size AND t.last_modified = s.last_modified THEN t.quick_hash END,
+                is_dir = s.is_dir, parent_path = s.parent_path,
+                last_modified = s.last_modified, hidden = COALESCE(s.hidden, t.hidden),
+                permissions = COALESCE(s.permissions, t.permissions), owner = COALESCE(s.owner, t.owner),
+                file_key = COALESCE(s.file_key, t.file_key),
+                update_time = s.now_time
+            WHEN NOT MATCHED THEN INSERT
+                (path, name, name_pinyin, name_initials, extension, size, mime_type, md5, is_dir, parent_path, create_time,
+                 update_time, last_modified, hidden, permissions, owner, file_key, quick_hash)
+                VALUES (s.path, s.name, s.name_pinyin, s.name_initials, s.extension, s.size, s.mime_type, s.md5, s.is_dir,
+                        s.parent_path, s.now_time, s.now_time, s.last_modified, COALESCE(s.hidden, FALSE), s.permissions,
+                        s.owner, s.file_key, s.quick_hash)
+            """;
+
+    private static final String UPDATE_MD5_SQL = "UPDATE file_index SET md5 = ?, update_time = ? WHERE id = ?";
+
+    /**
+     * 按 path 插入不存在的记录，已存在时不做任何修改
+     */
+    private static final String INSERT_MISSING_SQL = """
+            MERGE INTO file_index t
+            USING (SELECT CAST(? AS VARCHAR) AS path, CAST(? AS VARCHAR) AS name,
+                          CAST(? AS VARCHAR) AS name_pinyin, CAST(? AS VARCHAR) AS name_initials,
+                          CAST(? AS VARCHAR) AS extension, CAST(? AS BIGINT) AS size,
+                          CAST(? AS BOOLEAN) AS is_dir, CAST(? AS VARCHAR) AS parent_path,
+                          CAST(? AS TIMESTAMP) AS last_modified, CAST(? AS TIMESTAMP) AS now_time) s
+            ON t.path = s.path
+            WHEN NOT MATCHED THEN INSERT
+                (path, name, name_pinyin, name_initials, extension, size, is_dir, parent_path, create_time,
+                 update_time, last_modified, hidden)
+                VALUES (s.path, s.name, s.name_pinyin, s.name_initials, s.extension, s.size, s.is_dir, s.parent_path,
+                        s.now_time, s.now_time, s.last_modified, FALSE)
+            """;
+
+    /**
+     * 只对目录下还没有完整MD5的记录的快速哈希分组计数，不扫描整张表
+     */
+    private static final String QUICK_HASH_COLLISION_SQL = """
+            SELECT f.quick_hash FROM file_index f
+            WHERE f.quick_hash IN (SELECT DISTINCT quick_hash FROM file_index
+                                   WHERE md5 IS NULL AND quick_hash IS NOT NULL AND (path = ? OR path LIKE ? ESCAPE '\\'))
+            GROUP BY f.quick_hash HAVING COUNT(*) > 1
+            """;
+
     private final FileIndexMapper fileIndexMapper;
     private final FileIndexConverter fileIndexConverter;
     private final FileTagRepository fileTagRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FileNameSearchIndex fileNameSearchIndex;
+    private final TagBitmapIndex tagBitmapIndex;
 
     public FileIndexRepositoryImpl(FileIndexMapper fileIndexMapper,
                                    FileIndexConverter fileIndexConverter,
-                                   FileTagRepository fileTagRepository) {
+                                   FileTagRepository fileTagRepository,
+                                   JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   FileNameSearchIndex fileNameSearchIndex,
+                                   TagBitmapIndex tagBitmapIndex) {
         this.fileIndexMapper = fileIndexMapper;
         this.fileIndexConverter = fileIndexConverter;
         this.fileTagRepository = fileTagRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.fileNameSearchIndex = fileNameSearchIndex;
+        this.tagBitmapIndex = tagBitmapIndex;
     }
 
     @Override
     public FileIndex save(FileIndex fileIndex) {
         fileIndex.setUpdateTime(LocalDateTime.now());
         fileIndex.setCreateTime(LocalDateTime.now());
+        fillNameKeys(fileIndex);
         FileIndexDO fileIndexDO = fileIndexConverter.toFileIndexDO(fileIndex);
         fileIndexMapper.insert(fileIndexDO);
+        fileNameSearchIndex.add(toDocument(fileIndex));
+        if (fileIndex.getMd5() != null) {
+            tagBitmapIndex.hashesChanged();
+        }
         return fileIndexConverter.toFileIndex(fileIndexDO);
     }
 
@@ -65,7 +182,11 @@ public class FileIndexRepositoryImpl implements FileIndexRepository {
     @Override
     public void updateFileIndex(FileIndex fileIndex) {
         fileIndex.setUpdateTime(LocalDateTime.now());
+        fillNameKeys(fileIndex);
         fileIndexMapper.updateById(fileIndexConverter.toFileIndexDO(fileIndex));
+        // 路径变化时原路径在搜索取回记录时移除
+        fileNameSearchIndex.add(toDocument(fileIndex));
+        tagBitmapIndex.hashesChanged();
     }
 
     @Override
@@ -73,11 +194,18 @@ public class FileIndexRepositoryImpl implements FileIndexRepository {
         LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
         query.eq(FileIndexDO::getPath, path);
         fileIndexMapper.delete(query);
+        fileNameSearchIndex.remove(path);
+        tagBitmapIndex.hashesChanged();
     }
 
     @Override
     public void deleteById(Long id) {
+        FileIndexDO fileIndexDO = fileIndexMapper.selectById(id);
         fileIndexMapper.deleteById(id);
+        if (fileIndexDO != null) {
+            fileNameSearchIndex.remove(fileIndexDO.getPath());
+            tagBitmapIndex.hashesChanged();
+        }
     }
 
     @Override
@@ -108,16 +236,160 @@ public class FileIndexRepositoryImpl implements FileIndexRepository {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 搜索索引加载完成后通过三元组倒排索引查询，只按路径取回这一页的记录；
+     * 加载完成前回退为数据库模糊查询
+     */
     @Override
     public Page<FileIndex> search(String keyword, int page, int size) {
+        if (!fileNameSearchIndex.isReady()) {
+            return searchByLike(keyword, page, size);
+        }
+        int offset = (Math.max(1, page) - 1) * size;
+        FileNameTrigramIndex.Result result = fileNameSearchIndex.search(keyword, offset, size);
+        List<FileIndex> records = findIndexedPaths(result.paths());
+        Page<FileIndex> fileIndexPage = new Page<>(page, size, result.total() - (result.paths().size() - records.size()));
+        fileIndexPage.setRecords(records);
+        return fileIndexPage;
+    }
+
+    /**
+     * 搜索索引可用时按相关度翻页，游标为上一页最后一条的排序值；
+     * 否则按 (name, id) 做 keyset 查询，不统计总数。两种游标互不通用，
+     * 数据库游标在索引加载完成后仍按数据库继续翻页
+     */
+    @Override
+    public CursorPage<FileIndex> searchByCursor(String keyword, String cursor, int size) {
+        JSONObject after = StrUtil.isBlank(cursor) ? null : CursorUtils.decode(cursor);
+        boolean dbCursor = after != null && "d".equals(after.getString("m"));
+        if (!fileNameSearchIndex.isReady() || dbCursor) {
+            return searchByLikeCursor(keyword, after, size);
+        }
+        FileNameTrigramIndex.Hit afterHit = null;
+        if (after != null) {
+            if (after.getString("p") == null) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            afterHit = new FileNameTrigramIndex.Hit(after.getIntValue("s"), after.getIntValue("l"), after.getString("p"));
+        }
+        FileNameTrigramIndex.Result result = fileNameSearchIndex.search(keyword, afterHit, size);
+        List<FileIndex> records = findIndexedPaths(result.paths());
+        String nextCursor = null;
+        if (result.hasMore() && result.last() != null) {
+            JSONObject json = new JSONObject();
+            json.put("m", "i");
+            json.put("s", result.last().score());
+            json.put("l", result.last().nameLength());
+            json.put("p", result.last().path());
+            nextCursor = CursorUtils.encode(json);
+        }
+        return new CursorPage<>(records, nextCursor, result.total() - (result.paths().size() - records.size()));
+    }
+
+    /**
+     * 按搜索索引返回的路径顺序取回记录，库中已不存在的路径从搜索索引中移除
+     */
+    private List<FileIndex> findIndexedPaths(List<String> paths) {
+        Map<String, FileIndex> byPath = findByPaths(paths).stream()
+                .collect(Collectors.toMap(FileIndex::getPath, fileIndex -> fileIndex, (a, b) -> a));
+        List<FileIndex> records = new ArrayList<>(paths.size());
+        List<String> missing = new ArrayList<>();
+        for (String path : paths) {
+            FileIndex fileIndex = byPath.get(path);
+            if (fileIndex != null) {
+                records.add(fileIndex);
+            } else {
+                missing.add(path);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // 写入后回滚等原因留下的路径，库中已不存在
+            fileNameSearchIndex.removeAll(missing);
+        }
+        return records;
+    }
+
+    private Page<FileIndex> searchByLike(String keyword, int page, int size) {
         Page<FileIndexDO> pageParam = new Page<>(page, size);
+        Page<FileIndexDO> result = fileIndexMapper.selectPage(pageParam, likeQuery(keyword));
+        return convertToFileIndexPage(result);
+    }
+
+    private CursorPage<FileIndex> searchByLikeCursor(String keyword, JSONObject after, int size) {
+        return selectByNameCursor(likeQuery(keyword), after, size);
+    }
+
+    /**
+     * 扩展名、大小、修改时间等条件都直接在数据库中过滤，有关键字时按数据库模糊查询匹配
+     */
+    @Override
+    public CursorPage<FileIndex> query(FileQueryRequest request) {
+        LambdaQueryWrapper<FileIndexDO> query = StrUtil.isBlank(request.keyword())
+                ? new LambdaQueryWrapper<>() : likeQuery(request.keyword());
+        if (StrUtil.isNotBlank(request.path())) {
+            // 目录名中的 % 和 _ 按字面匹配，不包含名称相近的兄弟目录
+            query.apply("path LIKE {0} ESCAPE '\\'", SqlUtils.childrenLikePattern(request.path()));
+        }
+        if (CollUtil.isNotEmpty(request.extensions())) {
+            query.in(FileIndexDO::getExtension, request.extensions().stream()
+                    .map(extension -> StrUtil.removePrefix(StrUtil.trim(extension), ".").toLowerCase())
+                    .distinct()
+                    .toList());
+        }
+        query.ge(request.minSize() != null, FileIndexDO::getSize, request.minSize())
+                .le(request.maxSize() != null, FileIndexDO::getSize, request.maxSize())
+                .eq(request.directory() != null, FileIndexDO::getIsDir, request.directory());
+        if (request.modifiedAfter() != null) {
+            query.ge(FileIndexDO::getLastModified, LocalDateTimeUtil.of(request.modifiedAfter()));
+        }
+        if (request.modifiedBefore() != null) {
+            query.lt(FileIndexDO::getLastModified, LocalDateTimeUtil.of(request.modifiedBefore()));
+        }
+        JSONObject after = StrUtil.isBlank(request.cursor()) ? null : CursorUtils.decode(request.cursor());
+        return selectByNameCursor(query, after, request.size());
+    }
+
+    /**
+     * 在查询条件上按 (name, id) 做 keyset 翻页，不统计总数
+     *
+     * @param after 上一页最后一条的名称和id，为null时从第一条开始
+     */
+    private CursorPage<FileIndex> selectByNameCursor(LambdaQueryWrapper<FileIndexDO> query, JSONObject after, int size) {
+        if (after != null) {
+            String afterName = after.getString("n");
+            Long afterId = after.getLong("i");
+            if (afterName == null || afterId == null) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            query.and(wrapper -> wrapper.gt(FileIndexDO::getName, afterName)
+                    .or(inner -> inner.eq(FileIndexDO::getName, afterName).gt(FileIndexDO::getId, afterId)));
+        }
+        query.orderByAsc(FileIndexDO::getName, FileIndexDO::getId);
+        // 多取一条判断是否还有下一页
+        List<FileIndexDO> rows = fileIndexMapper.selectPage(new Page<>(1, size + 1, false), query).getRecords();
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            FileIndexDO last = rows.get(rows.size() - 1);
+            JSONObject json = new JSONObject();
+            json.put("m", "d");
+            json.put("n", last.getName());
+            json.put("i", last.getId());
+            nextCursor = CursorUtils.encode(json);
+        }
+        return new CursorPage<>(fileIndexConverter.toFileIndexes(rows), nextCursor, null);
+    }
+
+    private LambdaQueryWrapper<FileIndexDO> likeQuery(String keyword) {
         LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
-        query.like(FileIndexDO::getName, keyword)
+        query.and(wrapper -> wrapper.like(FileIndexDO::getName, keyword)
                 .or()
-                .like(FileIndexDO::getPath, keyword);
-
-        Page<FileIndexDO> result = fileIndexMapper.selectPage(pageParam, query);
-        return convertToFileIndexPage(result);
+                .like(FileIndexDO::getPath, keyword)
+                .or()
+                .like(FileIndexDO::getNamePinyin, keyword.toLowerCase())
+                .or()
+                .like(FileIndexDO::getNameInitials, keyword.toLowerCase()));
+        return query;
     }
 
     @Override
@@ -134,29 +406,248 @@ public class FileIndexRepositoryImpl implements FileIndexRepository {
     }
 
     @Override
-    public int deleteStaleIndexes(String rootPath, LocalDateTime beforeTime) {
-        deleteByPath(rootPath);
+    public List<FileIndex> findAllByIds(Collection<Long> ids) {
+        if (CollUtil.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        List<FileIndex> result = new ArrayList<>(ids.size());
+        for (List<Long> chunk : ListUtil.partition(new ArrayList<>(ids), QUERY_BATCH_SIZE)) {
+            LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+            query.in(FileIndexDO::getId, chunk).orderByAsc(FileIndexDO::getId);
+            result.addAll(fileIndexConverter.toFileIndexes(fileIndexMapper.selectList(query)));
+        }
+        result.sort(Comparator.comparing(FileIndex::getId));
+        return result;
+    }
+
+    @Override
+    public int deleteStaleIndexes(String rootPath, LocalDateTime beforeTime, LongConsumer progressListener) {
+        int deleted = deleteByPaths(List.of(rootPath));
+        // 目录名中的 % 和 _ 按字面匹配，不能误删名称相近的兄弟目录
+        String pattern = SqlUtils.childrenLikePattern(rootPath);
+
+        // 按id游标分批：每批只查询id，删除标签关联和索引记录在同一个事务中
+        long lastId = 0L;
+        while (true) {
+            LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+            query.select(FileIndexDO::getId, FileIndexDO::getPath)
+                    .apply("path LIKE {0} ESCAPE '\\'", pattern)
+                    .lt(FileIndexDO::getUpdateTime, beforeTime)
+                    .gt(FileIndexDO::getId, lastId)
+                    .orderByAsc(FileIndexDO::getId);
+            List<FileIndexDO> batch = fileIndexMapper.selectPage(new Page<>(1, CLEANUP_BATCH_SIZE, false), query)
+                    .getRecords();
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<Long> fileIds = batch.stream().map(FileIndexDO::getId).collect(Collectors.toList());
+            lastId = fileIds.get(fileIds.size() - 1);
+
+            Integer batchDeleted = transactionTemplate.execute(status -> {
+                fileTagRepository.deleteByFileIds(fileIds);
+                return fileIndexMapper.deleteByIds(fileIds);
+            });
+            fileNameSearchIndex.removeAll(batch.stream().map(FileIndexDO::getPath).toList());
+            deleted += batchDeleted != null ? batchDeleted : 0;
+            tagBitmapIndex.hashesChanged();
+            if (progressListener != null) {
+                progressListener.accept(deleted);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public long countByPathPrefix(String rootPath) {
         LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
-        String path = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+        query.eq(FileIndexDO::getPath, rootPath)
+                .or()
+                .apply("path LIKE {0} ESCAPE '\\'", SqlUtils.childrenLikePattern(rootPath));
+        return fileIndexMapper.selectCount(query);
+    }
 
-        // 构建查询条件
-        query.likeRight(FileIndexDO::getPath, path)
-                .lt(FileIndexDO::getUpdateTime, beforeTime);
+    @Override
+    public List<FileIndex> findByPaths(Collection<String> paths) {
+        if (CollUtil.isEmpty(paths)) {
+            return Collections.emptyList();
+        }
+        List<FileIndex> result = new ArrayList<>(paths.size());
+        for (List<String> chunk : ListUtil.partition(new ArrayList<>(paths), QUERY_BATCH_SIZE)) {
+            LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+            query.in(FileIndexDO::getPath, chunk);
+            result.addAll(fileIndexConverter.toFileIndexes(fileIndexMapper.selectList(query)));
+        }
+        return result;
+    }
 
-        // 先查询要删除的文件ID列表
-        List<Long> fileIds = fileIndexMapper.selectList(query)
-                .stream()
-                .map(FileIndexDO::getId)
-                .collect(Collectors.toList());
+    @Override
+    public void upsertAll(List<FileIndex> fileIndexes) {
+        if (CollUtil.isEmpty(fileIndexes)) {
+            return;
+        }
+        boolean hashesChanged = false;
+        for (List<FileIndex> chunk : ListUtil.partition(fileIndexes, UPSERT_BATCH_SIZE)) {
+            LocalDateTime now = LocalDateTime.now();
+            chunk.forEach(FileIndexRepositoryImpl::fillNameKeys);
+            hashesChanged = hashesChanged || changesHashes(chunk);
+            // 每批记录使用一个事务，避免自动提交带来的逐条刷盘
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPSERT_SQL, chunk, chunk.size(), (ps, fileIndex) -> {
+                        ps.setString(1, fileIndex.getPath());
+                        ps.setString(2, fileIndex.getName());
+                        ps.setString(3, fileIndex.getNamePinyin());
+                        ps.setString(4, fileIndex.getNameInitials());
+                        ps.setString(5, fileIndex.getExtension());
+                        ps.setObject(6, fileIndex.getSize());
+                        ps.setString(7, fileIndex.getMimeType());
+                        ps.setString(8, fileIndex.getMd5());
+                        ps.setObject(9, fileIndex.getIsDir());
+                        ps.setString(10, fileIndex.getParentPath());
+                        ps.setObject(11, fileIndex.getLastModified());
+                        ps.setObject(12, fileIndex.getHidden());
+                        ps.setString(13, fileIndex.getPermissions());
+                        ps.setString(14, fileIndex.getOwner());
+                        ps.setString(15, fileIndex.getFileKey());
+                        ps.setString(16, fileIndex.getQuickHash());
+                        ps.setObject(17, now);
+                    }));
+            chunk.forEach(fileIndex -> fileIndex.setUpdateTime(now));
+            fileNameSearchIndex.addAll(chunk.stream().map(FileIndexRepositoryImpl::toDocument).toList());
+        }
+        // md5 有变化时绑定文件标签匹配到的文件需要重新查询，索引任务中大部分批次不涉及 md5，不必丢弃缓存
+        if (hashesChanged) {
+            tagBitmapIndex.hashesChanged();
+        }
+    }
 
-        if (!fileIds.isEmpty()) {
-            // 删除文件标签关联
-            fileTagRepository.deleteByFileIds(fileIds);
-            // 删除文件索引
-            return fileIndexMapper.delete(query);
+    /**
+     * 按 UPSERT_SQL 的规则判断写入这批记录是否会改变 md5：设置了与原值不同的 md5，
+     * 或原有的 md5 因大小、修改时间变化被清空
+     */
+    private boolean changesHashes(List<FileIndex> chunk) {
+        Map<String, FileIndex> byPath = new HashMap<>(chunk.size());
+        chunk.forEach(fileIndex -> byPath.put(fileIndex.getPath(), fileIndex));
+        LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+        query.select(FileIndexDO::getPath, FileIndexDO::getMd5, FileIndexDO::getSize, FileIndexDO::getLastModified)
+                .isNotNull(FileIndexDO::getMd5)
+                .in(FileIndexDO::getPath, byPath.keySet());
+        Set<String> hashedPaths = new HashSet<>();
+        for (FileIndexDO existing : fileIndexMapper.selectList(query)) {
+            FileIndex fileIndex = byPath.get(existing.getPath());
+            hashedPaths.add(existing.getPath());
+            if (fileIndex.getMd5() != null) {
+                if (!fileIndex.getMd5().equals(existing.getMd5())) {
+                    return true;
+                }
+            } else if (!Objects.equals(existing.getSize(), fileIndex.getSize())
+                    || !Objects.equals(existing.getLastModified(), fileIndex.getLastModified())) {
+                return true;
+            }
         }
+        return byPath.values().stream()
+                .anyMatch(fileIndex -> fileIndex.getMd5() != null && !hashedPaths.contains(fileIndex.getPath()));
+    }
 
-        return 0;
+    @Override
+    public void updateMd5s(Map<Long, String> md5ById) {
+        if (CollUtil.isEmpty(md5ById)) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (List<Map.Entry<Long, String>> chunk : ListUtil.partition(new ArrayList<>(md5ById.entrySet()), UPSERT_BATCH_SIZE)) {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPDATE_MD5_SQL, chunk, chunk.size(), (ps, entry) -> {
+                        ps.setString(1, entry.getValue());
+                        ps.setObject(2, now);
+                        ps.setLong(3, entry.getKey());
+                    }));
+        }
+        tagBitmapIndex.hashesChanged();
+    }
+
+    @Override
+    public List<FileIndex> insertMissing(List<FileIndex> fileIndexes) {
+        if (CollUtil.isEmpty(fileIndexes)) {
+            return Collections.emptyList();
+        }
+        for (List<FileIndex> chunk : ListUtil.partition(fileIndexes, UPSERT_BATCH_SIZE)) {
+            LocalDateTime now = LocalDateTime.now();
+            chunk.forEach(FileIndexRepositoryImpl::fillNameKeys);
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_MISSING_SQL, chunk, chunk.size(), (ps, fileIndex) -> {
+                        ps.setString(1, fileIndex.getPath());
+                        ps.setString(2, fileIndex.getName());
+                        ps.setString(3, fileIndex.getNamePinyin());
+                        ps.setString(4, fileIndex.getNameInitials());
+                        ps.setString(5, fileIndex.getExtension());
+                        ps.setObject(6, fileIndex.getSize());
+                        ps.setObject(7, fileIndex.getIsDir());
+                        ps.setString(8, fileIndex.getParentPath());
+                        ps.setObject(9, fileIndex.getLastModified());
+                        ps.setObject(10, now);
+                    }));
+            fileNameSearchIndex.addAll(chunk.stream().map(FileIndexRepositoryImpl::toDocument).toList());
+        }
+        // 并发插入时以库中的记录为准，统一重新查询以获取id
+        return findByPaths(fileIndexes.stream().map(FileIndex::getPath).toList());
+    }
+
+    @Override
+    public int deleteByPaths(Collection<String> paths) {
+        if (CollUtil.isEmpty(paths)) {
+            return 0;
+        }
+        int deleted = 0;
+        for (List<String> chunk : ListUtil.partition(new ArrayList<>(paths), QUERY_BATCH_SIZE)) {
+            LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+            query.select(FileIndexDO::getId).in(FileIndexDO::getPath, chunk);
+            List<Long> fileIds = fileIndexMapper.selectList(query).stream()
+                    .map(FileIndexDO::getId)
+                    .collect(Collectors.toList());
+            if (!fileIds.isEmpty()) {
+                Integer chunkDeleted = transactionTemplate.execute(status -> {
+                    fileTagRepository.deleteByFileIds(fileIds);
+                    return fileIndexMapper.deleteByIds(fileIds);
+                });
+                deleted += chunkDeleted != null ? chunkDeleted : 0;
+                tagBitmapIndex.hashesChanged();
+            }
+            fileNameSearchIndex.removeAll(chunk);
+        }
+        return deleted;
+    }
+
+    @Override
+    public Set<String> findCollidingQuickHashes(String rootPath) {
+        return new HashSet<>(jdbcTemplate.queryForList(QUICK_HASH_COLLISION_SQL, String.class,
+                rootPath, SqlUtils.childrenLikePattern(rootPath)));
+    }
+
+    @Override
+    public List<FileIndex> findQuickHashCollisions(String rootPath, Collection<String> quickHashes) {
+        if (CollUtil.isEmpty(quickHashes)) {
+            return Collections.emptyList();
+        }
+        LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+        query.and(wrapper -> wrapper.eq(FileIndexDO::getPath, rootPath).or()
+                        .apply("path LIKE {0} ESCAPE '\\'", SqlUtils.childrenLikePattern(rootPath)))
+                .isNull(FileIndexDO::getMd5)
+                .in(FileIndexDO::getQuickHash, quickHashes)
+                .orderByAsc(FileIndexDO::getId);
+        return fileIndexConverter.toFileIndexes(fileIndexMapper.selectList(query));
+    }
+
+    @Override
+    public List<FileIndex> findFilesUnder(String rootPath, long maxSize, long afterId, int limit) {
+        LambdaQueryWrapper<FileIndexDO> query = new LambdaQueryWrapper<>();
+        query.and(wrapper -> wrapper.eq(FileIndexDO::getPath, rootPath).or()
+                        .apply("path LIKE {0} ESCAPE '\\'", SqlUtils.childrenLikePattern(rootPath)))
+                .eq(FileIndexDO::getIsDir, false)
+                .le(FileIndexDO::getSize, maxSize)
+                .gt(FileIndexDO::getId, afterId)
+                .orderByAsc(FileIndexDO::getId);
+        return fileIndexConverter.toFileIndexes(
+                fileIndexMapper.selectPage(new Page<>(1, limit, false), query).getRecords());
     }
 
     @Override
@@ -169,6 +660,22 @@ public class FileIndexRepositoryImpl implements FileIndexRepository {
         return fileIndexConverter.toFileIndexes(fileIndexMapper.selectList(queryWrapper));
     }
 
+    /**
+     * 按名称计算拼音检索键和扩展名，名称不含汉字时拼音为空，文件夹没有扩展名
+     */
+    private static void fillNameKeys(FileIndex fileIndex) {
+        FileNameKeyUtils.PinyinKeys keys = FileNameKeyUtils.pinyinKeys(fileIndex.getName());
+        fileIndex.setNamePinyin(keys != null ? keys.full() : null);
+        fileIndex.setNameInitials(keys != null ? keys.initials() : null);
+        fileIndex.setExtension(Boolean.TRUE.equals(fileIndex.getIsDir()) ? null
+                : FileNameKeyUtils.extension(fileIndex.getName()));
+    }
+
+    private static FileNameTrigramIndex.Document toDocument(FileIndex fileIndex) {
+        return FileNameTrigramIndex.Document.of(fileIndex.getPath(), fileIndex.getNamePinyin(),
+                fileIndex.getNameInitials());
+    }
+
     // 工具方法：转换分页结果
     private Page<FileIndex> convertToFileIndexPage(Page<FileIndexDO> result) {
         Page<FileIndex> fileIndexPage = new Page<>(result.getCurrent(), result.getSize(), result.getTotal());
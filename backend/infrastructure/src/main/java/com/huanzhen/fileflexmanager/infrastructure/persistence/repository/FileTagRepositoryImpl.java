@@ -1,31 +1,49 @@
 package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.collection.ListUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileTag;
 import com.huanzhen.fileflexmanager.domain.repository.FileTagRepository;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.converter.FileTagConverter;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.FileTagDO;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.mapper.FileTagMapper;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.TagBitmapIndex;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.Collections;
 
 @Repository
 public class FileTagRepositoryImpl implements FileTagRepository {
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL = "INSERT INTO file_tag (file_id, tag_id, create_time) VALUES (?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM file_tag WHERE file_id = ? AND tag_id = ?";
+
     private final FileTagMapper fileTagMapper;
     private final FileTagConverter fileTagConverter;
+    private final TagBitmapIndex tagBitmapIndex;
+    private final JdbcTemplate jdbcTemplate;
 
-    public FileTagRepositoryImpl(FileTagMapper fileTagMapper, FileTagConverter fileTagConverter) {
+    public FileTagRepositoryImpl(FileTagMapper fileTagMapper, FileTagConverter fileTagConverter,
+                                 TagBitmapIndex tagBitmapIndex, JdbcTemplate jdbcTemplate) {
         this.fileTagMapper = fileTagMapper;
         this.fileTagConverter = fileTagConverter;
+        this.tagBitmapIndex = tagBitmapIndex;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
     public FileTag save(FileTag fileTag) {
         FileTagDO fileTagDO = fileTagConverter.toFileTagDO(fileTag);
         fileTagMapper.insert(fileTagDO);
+        tagBitmapIndex.addFileTag(fileTag.getTagId(), fileTag.getFileId());
         return fileTagConverter.toFileTag(fileTagDO);
     }
 
@@ -51,7 +69,9 @@ public class FileTagRepositoryImpl implements FileTagRepository {
     public int deleteByFileId(Long fileId) {
         LambdaQueryWrapper<FileTagDO> query = new LambdaQueryWrapper<>();
         query.eq(FileTagDO::getFileId, fileId);
-       return fileTagMapper.delete(query);
+        int deleted = fileTagMapper.delete(query);
+        tagBitmapIndex.removeFiles(List.of(fileId));
+        return deleted;
     }
 
     @Override
@@ -59,6 +79,7 @@ public class FileTagRepositoryImpl implements FileTagRepository {
         LambdaQueryWrapper<FileTagDO> query = new LambdaQueryWrapper<>();
         query.eq(FileTagDO::getTagId, tagId);
         fileTagMapper.delete(query);
+        tagBitmapIndex.removeTag(tagId);
     }
 
     @Override
@@ -67,6 +88,7 @@ public class FileTagRepositoryImpl implements FileTagRepository {
         query.eq(FileTagDO::getFileId, fileId)
              .eq(FileTagDO::getTagId, tagId);
         fileTagMapper.delete(query);
+        tagBitmapIndex.removeFileTag(tagId, fileId);
     }
 
     @Override
@@ -75,6 +97,7 @@ public class FileTagRepositoryImpl implements FileTagRepository {
             LambdaQueryWrapper<FileTagDO> query = new LambdaQueryWrapper<>();
             query.in(FileTagDO::getFileId, fileIds);
             fileTagMapper.delete(query);
+            tagBitmapIndex.removeFiles(fileIds);
         }
     }
 
@@ -89,4 +112,48 @@ public class FileTagRepositoryImpl implements FileTagRepository {
                 .map(fileTagConverter::toFileTag)
                 .collect(Collectors.toList());
     }
-} 
\ No newline at end of file
+
+    @Override
+    public List<FileTag> findByFileIds(Collection<Long> fileIds) {
+        if (CollUtil.isEmpty(fileIds)) {
+            return Collections.emptyList();
+        }
+        List<FileTag> result = new ArrayList<>();
+        for (List<Long> chunk : ListUtil.partition(new ArrayList<>(fileIds), BATCH_SIZE)) {
+            LambdaQueryWrapper<FileTagDO> query = new LambdaQueryWrapper<>();
+            query.in(FileTagDO::getFileId, chunk);
+            fileTagMapper.selectList(query).forEach(fileTagDO -> result.add(fileTagConverter.toFileTag(fileTagDO)));
+        }
+        return result;
+    }
+
+    @Override
+    public void saveAll(List<FileTag> fileTags) {
+        if (CollUtil.isEmpty(fileTags)) {
+            return;
+        }
+        for (List<FileTag> chunk : ListUtil.partition(fileTags, BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, chunk, chunk.size(), (ps, fileTag) -> {
+                ps.setLong(1, fileTag.getFileId());
+                ps.setLong(2, fileTag.getTagId());
+                ps.setTimestamp(3, Timestamp.valueOf(fileTag.getCreateTime() != null
+                        ? fileTag.getCreateTime() : LocalDateTime.now()));
+            });
+        }
+        fileTags.forEach(fileTag -> tagBitmapIndex.addFileTag(fileTag.getTagId(), fileTag.getFileId()));
+    }
+
+    @Override
+    public void deleteAll(List<FileTag> fileTags) {
+        if (CollUtil.isEmpty(fileTags)) {
+            return;
+        }
+        for (List<FileTag> chunk : ListUtil.partition(fileTags, BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, chunk, chunk.size(), (ps, fileTag) -> {
+                ps.setLong(1, fileTag.getFileId());
+                ps.setLong(2, fileTag.getTagId());
+            });
+        }
+        fileTags.forEach(fileTag -> tagBitmapIndex.removeFileTag(fileTag.getTagId(), fileTag.getFileId()));
+    }
+}
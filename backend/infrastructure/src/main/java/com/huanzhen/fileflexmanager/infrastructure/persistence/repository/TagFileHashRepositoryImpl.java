@@ -1,32 +1,49 @@
 package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.collection.ListUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.huanzhen.fileflexmanager.domain.model.entity.TagFileHash;
 import com.huanzhen.fileflexmanager.domain.repository.TagFileHashRepository;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.converter.TagFileHashConverter;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.TagFileHashDO;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.mapper.TagFileHashMapper;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.TagBitmapIndex;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Repository
 public class TagFileHashRepositoryImpl implements TagFileHashRepository {
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL = "INSERT INTO tag_file_hash (tag_id, file_hash, create_time) VALUES (?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM tag_file_hash WHERE tag_id = ? AND file_hash = ?";
+
     private final TagFileHashMapper tagFileHashMapper;
     private final TagFileHashConverter tagFileHashConverter;
+    private final TagBitmapIndex tagBitmapIndex;
+    private final JdbcTemplate jdbcTemplate;
 
-    public TagFileHashRepositoryImpl(TagFileHashMapper tagFileHashMapper, TagFileHashConverter tagFileHashConverter) {
+    public TagFileHashRepositoryImpl(TagFileHashMapper tagFileHashMapper, TagFileHashConverter tagFileHashConverter,
+                                     TagBitmapIndex tagBitmapIndex, JdbcTemplate jdbcTemplate) {
         this.tagFileHashMapper = tagFileHashMapper;
         this.tagFileHashConverter = tagFileHashConverter;
+        this.tagBitmapIndex = tagBitmapIndex;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Override
     public TagFileHash save(TagFileHash tagFileHash) {
         TagFileHashDO tagFileHashDO = tagFileHashConverter.toTagFileHashDO(tagFileHash);
         tagFileHashMapper.insert(tagFileHashDO);
+        tagBitmapIndex.tagHashesChanged(tagFileHash.getTagId());
         return tagFileHashConverter.toTagFileHash(tagFileHashDO);
     }
 
@@ -53,13 +70,19 @@ public class TagFileHashRepositoryImpl implements TagFileHashRepository {
         LambdaQueryWrapper<TagFileHashDO> query = new LambdaQueryWrapper<>();
         query.eq(TagFileHashDO::getTagId, tagId);
         tagFileHashMapper.delete(query);
+        tagBitmapIndex.tagHashesChanged(tagId);
     }
 
     @Override
     public int deleteByFileHash(String fileHash) {
         LambdaQueryWrapper<TagFileHashDO> query = new LambdaQueryWrapper<>();
         query.eq(TagFileHashDO::getFileHash, fileHash);
-        return tagFileHashMapper.delete(query);
+        int deleted = tagFileHashMapper.delete(query);
+        if (deleted > 0) {
+            // 不知道涉及哪些标签，全部重新查询
+            tagBitmapIndex.hashesChanged();
+        }
+        return deleted;
     }
 
     @Override
@@ -68,14 +91,24 @@ public class TagFileHashRepositoryImpl implements TagFileHashRepository {
         query.eq(TagFileHashDO::getTagId, tagId)
                 .eq(TagFileHashDO::getFileHash, fileHash);
         tagFileHashMapper.delete(query);
+        tagBitmapIndex.tagHashesChanged(tagId);
     }
 
     @Override
-    @Transactional
     public List<TagFileHash> saveAll(List<TagFileHash> tagFileHashes) {
-        return tagFileHashes.stream()
-                .map(this::save)
-                .collect(Collectors.toList());
+        if (CollUtil.isEmpty(tagFileHashes)) {
+            return tagFileHashes;
+        }
+        for (List<TagFileHash> chunk : ListUtil.partition(tagFileHashes, BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, chunk, chunk.size(), (ps, tagFileHash) -> {
+                ps.setLong(1, tagFileHash.getTagId());
+                ps.setString(2, tagFileHash.getFileHash());
+                ps.setTimestamp(3, Timestamp.valueOf(tagFileHash.getCreateTime() != null
+                        ? tagFileHash.getCreateTime() : LocalDateTime.now()));
+            });
+        }
+        tagFileHashes.stream().map(TagFileHash::getTagId).distinct().forEach(tagBitmapIndex::tagHashesChanged);
+        return tagFileHashes;
     }
 
     @Override
@@ -98,4 +131,33 @@ public class TagFileHashRepositoryImpl implements TagFileHashRepository {
         TagFileHashDO tagFileHashDO = tagFileHashMapper.selectOne(query);
         return tagFileHashDO != null ? tagFileHashConverter.toTagFileHash(tagFileHashDO) : null;
     }
-} 
\ No newline at end of file
+
+    @Override
+    public List<TagFileHash> findByFileHashes(Collection<String> fileHashes) {
+        if (CollUtil.isEmpty(fileHashes)) {
+            return Collections.emptyList();
+        }
+        List<TagFileHash> result = new ArrayList<>();
+        for (List<String> chunk : ListUtil.partition(new ArrayList<>(fileHashes), BATCH_SIZE)) {
+            LambdaQueryWrapper<TagFileHashDO> query = new LambdaQueryWrapper<>();
+            query.in(TagFileHashDO::getFileHash, chunk);
+            tagFileHashMapper.selectList(query).forEach(tagFileHashDO ->
+                    result.add(tagFileHashConverter.toTagFileHash(tagFileHashDO)));
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteAll(List<TagFileHash> tagFileHashes) {
+        if (CollUtil.isEmpty(tagFileHashes)) {
+            return;
+        }
+        for (List<TagFileHash> chunk : ListUtil.partition(tagFileHashes, BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, chunk, chunk.size(), (ps, tagFileHash) -> {
+                ps.setLong(1, tagFileHash.getTagId());
+                ps.setString(2, tagFileHash.getFileHash());
+            });
+        }
+        tagFileHashes.stream().map(TagFileHash::getTagId).distinct().forEach(tagBitmapIndex::tagHashesChanged);
+    }
+}
@@ -0,0 +1,39 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
+
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileIdPage;
+import com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.TagBitmapIndex;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+@Repository
+public class TagFileIdRepositoryImpl implements TagFileIdRepository {
+    private final TagBitmapIndex tagBitmapIndex;
+
+    public TagFileIdRepositoryImpl(TagBitmapIndex tagBitmapIndex) {
+        this.tagBitmapIndex = tagBitmapIndex;
+    }
+
+    @Override
+    public FileIdPage findFileIds(TagExpression expression, long offset, int limit) {
+        return tagBitmapIndex.findFileIds(expression, offset, limit);
+    }
+
+    @Override
+    public FileIdPage findFileIdsAfter(TagExpression expression, long afterId, int limit) {
+        return tagBitmapIndex.findFileIdsAfter(expression, afterId, limit);
+    }
+
+    @Override
+    public Map<Long, Long> countFiles() {
+        return tagBitmapIndex.countFiles();
+    }
+
+    @Override
+    public Map<Long, Long> countFiles(Map<Long, ? extends Collection<Long>> groups) {
+        return tagBitmapIndex.countFiles(groups);
+    }
+}
@@ -1,79 +1,186 @@
 package com.huanzhen.fileflexmanager.infrastructure.persistence.repository;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.huanzhen.fileflexmanager.domain.model.entity.Tag;
 import com.huanzhen.fileflexmanager.domain.repository.TagRepository;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.converter.TagConverter;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.entity.TagDO;
 import com.huanzhen.fileflexmanager.infrastructure.persistence.mapper.TagMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * 标签仓储
+ * <p>
+ * 标签表很小且很少修改，全部标签作为字典缓存在内存中：启动后加载，之后按需加载，本仓储的写操作后立即失效，
+ * 在事务中时事务结束后再失效一次，避免其他请求在提交前重新加载到旧数据。按id、父子关系和名称的查询都只读字典，
+ * 每次返回新的对象，调用方可以修改。
+ */
+@Slf4j
 @Repository
-public class TagRepositoryImpl implements TagRepository {
+public class TagRepositoryImpl implements TagRepository, ApplicationListener<ApplicationReadyEvent> {
+    /**
+     * IN 查询单次最多携带的文件ID个数（SQL中出现两次）
+     */
+    private static final int FILE_ID_BATCH_SIZE = 500;
+
+    /**
+     * 直接关联的标签与通过文件hash绑定的标签合并查询，UNION 去掉两者重复的标签，标签信息从字典中取
+     */
+    private static final String FILE_TAGS_SQL = """
+            SELECT ft.file_id AS file_id, ft.tag_id AS tag_id
+            FROM file_tag ft
+            WHERE ft.file_id IN ({ids})
+            UNION
+            SELECT fi.id AS file_id, h.tag_id AS tag_id
+            FROM file_index fi
+                JOIN tag_file_hash h ON h.file_hash = fi.md5
+            WHERE fi.id IN ({ids})
+            ORDER BY file_id, tag_id
+            """;
+
     private final TagMapper tagMapper;
     private final TagConverter tagConverter;
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Dictionary dictionary;
+    /**
+     * 每次失效加一，加载期间发生失效时不保存加载结果
+     */
+    private final AtomicLong version = new AtomicLong();
 
-    public TagRepositoryImpl(TagMapper tagMapper, TagConverter tagConverter) {
+    public TagRepositoryImpl(TagMapper tagMapper, TagConverter tagConverter, JdbcTemplate jdbcTemplate) {
         this.tagMapper = tagMapper;
         this.tagConverter = tagConverter;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 全部标签，按id排序
+     *
+     * @param byId     id -> 标签
+     * @param children 父标签id -> 直接子标签id，根标签的key为null
+     */
+    private record Dictionary(Map<Long, TagDO> byId, Map<Long, List<Long>> children) {
+        static Dictionary of(List<TagDO> tagDOs) {
+            Map<Long, TagDO> byId = new LinkedHashMap<>();
+            Map<Long, List<Long>> children = new HashMap<>();
+            tagDOs.stream()
+                    .sorted(Comparator.comparing(TagDO::getId))
+                    .forEach(tagDO -> {
+                        byId.put(tagDO.getId(), tagDO);
+                        children.computeIfAbsent(tagDO.getParentId(), key -> new ArrayList<>()).add(tagDO.getId());
+                    });
+            return new Dictionary(byId, children);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        log.info("标签字典加载完成, 标签数: {}", dictionary().byId().size());
+    }
+
+    private Dictionary dictionary() {
+        Dictionary current = dictionary;
+        if (current != null) {
+            return current;
+        }
+        long loadVersion = version.get();
+        Dictionary loaded = Dictionary.of(tagMapper.selectList(null));
+        synchronized (this) {
+            if (version.get() == loadVersion) {
+                dictionary = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    private void invalidate() {
+        synchronized (this) {
+            version.incrementAndGet();
+            dictionary = null;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    synchronized (TagRepositoryImpl.this) {
+                        version.incrementAndGet();
+                        dictionary = null;
+                    }
+                }
+            });
+        }
+    }
+
+    private Tag toTag(TagDO tagDO) {
+        return tagDO != null ? tagConverter.toTag(tagDO) : null;
     }
 
     @Override
     public Tag save(Tag tag) {
         TagDO tagDO = tagConverter.toTagDO(tag);
         tagMapper.insert(tagDO);
+        invalidate();
         return tagConverter.toTag(tagDO);
     }
 
     @Override
     public Tag findById(Long id) {
-        return tagConverter.toTag(tagMapper.selectById(id));
+        return toTag(dictionary().byId().get(id));
     }
 
+    /**
+     * 按父子关系逐层查找全部子孙标签
+     */
     @Override
     public List<Tag> findByParentId(Long parentId) {
-        // 首先查询直接父节点的标签信息，获取其path
-        LambdaQueryWrapper<TagDO> parentQuery = new LambdaQueryWrapper<>();
-        parentQuery.eq(TagDO::getId, parentId);
-        TagDO parentTag = tagMapper.selectOne(parentQuery);
-        
-        if (parentTag == null) {
+        Dictionary current = dictionary();
+        if (!current.byId().containsKey(parentId)) {
             return new ArrayList<>();
         }
-
-        // 使用 LIKE 查询获取所有子节点
-        LambdaQueryWrapper<TagDO> query = new LambdaQueryWrapper<>();
-        query.likeRight(TagDO::getPath, parentTag.getPath() + "/")
-             .or()
-             .eq(TagDO::getParentId, parentId); // 包含直接子节点
-
-        return tagMapper.selectList(query).stream()
-                .map(tagConverter::toTag)
-                .collect(Collectors.toList());
+        List<Tag> result = new ArrayList<>();
+        Deque<Long> pending = new ArrayDeque<>(current.children().getOrDefault(parentId, Collections.emptyList()));
+        while (!pending.isEmpty()) {
+            Long tagId = pending.pop();
+            result.add(toTag(current.byId().get(tagId)));
+            pending.addAll(current.children().getOrDefault(tagId, Collections.emptyList()));
+        }
+        return result;
     }
 
     @Override
     public void updateTag(Tag tag) {
         tagMapper.updateById(tagConverter.toTagDO(tag));
+        invalidate();
     }
 
     @Override
     public void deleteById(Long id) {
         tagMapper.deleteById(id);
+        invalidate();
     }
 
     @Override
     public Page<Tag> findAll(int page, int size) {
-        Page<TagDO> pageParam = new Page<>(page, size);
-        Page<TagDO> result = tagMapper.selectPage(pageParam, null);
-        
-        Page<Tag> tagPage = new Page<>(result.getCurrent(), result.getSize(), result.getTotal());
-        tagPage.setRecords(result.getRecords().stream()
+        List<TagDO> tagDOs = new ArrayList<>(dictionary().byId().values());
+        int from = (int) Math.min(tagDOs.size(), (long) (Math.max(1, page) - 1) * size);
+        int to = (int) Math.min(tagDOs.size(), (long) from + size);
+
+        Page<Tag> tagPage = new Page<>(page, size, tagDOs.size());
+        tagPage.setRecords(tagDOs.subList(from, to).stream()
                 .map(tagConverter::toTag)
                 .collect(Collectors.toList()));
         return tagPage;
@@ -81,16 +188,47 @@ public class TagRepositoryImpl implements TagRepository {
 
     @Override
     public Tag findByNameAndParentId(String name, Long parentId) {
-        LambdaQueryWrapper<TagDO> query = new LambdaQueryWrapper<>();
-        query.eq(TagDO::getName, name)
-             .eq(TagDO::getParentId, parentId);
-        return tagConverter.toTag(tagMapper.selectOne(query));
+        Dictionary current = dictionary();
+        return current.children().getOrDefault(parentId, Collections.emptyList()).stream()
+                .map(current.byId()::get)
+                .filter(tagDO -> Objects.equals(tagDO.getName(), name))
+                .findFirst()
+                .map(tagConverter::toTag)
+                .orElse(null);
     }
 
     @Override
     public Tag update(Tag tag) {
         TagDO tagDO = tagConverter.toTagDO(tag);
         tagMapper.updateById(tagDO);
+        invalidate();
         return tagConverter.toTag(tagDO);
     }
+
+    @Override
+    public Map<Long, List<Tag>> findByFileIds(Collection<Long> fileIds) {
+        if (CollUtil.isEmpty(fileIds)) {
+            return Collections.emptyMap();
+        }
+        Dictionary current = dictionary();
+        Map<Long, List<Tag>> result = new HashMap<>();
+        for (List<Long> chunk : ListUtil.partition(new ArrayList<>(new LinkedHashSet<>(fileIds)), FILE_ID_BATCH_SIZE)) {
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            String sql = StrUtil.format(FILE_TAGS_SQL, Map.of("ids", placeholders));
+            Object[] args = new Object[chunk.size() * 2];
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i] = chunk.get(i);
+                args[i + chunk.size()] = chunk.get(i);
+            }
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                // 已删除标签遗留的关联不返回
+                TagDO tagDO = current.byId().get(rs.getLong("tag_id"));
+                if (tagDO != null) {
+                    result.computeIfAbsent(rs.getLong("file_id"), k -> new ArrayList<>())
+                            .add(tagConverter.toTag(tagDO));
+                }
+            }, args);
+        }
+        return result;
+    }
 } 
\ No newline at end of file
@@ -68,16 +68,39 @@ public class TaskRepositoryImpl implements TaskRepository {
 
     @Override
     public Page<Task> findAll(int page, int size, Boolean includeCompleted) {
-        LambdaQueryWrapper<TaskDO> query = new LambdaQueryWrapper<>();
-        if (includeCompleted != null && !includeCompleted) {
-            query.in(TaskDO::getStatus, Arrays.asList(TaskStatus.PENDING, TaskStatus.RUNNING));
-        }
+        LambdaQueryWrapper<TaskDO> query = statusQuery(includeCompleted);
         query.orderByDesc(TaskDO::getCreateTime);
 
         Page<TaskDO> pageParam = new Page<>(page, size);
         return sleectPage(pageParam, query);
     }
 
+    @Override
+    public List<Task> findAllBefore(LocalDateTime beforeTime, Long beforeId, int limit, Boolean includeCompleted) {
+        LambdaQueryWrapper<TaskDO> query = statusQuery(includeCompleted);
+        if (beforeTime != null) {
+            query.and(wrapper -> wrapper.lt(TaskDO::getCreateTime, beforeTime)
+                    .or(inner -> inner.eq(TaskDO::getCreateTime, beforeTime).lt(TaskDO::getId, beforeId)));
+        }
+        query.orderByDesc(TaskDO::getCreateTime, TaskDO::getId);
+        return taskMapper.selectPage(new Page<>(1, limit, false), query).getRecords().stream()
+                .map(taskDOConvert::toTask)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count(Boolean includeCompleted) {
+        return taskMapper.selectCount(statusQuery(includeCompleted));
+    }
+
+    private LambdaQueryWrapper<TaskDO> statusQuery(Boolean includeCompleted) {
+        LambdaQueryWrapper<TaskDO> query = new LambdaQueryWrapper<>();
+        if (includeCompleted != null && !includeCompleted) {
+            query.in(TaskDO::getStatus, Arrays.asList(TaskStatus.PENDING, TaskStatus.RUNNING));
+        }
+        return query;
+    }
+
 
     @Override
     public Page<Task> findScheduledTasks(int page, int size) {
@@ -0,0 +1,285 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentHit;
+import com.huanzhen.fileflexmanager.infrastructure.config.ContentIndexConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 文件内容全文索引
+ * <p>
+ * 基于 Lucene 的本地倒排索引：每个文本文件一条记录，按路径唯一，同时保存索引时的文件大小和修改时间，
+ * 再次索引时两者都未变化的文件不再重新读取和分词。写入先在内存中缓冲，超过
+ * {@link ContentIndexConfig#getRamBufferMb()} 后生成新的段，小段由后台线程按分层策略合并。
+ * <p>
+ * 写入由索引任务通过 {@link #openUpdater(String)} 完成，搜索读取最近一次提交后刷新的快照。
+ * 首次使用时才打开索引目录。
+ */
+@Slf4j
+@Component
+public class FileContentIndex implements DisposableBean {
+    private static final String FIELD_PATH = "path";
+    private static final String FIELD_CONTENT = "content";
+    private static final String FIELD_SIZE = "size";
+    private static final String FIELD_MODIFIED = "modified";
+    private static final Set<String> VERSION_FIELDS = Set.of(FIELD_SIZE, FIELD_MODIFIED);
+    private static final Set<String> PATH_FIELDS = Set.of(FIELD_PATH);
+    /**
+     * 每个文件最多返回的片段数
+     */
+    private static final int MAX_PASSAGES = 3;
+    /**
+     * 最多能翻到的结果条数
+     */
+    private static final int MAX_RESULT_WINDOW = 10000;
+
+    /**
+     * 内容保存原文并在倒排中记录偏移，生成片段时不需要重新分词
+     */
+    private static final FieldType CONTENT_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        CONTENT_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_TYPE.freeze();
+    }
+
+    private final ContentIndexConfig config;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private volatile IndexWriter writer;
+    private volatile SearcherManager searcherManager;
+
+    public FileContentIndex(ContentIndexConfig config) {
+        this.config = config;
+    }
+
+    private synchronized void open() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        Path dir = Paths.get(config.getPath());
+        Files.createDirectories(dir);
+        IndexWriterConfig writerConfig = new IndexWriterConfig(analyzer);
+        writerConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writerConfig.setRAMBufferSizeMB(config.getRamBufferMb());
+        writerConfig.setMergePolicy(new TieredMergePolicy());
+        writerConfig.setMergeScheduler(new ConcurrentMergeScheduler());
+        IndexWriter indexWriter = new IndexWriter(FSDirectory.open(dir), writerConfig);
+        searcherManager = new SearcherManager(indexWriter, null);
+        writer = indexWriter;
+        log.info("打开文件内容索引: {}, 文件数: {}", dir, indexWriter.getDocStats().numDocs);
+    }
+
+    public long getMaxFileSize() {
+        return config.getMaxFileSize();
+    }
+
+    /**
+     * 开始更新根目录下的内容索引，用完后必须关闭，关闭时提交
+     */
+    public Updater openUpdater(String rootPath) throws IOException {
+        open();
+        searcherManager.maybeRefreshBlocking();
+        return new Updater(rootPath, searcherManager.acquire());
+    }
+
+    /**
+     * @see com.huanzhen.fileflexmanager.domain.repository.FileContentRepository#search(String, int, int)
+     */
+    public Result search(String keyword, int offset, int limit) throws IOException {
+        if (offset + limit > MAX_RESULT_WINDOW) {
+            throw new IllegalArgumentException("最多只能查看前" + MAX_RESULT_WINDOW + "条结果");
+        }
+        Query query = parse(keyword);
+        open();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            int total = searcher.count(query);
+            TopDocs topDocs = searcher.search(query, offset + limit);
+            ScoreDoc[] pageDocs = Arrays.copyOfRange(topDocs.scoreDocs,
+                    Math.min(offset, topDocs.scoreDocs.length), topDocs.scoreDocs.length);
+            if (pageDocs.length == 0) {
+                return new Result(Collections.emptyList(), total);
+            }
+            UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+                    .withFormatter(new DefaultPassageFormatter("<em>", "</em>", " ... ", true))
+                    .withMaxLength((int) Math.min(Integer.MAX_VALUE - 1, config.getMaxFileSize()))
+                    .build();
+            String[] snippets = highlighter.highlight(FIELD_CONTENT, query,
+                    new TopDocs(topDocs.totalHits, pageDocs), MAX_PASSAGES);
+            StoredFields storedFields = searcher.storedFields();
+            List<FileContentHit> hits = new ArrayList<>(pageDocs.length);
+            for (int i = 0; i < pageDocs.length; i++) {
+                String path = storedFields.document(pageDocs[i].doc, PATH_FIELDS).get(FIELD_PATH);
+                hits.add(new FileContentHit(path, pageDocs[i].score, snippets[i]));
+            }
+            return new Result(hits, total);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * 多个词默认同时包含，一个词分出多个字（如中文）时按短语匹配
+     */
+    private Query parse(String keyword) {
+        QueryParser parser = new QueryParser(FIELD_CONTENT, analyzer);
+        parser.setDefaultOperator(QueryParser.Operator.AND);
+        // 自动生成短语要求先按空白切分
+        parser.setSplitOnWhitespace(true);
+        parser.setAutoGeneratePhraseQueries(true);
+        try {
+            return parser.parse(keyword);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("查询语法错误: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param hits  这一页命中的文件
+     * @param total 命中总数
+     */
+    public record Result(List<FileContentHit> hits, long total) {
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (writer != null) {
+            searcherManager.close();
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * 一次索引运行中对根目录的更新
+     * <p>
+     * 基于打开时的快照判断文件是否变化；运行中出现过（无论是否重新写入）的文件都会记录下来，
+     * {@link #deleteUnseen()} 删除根目录下其余的文件，即已删除、变大超过上限或不再是文本的文件。
+     */
+    public final class Updater implements Closeable {
+        private final String rootPath;
+        private final String prefix;
+        private final IndexSearcher searcher;
+        private final StoredFields storedFields;
+        private final Set<String> seen = new HashSet<>();
+
+        private Updater(String rootPath, IndexSearcher searcher) throws IOException {
+            this.rootPath = rootPath;
+            this.prefix = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+            this.searcher = searcher;
+            this.storedFields = searcher.storedFields();
+        }
+
+        /**
+         * 文件已索引且大小和修改时间都未变化时返回true，并记为本次出现过
+         */
+        public boolean isUnchanged(String path, long size, long lastModified) throws IOException {
+            TopDocs topDocs = searcher.search(new TermQuery(new Term(FIELD_PATH, path)), 1);
+            if (topDocs.scoreDocs.length == 0) {
+                return false;
+            }
+            Document document = storedFields.document(topDocs.scoreDocs[0].doc, VERSION_FIELDS);
+            IndexableField sizeField = document.getField(FIELD_SIZE);
+            IndexableField modifiedField = document.getField(FIELD_MODIFIED);
+            boolean unchanged = sizeField != null && modifiedField != null
+                    && sizeField.numericValue().longValue() == size
+                    && modifiedField.numericValue().longValue() == lastModified;
+            if (unchanged) {
+                seen.add(path);
+            }
+            return unchanged;
+        }
+
+        public void update(String path, String content, long size, long lastModified) throws IOException {
+            Document document = new Document();
+            document.add(new StringField(FIELD_PATH, path, Field.Store.YES));
+            document.add(new Field(FIELD_CONTENT, content, CONTENT_TYPE));
+            document.add(new StoredField(FIELD_SIZE, size));
+            document.add(new StoredField(FIELD_MODIFIED, lastModified));
+            writer.updateDocument(new Term(FIELD_PATH, path), document);
+            seen.add(path);
+        }
+
+        /**
+         * 删除根目录下本次没有出现的文件
+         *
+         * @return 删除的文件数
+         */
+        public int deleteUnseen() throws IOException {
+            Terms terms = MultiTerms.getTerms(searcher.getIndexReader(), FIELD_PATH);
+            if (terms == null) {
+                return 0;
+            }
+            // 路径按字节序排列，以根目录开头的路径是连续的一段
+            TermsEnum termsEnum = terms.iterator();
+            if (termsEnum.seekCeil(new BytesRef(rootPath)) == TermsEnum.SeekStatus.END) {
+                return 0;
+            }
+            int deleted = 0;
+            for (BytesRef term = termsEnum.term(); term != null; term = termsEnum.next()) {
+                String path = term.utf8ToString();
+                if (!path.startsWith(rootPath)) {
+                    break;
+                }
+                if ((path.equals(rootPath) || path.startsWith(prefix)) && !seen.contains(path)
+                        && searcher.count(new TermQuery(new Term(FIELD_PATH, path))) > 0) {
+                    writer.deleteDocuments(new Term(FIELD_PATH, path));
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        /**
+         * 释放快照并提交，之后的搜索能看到本次的更新
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                searcherManager.release(searcher);
+            } finally {
+                writer.commit();
+                searcherManager.maybeRefresh();
+            }
+        }
+    }
+}
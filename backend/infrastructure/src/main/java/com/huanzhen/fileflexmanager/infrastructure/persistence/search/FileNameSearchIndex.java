@@ -0,0 +1,141 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import com.huanzhen.fileflexmanager.domain.utils.FileNameKeyUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 文件名/路径搜索索引
+ * <p>
+ * 启动后在后台按id分批读取 file_index 的路径和名称拼音建立 {@link FileNameTrigramIndex}，之后由
+ * {@code FileIndexRepositoryImpl} 在写入和删除索引记录时同步维护。加载完成前 {@link #isReady()}
+ * 返回false，搜索回退为数据库模糊查询。
+ * <p>
+ * 索引只保存路径，回滚的写入可能留下库中不存在的路径，搜索取回记录时发现后再移除。
+ * <p>
+ * 升级前写入的记录没有拼音检索键和扩展名，加载时顺带计算并回写。
+ */
+@Slf4j
+@Component
+public class FileNameSearchIndex implements ApplicationListener<ApplicationReadyEvent> {
+    private static final int LOAD_BATCH_SIZE = 5000;
+    private static final String LOAD_SQL = "SELECT id, path, name, name_pinyin, name_initials, is_dir, extension "
+            + "FROM file_index WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String BACKFILL_SQL = "UPDATE file_index SET name_pinyin = ?, name_initials = ? WHERE id = ?";
+    private static final String BACKFILL_EXTENSION_SQL = "UPDATE file_index SET extension = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FileNameTrigramIndex index = new FileNameTrigramIndex();
+    private volatile boolean ready = false;
+
+    public FileNameSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Thread loader = new Thread(this::load, "file-search-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 从 file_index 加载全部路径，加载期间的写入同样会进入索引
+     */
+    void load() {
+        long start = System.currentTimeMillis();
+        try {
+            long lastId = 0L;
+            int backfilled = 0;
+            int backfilledExtensions = 0;
+            while (true) {
+                List<FileNameTrigramIndex.Document> documents = new ArrayList<>(LOAD_BATCH_SIZE);
+                List<Object[]> backfill = new ArrayList<>();
+                List<Object[]> backfillExtensions = new ArrayList<>();
+                long[] maxId = {lastId};
+                jdbcTemplate.query(LOAD_SQL, (RowCallbackHandler) rs -> {
+                    long id = rs.getLong("id");
+                    maxId[0] = id;
+                    String pinyin = rs.getString("name_pinyin");
+                    String initials = rs.getString("name_initials");
+                    if (pinyin == null) {
+                        FileNameKeyUtils.PinyinKeys keys = FileNameKeyUtils.pinyinKeys(rs.getString("name"));
+                        if (keys != null) {
+                            pinyin = keys.full();
+                            initials = keys.initials();
+                            backfill.add(new Object[]{pinyin, initials, id});
+                        }
+                    }
+                    if (!rs.getBoolean("is_dir") && rs.getString("extension") == null) {
+                        backfillExtensions.add(new Object[]{FileNameKeyUtils.extension(rs.getString("name")), id});
+                    }
+                    documents.add(FileNameTrigramIndex.Document.of(rs.getString("path"), pinyin, initials));
+                }, lastId, LOAD_BATCH_SIZE);
+                if (documents.isEmpty()) {
+                    break;
+                }
+                if (!backfill.isEmpty()) {
+                    jdbcTemplate.batchUpdate(BACKFILL_SQL, backfill);
+                    backfilled += backfill.size();
+                }
+                if (!backfillExtensions.isEmpty()) {
+                    jdbcTemplate.batchUpdate(BACKFILL_EXTENSION_SQL, backfillExtensions);
+                    backfilledExtensions += backfillExtensions.size();
+                }
+                index.addAll(documents);
+                lastId = maxId[0];
+            }
+            ready = true;
+            log.info("文件搜索索引加载完成, 路径数: {}, 补充拼音: {}, 补充扩展名: {}, 耗时: {}ms",
+                    index.size(), backfilled, backfilledExtensions, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("文件搜索索引加载失败，搜索将使用数据库查询", e);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void add(FileNameTrigramIndex.Document document) {
+        index.addAll(List.of(document));
+    }
+
+    public void addAll(Collection<FileNameTrigramIndex.Document> documents) {
+        index.addAll(documents);
+    }
+
+    public void remove(String path) {
+        index.remove(path);
+    }
+
+    public void removeAll(Collection<String> paths) {
+        index.removeAll(paths);
+    }
+
+    public void removeTree(String rootPath) {
+        index.removeTree(rootPath);
+    }
+
+    /**
+     * @see FileNameTrigramIndex.Query#parse(String)
+     */
+    public FileNameTrigramIndex.Result search(String keyword, int offset, int limit) {
+        return index.search(FileNameTrigramIndex.Query.parse(keyword), offset, limit);
+    }
+
+    /**
+     * 游标翻页，返回排在 after 之后的 limit 条
+     */
+    public FileNameTrigramIndex.Result search(String keyword, FileNameTrigramIndex.Hit after, int limit) {
+        return index.search(FileNameTrigramIndex.Query.parse(keyword), after, 0, limit);
+    }
+}
@@ -0,0 +1,690 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 文件路径的三元组（trigram）倒排索引
+ * <p>
+ * 每个路径按字符转小写后切成连续的三字符片段，片段 -> 包含该片段的路径编号（升序）。
+ * 查询时取关键字的所有片段，从最短的倒排表开始求交集，只对交集中的候选逐个确认并打分，
+ * 不需要扫描全部路径。不足三个字符的关键字合并所有包含它的片段的倒排表。
+ * <p>
+ * 路径可以附带文件名的别名（如拼音全拼和首字母），别名的片段同样进入倒排表，匹配别名与匹配文件名的相关度相同。
+ * <p>
+ * 删除只把编号标记为空，无效编号超过有效编号时整体重建倒排表。读写通过读写锁保护。
+ */
+public class FileNameTrigramIndex {
+    /**
+     * 无效编号至少达到该数量才重建，避免小索引频繁重建
+     */
+    private static final int MIN_COMPACT_THRESHOLD = 4096;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private String[] docs = new String[1024];
+    private String[][] aliases = new String[1024][];
+    private int docCount;
+    private final Map<String, Integer> docByPath = new HashMap<>();
+    private PostingTable postings = new PostingTable();
+
+    /**
+     * 倒排表，编号按添加顺序递增
+     */
+    private static final class Posting {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * 片段 -> 倒排表，开放寻址，避免片段装箱为 Long
+     */
+    private static final class PostingTable {
+        private long[] keys = new long[1024];
+        private Posting[] values = new Posting[1024];
+        private int size;
+
+        Posting get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        Posting getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            for (; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            Posting posting = new Posting();
+            keys[slot] = key;
+            values[slot] = posting;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+            return posting;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Posting[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Posting[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    /**
+     * 查询方式
+     */
+    public enum QueryType {
+        /**
+         * 文件名或路径包含关键字
+         */
+        SUBSTRING,
+        /**
+         * 文件名以关键字开头，关键字写作 {@code ^前缀}
+         */
+        PREFIX,
+        /**
+         * 正则匹配文件名或路径，关键字写作 {@code regex:表达式}
+         */
+        REGEX
+    }
+
+    /**
+     * 解析后的查询，均不区分大小写
+     *
+     * @param literals 匹配结果中一定出现的文本片段，用于从倒排表中筛选候选
+     */
+    public record Query(QueryType type, String text, Pattern pattern, List<String> literals) {
+        private static final String REGEX_PREFIX = "regex:";
+        private static final String PREFIX_MARK = "^";
+
+        /**
+         * @throws IllegalArgumentException 正则表达式错误
+         */
+        public static Query parse(String keyword) {
+            String text = keyword == null ? "" : keyword.trim();
+            if (text.startsWith(REGEX_PREFIX)) {
+                String expression = text.substring(REGEX_PREFIX.length());
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(expression, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("无效的正则表达式: " + e.getDescription(), e);
+                }
+                return new Query(QueryType.REGEX, expression, pattern, requiredLiterals(expression));
+            }
+            if (text.startsWith(PREFIX_MARK) && text.length() > 1) {
+                String prefix = text.substring(1);
+                return new Query(QueryType.PREFIX, prefix, null, List.of(prefix));
+            }
+            return new Query(QueryType.SUBSTRING, text, null, text.isEmpty() ? List.of() : List.of(text));
+        }
+    }
+
+    /**
+     * 索引的路径
+     *
+     * @param aliases 文件名的别名，如拼音全拼和首字母
+     */
+    public record Document(String path, List<String> aliases) {
+        public static Document of(String path, String... aliases) {
+            return new Document(path, Arrays.stream(aliases).filter(Objects::nonNull).toList());
+        }
+    }
+
+    /**
+     * @param paths   请求的一页路径，按相关度排序
+     * @param total   匹配的路径总数
+     * @param last    这一页最后一条的排序值，用作下一页的游标，这一页为空时为null
+     * @param hasMore 这一页之后是否还有匹配的路径
+     */
+    public record Result(List<String> paths, long total, Hit last, boolean hasMore) {
+    }
+
+    /**
+     * 排序用的命中记录：分数越小越相关，然后文件名越短越靠前，最后按路径，路径唯一因此顺序稳定
+     */
+    public record Hit(int score, int nameLength, String path) {
+    }
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingInt(Hit::score)
+            .thenComparingInt(Hit::nameLength)
+            .thenComparing(Hit::path);
+
+    /**
+     * 添加路径，已存在时不做任何修改
+     */
+    public void add(String path, String... aliases) {
+        addAll(List.of(Document.of(path, aliases)));
+    }
+
+    public void addAll(Collection<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            documents.forEach(document -> addInternal(document.path(), document.aliases()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String path) {
+        removeAll(List.of(path));
+    }
+
+    public void removeAll(Collection<String> paths) {
+        lock.writeLock().lock();
+        try {
+            for (String path : paths) {
+                Integer doc = docByPath.remove(path);
+                if (doc != null) {
+                    docs[doc] = null;
+                    aliases[doc] = null;
+                }
+            }
+            int removed = docCount - docByPath.size();
+            if (removed >= MIN_COMPACT_THRESHOLD && removed > docByPath.size()) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除路径自身及其下所有路径
+     */
+    public void removeTree(String rootPath) {
+        String prefix = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+        List<String> removed = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String path : docByPath.keySet()) {
+                if (path.equals(rootPath) || path.startsWith(prefix)) {
+                    removed.add(path);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        removeAll(removed);
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs = new String[1024];
+            aliases = new String[1024][];
+            docCount = 0;
+            docByPath.clear();
+            postings = new PostingTable();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docByPath.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询并按相关度返回第 offset 条开始的 limit 条
+     * <p>
+     * 相关度：文件名（或别名）等于关键字 &gt; 以关键字开头 &gt; 包含关键字 &gt; 仅路径包含关键字
+     */
+    public Result search(Query query, int offset, int limit) {
+        return search(query, null, offset, limit);
+    }
+
+    /**
+     * 查询排在 after 之后的匹配路径，按相关度返回第 offset 条开始的 limit 条
+     * <p>
+     * 游标翻页时 offset 为0，只需保留 limit 条，越往后翻所需的堆不会变大
+     *
+     * @param after 上一页的 {@link Result#last()}，为null时从头开始
+     */
+    public Result search(Query query, Hit after, int offset, int limit) {
+        int keep = offset + limit;
+        PriorityQueue<Hit> heap = new PriorityQueue<>(Math.max(1, Math.min(keep, 1024)), HIT_ORDER.reversed());
+        long total = 0;
+        long matched = 0;
+        lock.readLock().lock();
+        try {
+            CandidateIterator candidates = candidates(query.literals());
+            for (int doc = candidates.next(); doc >= 0; doc = candidates.next()) {
+                String path = docs[doc];
+                if (path == null) {
+                    continue;
+                }
+                int nameStart = path.lastIndexOf('/') + 1;
+                int score = score(query, path, nameStart, aliases[doc]);
+                if (score < 0) {
+                    continue;
+                }
+                total++;
+                Hit hit = new Hit(score, path.length() - nameStart, path);
+                if (after != null && HIT_ORDER.compare(hit, after) <= 0) {
+                    continue;
+                }
+                matched++;
+                if (heap.size() < keep) {
+                    heap.add(hit);
+                } else if (keep > 0 && HIT_ORDER.compare(hit, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(hit);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Hit> hits = new ArrayList<>(heap);
+        hits.sort(HIT_ORDER);
+        List<String> page = new ArrayList<>(Math.max(0, hits.size() - offset));
+        for (int i = offset; i < hits.size(); i++) {
+            page.add(hits.get(i).path());
+        }
+        Hit last = page.isEmpty() ? null : hits.get(hits.size() - 1);
+        return new Result(page, total, last, matched > keep);
+    }
+
+    /**
+     * @return 相关度分数，不匹配时返回 -1
+     */
+    private static int score(Query query, String path, int nameStart, String[] docAliases) {
+        int best = matchName(query, path, nameStart);
+        if (best != 0 && docAliases != null) {
+            for (String alias : docAliases) {
+                int score = matchName(query, alias, 0);
+                if (score >= 0 && (best < 0 || score < best)) {
+                    best = score;
+                }
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        return matchPath(query, path) ? 3 : -1;
+    }
+
+    /**
+     * 匹配 text 中从 start 开始的名称
+     *
+     * @return 0 完全相同，1 以关键字开头，2 包含关键字，-1 不匹配
+     */
+    private static int matchName(Query query, String text, int start) {
+        int length = text.length() - start;
+        switch (query.type()) {
+            case PREFIX -> {
+                String prefix = query.text();
+                if (!text.regionMatches(true, start, prefix, 0, prefix.length())) {
+                    return -1;
+                }
+                return length == prefix.length() ? 0 : 1;
+            }
+            case REGEX -> {
+                String name = start == 0 ? text : text.substring(start);
+                if (query.pattern().matcher(name).matches()) {
+                    return 0;
+                }
+                return query.pattern().matcher(name).find() ? 2 : -1;
+            }
+            default -> {
+                String keyword = query.text();
+                int index = indexOfIgnoreCase(text, keyword, start);
+                if (index == start) {
+                    return length == keyword.length() ? 0 : 1;
+                }
+                return index > start ? 2 : -1;
+            }
+        }
+    }
+
+    private static boolean matchPath(Query query, String path) {
+        return switch (query.type()) {
+            case PREFIX -> false;
+            case REGEX -> query.pattern().matcher(path).find();
+            default -> indexOfIgnoreCase(path, query.text(), 0) >= 0;
+        };
+    }
+
+    private static int indexOfIgnoreCase(String source, String target, int from) {
+        for (int i = from, last = source.length() - target.length(); i <= last; i++) {
+            if (source.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 候选编号，升序，-1 表示结束
+     */
+    private interface CandidateIterator {
+        int next();
+    }
+
+    private CandidateIterator candidates(List<String> literals) {
+        List<long[]> gramSets = new ArrayList<>();
+        String shortest = null;
+        for (String literal : literals) {
+            if (literal.length() >= 3) {
+                gramSets.add(grams(literal));
+            } else if (!literal.isEmpty() && (shortest == null || literal.length() > shortest.length())) {
+                shortest = literal;
+            }
+        }
+        if (!gramSets.isEmpty()) {
+            return intersect(gramSets);
+        }
+        if (shortest != null) {
+            return union(lower(shortest));
+        }
+        // 没有可用的片段，检查全部路径
+        int[] next = {0};
+        int end = docCount;
+        return () -> next[0] < end ? next[0]++ : -1;
+    }
+
+    private CandidateIterator intersect(List<long[]> gramSets) {
+        List<Posting> lists = new ArrayList<>();
+        for (long[] grams : gramSets) {
+            for (long gram : grams) {
+                Posting posting = postings.get(gram);
+                if (posting == null) {
+                    return () -> -1;
+                }
+                lists.add(posting);
+            }
+        }
+        lists.sort(Comparator.comparingInt(posting -> posting.size));
+        Posting smallest = lists.get(0);
+        int[] positions = new int[lists.size()];
+        int[] cursor = {0};
+        return () -> {
+            while (cursor[0] < smallest.size) {
+                int doc = smallest.ids[cursor[0]++];
+                if (containsAll(lists, positions, doc)) {
+                    return doc;
+                }
+            }
+            return -1;
+        };
+    }
+
+    /**
+     * 其余倒排表是否都包含 doc，positions 记录各表的扫描位置，doc 递增时只需向后推进
+     */
+    private static boolean containsAll(List<Posting> lists, int[] positions, int doc) {
+        for (int i = 1; i < lists.size(); i++) {
+            Posting posting = lists.get(i);
+            int position = advance(posting, positions[i], doc);
+            positions[i] = position;
+            if (position >= posting.size || posting.ids[position] != doc) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从 from 开始找到第一个不小于 target 的位置，先倍增步长再二分
+     */
+    private static int advance(Posting posting, int from, int target) {
+        int[] ids = posting.ids;
+        int size = posting.size;
+        if (from >= size || ids[from] >= target) {
+            return from;
+        }
+        int step = 1;
+        int low = from;
+        int high = from + 1;
+        while (high < size && ids[high] < target) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        int index = Arrays.binarySearch(ids, low + 1, Math.min(high, size - 1) + 1, target);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private CandidateIterator union(String literal) {
+        BitSet matched = new BitSet(docCount);
+        for (int slot = 0; slot < postings.keys.length; slot++) {
+            Posting posting = postings.values[slot];
+            if (posting != null && gramContains(postings.keys[slot], literal)) {
+                for (int i = 0; i < posting.size; i++) {
+                    matched.set(posting.ids[i]);
+                }
+            }
+        }
+        int[] next = {matched.nextSetBit(0)};
+        return () -> {
+            int doc = next[0];
+            if (doc >= 0) {
+                next[0] = matched.nextSetBit(doc + 1);
+            }
+            return doc;
+        };
+    }
+
+    private void addInternal(String path, List<String> docAliases) {
+        if (path == null || docByPath.containsKey(path)) {
+            return;
+        }
+        if (docCount == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+            aliases = Arrays.copyOf(aliases, docs.length);
+        }
+        int doc = docCount++;
+        docs[doc] = path;
+        docByPath.put(path, doc);
+        String[] texts;
+        if (docAliases == null || docAliases.isEmpty()) {
+            texts = new String[]{path};
+        } else {
+            aliases[doc] = docAliases.toArray(String[]::new);
+            texts = new String[aliases[doc].length + 1];
+            texts[0] = path;
+            System.arraycopy(aliases[doc], 0, texts, 1, aliases[doc].length);
+        }
+        // 路径和别名的片段去重后再加入，倒排表中同一编号只出现一次
+        for (long gram : grams(texts)) {
+            postings.getOrCreate(gram).add(doc);
+        }
+    }
+
+    /**
+     * 按有效路径重新编号并重建倒排表
+     */
+    private void compact() {
+        List<Document> live = new ArrayList<>(docByPath.size());
+        for (int doc = 0; doc < docCount; doc++) {
+            if (docs[doc] != null) {
+                live.add(new Document(docs[doc], aliases[doc] != null ? List.of(aliases[doc]) : List.of()));
+            }
+        }
+        docs = new String[Math.max(1024, live.size() * 2)];
+        aliases = new String[docs.length][];
+        docCount = 0;
+        docByPath.clear();
+        postings = new PostingTable();
+        for (Document document : live) {
+            addInternal(document.path(), document.aliases());
+        }
+    }
+
+    /**
+     * 文本中所有不重复的三字符片段（升序），每个片段按字符转小写后编码为一个 long
+     */
+    static long[] grams(String... texts) {
+        int total = 0;
+        for (String text : texts) {
+            total += Math.max(0, text.length() - 2);
+        }
+        long[] grams = new long[total];
+        int count = 0;
+        for (String text : texts) {
+            for (int i = 0; i + 2 < text.length(); i++) {
+                grams[count++] = gram(Character.toLowerCase(text.charAt(i)), Character.toLowerCase(text.charAt(i + 1)),
+                        Character.toLowerCase(text.charAt(i + 2)));
+            }
+        }
+        Arrays.sort(grams);
+        int unique = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[unique++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    private static long gram(char c0, char c1, char c2) {
+        return ((long) c0 << 32) | ((long) c1 << 16) | c2;
+    }
+
+    private static boolean gramContains(long gram, String literal) {
+        char c0 = (char) (gram >>> 32);
+        char c1 = (char) (gram >>> 16);
+        char c2 = (char) gram;
+        if (literal.length() == 1) {
+            char c = literal.charAt(0);
+            return c0 == c || c1 == c || c2 == c;
+        }
+        char a = literal.charAt(0);
+        char b = literal.charAt(1);
+        return (c0 == a && c1 == b) || (c1 == a && c2 == b);
+    }
+
+    private static String lower(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 从正则表达式中提取匹配结果一定包含的文本片段
+     * <p>
+     * 只处理简单表达式：含 {@code |} 时不提取；分组和字符类中的内容、后面跟着 {@code ? * {}} 的字符都不计入。
+     * 提取不到时返回空列表，查询退化为检查全部路径。
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0) {
+            return literals;
+        }
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 >= regex.length()) {
+                        break;
+                    }
+                    char escaped = regex.charAt(++i);
+                    if (Character.isLetterOrDigit(escaped) || depth > 0) {
+                        // \d \w \b 等字符类或分组内的内容
+                        flush(current, literals);
+                    } else {
+                        current.append(escaped);
+                    }
+                }
+                case '[' -> {
+                    flush(current, literals);
+                    i = skipCharClass(regex, i);
+                }
+                case '(' -> {
+                    flush(current, literals);
+                    depth++;
+                }
+                case ')' -> {
+                    flush(current, literals);
+                    depth = Math.max(0, depth - 1);
+                }
+                case '*', '?' -> {
+                    // 前一个字符可以不出现
+                    dropLast(current);
+                    flush(current, literals);
+                }
+                case '{' -> {
+                    dropLast(current);
+                    flush(current, literals);
+                    int close = regex.indexOf('}', i);
+                    i = close >= 0 ? close : regex.length();
+                }
+                case '+', '.', '^', '$' -> flush(current, literals);
+                default -> {
+                    if (depth == 0) {
+                        current.append(c);
+                    }
+                }
+            }
+        }
+        flush(current, literals);
+        return literals;
+    }
+
+    private static int skipCharClass(String regex, int start) {
+        for (int i = start + 1; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']' && i > start + 1) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private static void dropLast(StringBuilder current) {
+        if (!current.isEmpty()) {
+            current.setLength(current.length() - 1);
+        }
+    }
+
+    private static void flush(StringBuilder current, List<String> literals) {
+        if (!current.isEmpty()) {
+            literals.add(current.toString());
+            current.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileIdPage;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 标签到文件id的压缩位图索引
+ * <p>
+ * 每个标签一个 Roaring 位图，标签条件直接按位图求交、并、差，分页按位图中的序号取出这一页的文件id，
+ * 不需要把关联记录全部读入内存再逐个比较。
+ * <p>
+ * 普通标签的位图首次查询时从 file_tag 加载，之后由 {@code FileTagRepositoryImpl} 在写入和删除关联时同步维护。
+ * 绑定文件标签的位图由 tag_file_hash 与 file_index 的 md5 关联查询得到并缓存，标签的hash关联变化时丢弃该标签的缓存，
+ * 文件的 md5 变化时丢弃全部缓存（见 {@link #hashesChanged()}）。
+ * <p>
+ * 标签的文件数（{@link #countFiles()}）：只有直接关联的标签取位图的基数，随关联的增删同步变化；有hash关联的标签
+ * 需要与直接关联去重，由一次分组查询统计全部这类标签并缓存，失效规则与绑定文件标签的位图相同。
+ * <p>
+ * 修改立即生效，事务回滚时丢弃全部位图重新加载，见 {@link TransactionListener}。
+ */
+@Slf4j
+@Component
+public class TagBitmapIndex {
+    private static final String LOAD_SQL = "SELECT tag_id, file_id FROM file_tag";
+    private static final String HASH_FILES_SQL = "SELECT f.id FROM file_index f "
+            + "JOIN tag_file_hash h ON f.md5 = h.file_hash WHERE h.tag_id = ?";
+    /**
+     * 有hash关联的标签的文件数，同一文件通过直接关联和hash同时关联时只算一次
+     */
+    private static final String HASH_TAG_COUNT_SQL = """
+            SELECT h.tag_id, COUNT(u.file_id) AS file_count
+            FROM (SELECT DISTINCT tag_id FROM tag_file_hash) h
+            LEFT JOIN (
+                SELECT th.tag_id, f.id AS file_id FROM tag_file_hash th JOIN file_index f ON f.md5 = th.file_hash
+                UNION
+                SELECT ft.tag_id, ft.file_id FROM file_tag ft WHERE ft.tag_id IN (SELECT tag_id FROM tag_file_hash)
+            ) u ON u.tag_id = h.tag_id
+            GROUP BY h.tag_id
+            """;
+    private static final Roaring64NavigableMap EMPTY = new Roaring64NavigableMap();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * 普通标签关联的文件，加载前为null
+     */
+    private Map<Long, Roaring64NavigableMap> fileTags;
+    /**
+     * 绑定文件标签按hash匹配到的文件
+     */
+    private final Map<Long, HashFiles> hashFiles = new ConcurrentHashMap<>();
+    /**
+     * 有hash关联的标签及其文件数
+     */
+    private volatile HashTagCounts hashTagCounts;
+    /**
+     * hash相关的数据每次变化加一，缓存时的值不同说明缓存已过期
+     */
+    private final AtomicLong hashGeneration = new AtomicLong();
+
+    public TagBitmapIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    private record HashFiles(Roaring64NavigableMap fileIds, long generation) {
+    }
+
+    private record HashTagCounts(Map<Long, Long> counts, long generation) {
+    }
+
+    public void addFileTag(long tagId, long fileId) {
+        write(() -> fileTags.computeIfAbsent(tagId, key -> new Roaring64NavigableMap()).addLong(fileId));
+        directChanged(tagId);
+    }
+
+    public void removeFileTag(long tagId, long fileId) {
+        write(() -> {
+            Roaring64NavigableMap fileIds = fileTags.get(tagId);
+            if (fileIds != null) {
+                fileIds.removeLong(fileId);
+            }
+        });
+        directChanged(tagId);
+    }
+
+    /**
+     * 删除文件的全部标签关联
+     */
+    public void removeFiles(Collection<Long> fileIds) {
+        write(() -> fileTags.values().forEach(tagFileIds -> fileIds.forEach(tagFileIds::removeLong)));
+        hashesChanged();
+    }
+
+    /**
+     * 删除标签的全部文件关联
+     */
+    public void removeTag(long tagId) {
+        write(() -> fileTags.remove(tagId));
+        directChanged(tagId);
+    }
+
+    /**
+     * 标签的文件hash关联发生变化
+     */
+    public void tagHashesChanged(long tagId) {
+        hashesChanged();
+    }
+
+    /**
+     * 直接关联变化只影响有hash关联的标签的去重计数
+     */
+    private void directChanged(long tagId) {
+        HashTagCounts counts = hashTagCounts;
+        if (counts == null || counts.generation() != hashGeneration.get() || counts.counts().containsKey(tagId)) {
+            hashesChanged();
+        }
+    }
+
+    /**
+     * 文件的 md5 发生变化，绑定文件标签匹配到的文件和计数都需要重新查询
+     */
+    public void hashesChanged() {
+        hashGeneration.incrementAndGet();
+        TransactionListener listener = currentTransaction();
+        if (listener != null) {
+            listener.hashesChanged = true;
+        }
+    }
+
+    /**
+     * @see com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository#countFiles()
+     */
+    public Map<Long, Long> countFiles() {
+        Map<Long, Long> hashCounts = getHashTagCounts();
+        ensureLoaded();
+        Map<Long, Long> counts = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            fileTags.forEach((tagId, fileIds) -> counts.put(tagId, fileIds.getLongCardinality()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        counts.putAll(hashCounts);
+        counts.values().removeIf(count -> count == 0);
+        return counts;
+    }
+
+    /**
+     * @see com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository#countFiles(Map)
+     */
+    public Map<Long, Long> countFiles(Map<Long, ? extends Collection<Long>> groups) {
+        Map<Long, Long> counts = new HashMap<>();
+        groups.forEach((key, tagIds) -> {
+            long count = evaluate(TagExpression.anyOf(tagIds)).getLongCardinality();
+            if (count > 0) {
+                counts.put(key, count);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * @see com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository#findFileIds(TagExpression, long, int)
+     */
+    public FileIdPage findFileIds(TagExpression expression, long offset, int limit) {
+        Roaring64NavigableMap result = evaluate(expression);
+        return page(result, offset, limit);
+    }
+
+    /**
+     * @see com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository#findFileIdsAfter(TagExpression, long, int)
+     */
+    public FileIdPage findFileIdsAfter(TagExpression expression, long afterId, int limit) {
+        Roaring64NavigableMap result = evaluate(expression);
+        return page(result, result.rankLong(afterId), limit);
+    }
+
+    private static FileIdPage page(Roaring64NavigableMap fileIds, long offset, int limit) {
+        long total = fileIds.getLongCardinality();
+        long end = Math.min(total, offset + limit);
+        List<Long> ids = new ArrayList<>((int) Math.max(0, end - offset));
+        for (long i = Math.max(0, offset); i < end; i++) {
+            ids.add(fileIds.select(i));
+        }
+        return new FileIdPage(ids, total);
+    }
+
+    /**
+     * 求出满足条件的文件，返回的位图是新建的，可以修改
+     */
+    Roaring64NavigableMap evaluate(TagExpression expression) {
+        // 先在锁外查出用到的绑定文件标签的位图
+        Set<Long> tagIds = new HashSet<>();
+        collectTagIds(expression, tagIds);
+        Map<Long, Roaring64NavigableMap> tagHashFiles = new HashMap<>();
+        for (Long tagId : tagIds) {
+            tagHashFiles.put(tagId, getHashFiles(tagId));
+        }
+
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return evaluate(expression, tagHashFiles);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Roaring64NavigableMap evaluate(TagExpression expression, Map<Long, Roaring64NavigableMap> tagHashFiles) {
+        if (expression instanceof TagExpression.Tag tag) {
+            Roaring64NavigableMap result = new Roaring64NavigableMap();
+            Roaring64NavigableMap direct = fileTags.get(tag.tagId());
+            if (direct != null) {
+                result.or(direct);
+            }
+            result.or(tagHashFiles.get(tag.tagId()));
+            return result;
+        }
+        if (expression instanceof TagExpression.Or or) {
+            Roaring64NavigableMap result = new Roaring64NavigableMap();
+            for (TagExpression operand : or.operands()) {
+                result.or(evaluate(operand, tagHashFiles));
+            }
+            return result;
+        }
+        if (expression instanceof TagExpression.And and) {
+            Roaring64NavigableMap result = null;
+            List<TagExpression> excluded = new ArrayList<>();
+            for (TagExpression operand : and.operands()) {
+                if (operand instanceof TagExpression.Not not) {
+                    excluded.add(not.operand());
+                } else if (result == null) {
+                    result = evaluate(operand, tagHashFiles);
+                } else if (!result.isEmpty()) {
+                    result.and(evaluate(operand, tagHashFiles));
+                }
+            }
+            if (result == null) {
+                if (excluded.isEmpty()) {
+                    return new Roaring64NavigableMap();
+                }
+                throw new IllegalArgumentException("NOT 只能与其他条件 AND 组合使用");
+            }
+            for (TagExpression operand : excluded) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                result.andNot(evaluate(operand, tagHashFiles));
+            }
+            return result;
+        }
+        throw new IllegalArgumentException("NOT 只能与其他条件 AND 组合使用");
+    }
+
+    private static void collectTagIds(TagExpression expression, Set<Long> tagIds) {
+        if (expression instanceof TagExpression.Tag tag) {
+            tagIds.add(tag.tagId());
+        } else if (expression instanceof TagExpression.And and) {
+            and.operands().forEach(operand -> collectTagIds(operand, tagIds));
+        } else if (expression instanceof TagExpression.Or or) {
+            or.operands().forEach(operand -> collectTagIds(operand, tagIds));
+        } else if (expression instanceof TagExpression.Not not) {
+            collectTagIds(not.operand(), tagIds);
+        }
+    }
+
+    /**
+     * 绑定文件标签按hash匹配到的文件，没有hash关联的标签返回空位图；缓存的位图不能修改
+     */
+    private Roaring64NavigableMap getHashFiles(long tagId) {
+        if (!getHashTagCounts().containsKey(tagId)) {
+            return EMPTY;
+        }
+        long generation = hashGeneration.get();
+        HashFiles cached = hashFiles.get(tagId);
+        if (cached != null && cached.generation() == generation) {
+            return cached.fileIds();
+        }
+        Roaring64NavigableMap fileIds = new Roaring64NavigableMap();
+        jdbcTemplate.query(HASH_FILES_SQL, (RowCallbackHandler) rs -> fileIds.addLong(rs.getLong(1)), tagId);
+        fileIds.runOptimize();
+        // 查询期间 md5 又有变化时缓存的代数已过期，下次查询会重新计算
+        hashFiles.put(tagId, new HashFiles(fileIds, generation));
+        return fileIds;
+    }
+
+    private Map<Long, Long> getHashTagCounts() {
+        long generation = hashGeneration.get();
+        HashTagCounts cached = hashTagCounts;
+        if (cached != null && cached.generation() == generation) {
+            return cached.counts();
+        }
+        Map<Long, Long> counts = new HashMap<>();
+        jdbcTemplate.query(HASH_TAG_COUNT_SQL,
+                (RowCallbackHandler) rs -> counts.put(rs.getLong("tag_id"), rs.getLong("file_count")));
+        hashTagCounts = new HashTagCounts(counts, generation);
+        return counts;
+    }
+
+    private void ensureLoaded() {
+        lock.readLock().lock();
+        try {
+            if (fileTags != null) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (fileTags != null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Map<Long, Roaring64NavigableMap> loaded = new HashMap<>();
+            long[] count = {0L};
+            jdbcTemplate.query(LOAD_SQL, (RowCallbackHandler) rs -> {
+                loaded.computeIfAbsent(rs.getLong("tag_id"), key -> new Roaring64NavigableMap())
+                        .addLong(rs.getLong("file_id"));
+                count[0]++;
+            });
+            loaded.values().forEach(Roaring64NavigableMap::runOptimize);
+            fileTags = loaded;
+            log.info("标签位图索引加载完成, 标签数: {}, 关联数: {}, 耗时: {}ms",
+                    loaded.size(), count[0], System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 修改已加载的位图，未加载时忽略，加载时会从数据库读到
+     */
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            if (fileTags != null) {
+                action.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        currentTransaction();
+    }
+
+    /**
+     * 丢弃全部位图，下次查询重新加载
+     */
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            fileTags = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        hashFiles.clear();
+        hashTagCounts = null;
+        hashGeneration.incrementAndGet();
+    }
+
+    /**
+     * 当前事务的监听，不在事务中时返回null
+     */
+    private TransactionListener currentTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        TransactionListener listener = (TransactionListener) TransactionSynchronizationManager.getResource(this);
+        if (listener == null) {
+            listener = new TransactionListener();
+            TransactionSynchronizationManager.bindResource(this, listener);
+            TransactionSynchronizationManager.registerSynchronization(listener);
+        }
+        return listener;
+    }
+
+    /**
+     * 事务中的修改立即生效。提交前其他查询可能按旧数据缓存了绑定文件标签的位图，提交后再丢弃一次；
+     * 回滚时无法确定哪些修改需要撤销，丢弃全部位图
+     */
+    private final class TransactionListener implements TransactionSynchronization {
+        private boolean hashesChanged;
+
+        @Override
+        public void afterCommit() {
+            if (hashesChanged) {
+                hashGeneration.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TagBitmapIndex.this);
+            if (status == STATUS_ROLLED_BACK) {
+                reset();
+            }
+        }
+    }
+}
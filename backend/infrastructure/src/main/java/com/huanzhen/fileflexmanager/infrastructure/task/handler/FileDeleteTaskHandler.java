@@ -2,6 +2,7 @@ package com.huanzhen.fileflexmanager.infrastructure.task.handler;
 
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
+import com.huanzhen.fileflexmanager.application.service.DirectoryListingCache;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
 import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
@@ -29,11 +30,14 @@ public class FileDeleteTaskHandler extends BaseTaskHandler<FileDeleteParams> {
 
     private final FileIndexRepository fileIndexRepository;
     private final FileTagRepository fileTagRepository;
+    private final DirectoryListingCache directoryListingCache;
 
-    public FileDeleteTaskHandler(TaskRepository taskRepository, FileIndexRepository fileIndexRepository, FileTagRepository fileTagRepository) {
+    public FileDeleteTaskHandler(TaskRepository taskRepository, FileIndexRepository fileIndexRepository,
+            FileTagRepository fileTagRepository, DirectoryListingCache directoryListingCache) {
         super(taskRepository);
         this.fileIndexRepository = fileIndexRepository;
         this.fileTagRepository = fileTagRepository;
+        this.directoryListingCache = directoryListingCache;
     }
 
     @Override
@@ -69,12 +73,17 @@ public class FileDeleteTaskHandler extends BaseTaskHandler<FileDeleteParams> {
         // 执行删除
         for (Path path : paths) {
             assertNotCancelled(task);
-            if (Files.isDirectory(path)) {
-                deleteDirectoryWithTags(path, task);
-            } else {
-                deleteFileWithTags(path);
-                deletedFiles++;
-                updateProgressIfNeeded(task);
+            try {
+                if (Files.isDirectory(path)) {
+                    deleteDirectoryWithTags(path, task);
+                } else {
+                    deleteFileWithTags(path);
+                    deletedFiles++;
+                    updateProgressIfNeeded(task);
+                }
+            } finally {
+                // 删除中途失败或取消时也可能已删除了部分内容
+                directoryListingCache.invalidateTree(path);
             }
         }
 
@@ -118,20 +127,9 @@ public class FileDeleteTaskHandler extends BaseTaskHandler<FileDeleteParams> {
             }
         });
 
-        // 删除成功后，再删除标签和索引
-        List<FileIndex> allIndexes = fileIndexRepository.findByParentPath(directory.toString());
-        for (FileIndex index : allIndexes) {
-            fileTagRepository.deleteByFileId(index.getId());
-        }
-
-        // 删除目录本身的标签
-        FileIndex dirIndex = fileIndexRepository.findByPath(directory.toString());
-        if (dirIndex != null) {
-            fileTagRepository.deleteByFileId(dirIndex.getId());
-        }
-
-        // 删除目录的索引
-        fileIndexRepository.deleteStaleIndexes(directory.toString(), LocalDateTime.now());
+        // 删除成功后，再分批删除目录自身及其下所有记录的标签和索引
+        fileIndexRepository.deleteStaleIndexes(directory.toString(), LocalDateTime.now(), deleted ->
+                updateProgress(task, task.getProgress(), StrUtil.format("清理索引: {}，已删除 {} 条", directory, deleted)));
     }
 
     private void deleteFileWithTags(Path file) throws IOException {
@@ -1,51 +1,74 @@
 package com.huanzhen.fileflexmanager.infrastructure.task.handler;
 
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.date.LocalDateTimeUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.crypto.digest.DigestUtil;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexCheckpoint;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.ConfigEnum;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileHashMode;
 import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
 import com.huanzhen.fileflexmanager.domain.model.params.params.FileIndexParams;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexCheckpointRepository;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexFacetRepository;
 import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
 import com.huanzhen.fileflexmanager.domain.repository.TaskRepository;
-import lombok.Data;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.FileContentIndex;
+import com.huanzhen.fileflexmanager.infrastructure.task.index.FileHashPipeline;
+import com.huanzhen.fileflexmanager.infrastructure.task.index.FileIndexBatchWriter;
+import com.huanzhen.fileflexmanager.infrastructure.task.index.FileTreeIndexer;
+import com.huanzhen.fileflexmanager.infrastructure.task.index.IndexCheckpointTracker;
+import com.huanzhen.fileflexmanager.infrastructure.task.index.IndexExclusionMatcher;
+import com.huanzhen.fileflexmanager.infrastructure.util.ByteUtils;
+import com.huanzhen.fileflexmanager.infrastructure.util.TextFileUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Instant;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Scope("prototype")
 @Component
 public class FileIndexTaskHandler extends BaseTaskHandler<FileIndexParams> {
-    private final FileIndexRepository fileIndexRepository;
-
-    @Data
-    private static class TaskState {
-        private final AtomicBoolean isCancelled = new AtomicBoolean(false);
-        private final Map<String, Long> directorySizes = new HashMap<>();
-        private long lastProgressUpdate = 0;
-        private long processedFiles = 0;
-        private long processedDirs = 0;
-        private long totalFiles = 0;
-        private long totalDirs = 0;
-    }
+    private static final long PROGRESS_POLL_INTERVAL = 500; // 毫秒
+    private static final long POOL_TERMINATION_TIMEOUT = 10; // 秒
+    private static final int WRITE_BATCH_SIZE = 500;
+    private static final int WRITE_BUFFER_CAPACITY = 5000;
+    private static final int HASH_QUEUE_CAPACITY = 1000;
+    private static final int DEFAULT_MAX_HASH_THREADS = 4;
+    private static final int COLLISION_QUERY_BATCH_SIZE = 500;
+    private static final int CONTENT_QUERY_BATCH_SIZE = 500;
+    private static final long CHECKPOINT_INTERVAL = 60_000; // 毫秒
+    /**
+     * 断点超过该时长未更新则不再续扫，避免已完成目录中的变化长时间得不到更新
+     */
+    private static final Duration CHECKPOINT_MAX_AGE = Duration.ofDays(1);
 
-    public FileIndexTaskHandler(FileIndexRepository fileIndexRepository, TaskRepository taskRepository) {
+    private final FileIndexRepository fileIndexRepository;
+    private final FileIndexCheckpointRepository checkpointRepository;
+    private final FileIndexFacetRepository facetRepository;
+    private final FileContentIndex fileContentIndex;
+
+    public FileIndexTaskHandler(FileIndexRepository fileIndexRepository,
+                                FileIndexCheckpointRepository checkpointRepository,
+                                FileIndexFacetRepository facetRepository,
+                                FileContentIndex fileContentIndex,
+                                TaskRepository taskRepository) {
         super(taskRepository);
         this.fileIndexRepository = fileIndexRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.facetRepository = facetRepository;
+        this.fileContentIndex = fileContentIndex;
     }
 
     @Override
@@ -55,212 +78,452 @@ public class FileIndexTaskHandler extends BaseTaskHandler<FileIndexParams> {
 
     @Override
     protected void doHandle(Task task) throws Exception {
-        TaskState state = new TaskState();
         FileIndexParams params = parseTaskParam(task);
         Path rootPath = Paths.get(params.getSelectPath());
 
-        // 记录开始时间，用于后续清理过期记录
-        LocalDateTime indexStartTime = LocalDateTime.now();
-
         if (!Files.exists(rootPath)) {
             throw new IllegalArgumentException("目录不存在：" + params.getSelectPath());
         }
 
-        log.info("开始扫描目录: {}, 最大深度: {}, 计算MD5: {}",
+        int parallelism = params.getParallelism() != null && params.getParallelism() > 0
+                ? params.getParallelism() : Runtime.getRuntime().availableProcessors();
+        FileHashMode hashMode = params.resolveHashMode();
+        boolean useIgnoreFile = !Boolean.FALSE.equals(params.getUseIgnoreFile());
+        IndexExclusionMatcher exclusions = compileExclusions(rootPath, params, useIgnoreFile);
+        log.info("开始扫描目录: {}, 最大深度: {}, 哈希模式: {}, 增量: {}, 并行度: {}, 排除规则: {}",
                 params.getSelectPath(),
                 params.getMaxDepth() > 0 ? params.getMaxDepth() : "无限制",
-                params.getCalculateMd5());
-
-        // 先统计总数
-        updateProgress(task, 0, "正在统计文件总数...");
-        countTotalItems(rootPath, params.getMaxDepth(), state);
-        log.info("统计完成：总文件数: {}, 总目录数: {}", state.totalFiles, state.totalDirs);
-
-        updateProgress(task, 0, "开始扫描...");
-        state.lastProgressUpdate = System.currentTimeMillis();
+                hashMode,
+                params.getIncremental(),
+                parallelism,
+                exclusions);
+
+        // 不再单独统计总数，使用上一次索引的记录数估算进度
+        long estimatedTotal = fileIndexRepository.countByPathPrefix(rootPath.toString());
+        log.info("上一次索引记录数: {}", estimatedTotal);
+
+        FileIndexCheckpoint checkpoint = loadCheckpoint(rootPath, params);
+        updateProgress(task, 0, checkpoint.getCompletedDirs().isEmpty() ? "开始扫描..."
+                : StrUtil.format("从断点继续扫描，已完成 {} 个子目录...", checkpoint.getCompletedDirs().size()));
         taskRepository.updateTask(task);
 
-        // 第一次遍历：处理文件
-        try (Stream<Path> paths = createPathStream(rootPath, params.getMaxDepth())) {
-            for (Path path : (Iterable<Path>) paths::iterator) {
+        FileIndexBatchWriter writer = new FileIndexBatchWriter(fileIndexRepository, WRITE_BATCH_SIZE, WRITE_BUFFER_CAPACITY);
+        // 哈希作为独立阶段：遍历线程只负责发现文件，哈希由哈希线程计算后再进入写入缓冲区
+        FileHashPipeline hashPipeline = hashMode != FileHashMode.NONE
+                ? new FileHashPipeline(resolveHashThreads(params), HASH_QUEUE_CAPACITY, hashMode, writer::add)
+                : null;
+        IndexCheckpointTracker checkpointTracker = new IndexCheckpointTracker(
+                checkpointRepository, checkpoint, writer, hashPipeline, CHECKPOINT_INTERVAL);
+        IndexWriteSink sink = new IndexWriteSink(writer, hashPipeline, hashMode, checkpointTracker,
+                Boolean.TRUE.equals(params.getIncremental()));
+        FileTreeIndexer indexer = new FileTreeIndexer(rootPath, params.getMaxDepth(), sink, isCanceled::get,
+                exclusions, useIgnoreFile);
+        IndexStats stats = new IndexStats(indexer, hashPipeline, writer);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        boolean walkCompleted = false;
+        try {
+            ForkJoinTask<Long> walkTask = pool.submit(indexer.createRootTask());
+            while (!walkTask.isDone()) {
                 assertNotCancelled(task);
-
-                if (Files.isRegularFile(path)) {
-                    log.debug("正在处理文件: {}", path);
-                    long fileSize = processFile(path, params.getCalculateMd5());
-                    updateParentDirectorySizes(path, fileSize, state);
-                    state.processedFiles++;
-
-                    updateProgressIfNeeded(task, state);
+                updateProgressIfNeeded(task, stats, estimatedTotal);
+                checkpointTracker.checkpointIfNeeded();
+                try {
+                    walkTask.get(PROGRESS_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignored) {
+                    // 继续轮询，刷新进度
                 }
             }
-        }
-
-        log.info("文件扫描完成，共处理 {} 个文件", state.processedFiles);
-
-        // 第二次遍历：处理目录
-        try (Stream<Path> dirPaths = createPathStream(rootPath, params.getMaxDepth())) {
-            for (Path path : (Iterable<Path>) dirPaths::iterator) {
-                assertNotCancelled(task);
-
-                if (Files.isDirectory(path)) {
-                    log.debug("正在处理目录: {}", path);
-                    processDirectory(path, state);
-                    state.processedDirs++;
-
-                    updateProgressIfNeeded(task, state);
+            assertNotCancelled(task);
+            walkTask.join();
+            walkCompleted = true;
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(POOL_TERMINATION_TIMEOUT, TimeUnit.SECONDS);
+            if (hashPipeline != null) {
+                if (isCanceled.get()) {
+                    hashPipeline.abort();
+                } else {
+                    // 等待排队中的文件计算完成
+                    hashPipeline.close();
                 }
             }
+            // 写入缓冲区中剩余的记录
+            writer.close();
+            if (!walkCompleted) {
+                // 取消或出错时保存最后的进度，下次从这里继续
+                checkpointTracker.checkpointNow();
+            }
         }
 
-        log.info("扫描完成，共处理 {} 个文件，{} 个目录", state.processedFiles, state.processedDirs);
+        log.info("扫描完成，共处理 {} 个文件，{} 个目录，写入 {} 条记录，跳过未变化 {} 条，写入失败 {} 条，{}",
+                indexer.getProcessedFiles(), indexer.getProcessedDirs(),
+                writer.getWrittenCount(), sink.getSkippedCount(), writer.getFailedCount(),
+                stats.describeStages());
 
-        // 清理失效的文件索引
-        int deletedCount = cleanupStaleIndexes(rootPath.toString(), indexStartTime);
+        // 整棵树完成后才清理遍历中未出现的文件索引
+        int deletedCount = cleanupStaleIndexes(task, checkpointTracker.getStaleFiles(), checkpointTracker.getStaleDirs(),
+                checkpointTracker.getStartTime());
         log.info("清理完成，删除了 {} 条失效的文件索引记录", deletedCount);
-
-        task.markAsCompleted(StrUtil.format("索引完成，共处理 {} 个文件，{} 个目录，清理 {} 条失效记录",
-                state.processedFiles, state.processedDirs, deletedCount));
+        checkpointTracker.clear();
+        refreshFacets(rootPath);
+
+        String message = StrUtil.format("索引完成，共处理 {} 个文件，{} 个目录，跳过未变化 {} 条，排除 {} 个条目，清理 {} 条失效记录",
+                indexer.getProcessedFiles(), indexer.getProcessedDirs(), sink.getSkippedCount(),
+                indexer.getExcludedEntries(), deletedCount);
+        if (hashMode == FileHashMode.QUICK) {
+            long resolved = resolveQuickHashCollisions(task, rootPath, params);
+            log.info("快速哈希重复的文件补算完整MD5: {} 个", resolved);
+            message += StrUtil.format("，快速哈希重复补算MD5 {} 个", resolved);
+        }
+        if (Boolean.TRUE.equals(params.getIndexContent())) {
+            try {
+                ContentIndexStats contentStats = indexContents(task, rootPath);
+                log.info("文件内容索引完成: {}", contentStats);
+                message += StrUtil.format("，内容索引写入 {} 个、未变化 {} 个、移除 {} 个",
+                        contentStats.indexed(), contentStats.unchanged(), contentStats.deleted());
+            } catch (IOException e) {
+                log.error("文件内容索引失败: {}", rootPath, e);
+                message += "，内容索引失败: " + e.getMessage();
+            }
+        }
+        task.markAsCompleted(message);
     }
 
-    private void updateParentDirectorySizes(Path path, long size, TaskState state) {
-        Path parent = path.getParent();
-        while (parent != null) {
-            String parentPath = parent.toString();
-            state.directorySizes.merge(parentPath, size, Long::sum);
-            parent = parent.getParent();
+    /**
+     * 按索引结果重新统计根目录的分面计数，失败时只记录日志，不影响索引结果
+     */
+    private void refreshFacets(Path rootPath) {
+        long start = System.currentTimeMillis();
+        try {
+            facetRepository.refresh(rootPath.toString());
+            log.info("分面计数刷新完成: {}, 耗时: {}ms", rootPath, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("分面计数刷新失败: {}", rootPath, e);
         }
     }
 
-    private void processDirectory(Path path, TaskState state) {
-        try {
-            log.debug("开始处理目录: {}", path);
-            File dir = path.toFile();
-            FileIndex fileIndex = new FileIndex();
-            fileIndex.setPath(path.toString());
-            fileIndex.setName(dir.getName());
-            fileIndex.setLastModified(toLocalDateTime(dir.lastModified()));
-            fileIndex.setIsDir(true);
-            fileIndex.setParentPath(path.getParent() != null ? path.getParent().toString() : null);
-
-            fileIndex.setSize(state.directorySizes.getOrDefault(path.toString(), 0L));
-
-            FileIndex existing = fileIndexRepository.findByPath(path.toString());
-            if (existing != null) {
-                fileIndex.setId(existing.getId());
-                fileIndexRepository.updateFileIndex(fileIndex);
-            } else {
-                fileIndexRepository.save(fileIndex);
+    /**
+     * 按文件索引记录更新根目录下文本文件的全文索引
+     * <p>
+     * 大小和修改时间与全文索引中记录的相同时跳过，不读取文件；超过大小上限、不是文本或读取失败的文件
+     * 不进入全文索引，原有的记录和已删除文件的记录在完整遍历后一并移除
+     */
+    private ContentIndexStats indexContents(Task task, Path rootPath) throws IOException {
+        long maxSize = fileContentIndex.getMaxFileSize();
+        long examined = 0;
+        long indexed = 0;
+        long unchanged = 0;
+        try (FileContentIndex.Updater updater = fileContentIndex.openUpdater(rootPath.toString())) {
+            long lastId = 0L;
+            List<FileIndex> batch;
+            while (!(batch = fileIndexRepository.findFilesUnder(
+                    rootPath.toString(), maxSize, lastId, CONTENT_QUERY_BATCH_SIZE)).isEmpty()) {
+                for (FileIndex fileIndex : batch) {
+                    assertNotCancelled(task);
+                    long size = fileIndex.getSize() != null ? fileIndex.getSize() : 0L;
+                    long lastModified = fileIndex.getLastModified() != null
+                            ? LocalDateTimeUtil.toEpochMilli(fileIndex.getLastModified()) : 0L;
+                    if (updater.isUnchanged(fileIndex.getPath(), size, lastModified)) {
+                        unchanged++;
+                        continue;
+                    }
+                    String content;
+                    try {
+                        content = TextFileUtils.readText(Paths.get(fileIndex.getPath()), maxSize);
+                    } catch (IOException e) {
+                        log.debug("读取文件内容失败: {}, {}", fileIndex.getPath(), e.getMessage());
+                        continue;
+                    }
+                    if (content != null) {
+                        updater.update(fileIndex.getPath(), content, size, lastModified);
+                        indexed++;
+                    }
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+                examined += batch.size();
+                updateProgress(task, 99, StrUtil.format("索引文件内容: 已检查 {} 个文件，写入 {} 个，未变化 {} 个",
+                        examined, indexed, unchanged));
             }
-        } catch (Exception e) {
-            log.error("处理目录失败: {}", path, e);
+            return new ContentIndexStats(indexed, unchanged, updater.deleteUnseen());
         }
     }
 
-    private void updateProgressIfNeeded(Task task, TaskState state) {
-        double progress = (state.totalFiles + state.totalDirs) > 0 ?
-                (double) (state.processedFiles + state.processedDirs) / (state.totalFiles + state.totalDirs) * 100 : 0;
-
-        String progressMessage = String.format(
-                "进度: %.1f%% - 已处理: %d/%d (文件: %d/%d, 目录: %d/%d)",
-                progress,
-                state.processedFiles + state.processedDirs,
-                state.totalFiles + state.totalDirs,
-                state.processedFiles,
-                state.totalFiles,
-                state.processedDirs,
-                state.totalDirs
-        );
-
-        updateProgress(task, (int) progress, progressMessage);
+    /**
+     * @param indexed   重新写入全文索引的文件数
+     * @param unchanged 未变化跳过的文件数
+     * @param deleted   从全文索引中移除的文件数
+     */
+    private record ContentIndexStats(long indexed, long unchanged, int deleted) {
     }
 
-    private void countTotalItems(Path rootPath, int maxDepth, TaskState state) {
-        try (Stream<Path> paths = createPathStream(rootPath, maxDepth)) {
-            paths.forEach(path -> {
-                if (Files.isRegularFile(path)) {
-                    state.totalFiles++;
-                } else if (Files.isDirectory(path)) {
-                    state.totalDirs++;
+    /**
+     * 快速哈希模式下，只为快速哈希与其他文件重复的文件计算完整MD5
+     *
+     * @return 计算了MD5的文件数
+     */
+    private long resolveQuickHashCollisions(Task task, Path rootPath, FileIndexParams params) {
+        FileIndexBatchWriter writer = new FileIndexBatchWriter(fileIndexRepository, WRITE_BATCH_SIZE, WRITE_BUFFER_CAPACITY);
+        FileHashPipeline pipeline = new FileHashPipeline(resolveHashThreads(params), HASH_QUEUE_CAPACITY,
+                FileHashMode.FULL, writer::add);
+        long submitted = 0;
+        try {
+            // 重复的快速哈希只在开始时统计一次，再按快速哈希分批取出需要补算的记录
+            List<String> quickHashes = new ArrayList<>(fileIndexRepository.findCollidingQuickHashes(rootPath.toString()));
+            for (List<String> chunk : ListUtil.partition(quickHashes, COLLISION_QUERY_BATCH_SIZE)) {
+                assertNotCancelled(task);
+                List<FileIndex> candidates = fileIndexRepository.findQuickHashCollisions(rootPath.toString(), chunk);
+                for (FileIndex candidate : candidates) {
+                    assertNotCancelled(task);
+                    pipeline.submit(candidate);
                 }
-            });
-        } catch (IOException e) {
-            log.error("统计文件总数时发生错误", e);
+                submitted += candidates.size();
+                updateProgress(task, 99, StrUtil.format("快速哈希重复，补算完整MD5: 已提交 {} 个，已完成 {} 个",
+                        submitted, pipeline.getHashedFiles()));
+            }
+        } finally {
+            if (isCanceled.get()) {
+                pipeline.abort();
+            } else {
+                pipeline.close();
+            }
+            writer.close();
         }
+        return pipeline.getHashedFiles();
     }
 
-    @Override
-    protected void onCancel(Task task) {
-
+    /**
+     * 读取可以续扫的断点，没有时新建
+     */
+    private FileIndexCheckpoint loadCheckpoint(Path rootPath, FileIndexParams params) {
+        FileIndexCheckpoint checkpoint = checkpointRepository.findByRootPath(rootPath.toString());
+        if (checkpoint != null) {
+            boolean resumable = !Boolean.FALSE.equals(params.getResume())
+                    && Objects.equals(checkpoint.getMaxDepth(), params.getMaxDepth())
+                    && checkpoint.getUpdateTime() != null
+                    && checkpoint.getUpdateTime().isAfter(LocalDateTime.now().minus(CHECKPOINT_MAX_AGE));
+            if (resumable) {
+                log.info("从断点继续索引: {}, 已完成目录数: {}, 断点时间: {}",
+                        rootPath, checkpoint.getCompletedDirs().size(), checkpoint.getUpdateTime());
+                return checkpoint;
+            }
+            log.info("忽略不可续扫的索引断点: {}, 断点时间: {}", rootPath, checkpoint.getUpdateTime());
+            checkpointRepository.deleteByRootPath(rootPath.toString());
+        }
+        return new FileIndexCheckpoint(rootPath.toString(), params.getMaxDepth());
     }
 
-    private void checkAccess(Path path) throws IOException {
-        if (!Files.isReadable(path)) {
-            throw new IOException("无法读取文件: " + path);
+    /**
+     * 把遍历结果写入缓冲区：增量模式下跳过未变化的条目，失效记录和已完成目录交给断点记录器
+     */
+    private class IndexWriteSink implements FileTreeIndexer.IndexSink {
+        private final FileIndexBatchWriter writer;
+        private final FileHashPipeline hashPipeline;
+        private final FileHashMode hashMode;
+        private final IndexCheckpointTracker checkpointTracker;
+        private final boolean incremental;
+        private final LongAdder skippedCount = new LongAdder();
+
+        private IndexWriteSink(FileIndexBatchWriter writer, FileHashPipeline hashPipeline, FileHashMode hashMode,
+                               IndexCheckpointTracker checkpointTracker, boolean incremental) {
+            this.writer = writer;
+            this.hashPipeline = hashPipeline;
+            this.hashMode = hashMode;
+            this.checkpointTracker = checkpointTracker;
+            this.incremental = incremental;
         }
-    }
 
-    private long processFile(Path path, boolean calculateMd5) {
-        try {
-            log.debug("开始处理文件: {}", path);
-            checkAccess(path);
-            File file = path.toFile();
-            long fileSize = file.length();
-
-            FileIndex fileIndex = new FileIndex();
-            fileIndex.setPath(path.toString());
-            fileIndex.setName(file.getName());
-            fileIndex.setSize(fileSize);
-            fileIndex.setLastModified(toLocalDateTime(file.lastModified()));
-            fileIndex.setIsDir(false);
-            fileIndex.setParentPath(path.getParent().toString());
-
-            if (calculateMd5) {
-                try {
-                    fileIndex.setMd5(DigestUtil.md5Hex(file));
-                } catch (Exception e) {
-                    log.error("计算文件MD5失败: {}", path, e);
-                }
+        @Override
+        public FileIndex loadExisting(Path path) {
+            return fileIndexRepository.findByPath(path.toString());
+        }
+
+        @Override
+        public Map<String, FileIndex> loadExistingChildren(Path dir) {
+            Map<String, FileIndex> children = new HashMap<>();
+            for (FileIndex child : fileIndexRepository.findByParentPath(dir.toString())) {
+                children.put(child.getPath(), child);
             }
+            return children;
+        }
 
-            FileIndex existing = fileIndexRepository.findByPath(path.toString());
-            if (existing != null) {
-                fileIndex.setId(existing.getId());
-                fileIndexRepository.updateFileIndex(fileIndex);
+        @Override
+        public void accept(FileIndex fileIndex, FileIndex existing) {
+            log.debug("正在处理: {}", fileIndex.getPath());
+            if (incremental && isUnchanged(fileIndex, existing)) {
+                skippedCount.increment();
+                return;
+            }
+            if (hashPipeline != null && !fileIndex.getIsDir()) {
+                hashPipeline.submit(fileIndex);
             } else {
-                fileIndexRepository.save(fileIndex);
+                writer.add(fileIndex);
             }
+        }
 
-            return fileSize;
-        } catch (Exception e) {
-            log.error("处理文件失败: {}", path, e);
-            return 0L;
+        @Override
+        public void onStale(Collection<FileIndex> entries) {
+            checkpointTracker.onStale(entries);
+        }
+
+        @Override
+        public Long loadCompletedSize(Path dir) {
+            return checkpointTracker.getCompletedSize(dir);
+        }
+
+        @Override
+        public void onDirectoryCompleted(Path dir, long size, Collection<Path> subDirs) {
+            checkpointTracker.onDirectoryCompleted(dir, size, subDirs);
+        }
+
+        /**
+         * 大小、修改时间、文件标识、权限和所有者均未变化，且当前哈希模式需要的哈希已存在时认为未变化
+         * <p>
+         * 修改权限和所有者不会改变修改时间，需要单独比较
+         */
+        private boolean isUnchanged(FileIndex current, FileIndex existing) {
+            if (existing == null) {
+                return false;
+            }
+            if (!Objects.equals(current.getIsDir(), existing.getIsDir())
+                    || !Objects.equals(current.getSize(), existing.getSize())
+                    || !Objects.equals(current.getLastModified(), existing.getLastModified())) {
+                return false;
+            }
+            if (current.getFileKey() != null && existing.getFileKey() != null
+                    && !current.getFileKey().equals(existing.getFileKey())) {
+                return false;
+            }
+            if (!Objects.equals(current.getPermissions(), existing.getPermissions())
+                    || !Objects.equals(current.getOwner(), existing.getOwner())) {
+                return false;
+            }
+            if (current.getIsDir()) {
+                return true;
+            }
+            return switch (hashMode) {
+                case NONE -> true;
+                case QUICK -> existing.getQuickHash() != null;
+                case FULL -> existing.getMd5() != null;
+            };
+        }
+
+        private long getSkippedCount() {
+            return skippedCount.sum();
         }
     }
 
-    private Stream<Path> createPathStream(Path rootPath, int maxDepth) throws IOException {
-        return maxDepth > 0 ? Files.walk(rootPath, maxDepth) : Files.walk(rootPath);
+    /**
+     * 排除规则相对于 excludeBase 解析；只索引其下的子目录时，叠加从 excludeBase 到子目录之间各级目录的 .fileflexignore
+     */
+    private static IndexExclusionMatcher compileExclusions(Path rootPath, FileIndexParams params, boolean useIgnoreFile) {
+        Path root = rootPath.toAbsolutePath().normalize();
+        Path base = StrUtil.isNotBlank(params.getExcludeBase())
+                ? Paths.get(params.getExcludeBase()).toAbsolutePath().normalize() : root;
+        if (!root.startsWith(base)) {
+            base = root;
+        }
+        IndexExclusionMatcher exclusions = IndexExclusionMatcher.compile(base,
+                ConfigEnum.FILE_INDEX_EXCLUDE_RULES.getValue(), params.getExcludeRules());
+        if (useIgnoreFile) {
+            for (Path dir = base; !dir.equals(root); dir = dir.resolve(root.getName(dir.getNameCount()))) {
+                exclusions = exclusions.withIgnoreFile(dir);
+            }
+        }
+        return exclusions;
+    }
+
+    private int resolveHashThreads(FileIndexParams params) {
+        if (params.getHashThreads() != null && params.getHashThreads() > 0) {
+            return params.getHashThreads();
+        }
+        return Math.min(DEFAULT_MAX_HASH_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 各流水线阶段的吞吐统计
+     */
+    private static class IndexStats {
+        private final FileTreeIndexer indexer;
+        private final FileHashPipeline hashPipeline;
+        private final FileIndexBatchWriter writer;
+        private final long startNanos = System.nanoTime();
+
+        private IndexStats(FileTreeIndexer indexer, FileHashPipeline hashPipeline, FileIndexBatchWriter writer) {
+            this.indexer = indexer;
+            this.hashPipeline = hashPipeline;
+            this.writer = writer;
+        }
+
+        private String describeStages() {
+            double seconds = Math.max(0.001, (System.nanoTime() - startNanos) / 1_000_000_000.0);
+            long scanned = indexer.getProcessedFiles() + indexer.getProcessedDirs();
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("扫描: %.0f 条/秒", scanned / seconds));
+            if (hashPipeline != null) {
+                builder.append(String.format(", 哈希: %d 个 (%s/秒, 排队 %d)",
+                        hashPipeline.getHashedFiles(),
+                        ByteUtils.humanReadableByteCount((long) (hashPipeline.getHashedBytes() / seconds)),
+                        hashPipeline.getPendingCount()));
+            }
+            builder.append(String.format(", 写入: %d 条 (%.0f 条/秒)",
+                    writer.getWrittenCount(), writer.getWrittenCount() / seconds));
+            return builder.toString();
+        }
+    }
+
+    private void updateProgressIfNeeded(Task task, IndexStats stats, long estimatedTotal) {
+        long processedFiles = stats.indexer.getProcessedFiles();
+        long processedDirs = stats.indexer.getProcessedDirs();
+        long processed = processedFiles + processedDirs;
+
+        String progressMessage;
+        int progress;
+        if (estimatedTotal > 0) {
+            // 估算值可能小于实际数量，运行期间最多显示99%
+            double percent = Math.min(99.0, (double) processed / estimatedTotal * 100);
+            progress = (int) percent;
+            progressMessage = String.format("进度: 约%.1f%% - 已处理: %d/~%d (文件: %d, 目录: %d)",
+                    percent, processed, estimatedTotal, processedFiles, processedDirs);
+        } else {
+            progress = 0;
+            progressMessage = String.format("已处理: %d (文件: %d, 目录: %d)",
+                    processed, processedFiles, processedDirs);
+        }
+
+        updateProgress(task, progress, progressMessage + "\n" + stats.describeStages());
     }
 
-    private LocalDateTime toLocalDateTime(long timestamp) {
-        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    @Override
+    protected void onCancel(Task task) {
+
     }
 
     /**
      * 清理失效的文件索引
-     * @param rootPath 根路径
+     * @param task 当前任务，用于汇报清理进度
+     * @param staleFiles 遍历中未出现的文件
+     * @param staleDirs 遍历中未出现的目录
      * @param indexStartTime 索引开始时间
      * @return 清理的记录数
      */
-    private int cleanupStaleIndexes(String rootPath, LocalDateTime indexStartTime) {
-        log.info("开始清理失效的文件索引，根路径: {}", rootPath);
+    private int cleanupStaleIndexes(Task task, Collection<String> staleFiles, Collection<String> staleDirs,
+                                    LocalDateTime indexStartTime) {
+        log.info("开始清理失效的文件索引，失效文件数: {}, 失效目录数: {}", staleFiles.size(), staleDirs.size());
+        int deletedCount = 0;
         try {
-            // 删除在本次索引中未更新的记录（lastModified早于indexStartTime的记录）
-            return fileIndexRepository.deleteStaleIndexes(rootPath, indexStartTime);
+            for (String dir : staleDirs) {
+                // 失效目录连同其下所有记录一起分批删除
+                int deletedBefore = deletedCount;
+                deletedCount += fileIndexRepository.deleteStaleIndexes(dir, indexStartTime, deleted ->
+                        updateProgress(task, task.getProgress(),
+                                StrUtil.format("清理失效索引: {}，已删除 {} 条", dir, deletedBefore + deleted)));
+            }
+            deletedCount += fileIndexRepository.deleteByPaths(staleFiles);
         } catch (Exception e) {
             log.error("清理失效文件索引时发生错误", e);
-            return 0;
         }
+        return deletedCount;
     }
 
     @Override
@@ -270,4 +533,4 @@ public class FileIndexTaskHandler extends BaseTaskHandler<FileIndexParams> {
                 params.getSelectPath(),
                 params.getMaxDepth() > 0 ? params.getMaxDepth() : "无限制");
     }
-} 
\ No newline at end of file
+}
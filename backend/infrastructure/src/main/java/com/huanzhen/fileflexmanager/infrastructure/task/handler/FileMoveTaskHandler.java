@@ -3,6 +3,7 @@ package com.huanzhen.fileflexmanager.infrastructure.task.handler;
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
 import com.alibaba.fastjson2.JSON;
+import com.huanzhen.fileflexmanager.application.service.DirectoryListingCache;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileTag;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
@@ -22,8 +23,10 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
@@ -36,13 +39,15 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
     private final RsyncExecutor rsyncExecutor;
     private final FileIndexRepository fileIndexRepository;
     private final FileTagRepository fileTagRepository;
+    private final DirectoryListingCache directoryListingCache;
 
     public FileMoveTaskHandler(TaskRepository taskRepository, FileIndexRepository fileIndexRepository,
-            FileTagRepository fileTagRepository) {
+            FileTagRepository fileTagRepository, DirectoryListingCache directoryListingCache) {
         super(taskRepository);
         this.rsyncExecutor = new RsyncExecutor();
         this.fileIndexRepository = fileIndexRepository;
         this.fileTagRepository = fileTagRepository;
+        this.directoryListingCache = directoryListingCache;
     }
 
     @Override
@@ -93,6 +98,8 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
 
         // 收集需要使用rsync移动的文件
         List<Path> rsyncPaths = new ArrayList<>();
+        // rsync 移动后源路径已不存在，需要提前记录哪些是目录
+        Set<Path> rsyncDirectories = new HashSet<>();
         // 收集所有成功移动的文件路径和目标路径的映射
         Map<Path, Path> successfulMoves = new HashMap<>();
         Map<String, List<FileTag>> allSourceTagsMap = new HashMap<>();
@@ -128,10 +135,13 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
                 // 记录成功移动的文件
                 successfulMoves.put(sourcePath, destinationPath);
                 // 删除文件索引
-                deleteFileIndexes(sourcePath.toString(), isDirectory);
+                deleteFileIndexes(task, sourcePath.toString(), isDirectory);
             } catch (AtomicMoveNotSupportedException e) {
                 log.info("原子移动不支持，添加到rsync队列: {}", sourcePath);
                 rsyncPaths.add(sourcePath);
+                if (isDirectory) {
+                    rsyncDirectories.add(sourcePath);
+                }
             }
         }
 
@@ -158,7 +168,7 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
                 Path destinationPath = targetDir.resolve(sourcePath.getFileName());
                 successfulMoves.put(sourcePath, destinationPath);
                 // 删除文件索引
-                deleteFileIndexes(sourcePath.toString(), Files.isDirectory(sourcePath));
+                deleteFileIndexes(task, sourcePath.toString(), rsyncDirectories.contains(sourcePath));
             }
         }
 
@@ -170,6 +180,12 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
             log.info("文件标签处理完成");
         }
 
+        // 源目录、目标目录及移动的子目录的列表缓存失效
+        successfulMoves.forEach((sourcePath, destinationPath) -> {
+            directoryListingCache.invalidateTree(sourcePath);
+            directoryListingCache.invalidateTree(destinationPath);
+        });
+
         String msg = "移动完成";
         if (progress != null) {
             msg = progress.generateMsg();
@@ -277,6 +293,7 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
                     newIndex.setIsDir(oldIndex.getIsDir());
                     newIndex.setSize(oldIndex.getSize());
                     newIndex.setMd5(oldIndex.getMd5());
+                    newIndex.setQuickHash(oldIndex.getQuickHash());
                     newIndex.setMimeType(oldIndex.getMimeType());
                     newIndex.setParentPath(Paths.get(newPath).getParent().toString());
                     newIndex.setLastModified(LocalDateTime.now());
@@ -331,10 +348,11 @@ public class FileMoveTaskHandler extends BaseTaskHandler<FileMoveParams> {
                 movedSize, totalSize, (double) progress));
     }
 
-    private void deleteFileIndexes(String sourcePath, boolean isDirectory) {
+    private void deleteFileIndexes(Task task, String sourcePath, boolean isDirectory) {
         if (isDirectory) {
-            // 如果是目录，删除该目录下所有文件的索引
-            fileIndexRepository.deleteStaleIndexes(sourcePath, LocalDateTime.now());
+            // 如果是目录，分批删除该目录下所有文件的索引
+            fileIndexRepository.deleteStaleIndexes(sourcePath, LocalDateTime.now(), deleted ->
+                    updateProgress(task, task.getProgress(), StrUtil.format("清理原路径索引: {}，已删除 {} 条", sourcePath, deleted)));
         } else {
             // 如果是文件，只删除该文件的索引
             fileIndexRepository.deleteByPath(sourcePath);
@@ -0,0 +1,155 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.handler;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.StrUtil;
+import com.huanzhen.fileflexmanager.application.service.FileService;
+import com.huanzhen.fileflexmanager.application.service.TagService;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileTagMode;
+import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
+import com.huanzhen.fileflexmanager.domain.model.params.params.FileTagParams;
+import com.huanzhen.fileflexmanager.domain.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 批量打标签
+ * <p>
+ * 先分批解析选中的文件、批量获取或创建索引记录，绑定文件的标签使用索引中仍有效的完整MD5，
+ * 最后在一个事务中批量写入标签差异。索引中没有有效MD5的文件不在这里读取文件内容，由后台计算后补上hash关联，
+ * 少量文件同步执行时也不会阻塞请求。
+ * 写入前取消不会留下任何标签变更。
+ */
+@Slf4j
+@Scope("prototype")
+@Component
+public class FileTagTaskHandler extends BaseTaskHandler<FileTagParams> {
+    private static final int RESOLVE_BATCH_SIZE = 500;
+    /**
+     * 解析文件占总进度的比例，其余为写入标签
+     */
+    private static final int RESOLVE_PROGRESS = 90;
+
+    private final FileService fileService;
+    private final TagService tagService;
+
+    public FileTagTaskHandler(TaskRepository taskRepository, FileService fileService, TagService tagService) {
+        super(taskRepository);
+        this.fileService = fileService;
+        this.tagService = tagService;
+    }
+
+    @Override
+    public TaskType getTaskType() {
+        return TaskType.FILE_TAG;
+    }
+
+    @Override
+    protected void doHandle(Task task) throws Exception {
+        FileTagParams params = parseTaskParam(task);
+        Assert.notEmpty(params.getTagIds(), "标签不能为空");
+        Assert.isTrue(CollUtil.isNotEmpty(params.getSelectedPaths()) || StrUtil.isNotBlank(params.getDirectory()),
+                "请选择文件或目录");
+        FileTagMode mode = params.resolveMode();
+
+        updateProgress(task, 0, "正在查找文件...");
+        List<Path> paths = collectPaths(params, task);
+        if (paths.isEmpty()) {
+            task.markAsCompleted("没有匹配的文件");
+            return;
+        }
+
+        boolean requiresHash = tagService.requiresFileHash(mode, params.getTagIds());
+        List<FileIndex> files = new ArrayList<>(paths.size());
+        Map<Long, String> fileHashes = new HashMap<>();
+        int processed = 0;
+        for (List<Path> chunk : ListUtil.partition(paths, RESOLVE_BATCH_SIZE)) {
+            assertNotCancelled(task);
+            for (FileIndex fileIndex : fileService.resolveFileIndexes(chunk)) {
+                files.add(fileIndex);
+                if (requiresHash && !Boolean.TRUE.equals(fileIndex.getIsDir())) {
+                    String fileHash = tagService.findIndexedFileHash(fileIndex);
+                    if (fileHash != null) {
+                        fileHashes.put(fileIndex.getId(), fileHash);
+                    }
+                }
+            }
+            processed += chunk.size();
+            updateProgress(task, processed * RESOLVE_PROGRESS / paths.size(),
+                    StrUtil.format("已处理: {}/{} 个文件", processed, paths.size()));
+        }
+
+        assertNotCancelled(task);
+        task.updateProgress(RESOLVE_PROGRESS, "正在写入标签...");
+        taskRepository.updateTask(task);
+        int changed = tagService.updateFilesTags(files, fileHashes, mode, params.getTagIds());
+        task.markAsCompleted(StrUtil.format("{}标签完成: {} 个文件，变更 {} 个标签关联",
+                mode.getDescription(), files.size(), changed));
+    }
+
+    /**
+     * 选中的路径和目录下匹配的文件，去重并保持顺序
+     */
+    private List<Path> collectPaths(FileTagParams params, Task task) throws IOException {
+        Set<Path> paths = new LinkedHashSet<>();
+        if (params.getSelectedPaths() != null) {
+            for (String selectedPath : params.getSelectedPaths()) {
+                Path path = Paths.get(selectedPath).toAbsolutePath().normalize();
+                if (!Files.exists(path)) {
+                    throw new IllegalArgumentException("路径不存在：" + selectedPath);
+                }
+                paths.add(path);
+            }
+        }
+        if (StrUtil.isNotBlank(params.getDirectory())) {
+            Path directory = Paths.get(params.getDirectory()).toAbsolutePath().normalize();
+            if (!Files.isDirectory(directory)) {
+                throw new IllegalArgumentException("目录不存在：" + params.getDirectory());
+            }
+            PathMatcher matcher = StrUtil.isNotBlank(params.getPattern())
+                    ? FileSystems.getDefault().getPathMatcher("glob:" + params.getPattern().trim())
+                    : null;
+            int maxDepth = Boolean.TRUE.equals(params.getRecursive()) ? Integer.MAX_VALUE : 1;
+            try (Stream<Path> stream = Files.walk(directory, maxDepth)) {
+                stream.filter(Files::isRegularFile)
+                        .filter(path -> matcher == null || matcher.matches(path.getFileName()))
+                        .forEach(path -> {
+                            assertNotCancelled(task);
+                            paths.add(path);
+                        });
+            }
+        }
+        return new ArrayList<>(paths);
+    }
+
+    @Override
+    protected void onCancel(Task task) {
+        // 标签在最后一次写入，取消时无需清理
+    }
+
+    @Override
+    public String getTaskDesc(Task task) {
+        FileTagParams params = parseTaskParam(task);
+        FileTagMode mode = FileTagMode.of(params.getMode());
+        String action = mode != null ? mode.getDescription() : params.getMode();
+        List<String> targets = new ArrayList<>();
+        if (CollUtil.isNotEmpty(params.getSelectedPaths())) {
+            targets.add(params.getSelectedPaths().size() + " 个文件/目录");
+        }
+        if (StrUtil.isNotBlank(params.getDirectory())) {
+            targets.add(StrUtil.isNotBlank(params.getPattern())
+                    ? params.getDirectory() + " 下的 " + params.getPattern()
+                    : params.getDirectory() + " 下的文件");
+        }
+        return StrUtil.format("批量{}标签: {}", action, String.join("，", targets));
+    }
+}
@@ -0,0 +1,173 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileHashMode;
+import com.huanzhen.fileflexmanager.infrastructure.util.FileHashUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 文件哈希流水线阶段
+ * <p>
+ * 遍历线程通过 {@link #submit(FileIndex)} 提交需要计算哈希的文件后立即返回，由固定数量的
+ * 哈希线程按模式计算快速哈希和/或MD5，并把结果交给下游（通常是批量写入器）。等待中的文件数受队列容量限制，
+ * 超出时 submit 阻塞，防止遍历速度远超哈希速度时堆积。
+ */
+@Slf4j
+public class FileHashPipeline implements AutoCloseable {
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int capacity;
+    private final FileHashMode mode;
+    private final Consumer<FileIndex> downstream;
+
+    /**
+     * 提交序号及尚未完成的序号，用于判断某一时刻前提交的文件是否都已交给下游
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+
+    private final LongAdder hashedFiles = new LongAdder();
+    private final LongAdder hashedBytes = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+
+    /**
+     * @param workers       哈希线程数
+     * @param queueCapacity 等待哈希的最大文件数
+     * @param mode          哈希模式，QUICK只计算快速哈希，FULL同时计算快速哈希和MD5
+     * @param downstream    哈希完成（或失败）后记录的去向
+     */
+    public FileHashPipeline(int workers, int queueCapacity, FileHashMode mode, Consumer<FileIndex> downstream) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "file-index-hash-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.capacity = queueCapacity + workers;
+        this.permits = new Semaphore(capacity);
+        this.mode = mode;
+        this.downstream = downstream;
+    }
+
+    /**
+     * 提交文件计算哈希，队列已满时阻塞
+     */
+    public void submit(FileIndex fileIndex) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("提交哈希任务被中断: " + fileIndex.getPath(), e);
+        }
+        long seq = sequence.incrementAndGet();
+        inFlight.add(seq);
+        try {
+            executor.execute(() -> {
+                try {
+                    hash(fileIndex);
+                } finally {
+                    inFlight.remove(seq);
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(seq);
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void hash(FileIndex fileIndex) {
+        try {
+            Path path = Paths.get(fileIndex.getPath());
+            if (fileIndex.getQuickHash() == null) {
+                fileIndex.setQuickHash(FileHashUtils.quickHashHex(path));
+            }
+            if (mode == FileHashMode.FULL) {
+                fileIndex.setMd5(FileHashUtils.md5Hex(path));
+                hashedBytes.add(fileIndex.getSize() != null ? fileIndex.getSize() : 0L);
+            }
+            hashedFiles.increment();
+        } catch (Exception e) {
+            failedFiles.increment();
+            log.error("计算文件哈希失败: {}", fileIndex.getPath(), e);
+        }
+        // 哈希失败也写入记录，只是不带哈希
+        try {
+            downstream.accept(fileIndex);
+        } catch (Exception e) {
+            log.error("提交哈希结果失败: {}", fileIndex.getPath(), e);
+        }
+    }
+
+    public long getHashedFiles() {
+        return hashedFiles.sum();
+    }
+
+    public long getHashedBytes() {
+        return hashedBytes.sum();
+    }
+
+    public long getFailedFiles() {
+        return failedFiles.sum();
+    }
+
+    /**
+     * 当前最大的提交序号
+     */
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * 序号不大于 seq 的文件是否都已完成哈希并交给下游
+     */
+    public boolean isCompletedThrough(long seq) {
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        return oldest == null || oldest > seq;
+    }
+
+    /**
+     * 当前排队及计算中的文件数
+     */
+    public int getPendingCount() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * 放弃尚未开始的哈希任务，用于任务取消
+     */
+    public void abort() {
+        int dropped = executor.shutdownNow().size();
+        log.info("哈希阶段已终止, 丢弃 {} 个待计算文件", dropped);
+    }
+
+    /**
+     * 等待已提交的文件全部计算完成
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("等待哈希线程完成, 剩余: {}", getPendingCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            log.warn("等待哈希线程完成时被中断");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文件索引批量写入器
+ * <p>
+ * 遍历线程通过 {@link #add(FileIndex)} 把记录放入有界缓冲区，由单独的写线程按批调用
+ * {@link FileIndexRepository#upsertAll(List)} 落库。缓冲区满时 add 会阻塞，避免遍历速度
+ * 远超写库速度时堆积过多对象。
+ */
+@Slf4j
+public class FileIndexBatchWriter implements AutoCloseable {
+    /**
+     * 结束标记，close 时放入队列尾部
+     */
+    private static final FileIndex END_MARKER = new FileIndex();
+
+    private final FileIndexRepository fileIndexRepository;
+    private final int batchSize;
+    private final BlockingQueue<FileIndex> buffer;
+    private final Thread writerThread;
+
+    private final LongAdder addedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * @param fileIndexRepository 索引仓储
+     * @param batchSize           每次写库的最大记录数
+     * @param capacity            缓冲区容量
+     */
+    public FileIndexBatchWriter(FileIndexRepository fileIndexRepository, int batchSize, int capacity) {
+        this.fileIndexRepository = fileIndexRepository;
+        this.batchSize = batchSize;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.writerThread = new Thread(this::runWriter, "file-index-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 添加一条待写入的记录，缓冲区满时阻塞
+     */
+    public void add(FileIndex fileIndex) {
+        // 先计数再入队，保证 getProcessedCount() >= 某时刻的 getAddedCount() 时，该时刻前加入的记录都已处理
+        if (fileIndex != END_MARKER) {
+            addedCount.increment();
+        }
+        try {
+            buffer.put(fileIndex);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("写入文件索引被中断: " + fileIndex.getPath(), e);
+        }
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getAddedCount() {
+        return addedCount.sum();
+    }
+
+    /**
+     * 已经处理（写入成功或失败）的记录数，记录按加入顺序处理
+     */
+    public long getProcessedCount() {
+        return writtenCount.sum() + failedCount.sum();
+    }
+
+    private void runWriter() {
+        List<FileIndex> batch = new ArrayList<>(batchSize);
+        boolean finished = false;
+        while (!finished) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("文件索引写线程被中断，剩余 {} 条记录未写入", buffer.size());
+                return;
+            }
+            buffer.drainTo(batch, batchSize - batch.size());
+
+            // 结束标记总是最后入队，只可能出现在批次末尾
+            if (batch.get(batch.size() - 1) == END_MARKER) {
+                batch.remove(batch.size() - 1);
+                finished = true;
+            }
+            flush(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    private void flush(List<FileIndex> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            fileIndexRepository.upsertAll(batch);
+            writtenCount.add(batch.size());
+        } catch (Exception e) {
+            failedCount.add(batch.size());
+            log.error("批量写入文件索引失败, 记录数: {}, 首条路径: {}", batch.size(), batch.get(0).getPath(), e);
+        }
+    }
+
+    /**
+     * 写入缓冲区中剩余的记录并等待写线程结束
+     */
+    @Override
+    public void close() {
+        add(END_MARKER);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("等待文件索引写线程结束时被中断");
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONObject;
+import com.huanzhen.fileflexmanager.application.service.TaskApplicationService;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.ConfigEnum;
+import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * 文件索引实时维护服务
+ * <p>
+ * 对定时索引任务的目录注册 {@link WatchService}，把文件变化实时应用到 file_index，
+ * 定时全量索引只需作为兜底。同一路径的多次事件会合并，静默 {@link #DEBOUNCE_MILLIS}
+ * 后按批写库；事件溢出（OVERFLOW）或待处理事件过多时，改为对相应目录提交一次增量索引任务。
+ * <p>
+ * 通过配置 {@link ConfigEnum#FILE_INDEX_WATCH_ENABLED} 开启，每分钟同步一次监听的根目录。
+ * 全局和任务的排除规则同样生效：被排除的目录不注册监听，被排除条目的事件直接忽略。
+ */
+@Slf4j
+@Component
+public class FileIndexWatchService implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+    /**
+     * 同一路径最后一次事件后等待的时间，期间的事件合并为一次处理
+     */
+    static final long DEBOUNCE_MILLIS = 2000;
+    private static final int APPLY_BATCH_SIZE = 500;
+    /**
+     * 待处理路径数上限，超出后不再逐个记录，改为重新扫描目录
+     */
+    private static final int MAX_PENDING_CHANGES = 100_000;
+
+    private final TaskRepository taskRepository;
+    private final FileIndexRepository fileIndexRepository;
+    private final TaskApplicationService taskApplicationService;
+
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    /**
+     * 待处理路径 -> 最后一次事件时间
+     */
+    private final Map<Path, Long> pendingChanges = new ConcurrentHashMap<>();
+    private final Set<Path> pendingRescans = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean isAppReady = false;
+    private volatile WatchService watchService;
+    private Thread watchThread;
+    private Set<Path> watchedRoots = Collections.emptySet();
+    private volatile Map<Path, IndexedRoot> indexedRoots = Collections.emptyMap();
+
+    public FileIndexWatchService(TaskRepository taskRepository,
+                                 FileIndexRepository fileIndexRepository,
+                                 TaskApplicationService taskApplicationService) {
+        this.taskRepository = taskRepository;
+        this.fileIndexRepository = fileIndexRepository;
+        this.taskApplicationService = taskApplicationService;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        isAppReady = true;
+    }
+
+    /**
+     * 同步监听的根目录：开关关闭时停止监听，根目录变化时增减监听
+     */
+    @Scheduled(fixedDelay = 60, initialDelay = 10, timeUnit = TimeUnit.SECONDS)
+    public synchronized void refreshWatchedRoots() {
+        if (!isAppReady) {
+            return;
+        }
+        try {
+            if (!ConfigEnum.FILE_INDEX_WATCH_ENABLED.getBooleanValue()) {
+                stopWatching();
+                return;
+            }
+            indexedRoots = resolveIndexedRoots();
+            Set<Path> roots = indexedRoots.keySet();
+            if (roots.equals(watchedRoots)) {
+                return;
+            }
+            startWatching();
+
+            for (Path root : roots) {
+                if (!watchedRoots.contains(root)) {
+                    log.info("开始监听目录变化: {}", root);
+                    registerTree(root, false);
+                }
+            }
+            for (Path root : watchedRoots) {
+                if (!roots.contains(root)) {
+                    log.info("停止监听目录变化: {}", root);
+                    unregisterTree(root, roots);
+                }
+            }
+            watchedRoots = roots;
+            log.info("文件索引监听目录数: {}, 监听根目录: {}", watchedDirs.size(), roots);
+        } catch (Exception e) {
+            log.error("同步文件索引监听目录失败", e);
+        }
+    }
+
+    /**
+     * 应用静默时间已到的变化，并处理待重新扫描的目录
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.SECONDS)
+    public void flushPendingChanges() {
+        if (watchService == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - DEBOUNCE_MILLIS;
+        List<Path> ready = new ArrayList<>();
+        for (Map.Entry<Path, Long> entry : pendingChanges.entrySet()) {
+            // 只有时间戳未被新事件刷新时才取出
+            if (entry.getValue() <= deadline && pendingChanges.remove(entry.getKey(), entry.getValue())) {
+                ready.add(entry.getKey());
+            }
+        }
+        for (List<Path> batch : ListUtil.partition(ready, APPLY_BATCH_SIZE)) {
+            try {
+                applyChanges(batch);
+            } catch (Exception e) {
+                log.error("应用文件变化到索引失败, 路径数: {}, 首条路径: {}", batch.size(), batch.get(0), e);
+            }
+        }
+        submitRescans();
+    }
+
+    /**
+     * 按文件当前状态更新索引：存在则写入，不存在则删除（目录连同子条目）
+     */
+    void applyChanges(Collection<Path> paths) {
+        Map<String, FileIndex> existing = fileIndexRepository.findByPaths(
+                        paths.stream().map(Path::toString).toList())
+                .stream()
+                .collect(Collectors.toMap(FileIndex::getPath, Function.identity(), (a, b) -> a));
+
+        List<FileIndex> upserts = new ArrayList<>();
+        List<String> deletedFiles = new ArrayList<>();
+        List<String> deletedDirs = new ArrayList<>();
+        for (Path path : paths) {
+            FileIndex old = existing.get(path.toString());
+            BasicFileAttributes attrs;
+            try {
+                attrs = FileTreeIndexer.readAttributes(path, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                if (old != null) {
+                    (Boolean.TRUE.equals(old.getIsDir()) ? deletedDirs : deletedFiles).add(old.getPath());
+                }
+                continue;
+            } catch (IOException e) {
+                log.warn("读取文件属性失败，跳过: {}", path, e);
+                continue;
+            }
+
+            if (attrs.isDirectory()) {
+                FileIndex fileIndex = FileTreeIndexer.toFileIndex(path, attrs, true);
+                // 目录大小由索引任务汇总，这里沿用原值
+                fileIndex.setSize(old != null && old.getSize() != null ? old.getSize() : 0L);
+                upserts.add(fileIndex);
+            } else if (attrs.isRegularFile()) {
+                FileIndex fileIndex = FileTreeIndexer.toFileIndex(path, attrs, false);
+                fileIndex.setSize(attrs.size());
+                if (old != null && Objects.equals(old.getSize(), fileIndex.getSize())
+                        && Objects.equals(old.getLastModified(), fileIndex.getLastModified())) {
+                    continue;
+                }
+                upserts.add(fileIndex);
+            }
+        }
+
+        if (!upserts.isEmpty()) {
+            fileIndexRepository.upsertAll(upserts);
+        }
+        if (!deletedFiles.isEmpty()) {
+            fileIndexRepository.deleteByPaths(deletedFiles);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (String dir : deletedDirs) {
+            fileIndexRepository.deleteStaleIndexes(dir, now);
+        }
+        log.debug("文件变化已更新到索引, 写入: {}, 删除文件: {}, 删除目录: {}",
+                upserts.size(), deletedFiles.size(), deletedDirs.size());
+    }
+
+    /**
+     * 监听的根目录对应的索引任务：排除规则，以及重新扫描时沿用的任务参数
+     */
+    private record IndexedRoot(IndexExclusionMatcher exclusions, JSONObject payload) {
+    }
+
+    /**
+     * @return 根目录 -> 该目录的索引任务，同一目录有多个任务时取排除规则为空的
+     */
+    private Map<Path, IndexedRoot> resolveIndexedRoots() {
+        String globalRules = ConfigEnum.FILE_INDEX_EXCLUDE_RULES.getValue();
+        Map<Path, IndexedRoot> roots = new HashMap<>();
+        for (Task task : taskRepository.findScheduledTasks()) {
+            if (task.getType() != TaskType.FILE_INDEX || !Boolean.TRUE.equals(task.getEnabled())
+                    || task.getPayload() == null) {
+                continue;
+            }
+            String selectPath = task.getPayload().getString("selectPath");
+            if (StrUtil.isBlank(selectPath)) {
+                continue;
+            }
+            Path root = Paths.get(selectPath).toAbsolutePath().normalize();
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            IndexExclusionMatcher exclusions;
+            try {
+                exclusions = IndexExclusionMatcher.compile(root, globalRules, task.getPayload().getString("excludeRules"));
+            } catch (IllegalArgumentException e) {
+                log.warn("任务 {} 的排除规则无效，监听时不排除: {}", task.getId(), e.getMessage());
+                exclusions = IndexExclusionMatcher.empty();
+            }
+            roots.merge(root, new IndexedRoot(exclusions, task.getPayload()),
+                    (a, b) -> a.exclusions().isEmpty() ? a : b);
+        }
+        return roots;
+    }
+
+    private void startWatching() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        WatchService service = FileSystems.getDefault().newWatchService();
+        watchThread = new Thread(() -> runWatchLoop(service), "file-index-watcher");
+        watchThread.setDaemon(true);
+        watchService = service;
+        watchThread.start();
+    }
+
+    private synchronized void stopWatching() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("关闭文件监听失败", e);
+        }
+        watchThread.interrupt();
+        watchService = null;
+        watchThread = null;
+        watchedDirs.clear();
+        pendingChanges.clear();
+        pendingRescans.clear();
+        watchedRoots = Collections.emptySet();
+        log.info("已停止文件索引监听");
+    }
+
+    @Override
+    public void destroy() {
+        stopWatching();
+    }
+
+    private void runWatchLoop(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handleEvent(dir, event);
+                }
+            }
+            if (!key.reset()) {
+                // 目录已删除或不可访问，监听自动失效
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void handleEvent(Path dir, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            log.warn("文件监听事件溢出，将重新扫描目录: {}", dir);
+            pendingRescans.add(dir);
+            return;
+        }
+        if (pendingChanges.size() >= MAX_PENDING_CHANGES) {
+            pendingRescans.add(dir);
+            return;
+        }
+        Path child = dir.resolve((Path) event.context());
+        if (isExcluded(child)) {
+            return;
+        }
+        pendingChanges.put(child, System.currentTimeMillis());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            // 新目录（包括移动进来的目录）需要补注册监听，注册前已存在的子条目一并记为变化
+            registerTree(child, true);
+        }
+    }
+
+    /**
+     * 为目录树中的每个目录注册监听
+     *
+     * @param markPending 是否把遍历到的条目记为待处理变化
+     */
+    private void registerTree(Path root, boolean markPending) {
+        WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(root) && isExcluded(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    try {
+                        WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                        watchedDirs.put(key, dir);
+                    } catch (ClosedWatchServiceException e) {
+                        return FileVisitResult.TERMINATE;
+                    } catch (IOException e) {
+                        // 一般是达到系统监听数上限(fs.inotify.max_user_watches)，剩余目录依赖定时索引
+                        log.error("注册目录监听失败，停止注册 {} 下的剩余目录", root, e);
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (markPending && !dir.equals(root)) {
+                        pendingChanges.put(dir, System.currentTimeMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (markPending && !isExcluded(file)) {
+                        pendingChanges.put(file, System.currentTimeMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    log.warn("注册监听时读取文件失败: {}", file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.error("注册目录监听失败: {}", root, e);
+        }
+    }
+
+    /**
+     * 路径是否被所在根目录的排除规则排除
+     */
+    private boolean isExcluded(Path path) {
+        for (Map.Entry<Path, IndexedRoot> entry : indexedRoots.entrySet()) {
+            IndexExclusionMatcher exclusions = entry.getValue().exclusions();
+            if (!exclusions.isEmpty() && path.startsWith(entry.getKey()) && !path.equals(entry.getKey())
+                    && exclusions.isExcluded(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取消 root 下的监听，仍属于其他根目录的保留
+     */
+    private void unregisterTree(Path root, Set<Path> remainingRoots) {
+        watchedDirs.entrySet().removeIf(entry -> {
+            Path dir = entry.getValue();
+            if (!dir.startsWith(root) || remainingRoots.stream().anyMatch(dir::startsWith)) {
+                return false;
+            }
+            entry.getKey().cancel();
+            return true;
+        });
+    }
+
+    /**
+     * 对事件溢出的目录补注册监听并提交增量索引任务，祖先目录已在列表中的只提交祖先
+     * <p>
+     * 任务沿用所在根目录的索引任务的参数（排除规则、哈希模式、内容索引等），排除规则仍按原根目录解析。
+     */
+    private void submitRescans() {
+        if (pendingRescans.isEmpty()) {
+            return;
+        }
+        List<Path> dirs = new ArrayList<>(pendingRescans);
+        pendingRescans.removeAll(dirs);
+        dirs.sort(Comparator.comparingInt(Path::getNameCount));
+
+        List<Path> submitted = new ArrayList<>();
+        for (Path dir : dirs) {
+            if (submitted.stream().anyMatch(dir::startsWith) || !Files.isDirectory(dir)) {
+                continue;
+            }
+            JSONObject payload = createRescanPayload(dir);
+            if (payload == null) {
+                continue;
+            }
+            submitted.add(dir);
+            registerTree(dir, false);
+            try {
+                taskApplicationService.submitAsyncTask(TaskType.FILE_INDEX, payload);
+                log.info("已提交目录重新索引任务: {}", dir);
+            } catch (Exception e) {
+                log.error("提交目录重新索引任务失败: {}", dir, e);
+            }
+        }
+    }
+
+    /**
+     * 复制目录所在的最近一级根目录的任务参数，只改为增量索引该目录
+     *
+     * @return 目录已不在监听的根目录下，或超出了任务的最大递归层级时返回null
+     */
+    JSONObject createRescanPayload(Path dir) {
+        Optional<Map.Entry<Path, IndexedRoot>> owner = indexedRoots.entrySet().stream()
+                .filter(entry -> dir.startsWith(entry.getKey()))
+                .max(Comparator.comparingInt(entry -> entry.getKey().getNameCount()));
+        if (owner.isEmpty()) {
+            log.info("目录已不在监听的根目录下，不再重新索引: {}", dir);
+            return null;
+        }
+        Path root = owner.get().getKey();
+        JSONObject payload = owner.get().getValue().payload().clone();
+        Integer maxDepth = payload.getInteger("maxDepth");
+        if (maxDepth != null && maxDepth > 0) {
+            // 最大递归层级相对于原根目录，换算为相对于该目录的层级
+            int remaining = maxDepth - root.relativize(dir).getNameCount();
+            if (remaining <= 0) {
+                return null;
+            }
+            payload.put("maxDepth", remaining);
+        }
+        payload.put("selectPath", dir.toString());
+        payload.put("excludeBase", root.toString());
+        payload.put("incremental", true);
+        return payload;
+    }
+}
@@ -0,0 +1,419 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 单次遍历的并行文件索引器
+ * <p>
+ * 通过 {@link DirectoryStream} 逐个目录列出直接子条目，用 {@link #readAttributes} 读取属性，
+ * 保证每个条目只 stat 一次；文件和目录记录在同一次遍历中产出，目录大小在子目录全部完成后
+ * （后序）汇总。线程池有空闲时子目录拆分为 ForkJoin 子任务并行处理，否则在当前任务的遍历栈中继续。
+ * <p>
+ * 产出的记录会交给 sink 处理，sink 会被多个线程并发调用，需要自行保证线程安全。
+ * 遍历每个目录前会通过 sink 加载该目录下已有的索引记录，遍历结束后未出现的记录即为失效记录。
+ * <p>
+ * 子目录按路径排序后提交，目录（连同全部子条目）完成时通知 sink，sink 可据此记录断点；
+ * 断点中已完成的目录再次遍历时直接使用记录的大小，不再进入。
+ * <p>
+ * 列出子条目时先用 {@link IndexExclusionMatcher} 过滤，被排除的目录不会进入，其下的条目不会被读取；
+ * 原先已索引的被排除条目视为失效记录。
+ */
+@Slf4j
+public class FileTreeIndexer {
+    /**
+     * 当前线程排队任务数低于该值时才拆分子任务，参考 ForkJoin 的常用取值
+     */
+    private static final int FORK_SURPLUS_THRESHOLD = 3;
+
+    private final Path rootPath;
+    private final int maxDepth;
+    private final IndexSink sink;
+    private final BooleanSupplier cancelled;
+    private final IndexExclusionMatcher exclusions;
+    private final boolean useIgnoreFile;
+
+    private final LongAdder processedFiles = new LongAdder();
+    private final LongAdder processedDirs = new LongAdder();
+    private final LongAdder excludedEntries = new LongAdder();
+
+    /**
+     * @param rootPath  索引根路径，可以是目录或文件
+     * @param maxDepth  最大递归层级，0表示无限制，语义与 {@link Files#walk(Path, int, FileVisitOption...)} 一致
+     * @param sink      索引记录的消费者
+     * @param cancelled 取消标记，返回true时尽快停止遍历
+     */
+    public FileTreeIndexer(Path rootPath, int maxDepth, IndexSink sink, BooleanSupplier cancelled) {
+        this(rootPath, maxDepth, sink, cancelled, IndexExclusionMatcher.empty(), false);
+    }
+
+    /**
+     * @param exclusions    相对于 rootPath 的排除规则
+     * @param useIgnoreFile 是否读取各目录下的 {@value IndexExclusionMatcher#IGNORE_FILE_NAME}
+     */
+    public FileTreeIndexer(Path rootPath, int maxDepth, IndexSink sink, BooleanSupplier cancelled,
+                           IndexExclusionMatcher exclusions, boolean useIgnoreFile) {
+        this.rootPath = rootPath;
+        this.maxDepth = maxDepth;
+        this.sink = sink;
+        this.cancelled = cancelled;
+        this.exclusions = exclusions;
+        this.useIgnoreFile = useIgnoreFile;
+    }
+
+    /**
+     * 创建根任务，由调用方提交到 ForkJoinPool 执行
+     *
+     * @return 根任务，结果为索引到的文件总大小
+     */
+    public ForkJoinTask<Long> createRootTask() {
+        return new RootTask();
+    }
+
+    public long getProcessedFiles() {
+        return processedFiles.sum();
+    }
+
+    public long getProcessedDirs() {
+        return processedDirs.sum();
+    }
+
+    /**
+     * 被排除规则跳过的条目数（被排除的目录只计一次）
+     */
+    public long getExcludedEntries() {
+        return excludedEntries.sum();
+    }
+
+    /**
+     * 索引记录的消费者
+     */
+    public interface IndexSink {
+        /**
+         * 加载指定路径已有的索引记录，用于根路径
+         */
+        default FileIndex loadExisting(Path path) {
+            return null;
+        }
+
+        /**
+         * 加载目录下已有的直接子条目索引记录
+         *
+         * @return 路径到索引记录的映射
+         */
+        default Map<String, FileIndex> loadExistingChildren(Path dir) {
+            return Collections.emptyMap();
+        }
+
+        /**
+         * 处理遍历到的条目
+         *
+         * @param fileIndex 根据文件属性构建的记录
+         * @param existing  已有的索引记录，不存在时为null
+         */
+        void accept(FileIndex fileIndex, FileIndex existing);
+
+        /**
+         * 目录遍历完成后，已有记录中本次未出现的条目
+         */
+        default void onStale(Collection<FileIndex> staleEntries) {
+        }
+
+        /**
+         * 查询断点中已完成的目录
+         *
+         * @return 目录大小，未完成返回null
+         */
+        default Long loadCompletedSize(Path dir) {
+            return null;
+        }
+
+        /**
+         * 目录及其所有子条目均已交给 sink 处理
+         *
+         * @param subDirs 该目录下递归处理的直接子目录
+         */
+        default void onDirectoryCompleted(Path dir, long size, Collection<Path> subDirs) {
+        }
+    }
+
+    private class RootTask extends RecursiveTask<Long> {
+        @Override
+        protected Long compute() {
+            BasicFileAttributes attrs;
+            try {
+                attrs = readAttributes(rootPath);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("读取目录属性失败：" + rootPath, e);
+            }
+            FileIndex existing = sink.loadExisting(rootPath);
+            if (!attrs.isDirectory()) {
+                return emitFile(rootPath, attrs, existing);
+            }
+            return new DirectoryTask(rootPath, attrs, existing, 0, exclusions).compute();
+        }
+    }
+
+    /**
+     * 处理一棵子树的任务
+     * <p>
+     * 在任务内部用显式栈做深度优先遍历，栈中每层只保存该目录的大小累加值和待处理的子目录，
+     * 目录的子条目全部处理完时（后序）产出目录记录并把大小累加到上一层。线程池中排队的任务
+     * 不足时才把子目录拆分为新任务，因此任务对象数量有限，堆占用与目录深度和单个目录的
+     * 子目录数成正比，而不是与整棵树的大小成正比。
+     */
+    private class DirectoryTask extends RecursiveTask<Long> {
+        private final Path dir;
+        private final BasicFileAttributes dirAttrs;
+        private final FileIndex existing;
+        private final int depth;
+        private final IndexExclusionMatcher parentExclusions;
+
+        private DirectoryTask(Path dir, BasicFileAttributes dirAttrs, FileIndex existing, int depth,
+                              IndexExclusionMatcher parentExclusions) {
+            this.dir = dir;
+            this.dirAttrs = dirAttrs;
+            this.existing = existing;
+            this.depth = depth;
+            this.parentExclusions = parentExclusions;
+        }
+
+        @Override
+        protected Long compute() {
+            if (cancelled.getAsBoolean()) {
+                return 0L;
+            }
+            Long completedSize = sink.loadCompletedSize(dir);
+            if (completedSize != null) {
+                return completedSize;
+            }
+
+            Deque<DirFrame> stack = new ArrayDeque<>();
+            stack.push(new DirFrame(dir, dirAttrs, existing, depth, parentExclusions));
+            long totalSize = 0L;
+            while (!stack.isEmpty()) {
+                if (cancelled.getAsBoolean()) {
+                    return 0L;
+                }
+                DirFrame frame = stack.peek();
+                if (frame.nextSubDir < frame.subDirs.size()) {
+                    ChildDir child = frame.subDirs.get(frame.nextSubDir++);
+                    Long childCompletedSize = sink.loadCompletedSize(child.path);
+                    if (childCompletedSize != null) {
+                        frame.size += childCompletedSize;
+                    } else if (getSurplusQueuedTaskCount() < FORK_SURPLUS_THRESHOLD) {
+                        // 空闲线程可能没有任务可取，拆出子任务
+                        DirectoryTask subTask = new DirectoryTask(child.path, child.attrs, child.existing,
+                                frame.depth + 1, frame.exclusions);
+                        subTask.fork();
+                        frame.forked.add(subTask);
+                    } else {
+                        stack.push(new DirFrame(child.path, child.attrs, child.existing, frame.depth + 1,
+                                frame.exclusions));
+                    }
+                    // 子目录的属性和已有记录不再需要
+                    child.release();
+                    continue;
+                }
+
+                for (DirectoryTask subTask : frame.forked) {
+                    frame.size += subTask.join();
+                }
+                stack.pop();
+                if (cancelled.getAsBoolean()) {
+                    return 0L;
+                }
+                complete(frame);
+                if (stack.isEmpty()) {
+                    totalSize = frame.size;
+                } else {
+                    stack.peek().size += frame.size;
+                }
+            }
+            return totalSize;
+        }
+
+        private void complete(DirFrame frame) {
+            emitDirectory(frame.dir, frame.attrs, frame.existing, frame.size);
+            List<Path> subDirs = new ArrayList<>(frame.subDirs.size());
+            for (ChildDir child : frame.subDirs) {
+                subDirs.add(child.path);
+            }
+            sink.onDirectoryCompleted(frame.dir, frame.size, subDirs);
+        }
+    }
+
+    /**
+     * 遍历栈中的一层：目录自身信息、大小累加值、待处理的子目录及对子条目生效的排除规则
+     */
+    private class DirFrame {
+        private final Path dir;
+        private final BasicFileAttributes attrs;
+        private final FileIndex existing;
+        private final int depth;
+        private final IndexExclusionMatcher exclusions;
+        private final List<ChildDir> subDirs = new ArrayList<>();
+        private final List<DirectoryTask> forked = new ArrayList<>(0);
+        private int nextSubDir;
+        private long size;
+
+        private DirFrame(Path dir, BasicFileAttributes attrs, FileIndex existing, int depth,
+                         IndexExclusionMatcher parentExclusions) {
+            this.dir = dir;
+            this.attrs = attrs;
+            this.existing = existing;
+            this.depth = depth;
+            this.exclusions = useIgnoreFile ? parentExclusions.withIgnoreFile(dir) : parentExclusions;
+            this.size = listChildren();
+            // 固定子目录顺序，使每次遍历的顺序一致
+            subDirs.sort(Comparator.comparing(child -> child.path));
+        }
+
+        /**
+         * 只读取当前目录的直接子条目：文件直接产出，需要继续递归的子目录放入 subDirs
+         *
+         * @return 当前目录下直接文件的大小之和
+         */
+        private long listChildren() {
+            Map<String, FileIndex> existingChildren = new HashMap<>(sink.loadExistingChildren(dir));
+            long[] filesSize = {0L};
+            int childDepth = depth + 1;
+            boolean descend = maxDepth <= 0 || childDepth < maxDepth;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path file : stream) {
+                    if (cancelled.getAsBoolean()) {
+                        break;
+                    }
+                    if (!exclusions.isEmpty() && exclusions.isExcluded(file)) {
+                        // 不进入被排除的目录；已有记录留在 existingChildren 中，作为失效记录清理
+                        excludedEntries.increment();
+                        continue;
+                    }
+                    FileIndex childExisting = existingChildren.remove(file.toString());
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = readAttributes(file, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        // 读取失败不代表文件已删除，保留原有记录
+                        log.error("读取文件属性失败: {}", file, e);
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (descend) {
+                            subDirs.add(new ChildDir(file, attrs, childExisting));
+                        } else {
+                            // 超出最大层级的目录只记录自身，不再统计大小
+                            emitDirectory(file, attrs, childExisting, 0L);
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        filesSize[0] += emitFile(file, attrs, childExisting);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // 目录读取失败时不清理失效记录
+                log.error("读取目录失败: {}", dir, e);
+                return filesSize[0];
+            }
+
+            if (!cancelled.getAsBoolean() && !existingChildren.isEmpty()) {
+                sink.onStale(existingChildren.values());
+            }
+            return filesSize[0];
+        }
+    }
+
+    /**
+     * 待处理的子目录，处理后只保留路径用于通知 sink
+     */
+    private static class ChildDir {
+        private final Path path;
+        private BasicFileAttributes attrs;
+        private FileIndex existing;
+
+        private ChildDir(Path path, BasicFileAttributes attrs, FileIndex existing) {
+            this.path = path;
+            this.attrs = attrs;
+            this.existing = existing;
+        }
+
+        private void release() {
+            attrs = null;
+            existing = null;
+        }
+    }
+
+    private long emitFile(Path file, BasicFileAttributes attrs, FileIndex existing) {
+        FileIndex fileIndex = toFileIndex(file, attrs, false);
+        fileIndex.setSize(attrs.size());
+        try {
+            sink.accept(fileIndex, existing);
+        } catch (Exception e) {
+            log.error("处理文件失败: {}", file, e);
+        }
+        processedFiles.increment();
+        return attrs.size();
+    }
+
+    private void emitDirectory(Path dir, BasicFileAttributes attrs, FileIndex existing, long size) {
+        FileIndex fileIndex = toFileIndex(dir, attrs, true);
+        fileIndex.setSize(size);
+        try {
+            sink.accept(fileIndex, existing);
+        } catch (Exception e) {
+            log.error("处理目录失败: {}", dir, e);
+        }
+        processedDirs.increment();
+    }
+
+    /**
+     * 读取条目属性，在支持 POSIX 的文件系统上读取 {@link PosixFileAttributes}，同一次 stat 中带上权限和所有者
+     */
+    static BasicFileAttributes readAttributes(Path path, LinkOption... options) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.readAttributes(path, PosixFileAttributes.class, options);
+        }
+        return Files.readAttributes(path, BasicFileAttributes.class, options);
+    }
+
+    /**
+     * 根据文件属性构建索引记录，不包含大小
+     * <p>
+     * 属性为 {@link PosixFileAttributes} 时同时记录权限和所有者，见 {@link #readAttributes}
+     */
+    static FileIndex toFileIndex(Path path, BasicFileAttributes attrs, boolean isDir) {
+        FileIndex fileIndex = new FileIndex();
+        fileIndex.setPath(path.toString());
+        fileIndex.setName(path.getFileName() != null ? path.getFileName().toString() : "");
+        fileIndex.setLastModified(toLocalDateTime(attrs.lastModifiedTime().toMillis()));
+        fileIndex.setIsDir(isDir);
+        fileIndex.setParentPath(path.getParent() != null ? path.getParent().toString() : null);
+        // Linux 下为 (dev=xx,ino=xx)，不支持的文件系统为null
+        Object fileKey = attrs.fileKey();
+        fileIndex.setFileKey(fileKey != null ? fileKey.toString() : null);
+        if (attrs instanceof PosixFileAttributes posixAttrs) {
+            fileIndex.setPermissions(PosixFilePermissions.toString(posixAttrs.permissions()));
+            UserPrincipal owner = posixAttrs.owner();
+            fileIndex.setOwner(owner != null ? owner.getName() : null);
+        }
+        return fileIndex;
+    }
+
+    private static LocalDateTime toLocalDateTime(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,172 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexCheckpoint;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 索引断点记录器
+ * <p>
+ * 维护已完成目录的前沿（目录完成时加入，并移除其直接子目录）以及发现的失效记录，定期保存为
+ * {@link FileIndexCheckpoint}。写库是异步的，因此先取快照，等快照之前提交给哈希阶段和写入器的
+ * 记录都处理完后才保存，保证断点中的目录在库里已经是完整的。
+ * <p>
+ * {@link #checkpointIfNeeded()} 只应由单个线程（任务线程）调用，其余方法可被遍历线程并发调用。
+ */
+@Slf4j
+public class IndexCheckpointTracker {
+    private final FileIndexCheckpointRepository repository;
+    private final FileIndexCheckpoint checkpoint;
+    private final FileIndexBatchWriter writer;
+    private final FileHashPipeline hashPipeline;
+    private final long intervalNanos;
+
+    private final Map<String, Long> completedDirs = new ConcurrentHashMap<>();
+    private final Set<String> staleFiles = ConcurrentHashMap.newKeySet();
+    private final Set<String> staleDirs = ConcurrentHashMap.newKeySet();
+    private final int resumedDirs;
+
+    private Snapshot pendingSnapshot;
+    private long lastSnapshotNanos = System.nanoTime();
+
+    /**
+     * @param checkpoint   上次保存的断点或新建的空断点
+     * @param hashPipeline 哈希阶段，不计算哈希时为null
+     * @param intervalMillis 保存断点的间隔
+     */
+    public IndexCheckpointTracker(FileIndexCheckpointRepository repository, FileIndexCheckpoint checkpoint,
+                                  FileIndexBatchWriter writer, FileHashPipeline hashPipeline, long intervalMillis) {
+        this.repository = repository;
+        this.checkpoint = checkpoint;
+        this.writer = writer;
+        this.hashPipeline = hashPipeline;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+        this.completedDirs.putAll(checkpoint.getCompletedDirs());
+        this.staleFiles.addAll(checkpoint.getStaleFiles());
+        this.staleDirs.addAll(checkpoint.getStaleDirs());
+        this.resumedDirs = completedDirs.size();
+    }
+
+    public Long getCompletedSize(Path dir) {
+        return completedDirs.get(dir.toString());
+    }
+
+    public void onDirectoryCompleted(Path dir, long size, Collection<Path> subDirs) {
+        // 先加入父目录再移除子目录，快照中不会出现两者都缺失的情况
+        completedDirs.put(dir.toString(), size);
+        for (Path subDir : subDirs) {
+            completedDirs.remove(subDir.toString());
+        }
+    }
+
+    public void onStale(Collection<FileIndex> entries) {
+        for (FileIndex entry : entries) {
+            (Boolean.TRUE.equals(entry.getIsDir()) ? staleDirs : staleFiles).add(entry.getPath());
+        }
+    }
+
+    /**
+     * 到达间隔时取快照，快照之前提交的记录全部落库后保存断点
+     */
+    public void checkpointIfNeeded() {
+        if (pendingSnapshot == null) {
+            if (System.nanoTime() - lastSnapshotNanos < intervalNanos) {
+                return;
+            }
+            pendingSnapshot = takeSnapshot();
+            lastSnapshotNanos = System.nanoTime();
+        }
+        saveIfDurable();
+    }
+
+    /**
+     * 立即取快照并尝试保存，用于任务中止时，调用前应已关闭哈希阶段和写入器。
+     * 被放弃的哈希任务对应的目录不完整，此时不会保存，保留上一次的断点。
+     */
+    public void checkpointNow() {
+        pendingSnapshot = takeSnapshot();
+        saveIfDurable();
+        pendingSnapshot = null;
+    }
+
+    private void saveIfDurable() {
+        if (!pendingSnapshot.isDurable()) {
+            return;
+        }
+        Snapshot snapshot = pendingSnapshot;
+        pendingSnapshot = null;
+        try {
+            checkpoint.setCompletedDirs(snapshot.completedDirs);
+            checkpoint.setStaleFiles(snapshot.staleFiles);
+            checkpoint.setStaleDirs(snapshot.staleDirs);
+            checkpoint.setUpdateTime(LocalDateTime.now());
+            repository.save(checkpoint);
+            log.debug("已保存索引断点: {}, 已完成目录数: {}", checkpoint.getRootPath(), snapshot.completedDirs.size());
+        } catch (Exception e) {
+            log.error("保存索引断点失败: {}", checkpoint.getRootPath(), e);
+        }
+    }
+
+    /**
+     * 整棵树完成并清理失效记录后删除断点
+     */
+    public void clear() {
+        repository.deleteByRootPath(checkpoint.getRootPath());
+    }
+
+    public Collection<String> getStaleFiles() {
+        return staleFiles;
+    }
+
+    public Collection<String> getStaleDirs() {
+        return staleDirs;
+    }
+
+    /**
+     * 从断点恢复的已完成目录数
+     */
+    public int getResumedDirs() {
+        return resumedDirs;
+    }
+
+    public LocalDateTime getStartTime() {
+        return checkpoint.getStartTime();
+    }
+
+    private Snapshot takeSnapshot() {
+        // 先复制完成目录，再读取计数：目录完成前其子条目已提交，读到的计数一定包含它们
+        Snapshot snapshot = new Snapshot();
+        snapshot.completedDirs = new HashMap<>(completedDirs);
+        snapshot.staleFiles = new ArrayList<>(staleFiles);
+        snapshot.staleDirs = new ArrayList<>(staleDirs);
+        snapshot.hashSequence = hashPipeline != null ? hashPipeline.currentSequence() : 0L;
+        return snapshot;
+    }
+
+    private class Snapshot {
+        private Map<String, Long> completedDirs;
+        private List<String> staleFiles;
+        private List<String> staleDirs;
+        private long hashSequence;
+        /**
+         * 哈希阶段处理完后写入器需要处理到的记录数，-1表示还在等待哈希阶段
+         */
+        private long writerTarget = -1;
+
+        private boolean isDurable() {
+            if (writerTarget < 0) {
+                if (hashPipeline != null && !hashPipeline.isCompletedThrough(hashSequence)) {
+                    return false;
+                }
+                writerTarget = writer.getAddedCount();
+            }
+            return writer.getProcessedCount() >= writerTarget;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 索引排除规则
+ * <p>
+ * 规则每行（或以 {@code ;} 分隔）一条，{@code #} 开头为注释：
+ * <ul>
+ *     <li>{@code regex:表达式} 正则，完整匹配文件名或相对路径（以 / 分隔）任一即排除</li>
+ *     <li>{@code glob:模式} 或不带前缀的模式为 glob；不含 / 时匹配任意层级的文件名，含 / 时匹配相对路径</li>
+ * </ul>
+ * 相对路径相对于规则所在的目录：全局和任务规则相对于索引根目录，{@code .fileflexignore} 中的规则相对于该文件所在目录。
+ * <p>
+ * 规则在创建时编译：不含通配符的文件名放入 HashSet，正则合并为一个 {@link Pattern}，
+ * 遍历时每个条目只做一次集合查找和少量匹配。实例不可变，可被多个遍历线程共享。
+ */
+@Slf4j
+public class IndexExclusionMatcher {
+    /**
+     * 目录级排除规则文件名
+     */
+    public static final String IGNORE_FILE_NAME = ".fileflexignore";
+
+    private static final String REGEX_PREFIX = "regex:";
+    private static final String GLOB_PREFIX = "glob:";
+    private static final IndexExclusionMatcher EMPTY = new IndexExclusionMatcher(null, null);
+
+    private final IndexExclusionMatcher parent;
+    private final Path base;
+    private final Set<String> names = new HashSet<>();
+    private final List<PathMatcher> nameGlobs = new ArrayList<>();
+    private final List<PathMatcher> pathGlobs = new ArrayList<>();
+    private Pattern regex;
+
+    private IndexExclusionMatcher(IndexExclusionMatcher parent, Path base) {
+        this.parent = parent;
+        this.base = base;
+    }
+
+    public static IndexExclusionMatcher empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 编译规则
+     *
+     * @param base  规则中相对路径的起点
+     * @param rules 规则文本，可为null
+     * @throws IllegalArgumentException 规则格式错误
+     */
+    public static IndexExclusionMatcher compile(Path base, String... rules) {
+        List<String> parsed = new ArrayList<>();
+        for (String text : rules) {
+            parsed.addAll(parseRules(text));
+        }
+        if (parsed.isEmpty()) {
+            return EMPTY;
+        }
+        IndexExclusionMatcher matcher = new IndexExclusionMatcher(null, base);
+        matcher.addRules(parsed, false);
+        return matcher;
+    }
+
+    /**
+     * 拆分规则文本，去掉空行和注释
+     */
+    static List<String> parseRules(String text) {
+        if (StrUtil.isBlank(text)) {
+            return Collections.emptyList();
+        }
+        List<String> rules = new ArrayList<>();
+        for (String line : text.split("[\\r\\n;]+")) {
+            String rule = line.trim();
+            if (rule.isEmpty() || rule.startsWith("#")) {
+                continue;
+            }
+            // 与 .gitignore 一致，以 # 开头的名称写作 \#
+            rules.add(rule.startsWith("\\#") ? rule.substring(1) : rule);
+        }
+        return rules;
+    }
+
+    /**
+     * 叠加目录下 {@value #IGNORE_FILE_NAME} 中的规则，文件不存在或没有有效规则时返回自身
+     */
+    public IndexExclusionMatcher withIgnoreFile(Path dir) {
+        String content;
+        try {
+            content = Files.readString(dir.resolve(IGNORE_FILE_NAME), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return this;
+        } catch (IOException e) {
+            log.warn("读取排除规则文件失败: {}", dir.resolve(IGNORE_FILE_NAME), e);
+            return this;
+        }
+        List<String> rules = parseRules(content);
+        if (rules.isEmpty()) {
+            return this;
+        }
+        IndexExclusionMatcher matcher = new IndexExclusionMatcher(isEmpty() ? null : this, dir);
+        // 文件中的错误规则只跳过该行，不影响整个索引任务
+        matcher.addRules(rules, true);
+        return matcher;
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * 判断条目是否被排除，路径需要位于各层规则的目录之下
+     */
+    public boolean isExcluded(Path path) {
+        Path fileName = path.getFileName();
+        if (fileName == null) {
+            return false;
+        }
+        String name = fileName.toString();
+        for (IndexExclusionMatcher matcher = this; matcher != null && !matcher.isEmpty(); matcher = matcher.parent) {
+            if (matcher.matches(path, fileName, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(Path path, Path fileName, String name) {
+        if (names.contains(name)) {
+            return true;
+        }
+        for (PathMatcher glob : nameGlobs) {
+            if (glob.matches(fileName)) {
+                return true;
+            }
+        }
+        if (pathGlobs.isEmpty() && regex == null) {
+            return false;
+        }
+        Path relative = base.relativize(path);
+        for (PathMatcher glob : pathGlobs) {
+            if (glob.matches(relative)) {
+                return true;
+            }
+        }
+        if (regex != null) {
+            return regex.matcher(name).matches()
+                    || regex.matcher(relative.toString().replace(path.getFileSystem().getSeparator(), "/")).matches();
+        }
+        return false;
+    }
+
+    private void addRules(List<String> rules, boolean skipInvalid) {
+        FileSystem fileSystem = base.getFileSystem();
+        List<String> regexes = new ArrayList<>();
+        for (String rule : rules) {
+            try {
+                if (rule.startsWith(REGEX_PREFIX)) {
+                    String expression = rule.substring(REGEX_PREFIX.length());
+                    // 单独编译一次，便于定位错误的规则
+                    Pattern.compile(expression);
+                    regexes.add("(?:" + expression + ")");
+                    continue;
+                }
+                String glob = rule.startsWith(GLOB_PREFIX) ? rule.substring(GLOB_PREFIX.length()) : rule;
+                glob = StrUtil.strip(glob, "/");
+                if (glob.isEmpty()) {
+                    throw new IllegalArgumentException("规则为空");
+                }
+                if (glob.contains("/")) {
+                    pathGlobs.add(fileSystem.getPathMatcher(GLOB_PREFIX + glob));
+                } else if (StrUtil.containsAny(glob, '*', '?', '[', '{', '\\')) {
+                    nameGlobs.add(fileSystem.getPathMatcher(GLOB_PREFIX + glob));
+                } else {
+                    names.add(glob);
+                }
+            } catch (IllegalArgumentException e) {
+                // PatternSyntaxException 也是 IllegalArgumentException
+                String message = e instanceof PatternSyntaxException syntax ? syntax.getDescription() : e.getMessage();
+                if (!skipInvalid) {
+                    throw new IllegalArgumentException(StrUtil.format("无效的排除规则 [{}]: {}", rule, message), e);
+                }
+                log.warn("忽略无效的排除规则 [{}]({}): {}", rule, base, message);
+            }
+        }
+        if (!regexes.isEmpty()) {
+            regex = Pattern.compile(String.join("|", regexes));
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "[]";
+        }
+        String rules = StrUtil.format("{}: names={}, nameGlobs={}, pathGlobs={}, regex={}",
+                base, names, nameGlobs.size(), pathGlobs.size(), regex);
+        return parent != null ? rules + " <- " + parent : rules;
+    }
+}
@@ -0,0 +1,110 @@
+package com.huanzhen.fileflexmanager.infrastructure.util;
+
+import cn.hutool.core.util.HexUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 文件哈希工具类
+ * 小文件使用 FileChannel 按块读取，大文件分段内存映射，减少用户态拷贝
+ */
+public class FileHashUtils {
+    /**
+     * 超过该大小的文件使用内存映射读取
+     */
+    private static final long MMAP_THRESHOLD = 16L * 1024 * 1024;
+    /**
+     * 内存映射每段的大小
+     */
+    private static final long MMAP_REGION_SIZE = 64L * 1024 * 1024;
+    /**
+     * 普通读取的块大小
+     */
+    private static final int READ_BLOCK_SIZE = 1024 * 1024;
+    /**
+     * 快速哈希读取的块大小，读取首、中、尾各一块
+     */
+    private static final int QUICK_HASH_BLOCK_SIZE = 64 * 1024;
+
+    private FileHashUtils() {
+    }
+
+    /**
+     * 计算文件MD5
+     * @param path 文件路径
+     * @return 32位小写十六进制MD5
+     */
+    public static String md5Hex(Path path) throws IOException {
+        MessageDigest digest = newMd5();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MMAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MMAP_REGION_SIZE) {
+                    long length = Math.min(MMAP_REGION_SIZE, size - position);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    digest.update(buffer);
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BLOCK_SIZE);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+
+    /**
+     * 计算文件快速哈希：文件大小加首、中、尾各64KiB的MD5，不超过3块的文件读取全部内容。
+     * 快速哈希不同则文件一定不同，相同时需要再比较完整MD5
+     * @param path 文件路径
+     * @return 32位小写十六进制
+     */
+    public static String quickHashHex(Path path) throws IOException {
+        MessageDigest digest = newMd5();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(size).flip());
+            ByteBuffer buffer = ByteBuffer.allocate(QUICK_HASH_BLOCK_SIZE);
+            if (size <= 3L * QUICK_HASH_BLOCK_SIZE) {
+                for (long position = 0; position < size; position += QUICK_HASH_BLOCK_SIZE) {
+                    updateBlock(channel, digest, buffer, position);
+                }
+            } else {
+                updateBlock(channel, digest, buffer, 0);
+                updateBlock(channel, digest, buffer, (size - QUICK_HASH_BLOCK_SIZE) / 2);
+                updateBlock(channel, digest, buffer, size - QUICK_HASH_BLOCK_SIZE);
+            }
+        }
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+
+    private static void updateBlock(FileChannel channel, MessageDigest digest, ByteBuffer buffer, long position)
+            throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持MD5算法", e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.huanzhen.fileflexmanager.infrastructure.util;
+
+/**
+ * 手写 SQL 的辅助方法
+ */
+public class SqlUtils {
+
+    /**
+     * 转义 LIKE 模式中的通配符，配合 {@code LIKE ? ESCAPE '\'} 使用，路径中的 % 和 _ 按字面匹配
+     */
+    public static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * 匹配目录下全部子路径的 LIKE 模式，目录本身不匹配
+     */
+    public static String childrenLikePattern(String dirPath) {
+        return escapeLike(dirPath.endsWith("/") ? dirPath : dirPath + "/") + "%";
+    }
+}
@@ -0,0 +1,95 @@
+package com.huanzhen.fileflexmanager.infrastructure.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 文本文件读取工具类
+ * 判断文件是否为文本并识别编码：先看BOM，再按 UTF-8、GB18030 依次严格解码，都失败时按 UTF-8 替换无法识别的字节
+ */
+public class TextFileUtils {
+    /**
+     * 检查前多少字节中是否有空字节来判断二进制文件
+     */
+    private static final int BINARY_SNIFF_SIZE = 8192;
+    private static final Charset GB18030 = Charset.forName("GB18030");
+
+    private TextFileUtils() {
+    }
+
+    /**
+     * 读取文本文件内容
+     * @param path     文件路径
+     * @param maxBytes 文件大小上限
+     * @return 文件内容，文件超过上限或不是文本文件时返回null
+     */
+    public static String readText(Path path, long maxBytes) throws IOException {
+        if (Files.size(path) > maxBytes) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        // 读取期间文件变大
+        if (bytes.length > maxBytes) {
+            return null;
+        }
+        return decode(bytes);
+    }
+
+    /**
+     * 识别编码并解码
+     * @return 文本内容，包含空字节（UTF-16 以外）时视为二进制返回null
+     */
+    public static String decode(byte[] bytes) {
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            return new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8);
+        }
+        if (startsWith(bytes, 0xFF, 0xFE)) {
+            return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16LE);
+        }
+        if (startsWith(bytes, 0xFE, 0xFF)) {
+            return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16BE);
+        }
+        int sniffSize = Math.min(bytes.length, BINARY_SNIFF_SIZE);
+        for (int i = 0; i < sniffSize; i++) {
+            if (bytes[i] == 0) {
+                return null;
+            }
+        }
+        String text = decodeStrictly(bytes, StandardCharsets.UTF_8);
+        if (text == null) {
+            text = decodeStrictly(bytes, GB18030);
+        }
+        return text != null ? text : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String decodeStrictly(byte[] bytes, Charset charset) {
+        try {
+            CharBuffer chars = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int... prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
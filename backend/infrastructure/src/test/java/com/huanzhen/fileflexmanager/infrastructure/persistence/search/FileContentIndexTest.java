@@ -0,0 +1,104 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentHit;
+import com.huanzhen.fileflexmanager.infrastructure.config.ContentIndexConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileContentIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileContentIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ContentIndexConfig config = new ContentIndexConfig();
+        config.setPath(tempDir.toString());
+        index = new FileContentIndex(config);
+        try (FileContentIndex.Updater updater = index.openUpdater("/data")) {
+            updater.update("/data/logs/app.log", "2024-01-01 ERROR connection timeout to <db>", 43, 1000L);
+            updater.update("/data/docs/readme.md", "# 安装说明\n运行 configure 脚本后启动服务", 50, 2000L);
+            updater.update("/data/etc/nginx.conf", "server { listen 80; timeout 30s; }", 35, 3000L);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        index.destroy();
+    }
+
+    private FileContentIndex.Result search(String keyword) throws Exception {
+        return index.search(keyword, 0, 10);
+    }
+
+    @Test
+    void testTermsAndPhrase() throws Exception {
+        assertThat(search("timeout").total()).isEqualTo(2);
+        assertThat(search("\"connection timeout\"").hits())
+            .extracting(FileContentHit::path)
+            .containsExactly("/data/logs/app.log");
+        // 多个词同时包含
+        assertThat(search("timeout listen").hits())
+            .extracting(FileContentHit::path)
+            .containsExactly("/data/etc/nginx.conf");
+    }
+
+    @Test
+    void testPrefixAndChinese() throws Exception {
+        assertThat(search("config*").hits())
+            .extracting(FileContentHit::path)
+            .containsExactly("/data/docs/readme.md");
+        assertThat(search("安装说明").total()).isEqualTo(1);
+        assertThat(search("说安").total()).isZero();
+    }
+
+    @Test
+    void testSnippetEscaped() throws Exception {
+        String snippet = search("connection").hits().get(0).snippet();
+
+        assertThat(snippet).contains("<em>connection</em>").contains("&lt;db&gt;");
+    }
+
+    @Test
+    void testIncrementalUpdate() throws Exception {
+        try (FileContentIndex.Updater updater = index.openUpdater("/data")) {
+            assertThat(updater.isUnchanged("/data/logs/app.log", 43, 1000L)).isTrue();
+            assertThat(updater.isUnchanged("/data/docs/readme.md", 50, 2500L)).isFalse();
+            updater.update("/data/docs/readme.md", "已改为使用 docker 部署", 30, 2500L);
+            // nginx.conf 本次未出现
+            assertThat(updater.deleteUnseen()).isEqualTo(1);
+        }
+
+        assertThat(search("configure").total()).isZero();
+        assertThat(search("docker").total()).isEqualTo(1);
+        assertThat(search("listen").total()).isZero();
+        assertThat(search("ERROR").total()).isEqualTo(1);
+    }
+
+    @Test
+    void testDeleteUnseenOnlyUnderRoot() throws Exception {
+        try (FileContentIndex.Updater updater = index.openUpdater("/data/logs")) {
+            assertThat(updater.deleteUnseen()).isEqualTo(1);
+        }
+
+        assertThat(search("ERROR").total()).isZero();
+        assertThat(search("listen").total()).isEqualTo(1);
+    }
+
+    @Test
+    void testInvalidQuery() {
+        assertThatThrownBy(() -> search("\"unclosed"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> index.search("timeout", 9995, 10))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,128 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileNameTrigramIndexTest {
+
+    private FileNameTrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FileNameTrigramIndex();
+        for (String path : List.of(
+            "/data/photos/Holiday.jpg",
+            "/data/photos/holiday-2023/beach.png",
+            "/data/holiday/notes.txt",
+            "/data/docs/report.pdf",
+            "/data/docs/Report-final.pdf",
+            "/data/docs/annual-report-2023.docx")) {
+            index.add(path);
+        }
+    }
+
+    private FileNameTrigramIndex.Result search(String keyword) {
+        return index.search(FileNameTrigramIndex.Query.parse(keyword), 0, 10);
+    }
+
+    @Test
+    void testSubstringRankedByNameMatch() {
+        FileNameTrigramIndex.Result result = search("HOLIDAY");
+
+        assertThat(result.total()).isEqualTo(3);
+        // 文件名以关键字开头的在前，仅路径包含的在后
+        assertThat(result.paths()).containsExactly(
+            "/data/photos/Holiday.jpg",
+            "/data/holiday/notes.txt",
+            "/data/photos/holiday-2023/beach.png");
+    }
+
+    @Test
+    void testExactNameFirst() {
+        index.add("/data/report");
+
+        assertThat(search("report").paths()).startsWith("/data/report", "/data/docs/report.pdf");
+    }
+
+    @Test
+    void testPrefixMatchesNameOnly() {
+        assertThat(search("^report").paths())
+            .containsExactlyInAnyOrder("/data/docs/report.pdf", "/data/docs/Report-final.pdf");
+        assertThat(search("^docs").total()).isZero();
+    }
+
+    @Test
+    void testRegex() {
+        assertThat(search("regex:report-\\d{4}").paths()).containsExactly("/data/docs/annual-report-2023.docx");
+        assertThat(search("regex:\\.(png|jpg)$").total()).isEqualTo(2);
+        assertThatThrownBy(() -> search("regex:(unclosed"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testShortKeyword() {
+        assertThat(search("pn").paths()).containsExactly("/data/photos/holiday-2023/beach.png");
+    }
+
+    @Test
+    void testPaging() {
+        FileNameTrigramIndex.Query query = FileNameTrigramIndex.Query.parse("report");
+        List<String> all = index.search(query, 0, 10).paths();
+
+        FileNameTrigramIndex.Result second = index.search(query, 1, 1);
+
+        assertThat(second.total()).isEqualTo(3);
+        assertThat(second.paths()).containsExactly(all.get(1));
+    }
+
+    @Test
+    void testSearchAfter() {
+        FileNameTrigramIndex.Query query = FileNameTrigramIndex.Query.parse("report");
+        List<String> all = index.search(query, 0, 10).paths();
+
+        FileNameTrigramIndex.Result first = index.search(query, null, 0, 2);
+        FileNameTrigramIndex.Result second = index.search(query, first.last(), 0, 2);
+
+        assertThat(first.paths()).containsExactlyElementsOf(all.subList(0, 2));
+        assertThat(first.hasMore()).isTrue();
+        assertThat(second.paths()).containsExactly(all.get(2));
+        assertThat(second.hasMore()).isFalse();
+        assertThat(second.total()).isEqualTo(3);
+    }
+
+    @Test
+    void testRemove() {
+        index.remove("/data/docs/report.pdf");
+        index.removeTree("/data/photos");
+
+        assertThat(search("report").paths()).doesNotContain("/data/docs/report.pdf");
+        assertThat(search("holiday").paths()).containsExactly("/data/holiday/notes.txt");
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void testAliases() {
+        index.add("/data/docs/办公文件.docx", "bangongwenjian.docx", "bgwj.docx");
+        index.add("/data/bgwj/readme.txt");
+
+        // 匹配别名与匹配文件名的相关度相同，排在仅路径包含的之前
+        assertThat(search("bgwj").paths()).containsExactly("/data/docs/办公文件.docx", "/data/bgwj/readme.txt");
+        assertThat(search("^bangong").paths()).containsExactly("/data/docs/办公文件.docx");
+        assertThat(search("办公").paths()).containsExactly("/data/docs/办公文件.docx");
+
+        index.remove("/data/docs/办公文件.docx");
+        assertThat(search("wenjian").total()).isZero();
+    }
+
+    @Test
+    void testRequiredLiterals() {
+        assertThat(FileNameTrigramIndex.requiredLiterals("report-\\d{4}\\.pdf")).containsExactly("report-", ".pdf");
+        assertThat(FileNameTrigramIndex.requiredLiterals("abcd?e(fgh)*[xyz]+ijk")).containsExactly("abc", "e", "ijk");
+        assertThat(FileNameTrigramIndex.requiredLiterals("foo|bar")).isEmpty();
+    }
+}
@@ -0,0 +1,118 @@
+package com.huanzhen.fileflexmanager.infrastructure.persistence.search;
+
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileIdPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TagBitmapIndexTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TagBitmapIndex index;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("CREATE TABLE file_tag (file_id BIGINT, tag_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE file_index (id BIGINT, md5 VARCHAR(64))");
+        jdbcTemplate.execute("CREATE TABLE tag_file_hash (tag_id BIGINT, file_hash VARCHAR(64))");
+        // 标签1: 10 11；标签2: 11 12；标签3（绑定文件）: hash 为 a 的 10 和 14
+        jdbcTemplate.update("INSERT INTO file_tag VALUES (10, 1), (11, 1), (11, 2), (12, 2)");
+        jdbcTemplate.update("INSERT INTO file_index VALUES (10, 'a'), (11, 'b'), (12, 'c'), (14, 'a')");
+        jdbcTemplate.update("INSERT INTO tag_file_hash VALUES (3, 'a')");
+        index = new TagBitmapIndex(jdbcTemplate);
+    }
+
+    private List<Long> find(String expression) {
+        return index.findFileIds(TagExpression.parse(expression), 0, 100).ids();
+    }
+
+    @Test
+    void testExpressions() {
+        assertThat(find("1")).containsExactly(10L, 11L);
+        assertThat(find("3")).containsExactly(10L, 14L);
+        assertThat(find("1 OR 3")).containsExactly(10L, 11L, 14L);
+        assertThat(find("1 AND 2")).containsExactly(11L);
+        assertThat(find("(1 OR 3) AND NOT 2")).containsExactly(10L, 14L);
+        assertThat(find("99")).isEmpty();
+    }
+
+    @Test
+    void testPaging() {
+        TagExpression expression = TagExpression.parse("1 OR 2 OR 3");
+
+        FileIdPage page = index.findFileIds(expression, 1, 2);
+        assertThat(page.ids()).containsExactly(11L, 12L);
+        assertThat(page.total()).isEqualTo(4);
+
+        FileIdPage after = index.findFileIdsAfter(expression, 11L, 10);
+        assertThat(after.ids()).containsExactly(12L, 14L);
+        assertThat(after.total()).isEqualTo(4);
+    }
+
+    @Test
+    void testIncrementalUpdate() {
+        assertThat(find("1")).containsExactly(10L, 11L);
+
+        index.addFileTag(1L, 15L);
+        index.removeFileTag(1L, 10L);
+        index.removeFiles(List.of(11L));
+        assertThat(find("1")).containsExactly(15L);
+        assertThat(find("2")).containsExactly(12L);
+
+        index.removeTag(2L);
+        assertThat(find("2")).isEmpty();
+    }
+
+    @Test
+    void testHashFilesRefreshedAfterChange() {
+        assertThat(find("3")).containsExactly(10L, 14L);
+
+        jdbcTemplate.update("UPDATE file_index SET md5 = 'a' WHERE id = 12");
+        // 未通知时使用缓存
+        assertThat(find("3")).containsExactly(10L, 14L);
+        index.hashesChanged();
+        assertThat(find("3")).containsExactly(10L, 12L, 14L);
+
+        jdbcTemplate.update("INSERT INTO tag_file_hash VALUES (3, 'b')");
+        index.tagHashesChanged(3L);
+        assertThat(find("3")).containsExactly(10L, 11L, 12L, 14L);
+    }
+
+    @Test
+    void testCountFiles() {
+        // 文件10同时直接带有标签3，只算一次
+        jdbcTemplate.update("INSERT INTO file_tag VALUES (10, 3), (13, 3)");
+        jdbcTemplate.update("INSERT INTO tag_file_hash VALUES (4, 'none')");
+
+        assertThat(index.countFiles()).containsExactlyInAnyOrderEntriesOf(Map.of(1L, 2L, 2L, 2L, 3L, 3L));
+
+        // 只有直接关联的标签直接取位图基数，有hash关联的标签重新统计
+        index.addFileTag(2L, 13L);
+        jdbcTemplate.update("INSERT INTO file_tag VALUES (11, 3)");
+        index.addFileTag(3L, 11L);
+        assertThat(index.countFiles()).containsEntry(2L, 3L).containsEntry(3L, 4L);
+    }
+
+    @Test
+    void testCountGroups() {
+        Map<Long, Long> counts = index.countFiles(Map.of(1L, List.of(1L, 2L), 3L, List.of(3L, 1L), 4L, List.of(99L)));
+
+        assertThat(counts).containsExactlyInAnyOrderEntriesOf(Map.of(1L, 3L, 3L, 3L));
+    }
+
+    @Test
+    void testNotAlone() {
+        assertThatThrownBy(() -> index.findFileIds(new TagExpression.Not(new TagExpression.Tag(1L)), 0, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -1,6 +1,7 @@
 package com.huanzhen.fileflexmanager.infrastructure.task.handler;
 
 import com.alibaba.fastjson2.JSONObject;
+import com.huanzhen.fileflexmanager.application.service.DirectoryListingCache;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
 import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
 import com.huanzhen.fileflexmanager.domain.model.params.params.FileDeleteParams;
@@ -37,6 +38,8 @@ class FileDeleteTaskHandlerTest extends BaseTaskHandlerTest<FileDeleteParams> {
     private FileIndexRepository fileIndexRepository;
     @Mock
     private FileTagRepository fileTagRepository;
+    @Mock
+    private DirectoryListingCache directoryListingCache;
 
     @BeforeEach
     void setUp() throws IOException {
@@ -69,7 +72,8 @@ class FileDeleteTaskHandlerTest extends BaseTaskHandlerTest<FileDeleteParams> {
 
     @Override
     protected void setupTestHandler() {
-        taskHandler = new FileDeleteTaskHandler(taskRepository, fileIndexRepository, fileTagRepository);
+        taskHandler = new FileDeleteTaskHandler(taskRepository, fileIndexRepository, fileTagRepository,
+                directoryListingCache);
     }
 
     @Override
@@ -93,6 +97,9 @@ class FileDeleteTaskHandlerTest extends BaseTaskHandlerTest<FileDeleteParams> {
         // 验证文件确实被删除了
         assertFalse(Files.exists(sourceFile));
 
+        // 验证目录列表缓存失效
+        verify(directoryListingCache).invalidateTree(sourceFile);
+
         // 验证进度更新
         verify(taskRepository, atLeastOnce()).updateTask(any());
         assertTrue(task.getProgress() == 100);
@@ -135,7 +142,7 @@ class FileDeleteTaskHandlerTest extends BaseTaskHandlerTest<FileDeleteParams> {
         taskHandler.handle(task);
 
         // 验证目录索引被删除
-        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class));
+        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class), any());
         
         // 验证目录及其内容确实被删除了
         assertFalse(Files.exists(sourceDir));
@@ -185,7 +192,7 @@ class FileDeleteTaskHandlerTest extends BaseTaskHandlerTest<FileDeleteParams> {
 
         // 验证文件索引被删除
         verify(fileIndexRepository).deleteByPath(sourceFile.toString());
-        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class));
+        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class), any());
         
         // 验证所有项目确实被删除了
         assertFalse(Files.exists(sourceFile));
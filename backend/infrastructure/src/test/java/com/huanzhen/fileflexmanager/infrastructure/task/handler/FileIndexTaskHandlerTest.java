@@ -2,24 +2,45 @@ package com.huanzhen.fileflexmanager.infrastructure.task.handler;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndexCheckpoint;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.ConfigEnum;
 import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
 import com.huanzhen.fileflexmanager.domain.model.params.params.FileIndexParams;
+import com.huanzhen.fileflexmanager.domain.repository.ConfigRepository;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexCheckpointRepository;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexFacetRepository;
 import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
+import com.huanzhen.fileflexmanager.infrastructure.persistence.search.FileContentIndex;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +49,18 @@ class FileIndexTaskHandlerTest extends BaseTaskHandlerTest<FileIndexParams> {
     @Mock
     private FileIndexRepository fileIndexRepository;
 
+    @Mock
+    private FileIndexCheckpointRepository checkpointRepository;
+
+    @Mock
+    private FileIndexFacetRepository facetRepository;
+
+    @Mock
+    private FileContentIndex fileContentIndex;
+
+    @Mock
+    private ConfigRepository configRepository;
+
     private Path testDir;
     private Path testFile1;
     private Path testFile2;
@@ -35,7 +68,10 @@ class FileIndexTaskHandlerTest extends BaseTaskHandlerTest<FileIndexParams> {
 
     @Override
     protected void setupTestHandler() {
-        taskHandler = new FileIndexTaskHandler(fileIndexRepository, taskRepository);
+        taskHandler = new FileIndexTaskHandler(fileIndexRepository, checkpointRepository, facetRepository,
+                fileContentIndex, taskRepository);
+        // 未配置全局排除规则
+        ConfigEnum.initRepository(configRepository);
     }
 
     @BeforeEach
@@ -71,6 +107,15 @@ class FileIndexTaskHandlerTest extends BaseTaskHandlerTest<FileIndexParams> {
         return TaskType.FILE_INDEX;
     }
 
+    @SuppressWarnings("unchecked")
+    private List<FileIndex> captureUpserted() {
+        ArgumentCaptor<List<FileIndex>> captor = ArgumentCaptor.forClass(List.class);
+        verify(fileIndexRepository, atLeastOnce()).upsertAll(captor.capture());
+        return captor.getAllValues().stream()
+            .flatMap(List::stream)
+            .collect(Collectors.toList());
+    }
+
     @Test
     void testIndexSingleFile() {
         // 准备测试数据
@@ -83,13 +128,13 @@ class FileIndexTaskHandlerTest extends BaseTaskHandlerTest<FileIndexParams> {
         taskHandler.handle(task);
 
         // 验证结果
-        verify(fileIndexRepository, times(1)).save(argThat(fileIndex -> 
-            fileIndex.getPath().equals(testFile1.toString()) &&
-            !fileIndex.getIsDir() &&
-            fileIndex.getSize() > 0 &&
-            fileIndex.getMd5() != null &&
-            !fileIndex.getMd5().isEmpty()
-        ));
+        List<FileIndex> upserted = captureUpserted();
+        assertThat(upserted).hasSize(1);
+        FileIndex fileIndex = upserted.get(0);
+        assertThat(fileIndex.getPath()).isEqualTo(testFile1.toString());
+        assertThat(fileIndex.getIsDir()).isFalse();
+        assertThat(fileIndex.getSize()).isPositive();
+        assertThat(fileIndex.getMd5()).isNotEmpty();
         verifyTaskSuccess(task);
         verifyProgressUpdates();
     }
@@ -108,11 +153,123 @@ class FileIndexTaskHandlerTest extends BaseTaskHandlerTest<FileIndexParams> {
 
         // 验证结果
         // 应该索引4个项目：testDir, testFile1, testFile2, testSubDir
-        verify(fileIndexRepository, atLeast(4)).save(any(FileIndex.class));
+        assertThat(captureUpserted()).hasSizeGreaterThanOrEqualTo(4);
+        verify(facetRepository).refresh(testDir.toString());
         verifyTaskSuccess(task);
         verifyProgressUpdates();
     }
 
+    @Test
+    void testFacetRefreshFailureIgnored() {
+        // 准备测试数据：刷新分面计数出错
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        Task task = createTestTask(payload);
+        doThrow(new IllegalStateException("db error")).when(facetRepository).refresh(anyString());
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：索引仍然成功
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testDirectorySizeAggregated() throws IOException {
+        // 准备测试数据
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        Task task = createTestTask(payload);
+        long expectedSize = Files.size(testFile1) + Files.size(testFile2);
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：目录大小为所有子文件大小之和，且每个条目只写入一次
+        List<FileIndex> upserted = captureUpserted();
+        assertThat(upserted).hasSize(5);
+        assertThat(upserted)
+            .filteredOn(fileIndex -> fileIndex.getPath().equals(testDir.toString()))
+            .singleElement()
+            .satisfies(fileIndex -> {
+                assertThat(fileIndex.getIsDir()).isTrue();
+                assertThat(fileIndex.getSize()).isEqualTo(expectedSize);
+            });
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testNestedDirectorySizes() throws IOException {
+        // 准备测试数据：多层目录，单线程扫描时子目录在遍历栈中处理
+        Path level1 = Files.createDirectories(testSubDir.resolve("level1"));
+        Path level2 = Files.createDirectories(level1.resolve("level2"));
+        Files.write(level1.resolve("a.txt"), new byte[10]);
+        Files.write(level2.resolve("b.txt"), new byte[20]);
+        Files.write(level2.resolve("c.txt"), new byte[30]);
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        payload.put("parallelism", 1);
+        Task task = createTestTask(payload);
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：每层目录大小为其下所有文件大小之和
+        Map<String, Long> sizes = captureUpserted().stream()
+            .filter(FileIndex::getIsDir)
+            .collect(Collectors.toMap(FileIndex::getPath, FileIndex::getSize));
+        assertThat(sizes.get(level2.toString())).isEqualTo(50L);
+        assertThat(sizes.get(level1.toString())).isEqualTo(60L);
+        assertThat(sizes.get(testSubDir.toString())).isEqualTo(60L + Files.size(testSubDir.resolve("test3.txt")));
+        assertThat(sizes.get(testDir.toString()))
+            .isEqualTo(sizes.get(testSubDir.toString()) + Files.size(testFile1) + Files.size(testFile2));
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testIncrementalSkipsUnchangedFiles() throws IOException {
+        // 准备测试数据
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        payload.put("incremental", true);
+        Task task = createTestTask(payload);
+
+        // 模拟上一次索引的结果：test1未变化，test2大小变化，gone.txt已被删除
+        FileIndex unchanged = existingIndex(testFile1, Files.size(testFile1));
+        FileIndex changed = existingIndex(testFile2, 1L);
+        FileIndex gone = existingIndex(testDir.resolve("gone.txt"), 1L);
+        when(fileIndexRepository.findByParentPath(testDir.toString()))
+            .thenReturn(Arrays.asList(unchanged, changed, gone));
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果
+        assertThat(captureUpserted())
+            .extracting(FileIndex::getPath)
+            .contains(testFile2.toString())
+            .doesNotContain(testFile1.toString());
+        verify(fileIndexRepository).deleteByPaths(argThat(paths ->
+            paths.size() == 1 && paths.contains(gone.getPath())));
+        verifyTaskSuccess(task);
+    }
+
+    private FileIndex existingIndex(Path path, long size) throws IOException {
+        FileIndex fileIndex = new FileIndex();
+        fileIndex.setPath(path.toString());
+        fileIndex.setIsDir(false);
+        fileIndex.setSize(size);
+        fileIndex.setLastModified(LocalDateTime.ofInstant(
+            Instant.ofEpochMilli(Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : 0L),
+            ZoneId.systemDefault()));
+        if (Files.exists(path)) {
+            PosixFileAttributes attrs = Files.readAttributes(path, PosixFileAttributes.class);
+            fileIndex.setPermissions(PosixFilePermissions.toString(attrs.permissions()));
+            fileIndex.setOwner(attrs.owner().getName());
+        }
+        return fileIndex;
+    }
+
     @Test
     void testIndexNonExistentPath() {
         // 准备测试数据
@@ -124,33 +281,162 @@ class FileIndexTaskHandlerTest extends BaseTaskHandlerTest<FileIndexParams> {
         taskHandler.handle(task);
 
         // 验证结果
-        verify(fileIndexRepository, never()).save(any(FileIndex.class));
+        verify(fileIndexRepository, never()).upsertAll(anyList());
+        verify(facetRepository, never()).refresh(anyString());
         verifyTaskFailure(task, "目录不存在");
     }
 
 
     @Test
-    void testUpdateExistingFileIndex() {
+    void testUpsertWithoutPerFileLookup() {
         // 准备测试数据
         JSONObject payload = new JSONObject();
-        payload.put("selectPath", testFile1.toString());
+        payload.put("selectPath", testDir.toString());
         payload.put("calculateMd5", true);
         Task task = createTestTask(payload);
 
-        // 模拟已存在的FileIndex
-        FileIndex existingIndex = new FileIndex();
-        existingIndex.setId(1L);
-        existingIndex.setPath(testFile1.toString());
-        when(fileIndexRepository.findByPath(testFile1.toString())).thenReturn(existingIndex);
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：已存在记录由批量合并更新，除根路径外不再逐条查询和写入
+        verify(fileIndexRepository, times(1)).findByPath(any());
+        verify(fileIndexRepository, never()).save(any(FileIndex.class));
+        verify(fileIndexRepository, never()).updateFileIndex(any(FileIndex.class));
+        assertThat(captureUpserted())
+            .filteredOn(fileIndex -> !fileIndex.getIsDir())
+            .allSatisfy(fileIndex -> assertThat(fileIndex.getMd5()).isNotEmpty());
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testQuickHashResolvesCollisions() throws IOException {
+        // 准备测试数据：test1.txt 的快速哈希与其他文件重复
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        payload.put("hashMode", "quick");
+        Task task = createTestTask(payload);
+        FileIndex collision = existingIndex(testFile1, Files.size(testFile1));
+        collision.setId(1L);
+        collision.setQuickHash("quick");
+        when(fileIndexRepository.findCollidingQuickHashes(anyString())).thenReturn(Set.of("quick"));
+        when(fileIndexRepository.findQuickHashCollisions(anyString(), anyCollection()))
+            .thenReturn(List.of(collision));
 
         // 执行测试
         taskHandler.handle(task);
 
-        // 验证结果
-        verify(fileIndexRepository, times(1)).updateFileIndex(argThat(fileIndex -> 
-            fileIndex.getId().equals(1L) &&
-            fileIndex.getPath().equals(testFile1.toString())
-        ));
+        // 验证结果：遍历时只计算快速哈希，重复的文件再补算完整MD5
+        List<FileIndex> upserted = captureUpserted();
+        assertThat(upserted)
+            .filteredOn(fileIndex -> !fileIndex.getIsDir() && !fileIndex.getPath().equals(testFile1.toString()))
+            .isNotEmpty()
+            .allSatisfy(fileIndex -> {
+                assertThat(fileIndex.getQuickHash()).isNotEmpty();
+                assertThat(fileIndex.getMd5()).isNull();
+            });
+        assertThat(upserted)
+            .filteredOn(fileIndex -> fileIndex.getPath().equals(testFile1.toString()))
+            .anySatisfy(fileIndex -> assertThat(fileIndex.getMd5()).isNotEmpty());
+        // 重复的快速哈希只统计一次
+        verify(fileIndexRepository, times(1)).findCollidingQuickHashes(testDir.toString());
+        verify(fileIndexRepository, times(1)).findQuickHashCollisions(testDir.toString(), List.of("quick"));
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testExcludedEntriesNotIndexed() throws IOException {
+        // 准备测试数据：任务规则排除subdir，.fileflexignore 排除 test2.txt，subdir 原先已被索引
+        Files.writeString(testDir.resolve(".fileflexignore"), "# 注释\ntest2.*\n");
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        payload.put("excludeRules", "subdir");
+        Task task = createTestTask(payload);
+        FileIndex indexedSubDir = existingIndex(testSubDir, 0L);
+        indexedSubDir.setIsDir(true);
+        when(fileIndexRepository.findByParentPath(testDir.toString())).thenReturn(List.of(indexedSubDir));
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：被排除的条目不写入，原有记录作为失效记录清理
+        assertThat(captureUpserted())
+            .extracting(FileIndex::getPath)
+            .contains(testDir.toString(), testFile1.toString())
+            .doesNotContain(testFile2.toString(), testSubDir.toString(), testSubDir.resolve("test3.txt").toString());
+        verify(fileIndexRepository).deleteStaleIndexes(eq(testSubDir.toString()), any(LocalDateTime.class), any());
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testSubdirectoryRescanKeepsRootExclusions() throws IOException {
+        // 准备测试数据：文件监听只重新索引subdir，排除规则和 .fileflexignore 都写在原任务的根目录
+        Files.writeString(testDir.resolve(".fileflexignore"), "*.log\n");
+        Path logFile = Files.createFile(testSubDir.resolve("app.log"));
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testSubDir.toString());
+        payload.put("excludeBase", testDir.toString());
+        payload.put("excludeRules", "/subdir/test3.txt");
+        Task task = createTestTask(payload);
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：相对原根目录的路径规则和根目录的 .fileflexignore 仍然生效
+        assertThat(captureUpserted())
+            .extracting(FileIndex::getPath)
+            .contains(testSubDir.toString())
+            .doesNotContain(testSubDir.resolve("test3.txt").toString(), logFile.toString());
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testResumeFromCheckpoint() throws IOException {
+        // 准备测试数据：上次中断时subdir已完成，并发现了一个失效文件
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        Task task = createTestTask(payload);
+
+        FileIndexCheckpoint checkpoint = new FileIndexCheckpoint(testDir.toString(), 0);
+        checkpoint.setCompletedDirs(Map.of(testSubDir.toString(), 100L));
+        checkpoint.setStaleFiles(List.of(testDir.resolve("gone.txt").toString()));
+        when(checkpointRepository.findByRootPath(testDir.toString())).thenReturn(checkpoint);
+        long expectedSize = Files.size(testFile1) + Files.size(testFile2) + 100L;
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：已完成的子目录不再遍历，大小沿用断点；完成后清理失效记录并删除断点
+        List<FileIndex> upserted = captureUpserted();
+        assertThat(upserted)
+            .extracting(FileIndex::getPath)
+            .containsExactlyInAnyOrder(testDir.toString(), testFile1.toString(), testFile2.toString());
+        assertThat(upserted)
+            .filteredOn(fileIndex -> fileIndex.getPath().equals(testDir.toString()))
+            .singleElement()
+            .satisfies(fileIndex -> assertThat(fileIndex.getSize()).isEqualTo(expectedSize));
+        verify(fileIndexRepository).deleteByPaths(argThat(paths ->
+            paths.contains(testDir.resolve("gone.txt").toString())));
+        verify(checkpointRepository).deleteByRootPath(testDir.toString());
+        verifyTaskSuccess(task);
+    }
+
+    @Test
+    void testExpiredCheckpointIgnored() {
+        // 准备测试数据：断点已过期
+        JSONObject payload = new JSONObject();
+        payload.put("selectPath", testDir.toString());
+        Task task = createTestTask(payload);
+
+        FileIndexCheckpoint checkpoint = new FileIndexCheckpoint(testDir.toString(), 0);
+        checkpoint.setCompletedDirs(Map.of(testSubDir.toString(), 100L));
+        checkpoint.setUpdateTime(LocalDateTime.now().minusDays(2));
+        when(checkpointRepository.findByRootPath(testDir.toString())).thenReturn(checkpoint);
+
+        // 执行测试
+        taskHandler.handle(task);
+
+        // 验证结果：重新完整遍历
+        assertThat(captureUpserted()).hasSize(5);
         verifyTaskSuccess(task);
     }
-} 
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package com.huanzhen.fileflexmanager.infrastructure.task.handler;
 
 import com.alibaba.fastjson2.JSONObject;
+import com.huanzhen.fileflexmanager.application.service.DirectoryListingCache;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileTag;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
@@ -42,6 +43,9 @@ class FileMoveTaskHandlerTest extends BaseTaskHandlerTest<FileMoveParams> {
     @Mock
     private FileTagRepository fileTagRepository;
 
+    @Mock
+    private DirectoryListingCache directoryListingCache;
+
     @BeforeEach
     void setUp() throws IOException {
         MockitoAnnotations.openMocks(this);
@@ -67,7 +71,8 @@ class FileMoveTaskHandlerTest extends BaseTaskHandlerTest<FileMoveParams> {
 
     @Override
     protected void setupTestHandler() {
-        taskHandler = new FileMoveTaskHandler(taskRepository, fileIndexRepository, fileTagRepository);
+        taskHandler = new FileMoveTaskHandler(taskRepository, fileIndexRepository, fileTagRepository,
+                directoryListingCache);
     }
 
     @Override
@@ -130,7 +135,7 @@ class FileMoveTaskHandlerTest extends BaseTaskHandlerTest<FileMoveParams> {
         taskHandler.handle(task);
 
         // 验证目录索引被删除
-        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class));
+        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class), any());
         
         // 验证新的文件索引被创建（目录和文件各一个）
         verify(fileIndexRepository, times(2)).save(any(FileIndex.class));
@@ -160,7 +165,7 @@ class FileMoveTaskHandlerTest extends BaseTaskHandlerTest<FileMoveParams> {
         taskHandler.handle(task);
 
         // 验证目录索引被删除
-        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class));
+        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class), any());
         
         // 验证没有创建新的文件索引和标签
         verify(fileIndexRepository, never()).save(any(FileIndex.class));
@@ -215,6 +220,10 @@ class FileMoveTaskHandlerTest extends BaseTaskHandlerTest<FileMoveParams> {
         assertTrue(Files.exists(targetDir.resolve(sourceFile.getFileName())));
         assertFalse(Files.exists(sourceFile));
 
+        // 验证源目录和目标目录的列表缓存失效
+        verify(directoryListingCache).invalidateTree(sourceFile);
+        verify(directoryListingCache).invalidateTree(targetDir.resolve(sourceFile.getFileName()));
+
         // 验证进度更新
         verify(taskRepository, atLeastOnce()).updateTask(any());
         assertTrue(task.getProgress() == 100);
@@ -260,7 +269,7 @@ class FileMoveTaskHandlerTest extends BaseTaskHandlerTest<FileMoveParams> {
         taskHandler.handle(task);
 
         // 验证目录下所有文件索引被删除
-        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class));
+        verify(fileIndexRepository).deleteStaleIndexes(eq(sourceDir.toString()), any(LocalDateTime.class), any());
         
         // 验证目录确实被移动了
         assertTrue(Files.exists(targetDir.resolve(sourceDir.getFileName())));
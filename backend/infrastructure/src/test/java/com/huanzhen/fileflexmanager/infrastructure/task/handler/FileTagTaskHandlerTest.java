@@ -0,0 +1,175 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.handler;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.huanzhen.fileflexmanager.application.service.FileService;
+import com.huanzhen.fileflexmanager.application.service.TagService;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileTagMode;
+import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
+import com.huanzhen.fileflexmanager.domain.model.params.params.FileTagParams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class FileTagTaskHandlerTest extends BaseTaskHandlerTest<FileTagParams> {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private FileService fileService;
+    @Mock
+    private TagService tagService;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        super.setUp();
+        Files.write(tempDir.resolve("a.jpg"), "a".getBytes());
+        Files.write(tempDir.resolve("b.txt"), "b".getBytes());
+        Files.createDirectories(tempDir.resolve("sub"));
+        Files.write(tempDir.resolve("sub/c.jpg"), "c".getBytes());
+
+        lenient().when(fileService.resolveFileIndexes(anyCollection())).thenAnswer(invocation -> {
+            Collection<Path> paths = invocation.getArgument(0);
+            return paths.stream().map(path -> {
+                FileIndex fileIndex = new FileIndex();
+                fileIndex.setId(nextId.getAndIncrement());
+                fileIndex.setPath(path.toString());
+                fileIndex.setIsDir(Files.isDirectory(path));
+                return fileIndex;
+            }).toList();
+        });
+    }
+
+    @Override
+    protected void setupTestHandler() {
+        taskHandler = new FileTagTaskHandler(taskRepository, fileService, tagService);
+    }
+
+    @Override
+    protected TaskType getTaskType() {
+        return TaskType.FILE_TAG;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FileIndex> captureUpdatedFiles(FileTagMode mode) {
+        ArgumentCaptor<List<FileIndex>> filesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(tagService).updateFilesTags(filesCaptor.capture(), anyMap(), eq(mode), eq(List.of(1L, 2L)));
+        return filesCaptor.getValue();
+    }
+
+    @Test
+    void testDirectoryWithPattern() {
+        JSONObject payload = new JSONObject();
+        payload.put("directory", tempDir.toString());
+        payload.put("pattern", "*.jpg");
+        payload.put("tagIds", List.of(1L, 2L));
+        Task task = createTestTask(payload);
+
+        taskHandler.handle(task);
+
+        verifyTaskSuccess(task);
+        assertEquals(List.of(tempDir.resolve("a.jpg").toString()),
+                captureUpdatedFiles(FileTagMode.ADD).stream().map(FileIndex::getPath).toList());
+    }
+
+    @Test
+    void testRecursiveWithSelectedPaths() {
+        JSONObject payload = new JSONObject();
+        payload.put("selectedPaths", List.of(tempDir.resolve("b.txt").toString(), tempDir.resolve("a.jpg").toString()));
+        payload.put("directory", tempDir.toString());
+        payload.put("pattern", "*.jpg");
+        payload.put("recursive", true);
+        payload.put("mode", "replace");
+        payload.put("tagIds", List.of(1L, 2L));
+        Task task = createTestTask(payload);
+
+        taskHandler.handle(task);
+
+        verifyTaskSuccess(task);
+        // 重复选中的文件只处理一次
+        Set<String> paths = new HashSet<>(captureUpdatedFiles(FileTagMode.REPLACE).stream().map(FileIndex::getPath).toList());
+        assertEquals(Set.of(tempDir.resolve("a.jpg").toString(), tempDir.resolve("b.txt").toString(),
+                tempDir.resolve("sub/c.jpg").toString()), paths);
+        verify(tagService, never()).findIndexedFileHash(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testIndexedHashForBindFileTags() {
+        when(tagService.requiresFileHash(eq(FileTagMode.ADD), anyCollection())).thenReturn(true);
+        // b.txt 索引中没有有效的MD5，由打标签的事务提交到后台计算
+        when(tagService.findIndexedFileHash(any(FileIndex.class))).thenAnswer(invocation -> {
+            Path path = Path.of(((FileIndex) invocation.getArgument(0)).getPath());
+            return path.endsWith("b.txt") ? null : "md5-" + path.getFileName();
+        });
+        JSONObject payload = new JSONObject();
+        payload.put("selectedPaths", List.of(tempDir.resolve("a.jpg").toString(), tempDir.resolve("b.txt").toString(),
+                tempDir.resolve("sub").toString()));
+        payload.put("tagIds", List.of(1L, 2L));
+        Task task = createTestTask(payload);
+
+        taskHandler.handle(task);
+
+        verifyTaskSuccess(task);
+        ArgumentCaptor<Map<Long, String>> hashesCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(tagService).updateFilesTags(anyList(), hashesCaptor.capture(), eq(FileTagMode.ADD), anyCollection());
+        // 目录不需要MD5，没有有效MD5的文件不在这里计算
+        assertEquals(List.of("md5-a.jpg"), new ArrayList<>(hashesCaptor.getValue().values()));
+        verify(tagService, times(2)).findIndexedFileHash(any(FileIndex.class));
+    }
+
+    @Test
+    void testEmptyTags() {
+        JSONObject payload = new JSONObject();
+        payload.put("selectedPaths", List.of(tempDir.resolve("a.jpg").toString()));
+        payload.put("tagIds", List.of());
+        Task task = createTestTask(payload);
+
+        taskHandler.handle(task);
+
+        verifyTaskFailure(task, "标签不能为空");
+        verify(tagService, never()).updateFilesTags(anyList(), anyMap(), any(), anyCollection());
+    }
+
+    @Test
+    void testUnknownMode() {
+        JSONObject payload = new JSONObject();
+        payload.put("selectedPaths", List.of(tempDir.resolve("a.jpg").toString()));
+        payload.put("mode", "toggle");
+        payload.put("tagIds", List.of(1L));
+        Task task = createTestTask(payload);
+
+        taskHandler.handle(task);
+
+        verifyTaskFailure(task, "不支持的打标签方式: toggle");
+    }
+
+    @Test
+    void testTaskDescription() {
+        JSONObject payload = new JSONObject();
+        payload.put("selectedPaths", List.of(tempDir.resolve("a.jpg").toString()));
+        payload.put("directory", "/data/photos");
+        payload.put("pattern", "*.jpg");
+        payload.put("mode", "remove");
+        payload.put("tagIds", List.of(1L));
+
+        assertEquals("批量移除标签: 1 个文件/目录，/data/photos 下的 *.jpg",
+                taskHandler.getTaskDesc(createTestTask(payload)));
+    }
+}
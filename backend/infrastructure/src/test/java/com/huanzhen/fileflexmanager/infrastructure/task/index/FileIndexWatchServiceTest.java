@@ -0,0 +1,150 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.huanzhen.fileflexmanager.application.service.TaskApplicationService;
+import com.huanzhen.fileflexmanager.domain.model.entity.FileIndex;
+import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.ConfigEnum;
+import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
+import com.huanzhen.fileflexmanager.domain.repository.ConfigRepository;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TaskRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileIndexWatchServiceTest {
+
+    @Mock
+    private TaskRepository taskRepository;
+    @Mock
+    private FileIndexRepository fileIndexRepository;
+    @Mock
+    private TaskApplicationService taskApplicationService;
+    @Mock
+    private ConfigRepository configRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private FileIndexWatchService watchService;
+
+    @BeforeEach
+    void setUp() {
+        watchService = new FileIndexWatchService(taskRepository, fileIndexRepository, taskApplicationService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watchService.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApplyCreatedAndModifiedFiles() throws IOException {
+        Path created = Files.writeString(tempDir.resolve("created.txt"), "new");
+        Path unchanged = Files.writeString(tempDir.resolve("unchanged.txt"), "same");
+        when(fileIndexRepository.findByPaths(anyCollection())).thenReturn(List.of(existingIndex(unchanged, false)));
+
+        watchService.applyChanges(List.of(created, unchanged));
+
+        ArgumentCaptor<List<FileIndex>> captor = ArgumentCaptor.forClass(List.class);
+        verify(fileIndexRepository).upsertAll(captor.capture());
+        assertThat(captor.getValue())
+                .extracting(FileIndex::getPath)
+                .containsExactly(created.toString());
+        assertThat(captor.getValue().get(0).getSize()).isEqualTo(3L);
+        verify(fileIndexRepository, never()).deleteByPaths(anyCollection());
+    }
+
+    @Test
+    void testApplyDeletedEntries() throws IOException {
+        Path goneFile = tempDir.resolve("gone.txt");
+        Path goneDir = tempDir.resolve("gone_dir");
+        FileIndex fileIndex = existingIndex(Files.writeString(goneFile, "x"), false);
+        FileIndex dirIndex = existingIndex(Files.createDirectory(goneDir), true);
+        Files.delete(goneFile);
+        Files.delete(goneDir);
+        when(fileIndexRepository.findByPaths(anyCollection())).thenReturn(List.of(fileIndex, dirIndex));
+
+        watchService.applyChanges(List.of(goneFile, goneDir));
+
+        verify(fileIndexRepository, never()).upsertAll(anyList());
+        verify(fileIndexRepository).deleteByPaths(argThat(paths -> paths.size() == 1 && paths.contains(goneFile.toString())));
+        verify(fileIndexRepository).deleteStaleIndexes(eq(goneDir.toString()), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testDeletedPathWithoutIndexIgnored() {
+        when(fileIndexRepository.findByPaths(anyCollection())).thenReturn(List.of());
+
+        watchService.applyChanges(List.of(tempDir.resolve("never_indexed.txt")));
+
+        verify(fileIndexRepository, never()).upsertAll(anyList());
+        verify(fileIndexRepository, never()).deleteByPaths(anyCollection());
+        verify(fileIndexRepository, never()).deleteStaleIndexes(anyString(), any());
+    }
+
+    @Test
+    void testRescanKeepsTaskPayload() throws IOException {
+        Path sub = Files.createDirectories(tempDir.resolve("a/b"));
+        JSONObject taskPayload = new JSONObject();
+        taskPayload.put("selectPath", tempDir.toString());
+        taskPayload.put("excludeRules", "/a/b/cache");
+        taskPayload.put("hashMode", "quick");
+        taskPayload.put("indexContent", true);
+        taskPayload.put("maxDepth", 5);
+        Task task = new Task();
+        task.setType(TaskType.FILE_INDEX);
+        task.setEnabled(true);
+        task.setPayload(taskPayload);
+        when(taskRepository.findScheduledTasks()).thenReturn(List.of(task));
+        ConfigEnum.initRepository(configRepository);
+        when(configRepository.getValueOrDefault(anyString(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+        when(configRepository.getValueOrDefault(eq(ConfigEnum.FILE_INDEX_WATCH_ENABLED.name()), any())).thenReturn("true");
+        watchService.onApplicationEvent(null);
+        watchService.refreshWatchedRoots();
+
+        JSONObject payload = watchService.createRescanPayload(sub);
+
+        // 只改为增量索引该目录，排除规则仍按任务的根目录解析
+        assertThat(payload.getString("selectPath")).isEqualTo(sub.toString());
+        assertThat(payload.getBoolean("incremental")).isTrue();
+        assertThat(payload.getString("excludeBase")).isEqualTo(tempDir.toString());
+        assertThat(payload.getString("excludeRules")).isEqualTo("/a/b/cache");
+        assertThat(payload.getString("hashMode")).isEqualTo("quick");
+        assertThat(payload.getBoolean("indexContent")).isTrue();
+        assertThat(payload.getInteger("maxDepth")).isEqualTo(3);
+        assertThat(taskPayload.getString("selectPath")).isEqualTo(tempDir.toString());
+        assertThat(watchService.createRescanPayload(tempDir.getParent())).isNull();
+    }
+
+    private FileIndex existingIndex(Path path, boolean isDir) throws IOException {
+        FileIndex fileIndex = new FileIndex();
+        fileIndex.setPath(path.toString());
+        fileIndex.setIsDir(isDir);
+        fileIndex.setSize(isDir ? 0L : Files.size(path));
+        fileIndex.setLastModified(LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(Files.getLastModifiedTime(path).toMillis()), ZoneId.systemDefault()));
+        return fileIndex;
+    }
+}
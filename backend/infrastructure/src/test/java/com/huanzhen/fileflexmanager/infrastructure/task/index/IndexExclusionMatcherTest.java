@@ -0,0 +1,80 @@
+package com.huanzhen.fileflexmanager.infrastructure.task.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IndexExclusionMatcherTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testNameRulesMatchAtAnyDepth() {
+        IndexExclusionMatcher matcher = IndexExclusionMatcher.compile(root, "node_modules;*.tmp", null);
+
+        assertThat(matcher.isExcluded(root.resolve("node_modules"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("a/b/node_modules"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("a/cache.tmp"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("a/node_modules.txt"))).isFalse();
+    }
+
+    @Test
+    void testPathRulesRelativeToBase() {
+        IndexExclusionMatcher matcher = IndexExclusionMatcher.compile(root, "/backup/snapshots\nregex:docker/overlay2/\\w+");
+
+        assertThat(matcher.isExcluded(root.resolve("backup/snapshots"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("data/backup/snapshots"))).isFalse();
+        assertThat(matcher.isExcluded(root.resolve("docker/overlay2/abc123"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("docker/volumes"))).isFalse();
+    }
+
+    @Test
+    void testRegexMatchesName() {
+        IndexExclusionMatcher matcher = IndexExclusionMatcher.compile(root, "regex:snapshot-\\d{8}");
+
+        assertThat(matcher.isExcluded(root.resolve("a/snapshot-20240101"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("a/snapshot-latest"))).isFalse();
+    }
+
+    @Test
+    void testCommentsAndEscapedHash() {
+        IndexExclusionMatcher matcher = IndexExclusionMatcher.compile(root, "# comment\n\\#recycle\n\n");
+
+        assertThat(matcher.isExcluded(root.resolve("#recycle"))).isTrue();
+        assertThat(matcher.isExcluded(root.resolve("comment"))).isFalse();
+    }
+
+    @Test
+    void testEmptyRules() {
+        assertThat(IndexExclusionMatcher.compile(root, " ", null).isEmpty()).isTrue();
+    }
+
+    @Test
+    void testInvalidRuleRejected() {
+        assertThatThrownBy(() -> IndexExclusionMatcher.compile(root, "regex:(unclosed"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("regex:(unclosed");
+    }
+
+    @Test
+    void testIgnoreFileAppliesToItsDirectory() throws IOException {
+        Path sub = Files.createDirectories(root.resolve("sub"));
+        Files.writeString(sub.resolve(IndexExclusionMatcher.IGNORE_FILE_NAME), "cache/data\nregex:(broken\n*.log\n");
+        IndexExclusionMatcher parent = IndexExclusionMatcher.compile(root, ".git");
+
+        IndexExclusionMatcher matcher = parent.withIgnoreFile(sub);
+
+        assertThat(matcher.isExcluded(sub.resolve("cache/data"))).isTrue();
+        assertThat(matcher.isExcluded(sub.resolve("x/app.log"))).isTrue();
+        assertThat(matcher.isExcluded(sub.resolve(".git"))).isTrue();
+        assertThat(parent.isExcluded(root.resolve("app.log"))).isFalse();
+        assertThat(parent.withIgnoreFile(root)).isSameAs(parent);
+    }
+}
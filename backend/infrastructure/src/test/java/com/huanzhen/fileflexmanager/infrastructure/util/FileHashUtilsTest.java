@@ -0,0 +1,73 @@
+package com.huanzhen.fileflexmanager.infrastructure.util;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FileHashUtilsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSmallFileMatchesDigestUtil() throws Exception {
+        Path file = createRandomFile("small.bin", 3 * 1024 * 1024 + 17);
+        assertEquals(DigestUtil.md5Hex(file.toFile()), FileHashUtils.md5Hex(file));
+    }
+
+    @Test
+    void testMappedFileMatchesDigestUtil() throws Exception {
+        // 超过内存映射阈值
+        Path file = createRandomFile("large.bin", 20 * 1024 * 1024 + 5);
+        assertEquals(DigestUtil.md5Hex(file.toFile()), FileHashUtils.md5Hex(file));
+    }
+
+    @Test
+    void testEmptyFile() throws Exception {
+        Path file = Files.createFile(tempDir.resolve("empty.bin"));
+        assertEquals(DigestUtil.md5Hex(file.toFile()), FileHashUtils.md5Hex(file));
+    }
+
+    @Test
+    void testQuickHashSameContent() throws Exception {
+        Path first = createRandomFile("first.bin", 1024 * 1024);
+        Path second = createRandomFile("second.bin", 1024 * 1024);
+        assertEquals(FileHashUtils.quickHashHex(first), FileHashUtils.quickHashHex(second));
+    }
+
+    @Test
+    void testQuickHashIgnoresUnsampledBytes() throws Exception {
+        // 快速哈希只读取首、中、尾三块，未采样区域的差异需要完整MD5区分
+        Path first = createRandomFile("first.bin", 1024 * 1024);
+        Path second = createRandomFile("second.bin", 1024 * 1024);
+        byte[] data = Files.readAllBytes(second);
+        data[200 * 1024] ^= 1;
+        Files.write(second, data);
+        assertEquals(FileHashUtils.quickHashHex(first), FileHashUtils.quickHashHex(second));
+        assertNotEquals(FileHashUtils.md5Hex(first), FileHashUtils.md5Hex(second));
+
+        data[512 * 1024] ^= 1;
+        Files.write(second, data);
+        assertNotEquals(FileHashUtils.quickHashHex(first), FileHashUtils.quickHashHex(second));
+    }
+
+    @Test
+    void testQuickHashDiffersBySize() throws Exception {
+        Path first = createRandomFile("first.bin", 100);
+        Path second = createRandomFile("second.bin", 101);
+        assertNotEquals(FileHashUtils.quickHashHex(first), FileHashUtils.quickHashHex(second));
+    }
+
+    private Path createRandomFile(String name, int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return Files.write(tempDir.resolve(name), data);
+    }
+}
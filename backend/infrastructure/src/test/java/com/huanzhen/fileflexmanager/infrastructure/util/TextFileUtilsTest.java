@@ -0,0 +1,44 @@
+package com.huanzhen.fileflexmanager.infrastructure.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TextFileUtilsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDetectEncoding() {
+        String text = "日志 error: 连接超时";
+        assertEquals(text, TextFileUtils.decode(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(text, TextFileUtils.decode(text.getBytes(Charset.forName("GBK"))));
+
+        byte[] utf16 = text.getBytes(StandardCharsets.UTF_16LE);
+        byte[] withBom = new byte[utf16.length + 2];
+        withBom[0] = (byte) 0xFF;
+        withBom[1] = (byte) 0xFE;
+        System.arraycopy(utf16, 0, withBom, 2, utf16.length);
+        assertEquals(text, TextFileUtils.decode(withBom));
+    }
+
+    @Test
+    void testBinaryIgnored() {
+        assertNull(TextFileUtils.decode(new byte[]{'P', 'K', 3, 4, 0, 0, 1}));
+    }
+
+    @Test
+    void testSizeLimit() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("app.log"), "0123456789");
+        assertEquals("0123456789", TextFileUtils.readText(file, 10));
+        assertNull(TextFileUtils.readText(file, 9));
+    }
+}
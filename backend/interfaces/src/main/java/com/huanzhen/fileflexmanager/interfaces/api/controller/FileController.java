@@ -1,23 +1,41 @@
 package com.huanzhen.fileflexmanager.interfaces.api.controller;
 
+import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.huanzhen.fileflexmanager.application.service.DirectoryListingCache;
 import com.huanzhen.fileflexmanager.application.service.FileService;
+import com.huanzhen.fileflexmanager.application.service.TaskApplicationService;
 import com.huanzhen.fileflexmanager.domain.model.BaseResponse;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.domain.model.entity.FileInfo;
 import com.huanzhen.fileflexmanager.domain.model.entity.Tag;
+import com.huanzhen.fileflexmanager.domain.model.entity.Task;
+import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
+import com.huanzhen.fileflexmanager.domain.model.req.FileQueryRequest;
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileContentResult;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileQueryResult;
 import com.huanzhen.fileflexmanager.interfaces.convert.TagVOConvert;
+import com.huanzhen.fileflexmanager.interfaces.convert.TaskConvert;
+import com.huanzhen.fileflexmanager.interfaces.model.req.BatchUpdateFileTagsRequest;
 import com.huanzhen.fileflexmanager.interfaces.model.req.QueryFilesReq;
 import com.huanzhen.fileflexmanager.interfaces.model.req.UpdateFileTagsRequest;
 import com.huanzhen.fileflexmanager.domain.model.vo.TagVO;
+import com.huanzhen.fileflexmanager.interfaces.model.resp.TaskResponse;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -30,15 +48,74 @@ import java.util.stream.Collectors;
 public class FileController {
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
     private static final TagVOConvert tagMapper = TagVOConvert.INSTANCE;
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    /**
+     * 批量打标签时，只选了不超过该数量的文件则同步执行，否则提交到任务中心
+     */
+    private static final int SYNC_TAG_MAX_PATHS = 100;
 
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TaskApplicationService taskApplicationService;
+
+    @Autowired
+    private TaskConvert taskConvert;
+
     @PostMapping("/queryFiles")
     public BaseResponse<Page<FileInfo>> queryFiles(@RequestBody QueryFilesReq req) {
-        return BaseResponse.success(fileService.listFiles(req.path(), req.page(), req.size()));
+        return BaseResponse.success(fileService.listFiles(req.path(), req.page(), req.size(),
+                req.sortBy(), req.sortOrder()));
+    }
+
+    /**
+     * 基于游标分页列出目录，翻页时把返回的 nextCursor 原样传回
+     */
+    @PostMapping("/queryFilesByCursor")
+    public BaseResponse<CursorPage<FileInfo>> queryFilesByCursor(@RequestBody QueryFilesReq req) {
+        return BaseResponse.success(fileService.listFilesByCursor(req.path(), req.cursor(), req.size(),
+                req.sortBy(), req.sortOrder()));
+    }
+
+    /**
+     * 流式列出目录，每行一个文件信息（NDJSON），按目录中的原始顺序边读取边返回
+     */
+    @PostMapping(value = "/queryFiles/stream", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFiles(@RequestBody QueryFilesReq req) {
+        StreamingResponseBody body = outputStream -> {
+            try {
+                fileService.streamFiles(req.path(), fileInfos -> {
+                    try {
+                        for (FileInfo fileInfo : fileInfos) {
+                            outputStream.write(objectMapper.writeValueAsBytes(fileInfo));
+                            outputStream.write('\n');
+                        }
+                        outputStream.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // 一般是客户端已断开
+                logger.debug("流式返回目录列表中断: {}", e.getMessage());
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+                .body(body);
     }
 
+    /**
+     * 目录列表缓存的命中率、淘汰数等统计
+     */
+    @GetMapping("/list-cache/stats")
+    public BaseResponse<DirectoryListingCache.Stats> getListCacheStats() {
+        return BaseResponse.success(fileService.getListCacheStats());
+    }
 
     @GetMapping("/system-users")
     public BaseResponse<List<String>> getSystemUsers() {
@@ -94,6 +171,36 @@ public class FileController {
         return BaseResponse.success(fileService.searchFiles(keyword, page, size));
     }
 
+    /**
+     * 游标分页搜索，翻页时把返回的 nextCursor 原样传回
+     */
+    @GetMapping("/search/cursor")
+    public BaseResponse<CursorPage<FileInfo>> searchFilesByCursor(
+            @RequestParam String keyword,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return BaseResponse.success(fileService.searchFilesByCursor(keyword, cursor, size));
+    }
+
+    /**
+     * 按文件内容全文搜索，支持 "短语" 和 前缀*，返回命中片段
+     */
+    @GetMapping("/content-search")
+    public BaseResponse<Page<FileContentResult>> searchContent(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return BaseResponse.success(fileService.searchContent(keyword, page, size));
+    }
+
+    /**
+     * 按扩展名、大小、修改时间等条件结构化查询，游标分页，可同时返回分面计数
+     */
+    @PostMapping("/query")
+    public BaseResponse<FileQueryResult> queryFiles(@RequestBody FileQueryRequest request) {
+        return BaseResponse.success(fileService.queryFiles(request));
+    }
+
     @GetMapping("/tags")
     public BaseResponse<List<TagVO>> getFileTags(@RequestParam String path) {
         List<Tag> tags = fileService.getFileTags(path);
@@ -106,6 +213,31 @@ public class FileController {
         return BaseResponse.success();
     }
 
+    /**
+     * 批量添加、移除或替换标签
+     * <p>
+     * 选择少量文件时同步执行并返回已完成的任务，选择目录或大量文件时提交到任务中心，返回的任务可查询进度和取消
+     */
+    @PostMapping("/tags/batch")
+    public BaseResponse<TaskResponse> batchUpdateFileTags(@RequestBody BatchUpdateFileTagsRequest request) {
+        JSONObject payload = new JSONObject();
+        payload.put("selectedPaths", request.paths());
+        payload.put("directory", request.directory());
+        payload.put("pattern", request.pattern());
+        payload.put("recursive", request.recursive());
+        if (request.mode() != null) {
+            payload.put("mode", request.mode());
+        }
+        payload.put("tagIds", request.tagIds());
+
+        boolean sync = (request.directory() == null || request.directory().isBlank())
+                && request.paths() != null && request.paths().size() <= SYNC_TAG_MAX_PATHS;
+        Task task = sync
+                ? taskApplicationService.executeTask(TaskType.FILE_TAG, payload)
+                : taskApplicationService.submitAsyncTask(TaskType.FILE_TAG, payload);
+        return BaseResponse.success(taskConvert.toTaskResponse(task));
+    }
+
     /**
      * 获取包含指定所有标签的文件
      * @param tagIds 标签ID列表
@@ -124,6 +256,21 @@ public class FileController {
         return BaseResponse.success(fileService.getFilesContainAllTags(tagIdList, page, size));
     }
 
+    /**
+     * 游标分页获取包含指定所有标签的文件
+     * @param tagIds 标签ID列表
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @param size 每页大小
+     */
+    @GetMapping("/get-files-contain-all-tags/cursor")
+    public BaseResponse<CursorPage<FileInfo>> getFilesContainAllTagsByCursor(
+        @RequestParam String tagIds,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size
+    ) {
+        return BaseResponse.success(fileService.getFilesContainAllTagsByCursor(parseTagIds(tagIds), cursor, size));
+    }
+
     /**
      * 获取包含任意一个标签的文件
      * @param tagIds 标签ID列表
@@ -141,4 +288,55 @@ public class FileController {
             .collect(Collectors.toList());
         return BaseResponse.success(fileService.getFilesContainAnyTags(tagIdList, page, size));
     }
+
+    /**
+     * 游标分页获取包含任意一个标签的文件
+     * @param tagIds 标签ID列表
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @param size 每页大小
+     */
+    @GetMapping("/get-files-contain-any-tags/cursor")
+    public BaseResponse<CursorPage<FileInfo>> getFilesContainAnyTagsByCursor(
+        @RequestParam String tagIds,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size
+    ) {
+        return BaseResponse.success(fileService.getFilesContainAnyTagsByCursor(parseTagIds(tagIds), cursor, size));
+    }
+
+    /**
+     * 按标签条件获取文件
+     * @param expr 标签条件，如 1 AND (2 OR 3) AND NOT 4
+     * @param page 页码
+     * @param size 每页大小
+     */
+    @GetMapping("/get-files-by-tag-expression")
+    public BaseResponse<Page<FileInfo>> getFilesByTagExpression(
+        @RequestParam String expr,
+        @RequestParam(defaultValue = "1") int page,
+        @RequestParam(defaultValue = "20") int size
+    ) {
+        return BaseResponse.success(fileService.getFilesByTagExpression(TagExpression.parse(expr), page, size));
+    }
+
+    /**
+     * 按标签条件和文件id游标分页获取文件
+     * @param expr 标签条件，如 1 AND (2 OR 3) AND NOT 4
+     * @param cursor 上一页返回的 nextCursor，为空时从第一条开始
+     * @param size 每页大小
+     */
+    @GetMapping("/get-files-by-tag-expression/cursor")
+    public BaseResponse<CursorPage<FileInfo>> getFilesByTagExpressionByCursor(
+        @RequestParam String expr,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size
+    ) {
+        return BaseResponse.success(fileService.getFilesByTagExpressionByCursor(TagExpression.parse(expr), cursor, size));
+    }
+
+    private static List<Long> parseTagIds(String tagIds) {
+        return Arrays.stream(tagIds.split(","))
+            .map(Long::parseLong)
+            .collect(Collectors.toList());
+    }
 }
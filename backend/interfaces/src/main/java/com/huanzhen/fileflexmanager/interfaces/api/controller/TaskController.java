@@ -2,6 +2,7 @@ package com.huanzhen.fileflexmanager.interfaces.api.controller;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.application.service.TaskApplicationService;
 import com.huanzhen.fileflexmanager.domain.model.entity.Task;
 import com.huanzhen.fileflexmanager.domain.model.enums.TaskType;
@@ -68,6 +69,20 @@ public class TaskController {
         return BaseResponse.success(responsePage);
     }
 
+    /**
+     * 按创建时间倒序的游标分页，翻页时把返回的 nextCursor 原样传回，总数只在第一页返回
+     */
+    @GetMapping("/cursor")
+    public BaseResponse<CursorPage<TaskResponse>> getAllTasksByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) Boolean includeCompleted) {
+        CursorPage<Task> taskPage = taskService.getAllTasksByCursor(cursor, size, includeCompleted);
+        return BaseResponse.success(new CursorPage<>(taskPage.getRecords().stream()
+                .map(taskConvert::toTaskResponse)
+                .collect(Collectors.toList()), taskPage.getNextCursor(), taskPage.getTotal()));
+    }
+
     @GetMapping("/getScheduledTasks")
     public BaseResponse<Page<TaskResponse>> getScheduledTasks(
             @RequestParam(defaultValue = "1") int page,
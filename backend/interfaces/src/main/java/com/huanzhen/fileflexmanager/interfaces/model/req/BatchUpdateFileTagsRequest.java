@@ -0,0 +1,17 @@
+package com.huanzhen.fileflexmanager.interfaces.model.req;
+
+import java.util.List;
+
+/**
+ * 批量打标签请求，paths 和 directory 至少填写一个
+ *
+ * @param paths     直接打标签的文件或目录
+ * @param directory 为该目录下匹配 pattern 的文件打标签
+ * @param pattern   文件名glob，如 *.jpg，为空时匹配全部文件
+ * @param recursive 是否匹配子目录中的文件
+ * @param mode      add、remove 或 replace，默认 add
+ * @param tagIds    标签ID列表
+ */
+public record BatchUpdateFileTagsRequest(List<String> paths, String directory, String pattern, Boolean recursive,
+                                         String mode, List<Long> tagIds) {
+}
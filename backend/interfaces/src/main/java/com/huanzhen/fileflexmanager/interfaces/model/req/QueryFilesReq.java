@@ -3,7 +3,12 @@ package com.huanzhen.fileflexmanager.interfaces.model.req;
 import cn.hutool.core.util.StrUtil;
 import com.huanzhen.fileflexmanager.domain.model.Constants;
 
-public record QueryFilesReq(int page, int size, String path) {
+/**
+ * @param sortBy    排序字段：name、size、lastModified，默认name
+ * @param sortOrder asc 或 desc，默认asc
+ * @param cursor    游标分页时上一页返回的 nextCursor
+ */
+public record QueryFilesReq(int page, int size, String path, String sortBy, String sortOrder, String cursor) {
     public QueryFilesReq{
         if (StrUtil.isBlank(path)) {
             path = Constants.DEFAULT_PATH_TAG;
@@ -0,0 +1,4 @@
+-- =====================================================
+-- 增量索引：记录文件系统标识（inode）
+-- =====================================================
+ALTER TABLE file_index ADD COLUMN IF NOT EXISTS file_key VARCHAR(64);
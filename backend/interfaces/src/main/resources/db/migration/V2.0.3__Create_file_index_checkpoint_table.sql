@@ -0,0 +1,19 @@
+-- =====================================================
+-- 表结构创建
+-- =====================================================
+CREATE TABLE IF NOT EXISTS file_index_checkpoint
+(
+    id             SERIAL PRIMARY KEY,
+    root_path      TEXT      NOT NULL,
+    max_depth      INTEGER   NOT NULL DEFAULT 0,
+    completed_dirs TEXT,
+    stale_files    TEXT,
+    stale_dirs     TEXT,
+    start_time     TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time    TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- =====================================================
+-- 索引创建
+-- =====================================================
+CREATE UNIQUE INDEX IF NOT EXISTS idx_file_index_checkpoint_root_path ON file_index_checkpoint (root_path);
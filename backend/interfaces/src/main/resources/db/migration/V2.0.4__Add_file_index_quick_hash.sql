@@ -0,0 +1,3 @@
+ALTER TABLE file_index ADD COLUMN IF NOT EXISTS quick_hash VARCHAR(32);
+
+CREATE INDEX IF NOT EXISTS idx_file_index_quick_hash ON file_index (quick_hash);
@@ -0,0 +1,2 @@
+ALTER TABLE file_index ADD COLUMN IF NOT EXISTS name_pinyin TEXT;
+ALTER TABLE file_index ADD COLUMN IF NOT EXISTS name_initials TEXT;
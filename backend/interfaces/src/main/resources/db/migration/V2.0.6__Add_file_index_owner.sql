@@ -0,0 +1 @@
+ALTER TABLE file_index ADD COLUMN IF NOT EXISTS owner VARCHAR(64);
@@ -0,0 +1,2 @@
+CREATE INDEX IF NOT EXISTS idx_file_index_name_id ON file_index (name, id);
+CREATE INDEX IF NOT EXISTS idx_task_create_time_id ON task (create_time, id);
@@ -0,0 +1,23 @@
+-- =====================================================
+-- 表结构变更
+-- =====================================================
+ALTER TABLE file_index ADD COLUMN IF NOT EXISTS extension VARCHAR(255);
+
+CREATE TABLE IF NOT EXISTS file_index_facet
+(
+    id          SERIAL PRIMARY KEY,
+    root_path   TEXT         NOT NULL,
+    facet       VARCHAR(16)  NOT NULL,
+    bucket      VARCHAR(255) NOT NULL,
+    file_count  BIGINT       NOT NULL DEFAULT 0,
+    total_size  BIGINT       NOT NULL DEFAULT 0,
+    update_time TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- =====================================================
+-- 索引创建
+-- =====================================================
+CREATE INDEX IF NOT EXISTS idx_file_index_extension_size ON file_index (extension, size);
+CREATE INDEX IF NOT EXISTS idx_file_index_is_dir_size ON file_index (is_dir, size);
+CREATE INDEX IF NOT EXISTS idx_file_index_is_dir_last_modified ON file_index (is_dir, last_modified);
+CREATE INDEX IF NOT EXISTS idx_file_index_facet_root_path ON file_index_facet (root_path, facet);
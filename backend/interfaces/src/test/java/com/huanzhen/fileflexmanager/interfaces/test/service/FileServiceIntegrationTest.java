@@ -1,21 +1,52 @@
 package com.huanzhen.fileflexmanager.interfaces.test.service;
 
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.huanzhen.fileflexmanager.application.service.DirectoryListingCache;
+import com.huanzhen.fileflexmanager.application.service.FileHashBinder;
+import com.huanzhen.fileflexmanager.application.service.FileIndexValidator;
 import com.huanzhen.fileflexmanager.application.service.FileService;
+import com.huanzhen.fileflexmanager.application.service.TagService;
+import com.huanzhen.fileflexmanager.domain.model.CursorPage;
 import com.huanzhen.fileflexmanager.domain.model.entity.*;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileSizeBucket;
+import com.huanzhen.fileflexmanager.domain.model.enums.FileTagMode;
+import com.huanzhen.fileflexmanager.domain.model.req.FileQueryRequest;
+import com.huanzhen.fileflexmanager.domain.model.req.TagExpression;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileFacets;
+import com.huanzhen.fileflexmanager.domain.model.vo.FileQueryResult;
+import com.huanzhen.fileflexmanager.domain.repository.FileIndexFacetRepository;
 import com.huanzhen.fileflexmanager.domain.repository.FileIndexRepository;
 import com.huanzhen.fileflexmanager.domain.repository.FileTagRepository;
 import com.huanzhen.fileflexmanager.domain.repository.TagFileHashRepository;
+import com.huanzhen.fileflexmanager.domain.repository.TagFileIdRepository;
 import com.huanzhen.fileflexmanager.domain.repository.TagRepository;
 import com.huanzhen.fileflexmanager.interfaces.test.BaseIntegrationTest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class FileServiceIntegrationTest extends BaseIntegrationTest {
@@ -23,9 +54,18 @@ class FileServiceIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private DirectoryListingCache directoryListingCache;
+
+    @Autowired
+    private FileIndexValidator fileIndexValidator;
+
     @Autowired
     private FileIndexRepository fileIndexRepository;
 
+    @Autowired
+    private FileIndexFacetRepository fileIndexFacetRepository;
+
     @Autowired
     private FileTagRepository fileTagRepository;
 
@@ -35,6 +75,18 @@ class FileServiceIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private TagRepository tagRepository;
 
+    @Autowired
+    private TagFileIdRepository tagFileIdRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TagService tagService;
+
+    @Autowired
+    private FileHashBinder fileHashBinder;
+
     private FileIndex file1;
     private FileIndex file2;
     private FileIndex file3;
@@ -45,6 +97,8 @@ class FileServiceIntegrationTest extends BaseIntegrationTest {
 
     @BeforeEach
     void setUp() throws Exception {
+        directoryListingCache.clear();
+
         // 创建测试目录和文件
         Path testPath = createTestDirectory("test");
         
@@ -108,6 +162,363 @@ class FileServiceIntegrationTest extends BaseIntegrationTest {
         return tagFileHashRepository.save(tagFileHash);
     }
 
+    @Test
+    void listFiles_BatchLoadsIndexesAndTags() throws Exception {
+        // file4.txt 没有索引记录，列表时批量创建
+        createTestFile(tempDir.resolve("test").resolve("file4.txt"), "content4");
+
+        Page<FileInfo> result = fileService.listFiles(getTestFilePath("test"), 1, 10);
+
+        assertEquals(4, result.getTotal());
+        Map<String, FileInfo> byName = result.getRecords().stream()
+                .collect(Collectors.toMap(FileInfo::getName, Function.identity()));
+        assertEquals(file1.getId(), byName.get("file1.txt").getId());
+        assertEquals(Set.of(tag1.getId(), tag2.getId(), bindFileTag.getId()), tagIds(byName.get("file1.txt")));
+        assertEquals(Set.of(tag2.getId(), bindFileTag.getId()), tagIds(byName.get("file2.txt")));
+        assertEquals(Set.of(tag3.getId()), tagIds(byName.get("file3.txt")));
+
+        FileInfo created = byName.get("file4.txt");
+        assertNotNull(created.getId());
+        assertTrue(created.getTags().isEmpty());
+        assertEquals(created.getId(), fileIndexRepository.findByPath(created.getPath()).getId());
+    }
+
+    @Test
+    void listFiles_SortedPages() throws Exception {
+        createTestDirectory("test", "b_dir");
+
+        Page<FileInfo> first = fileService.listFiles(getTestFilePath("test"), 1, 2, "name", "asc");
+        Page<FileInfo> second = fileService.listFiles(getTestFilePath("test"), 2, 2, "name", "asc");
+        Page<FileInfo> desc = fileService.listFiles(getTestFilePath("test"), 1, 10, "name", "desc");
+
+        assertEquals(4, first.getTotal());
+        assertEquals(List.of("b_dir", "file1.txt"), names(first.getRecords()));
+        assertEquals(List.of("file2.txt", "file3.txt"), names(second.getRecords()));
+        // 倒序时文件夹仍在前
+        assertEquals(List.of("b_dir", "file3.txt", "file2.txt", "file1.txt"), names(desc.getRecords()));
+    }
+
+    @Test
+    void listFiles_CreatedIndexKeepsHashAcrossIndexRunInNonUtcZone() throws Exception {
+        TimeZone original = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+        try {
+            Path file = createTestDirectory("zone").resolve("zone.txt");
+            createTestFile(file, "zone");
+            fileService.listFiles(getTestFilePath("zone"), 1, 10);
+
+            // 目录列表创建的索引记录与索引任务一样按系统时区记录修改时间
+            LocalDateTime lastModified = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(Files.getLastModifiedTime(file).toMillis()), ZoneId.systemDefault());
+            FileIndex created = fileIndexRepository.findByPath(file.toString());
+            assertEquals(lastModified, created.getLastModified());
+
+            // 索引任务写入相同的大小和修改时间，视为未变化，保留打标签时写入的MD5
+            created.setMd5("zone-md5");
+            fileIndexRepository.updateFileIndex(created);
+            FileIndex indexed = new FileIndex();
+            indexed.setPath(file.toString());
+            indexed.setName("zone.txt");
+            indexed.setIsDir(false);
+            indexed.setSize(Files.size(file));
+            indexed.setParentPath(file.getParent().toString());
+            indexed.setLastModified(lastModified);
+            fileIndexRepository.upsertAll(List.of(indexed));
+            assertEquals("zone-md5", fileIndexRepository.findByPath(file.toString()).getMd5());
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    @Test
+    void upsertAll_InvalidatesHashTagsOnlyWhenMd5Changes() {
+        assertEquals(2L, tagFileIdRepository.countFiles().get(bindFileTag.getId()));
+        // 绕过仓储修改 md5，缓存的计数不会感知到
+        jdbcTemplate.update("UPDATE file_index SET md5 = 'hash1' WHERE id = ?", file3.getId());
+
+        // md5 未变化：不带 md5 且大小、修改时间相同，或带着相同的 md5，不丢弃缓存
+        FileIndex unchanged = fileIndexRepository.findById(file3.getId());
+        unchanged.setMd5(null);
+        FileIndex sameHash = fileIndexRepository.findById(file1.getId());
+        fileIndexRepository.upsertAll(List.of(unchanged, sameHash));
+        assertEquals(2L, tagFileIdRepository.countFiles().get(bindFileTag.getId()));
+
+        // 设置了新的 md5
+        FileIndex rehashed = fileIndexRepository.findById(file3.getId());
+        rehashed.setMd5("hash2");
+        fileIndexRepository.upsertAll(List.of(rehashed));
+        assertEquals(3L, tagFileIdRepository.countFiles().get(bindFileTag.getId()));
+
+        // 大小变化，原有的 md5 被清空
+        FileIndex modified = fileIndexRepository.findById(file1.getId());
+        modified.setMd5(null);
+        modified.setSize(2000L);
+        fileIndexRepository.upsertAll(List.of(modified));
+        assertNull(fileIndexRepository.findById(file1.getId()).getMd5());
+        assertEquals(2L, tagFileIdRepository.countFiles().get(bindFileTag.getId()));
+    }
+
+    @Test
+    void findCollidingQuickHashes_OnlyHashesMissingMd5UnderRoot() {
+        String root = getTestFilePath("quick");
+        // q1: 目录下有两条没有MD5的记录；q2: 与目录外的记录重复；q3: 重复但目录下的记录已有MD5；q4: 不重复
+        FileIndex a = quickHashIndex(getTestFilePath("quick", "a.txt"), "q1", null);
+        FileIndex b = quickHashIndex(getTestFilePath("quick", "sub", "b.txt"), "q1", null);
+        FileIndex c = quickHashIndex(getTestFilePath("quick", "c.txt"), "q2", null);
+        quickHashIndex(getTestFilePath("other", "c.txt"), "q2", "md5-c");
+        quickHashIndex(getTestFilePath("quick", "d.txt"), "q3", "md5-d");
+        quickHashIndex(getTestFilePath("other", "d.txt"), "q3", null);
+        quickHashIndex(getTestFilePath("quick", "e.txt"), "q4", null);
+
+        assertEquals(Set.of("q1", "q2"), fileIndexRepository.findCollidingQuickHashes(root));
+        assertEquals(Set.of(a.getId(), b.getId(), c.getId()),
+                fileIndexRepository.findQuickHashCollisions(root, List.of("q1", "q2")).stream()
+                        .map(FileIndex::getId).collect(Collectors.toSet()));
+
+        // 目录名中的 _ 按字面匹配
+        FileIndex literal = quickHashIndex(getTestFilePath("q_b", "f.txt"), "q5", null);
+        quickHashIndex(getTestFilePath("qXb", "f.txt"), "q5", null);
+        assertEquals(List.of(literal.getId()), fileIndexRepository.findQuickHashCollisions(getTestFilePath("q_b"),
+                List.of("q5")).stream().map(FileIndex::getId).toList());
+    }
+
+    private FileIndex quickHashIndex(String path, String quickHash, String md5) {
+        FileIndex fileIndex = new FileIndex();
+        fileIndex.setPath(path);
+        fileIndex.setName(path.substring(path.lastIndexOf('/') + 1));
+        fileIndex.setIsDir(false);
+        fileIndex.setSize(1000L);
+        fileIndex.setQuickHash(quickHash);
+        fileIndex.setMd5(md5);
+        fileIndex.setLastModified(now());
+        return fileIndexRepository.save(fileIndex);
+    }
+
+    @Test
+    void listFilesByCursor_WalksAllEntries() throws Exception {
+        createTestDirectory("test", "b_dir");
+
+        CursorPage<FileInfo> first = fileService.listFilesByCursor(getTestFilePath("test"), null, 3, "name", "asc");
+        CursorPage<FileInfo> second = fileService.listFilesByCursor(getTestFilePath("test"), first.getNextCursor(), 3, "name", "asc");
+
+        assertEquals(List.of("b_dir", "file1.txt", "file2.txt"), names(first.getRecords()));
+        assertEquals(List.of("file3.txt"), names(second.getRecords()));
+        assertNull(second.getNextCursor());
+        assertEquals(4L, first.getTotal());
+        assertThrows(IllegalArgumentException.class, () ->
+                fileService.listFilesByCursor(getTestFilePath("test"), first.getNextCursor(), 3, "size", "asc"));
+    }
+
+    @Test
+    void streamFiles_ReturnsAllEntriesWithTags() {
+        List<FileInfo> streamed = new ArrayList<>();
+
+        fileService.streamFiles(getTestFilePath("test"), streamed::addAll);
+
+        assertEquals(Set.of("file1.txt", "file2.txt", "file3.txt"), new HashSet<>(names(streamed)));
+        assertTrue(streamed.stream().allMatch(fileInfo -> fileInfo.getId() != null && fileInfo.getTags() != null));
+    }
+
+    @Test
+    void listFiles_CachedUntilDirectoryChanges() {
+        String dir = getTestFilePath("test");
+        fileService.listFiles(dir, 1, 10);
+        long hits = directoryListingCache.getStats().hits();
+
+        Page<FileInfo> cached = fileService.listFiles(dir, 1, 10);
+        assertEquals(hits + 1, directoryListingCache.getStats().hits());
+        assertEquals(3, cached.getTotal());
+
+        // 标签变更后重新查询标签
+        fileService.updateFileTags(getTestFilePath("test", "file3.txt"), List.of(tag1.getId()));
+        Map<String, FileInfo> byName = fileService.listFiles(dir, 1, 10).getRecords().stream()
+                .collect(Collectors.toMap(FileInfo::getName, Function.identity()));
+        assertEquals(Set.of(tag1.getId()), tagIds(byName.get("file3.txt")));
+
+        // 新建文件夹后重新读取目录
+        assertTrue(fileService.createDirectory(getTestFilePath("test", "new_dir")));
+        Page<FileInfo> changed = fileService.listFiles(dir, 1, 10);
+        assertEquals(4, changed.getTotal());
+        assertEquals("new_dir", changed.getRecords().get(0).getName());
+    }
+
+    @Test
+    void getFilesContainAnyTags_DeletedFilePurgedInBackground() throws Exception {
+        List<Long> tagIds = Arrays.asList(tag3.getId(), bindFileTag.getId());
+        Files.delete(Path.of(file3.getPath()));
+
+        // 结果直接使用索引数据，总数与记录数一致
+        Page<FileInfo> before = fileService.getFilesContainAnyTags(tagIds, 1, 10);
+        assertEquals(3, before.getTotal());
+        assertEquals(3, before.getRecords().size());
+        assertEquals(1000L, before.getRecords().get(0).getSize());
+
+        fileIndexValidator.validatePending();
+
+        Page<FileInfo> after = fileService.getFilesContainAnyTags(tagIds, 1, 10);
+        assertEquals(2, after.getTotal());
+        assertEquals(2, after.getRecords().size());
+        assertNull(fileIndexRepository.findByPath(file3.getPath()));
+    }
+
+    @Test
+    void getFilesContainAnyTags_UnavailableDirectoryNotPurged() throws Exception {
+        List<Long> tagIds = Arrays.asList(tag3.getId(), bindFileTag.getId());
+        // 整个目录不可访问（如磁盘未挂载），文件都显示为不存在，但不能据此删除索引和标签
+        Path testPath = Path.of(getTestFilePath("test"));
+        try (var files = Files.list(testPath)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(testPath);
+
+        fileService.getFilesContainAnyTags(tagIds, 1, 10);
+        fileIndexValidator.validatePending();
+
+        assertNotNull(fileIndexRepository.findByPath(file3.getPath()));
+        assertEquals(Set.of(tag3.getId()), tagService.getFileTags(file3.getId()).stream()
+                .map(Tag::getId).collect(Collectors.toSet()));
+        assertEquals(3, fileService.getFilesContainAnyTags(tagIds, 1, 10).getTotal());
+    }
+
+    @Test
+    void getFilesContainAnyTagsByCursor_PagesThroughAllFiles() {
+        List<Long> tagIds = Arrays.asList(tag3.getId(), bindFileTag.getId());
+        List<String> paths = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CursorPage<FileInfo> page = fileService.getFilesContainAnyTagsByCursor(tagIds, cursor, 1);
+            assertEquals(3L, page.getTotal());
+            page.getRecords().forEach(fileInfo -> paths.add(fileInfo.getPath()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(List.of(file1.getPath(), file2.getPath(), file3.getPath()), paths);
+        assertThrows(IllegalArgumentException.class,
+                () -> fileService.getFilesContainAnyTagsByCursor(tagIds, "not-a-cursor", 1));
+    }
+
+    @Test
+    void searchFilesByCursor_PagesThroughAllMatches() {
+        Set<String> paths = new HashSet<>();
+        String cursor = null;
+        do {
+            CursorPage<FileInfo> page = fileService.searchFilesByCursor("file", cursor, 2);
+            page.getRecords().forEach(fileInfo -> assertTrue(paths.add(fileInfo.getPath())));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(Set.of(file1.getPath(), file2.getPath(), file3.getPath()), paths);
+    }
+
+    @Test
+    void queryFiles_FiltersAndReturnsFacets() {
+        FileIndex photo = new FileIndex();
+        photo.setPath(getTestFilePath("test", "photo.JPG"));
+        photo.setName("photo.JPG");
+        photo.setIsDir(false);
+        photo.setSize(5L * 1024 * 1024);
+        photo.setLastModified(now());
+        fileIndexRepository.save(photo);
+        String root = getTestFilePath("test");
+        fileIndexFacetRepository.refresh(root);
+
+        FileQueryResult byExtension = fileService.queryFiles(new FileQueryRequest(null, root, List.of(".jpg"),
+                null, null, null, null, false, null, 10, true));
+        assertEquals(List.of("photo.JPG"), names(byExtension.page().getRecords()));
+
+        FileQueryResult bySize = fileService.queryFiles(new FileQueryRequest("file", root, null,
+                null, 1000L, null, null, null, null, 2, false));
+        assertEquals(List.of("file1.txt", "file2.txt"), names(bySize.page().getRecords()));
+        assertNotNull(bySize.page().getNextCursor());
+        assertNull(bySize.facets());
+
+        // 分面计数不受其他过滤条件影响
+        FileFacets facets = byExtension.facets();
+        assertEquals(List.of(root), facets.getRootPaths());
+        assertEquals(List.of(new FileFacets.Bucket("txt", 3, 3000), new FileFacets.Bucket("jpg", 1, 5L * 1024 * 1024)),
+                facets.getExtensions());
+        assertEquals(List.of(FileSizeBucket.TINY.name(), FileSizeBucket.SMALL.name()),
+                facets.getSizes().stream().map(FileFacets.Bucket::value).toList());
+        assertEquals(4, facets.getYears().get(0).count());
+        assertFalse(facets.isScopeExact());
+
+        // 没有过滤条件且范围正是根目录时计数与结果一致；根目录内部的范围使用根目录的计数
+        assertTrue(fileService.queryFiles(new FileQueryRequest(null, root, null,
+                null, null, null, null, false, null, 10, true)).facets().isScopeExact());
+        FileFacets subFacets = fileService.queryFiles(new FileQueryRequest(null, root + "/sub", null,
+                null, null, null, null, null, null, 10, true)).facets();
+        assertEquals(List.of(root), subFacets.getRootPaths());
+        assertFalse(subFacets.isScopeExact());
+    }
+
+    @Test
+    void refreshFacets_UnderscoreInRootMatchedLiterally() {
+        String root = getTestFilePath("a_b");
+        quickHashIndex(getTestFilePath("a_b", "x.txt"), null, null);
+        quickHashIndex(getTestFilePath("aXb", "y.jpg"), null, null);
+        fileIndexFacetRepository.refresh(root);
+
+        FileFacets facets = fileService.queryFiles(new FileQueryRequest(null, root, null,
+                null, null, null, null, null, null, 10, true)).facets();
+        assertEquals(List.of(new FileFacets.Bucket("txt", 1, 1000)), facets.getExtensions());
+    }
+
+    @Test
+    void queryFiles_UnderscoreInScopeMatchedLiterally() {
+        quickHashIndex(getTestFilePath("a_b", "x.txt"), null, null);
+        quickHashIndex(getTestFilePath("aXb", "y.txt"), null, null);
+
+        FileQueryResult result = fileService.queryFiles(new FileQueryRequest(null, getTestFilePath("a_b"), null,
+                null, null, null, null, null, null, 10, false));
+        assertEquals(List.of("x.txt"), names(result.page().getRecords()));
+    }
+
+    @Test
+    void countByPathPrefix_UnderscoreInRootMatchedLiterally() {
+        quickHashIndex(getTestFilePath("a_b"), null, null);
+        quickHashIndex(getTestFilePath("a_b", "x.txt"), null, null);
+        quickHashIndex(getTestFilePath("aXb", "y.txt"), null, null);
+
+        assertEquals(2, fileIndexRepository.countByPathPrefix(getTestFilePath("a_b")));
+    }
+
+    @Test
+    void findFilesUnder_UnderscoreInRootMatchedLiterally() {
+        FileIndex inside = quickHashIndex(getTestFilePath("a_b", "x.txt"), null, null);
+        quickHashIndex(getTestFilePath("aXb", "y.txt"), null, null);
+
+        assertEquals(List.of(inside.getId()), fileIndexRepository.findFilesUnder(getTestFilePath("a_b"), 10_000L, 0L, 10)
+                .stream().map(FileIndex::getId).toList());
+    }
+
+    @Test
+    void deleteStaleIndexes_UnderscoreInRootMatchedLiterally() {
+        FileIndex stale = quickHashIndex(getTestFilePath("a_b", "x.txt"), null, null);
+        FileIndex sibling = quickHashIndex(getTestFilePath("aXb", "y.txt"), null, null);
+        createFileTag(stale.getId(), tag1.getId());
+        createFileTag(sibling.getId(), tag1.getId());
+
+        fileIndexRepository.deleteStaleIndexes(getTestFilePath("a_b"), LocalDateTime.now().plusMinutes(1));
+
+        // 名称只在 _ 处不同的兄弟目录下的记录和标签关联都保留
+        assertNull(fileIndexRepository.findById(stale.getId()));
+        assertNotNull(fileIndexRepository.findById(sibling.getId()));
+        assertEquals(1, fileTagRepository.findByFileId(sibling.getId()).size());
+    }
+
+    private List<String> names(List<FileInfo> fileInfos) {
+        return fileInfos.stream().map(FileInfo::getName).collect(Collectors.toList());
+    }
+
+    private Set<Long> tagIds(FileInfo fileInfo) {
+        return fileInfo.getTags().stream().map(Tag::getId).collect(Collectors.toSet());
+    }
+
     @Test
     void getFilesContainAllTags_WithNormalTags() {
         // 测试包含所有普通标签的查询
@@ -184,4 +595,113 @@ class FileServiceIntegrationTest extends BaseIntegrationTest {
         assertTrue(result.getRecords().stream()
                 .anyMatch(file -> file.getPath().equals(file3.getPath())));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void getFilesByTagExpression_CombinesNormalAndBindFileTags() {
+        // (tag2 或 tag3) 且不带 bindFileTag：file1、file2 的hash已绑定，只剩 file3
+        TagExpression expression = TagExpression.parse(String.format("(%d OR %d) AND NOT %d",
+                tag2.getId(), tag3.getId(), bindFileTag.getId()));
+
+        Page<FileInfo> result = fileService.getFilesByTagExpression(expression, 1, 10);
+
+        assertEquals(1, result.getTotal());
+        assertEquals(file3.getPath(), result.getRecords().get(0).getPath());
+
+        // 新增的关联立即可查
+        createFileTag(file2.getId(), tag3.getId());
+        CursorPage<FileInfo> page = fileService.getFilesByTagExpressionByCursor(
+                TagExpression.parse(tag2.getId() + " AND " + tag3.getId()), null, 10);
+        assertEquals(1L, page.getTotal());
+        assertEquals(file2.getPath(), page.getRecords().get(0).getPath());
+    }
+
+    @Test
+    void getAllTags_CountsFilesAndSubtrees() {
+        Tag childTag = new Tag();
+        childTag.setName("child");
+        childTag.setParentId(tag1.getId());
+        childTag.setBindFile(false);
+        childTag = tagService.createTag(childTag);
+        createFileTag(file1.getId(), childTag.getId());
+        createFileTag(file2.getId(), childTag.getId());
+        // file1 同时直接带有绑定文件标签，与hash关联只算一次
+        createFileTag(file1.getId(), bindFileTag.getId());
+
+        Map<Long, Tag> byId = tagService.getAllTags().stream()
+                .collect(Collectors.toMap(Tag::getId, Function.identity()));
+
+        assertEquals(1L, byId.get(tag1.getId()).getFileCount());
+        assertEquals(2L, byId.get(tag1.getId()).getSubtreeFileCount());
+        assertEquals(2L, byId.get(childTag.getId()).getFileCount());
+        assertEquals(2L, byId.get(childTag.getId()).getSubtreeFileCount());
+        assertEquals(2L, byId.get(tag2.getId()).getFileCount());
+        assertEquals(2L, byId.get(bindFileTag.getId()).getFileCount());
+    }
+
+    @Test
+    void updateFilesTags_AddRemoveAndReplaceInBatch() {
+        List<FileIndex> files = fileService.resolveFileIndexes(List.of(
+                Path.of(file1.getPath()), Path.of(file2.getPath()), Path.of(file3.getPath())));
+        assertEquals(List.of(file1.getId(), file2.getId(), file3.getId()),
+                files.stream().map(FileIndex::getId).toList());
+
+        // file3 已有 tag3，只新增两条
+        assertEquals(2, tagService.updateFilesTags(files, Map.of(), FileTagMode.ADD, List.of(tag3.getId())));
+        assertEquals(2, tagService.updateFilesTags(files, Map.of(), FileTagMode.REMOVE, List.of(tag2.getId())));
+        // file1 还通过hash关联带有绑定文件标签
+        assertEquals(Set.of(tag1.getId(), tag3.getId(), bindFileTag.getId()),
+                tagService.getFileTags(file1.getId()).stream().map(Tag::getId).collect(Collectors.toSet()));
+
+        // 替换为绑定文件标签，file3 使用补算的MD5建立hash关联并回写索引
+        assertEquals(7, tagService.updateFilesTags(files, Map.of(file3.getId(), "hash9"), FileTagMode.REPLACE,
+                List.of(bindFileTag.getId())));
+        assertNotNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), "hash1"));
+        assertNotNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), "hash9"));
+        assertEquals("hash9", fileIndexRepository.findById(file3.getId()).getMd5());
+        // 没有给出MD5的文件不在请求中计算，提交到后台
+        assertTrue(tagService.isFileHashPending(file1.getId()));
+        assertTrue(tagService.isFileHashPending(file2.getId()));
+        assertFalse(tagService.isFileHashPending(file3.getId()));
+
+        // 移除绑定文件标签时同时删除文件当前hash的关联，文件上不再有任何标签
+        tagService.updateFilesTags(files, Map.of(), FileTagMode.REMOVE, List.of(bindFileTag.getId()));
+        assertNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), "hash1"));
+        assertNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), "hash9"));
+        assertTrue(tagService.getFilesTags(List.of(file1.getId(), file2.getId(), file3.getId())).isEmpty());
+
+        assertThrows(IllegalArgumentException.class, () ->
+                tagService.updateFilesTags(files, Map.of(), FileTagMode.ADD, List.of(-1L)));
+    }
+
+    @Test
+    void updateFileTags_HashesInBackgroundUnlessIndexedHashIsCurrent() {
+        String dir = getTestFilePath("test");
+        String md5 = DigestUtil.md5Hex(Path.of(file3.getPath()).toFile());
+
+        // 索引记录的大小与磁盘不一致，索引中的MD5不可用，请求只写直接关联，hash关联等待后台计算
+        fileService.updateFileTags(file3.getPath(), List.of(bindFileTag.getId()));
+        assertTrue(tagService.isFileHashPending(file3.getId()));
+        assertNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), md5));
+        assertEquals("hash3", fileIndexRepository.findById(file3.getId()).getMd5());
+        Map<String, FileInfo> byName = fileService.listFiles(dir, 1, 10).getRecords().stream()
+                .collect(Collectors.toMap(FileInfo::getName, Function.identity()));
+        assertTrue(byName.get("file3.txt").isHashPending());
+        assertFalse(byName.get("file1.txt").isHashPending());
+
+        fileHashBinder.process(file3.getId());
+        assertFalse(tagService.isFileHashPending(file3.getId()));
+        assertNotNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), md5));
+        FileIndex updated = fileIndexRepository.findById(file3.getId());
+        assertEquals(md5, updated.getMd5());
+        assertEquals(Path.of(file3.getPath()).toFile().length(), updated.getSize());
+        assertFalse(fileService.listFiles(dir, 1, 10).getRecords().stream()
+                .anyMatch(FileInfo::isHashPending));
+
+        // 索引已与磁盘一致，直接使用索引中的MD5，不再读取文件
+        updated.setMd5("hash3-indexed");
+        fileIndexRepository.updateFileIndex(updated);
+        fileService.updateFileTags(file3.getPath(), List.of(bindFileTag.getId()));
+        assertFalse(tagService.isFileHashPending(file3.getId()));
+        assertNotNull(tagFileHashRepository.findByTagIdAndFileHash(bindFileTag.getId(), "hash3-indexed"));
+    }
+}
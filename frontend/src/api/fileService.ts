@@ -1,6 +1,6 @@
 import api, {Page} from './config';
 import {showToast} from 'vant';
-import type {FileInfo, FileListParams, SearchParams} from '@/types';
+import type {FileInfo, FileListParams, FileQueryRequest, FileQueryResult, SearchParams} from '@/types';
 
 export const fileService = {
     // 获取文件列表
@@ -117,6 +117,12 @@ export const fileService = {
         return response.data
     },
 
+    // 按条件查询文件索引，可同时返回分面计数
+    async queryFileIndex(request: FileQueryRequest): Promise<FileQueryResult> {
+        const response = await api.post<FileQueryResult>('/api/files/query', request)
+        return response.data
+    },
+
     // 根据标签获取文件
     async getFilesContainAllTags(tagIds: number[], params: { page: number; size: number }): Promise<Page<FileInfo>> {
         const response = await api.get('/api/files/get-files-contain-all-tags', {
@@ -1,5 +1,6 @@
 import api from './config';
-import type {TagVO, CreateTagRequest, UpdateTagRequest, UpdateFileTagsRequest} from '@/types';
+import type {TagVO, CreateTagRequest, UpdateTagRequest, UpdateFileTagsRequest, BatchUpdateFileTagsRequest} from '@/types';
+import type {Task} from '@/types/task';
 
 export const tagService = {
     // 获取所有标签
@@ -38,6 +39,12 @@ export const tagService = {
         });
     },
 
+    // 批量添加、移除或替换标签，选择目录或大量文件时返回的任务在任务中心执行
+    async batchUpdateFileTags(request: BatchUpdateFileTagsRequest): Promise<Task> {
+        const response = await api.post<Task>('/api/files/tags/batch', request);
+        return response.data;
+    },
+
     // 更新标签
     async updateTag(id: number, request: UpdateTagRequest): Promise<TagVO> {
         const response = await api.put<TagVO>(`/api/tags/${id}`, request);
@@ -7,6 +7,8 @@ export interface FileInfo {
     directory: boolean;
     owner: string;
     tags?: TagVO[];
+    // 绑定文件的标签正在后台计算MD5
+    hashPending?: boolean;
 }
 
 // 标签类型
@@ -19,6 +21,8 @@ export interface TagVO {
     bindFile: boolean;
     children?: TagVO[];
     fileCount: number;
+    // 标签及其全部子标签合计的文件数
+    subtreeFileCount: number;
 }
 
 // 文件操作类型
@@ -84,6 +88,47 @@ export interface SearchParams {
     size?: number;
 }
 
+// 结构化查询条件，为空的条件不参与过滤
+export interface FileQueryRequest {
+    keyword?: string;
+    path?: string;
+    extensions?: string[];
+    minSize?: number;
+    maxSize?: number;
+    modifiedAfter?: number;
+    modifiedBefore?: number;
+    directory?: boolean;
+    cursor?: string;
+    size?: number;
+    withFacets?: boolean;
+}
+
+export interface FileFacetBucket {
+    value: string;
+    count: number;
+    totalSize: number;
+}
+
+// 分面计数，来自索引时按根目录预先统计的计数
+export interface FileFacets {
+    rootPaths: string[];
+    // 为false时是根目录整体的计数，不受查询范围和过滤条件影响，展示时需要注明
+    scopeExact: boolean;
+    updateTime: string | null;
+    extensions: FileFacetBucket[];
+    sizes: FileFacetBucket[];
+    years: FileFacetBucket[];
+    months: FileFacetBucket[];
+}
+
+export interface FileQueryResult {
+    page: {
+        records: FileInfo[];
+        nextCursor: string | null;
+    };
+    facets: FileFacets | null;
+}
+
 // 标签相关请求类型
 export interface CreateTagRequest {
     name: string;
@@ -103,6 +148,16 @@ export interface UpdateFileTagsRequest {
     fileHash?: string;
 }
 
+// 批量打标签请求，paths 和 directory 至少填写一个
+export interface BatchUpdateFileTagsRequest {
+    paths?: string[];
+    directory?: string;
+    pattern?: string;
+    recursive?: boolean;
+    mode?: 'add' | 'remove' | 'replace';
+    tagIds: number[];
+}
+
 // 工具函数
 // 定义模式配置类
 export class ModeConfig {
@@ -11,9 +11,14 @@ export type {
     FileSortField,
     FileOperationResult,
     SearchParams,
+    FileQueryRequest,
+    FileFacetBucket,
+    FileFacets,
+    FileQueryResult,
     CreateTagRequest,
     UpdateTagRequest,
     UpdateFileTagsRequest,
+    BatchUpdateFileTagsRequest,
     ModeConfig
 } from './file'
 